@@ -1,11 +1,75 @@
 package com.example.bledevicesscanner;
 
+import android.app.Activity;
+import android.os.Bundle;
+
 import androidx.multidex.MultiDexApplication;
 
+import com.example.bledevicesscanner.ble.BleManager;
+
+import java.io.File;
+
+/**
+ * Owns the process-wide {@link BleManager}. Screens attach to it with
+ * {@link #getBleManager()} instead of creating their own, so scan results, the device
+ * registry, GATT connections and caches survive navigation and configuration changes.
+ */
 public class BleApplication extends MultiDexApplication {
+    private static final String SESSIONS_DIRECTORY = "sessions";
+
+    private BleManager bleManager;
+    private int startedActivities;
+
     @Override
     public void onCreate() {
         super.onCreate();
-        // Any application-wide initialization can go here
+        registerActivityLifecycleCallbacks(new ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            }
+
+            @Override
+            public void onActivityStarted(Activity activity) {
+                startedActivities++;
+            }
+
+            @Override
+            public void onActivityResumed(Activity activity) {
+            }
+
+            @Override
+            public void onActivityPaused(Activity activity) {
+            }
+
+            @Override
+            public void onActivityStopped(Activity activity) {
+                startedActivities--;
+                // Nothing on screen any more; a rotation restarts the activity right away
+                if (startedActivities == 0 && !activity.isChangingConfigurations() && bleManager != null) {
+                    bleManager.stopScan();
+                }
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(Activity activity) {
+            }
+        });
+    }
+
+    // Created on first use, so devices without BLE never touch the Bluetooth service
+    public synchronized BleManager getBleManager() {
+        if (bleManager == null) {
+            bleManager = new BleManager(this);
+        }
+        return bleManager;
+    }
+
+    // Where recorded sessions are written and looked up for replay
+    public File getSessionsDirectory() {
+        return new File(getFilesDir(), SESSIONS_DIRECTORY);
     }
-} 
\ No newline at end of file
+}
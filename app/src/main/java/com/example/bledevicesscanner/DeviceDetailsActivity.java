@@ -1,14 +1,7 @@
 package com.example.bledevicesscanner;
 
-import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothManager;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanFilter;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
-import android.content.Context;
 import android.os.Bundle;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
@@ -21,12 +14,13 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bledevicesscanner.adapter.CharacteristicsAdapter;
 import com.example.bledevicesscanner.ble.BleManager;
+import com.example.bledevicesscanner.ble.BulkReadSession;
+import com.example.bledevicesscanner.ble.ConnectionProfile;
 import com.example.bledevicesscanner.model.BleCharacteristic;
 import com.example.bledevicesscanner.model.BleDevice;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.snackbar.Snackbar;
 
-import java.util.Arrays;
 import java.util.List;
 
 public class DeviceDetailsActivity extends AppCompatActivity implements CharacteristicsAdapter.OnCharacteristicActionListener, BleManager.BleManagerCallback {
@@ -37,39 +31,20 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
 
     private BleManager bleManager;
     private CharacteristicsAdapter characteristicsAdapter;
-    private BleDevice currentDevice;
 
     private TextView deviceNameTextView;
     private TextView deviceAddressTextView;
     private TextView deviceRssiTextView;
     private TextView connectionStatusTextView;
     private MaterialButton connectButton;
+    private MaterialButton readAllButton;
     private RecyclerView characteristicsRecyclerView;
     private TextView emptyCharacteristicsView;
 
     private String deviceAddress;
     private String deviceName;
     private int deviceRssi;
-
-    private final BluetoothAdapter bluetoothAdapter;
-    private final BluetoothLeScanner bluetoothLeScanner;
-    private final ScanCallback scanCallback = new ScanCallback() {
-        @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            if (result.getDevice().getAddress().equals(deviceAddress)) {
-                // Found our device
-                currentDevice = new BleDevice(result.getDevice(), result.getRssi(), result.getScanRecord() != null ? result.getScanRecord().getBytes() : null);
-                bleManager.connectToDevice(currentDevice);
-                bluetoothLeScanner.stopScan(this);
-            }
-        }
-    };
-
-    public DeviceDetailsActivity() {
-        BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
-        this.bluetoothAdapter = bluetoothManager.getAdapter();
-        this.bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
-    }
+    private ConnectionProfile connectionProfile = ConnectionProfile.BALANCED;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -99,6 +74,7 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
         deviceRssiTextView = findViewById(R.id.deviceRssiTextView);
         connectionStatusTextView = findViewById(R.id.connectionStatusTextView);
         connectButton = findViewById(R.id.connectButton);
+        readAllButton = findViewById(R.id.readAllButton);
         characteristicsRecyclerView = findViewById(R.id.characteristicsRecyclerView);
         emptyCharacteristicsView = findViewById(R.id.emptyCharacteristicsView);
 
@@ -109,10 +85,17 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
 
         // Set up connect button
         connectButton.setOnClickListener(v -> {
-            if (bleManager.isConnected()) {
+            if (bleManager.isConnectedTo(deviceAddress)) {
                 bleManager.disconnect();
             } else {
-                findAndConnectToDevice();
+                connectToDevice();
+            }
+        });
+
+        // Set up read all button
+        readAllButton.setOnClickListener(v -> {
+            if (bleManager.readAllCharacteristics(characteristicsAdapter.getCharacteristics())) {
+                readAllButton.setEnabled(false);
             }
         });
 
@@ -121,48 +104,68 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
         characteristicsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
         characteristicsRecyclerView.setAdapter(characteristicsAdapter);
 
-        // Initialize BLE Manager
-        bleManager = new BleManager(this);
+        // Attach to the shared BLE Manager; after a rotation the connection is still up
+        bleManager = ((BleApplication) getApplication()).getBleManager();
         bleManager.addCallback(this);
 
-        updateConnectionStatus(false);
+        boolean connected = bleManager.isConnectedTo(deviceAddress);
+        updateConnectionStatus(connected);
+        if (connected) {
+            characteristicsAdapter.setCharacteristics(bleManager.getCharacteristics());
+        }
         updateCharacteristicsVisibility();
     }
 
     @Override
     protected void onDestroy() {
         if (bleManager != null) {
-            bleManager.disconnect();
             bleManager.removeCallback(this);
-            bleManager.close();
+            // Leaving the screen ends the connection, recreating it keeps it. Subscriptions end
+            // with the link, so no CCCD writes are queued that the disconnect would cut short
+            if (isFinishing()) {
+                bleManager.disconnect();
+            }
         }
         super.onDestroy();
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_device_details, menu);
+        return true;
+    }
+
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
-        if (item.getItemId() == android.R.id.home) {
+        int itemId = item.getItemId();
+        if (itemId == android.R.id.home) {
             onBackPressed();
             return true;
+        } else if (itemId == R.id.action_profile_balanced) {
+            return applyConnectionProfile(item, ConnectionProfile.BALANCED);
+        } else if (itemId == R.id.action_profile_high_throughput) {
+            return applyConnectionProfile(item, ConnectionProfile.HIGH_THROUGHPUT);
+        } else if (itemId == R.id.action_profile_low_power) {
+            return applyConnectionProfile(item, ConnectionProfile.LOW_POWER);
         }
         return super.onOptionsItemSelected(item);
     }
 
-    private void findAndConnectToDevice() {
-        // Set up scan filter for the specific device
-        ScanFilter scanFilter = new ScanFilter.Builder()
-                .setDeviceAddress(deviceAddress)
-                .build();
-
-        // Set up scan settings
-        ScanSettings scanSettings = new ScanSettings.Builder()
-                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                .build();
+    // Takes effect on the next connect
+    private boolean applyConnectionProfile(MenuItem item, ConnectionProfile profile) {
+        item.setChecked(true);
+        connectionProfile = profile;
+        return true;
+    }
 
-        // Start scan to find the device
+    // The main screen has already seen the device, so connect straight to it instead of scanning again
+    private void connectToDevice() {
         updateConnectionStatus(false);
         connectionStatusTextView.setText(R.string.connecting);
-        bluetoothLeScanner.startScan(Arrays.asList(scanFilter), scanSettings, scanCallback);
+        if (!bleManager.connectToDevice(deviceAddress, connectionProfile)) {
+            updateConnectionStatus(false);
+            Snackbar.make(characteristicsRecyclerView, R.string.bluetooth_disabled, Snackbar.LENGTH_SHORT).show();
+        }
     }
 
     private void updateConnectionStatus(boolean connected) {
@@ -175,22 +178,36 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
         if (characteristicsAdapter.isEmpty()) {
             emptyCharacteristicsView.setVisibility(View.VISIBLE);
             characteristicsRecyclerView.setVisibility(View.GONE);
+            readAllButton.setVisibility(View.GONE);
         } else {
             emptyCharacteristicsView.setVisibility(View.GONE);
             characteristicsRecyclerView.setVisibility(View.VISIBLE);
+            readAllButton.setVisibility(View.VISIBLE);
+            readAllButton.setEnabled(true);
         }
     }
 
     // CharacteristicsAdapter.OnCharacteristicActionListener implementation
     @Override
     public void onReadCharacteristic(BleCharacteristic characteristic) {
-        if (bleManager.isConnected()) {
+        if (bleManager.isConnectedTo(deviceAddress)) {
             bleManager.readCharacteristic(characteristic);
         } else {
             Snackbar.make(characteristicsRecyclerView, "Device not connected", Snackbar.LENGTH_SHORT).show();
         }
     }
 
+    @Override
+    public void onToggleNotifications(BleCharacteristic characteristic) {
+        if (!bleManager.isConnectedTo(deviceAddress)) {
+            Snackbar.make(characteristicsRecyclerView, "Device not connected", Snackbar.LENGTH_SHORT).show();
+        } else if (bleManager.isSubscribed(characteristic)) {
+            bleManager.unsubscribe(characteristic);
+        } else {
+            bleManager.subscribe(characteristic);
+        }
+    }
+
     // BleManager.BleManagerCallback implementation
     @Override
     public void onScanStarted() {
@@ -208,7 +225,12 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
     }
 
     @Override
-    public void onDeviceFound(BleDevice device) {
+    public void onDevicesFound(List<BleDevice> devices) {
+        // Not used in this activity
+    }
+
+    @Override
+    public void onDevicesLost(List<BleDevice> devices) {
         // Not used in this activity
     }
 
@@ -236,6 +258,12 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
                 "Connection failed with status: " + status, Snackbar.LENGTH_LONG).show();
     }
 
+    @Override
+    public void onReconnecting(int attempt, long delayMs) {
+        updateConnectionStatus(false);
+        connectionStatusTextView.setText(getString(R.string.reconnecting, attempt));
+    }
+
     @Override
     public void onServicesDiscovered(List<BleCharacteristic> characteristics) {
         characteristicsAdapter.setCharacteristics(characteristics);
@@ -251,4 +279,19 @@ public class DeviceDetailsActivity extends AppCompatActivity implements Characte
     public void onCharacteristicChanged(BleCharacteristic characteristic) {
         characteristicsAdapter.updateCharacteristic(characteristic);
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void onNotificationsChanged(BleCharacteristic characteristic, boolean enabled) {
+        // The screen only redraws at display rate, so let updates arrive sampled
+        bleManager.setNotificationStreaming(characteristic, enabled);
+        characteristicsAdapter.setSubscribed(characteristic, enabled);
+    }
+
+    @Override
+    public void onBulkReadFinished(BulkReadSession.Summary summary) {
+        readAllButton.setEnabled(true);
+        Snackbar.make(characteristicsRecyclerView, getString(R.string.bulk_read_summary,
+                summary.getOperationCount(), summary.getTotalBytes(), summary.getElapsedMs(),
+                summary.getOperationsPerSecond()), Snackbar.LENGTH_LONG).show();
+    }
+}
@@ -9,6 +9,8 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -25,11 +27,17 @@ import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
 import com.example.bledevicesscanner.adapter.DevicesAdapter;
 import com.example.bledevicesscanner.ble.BleManager;
+import com.example.bledevicesscanner.ble.BulkReadSession;
+import com.example.bledevicesscanner.ble.SessionReader;
+import com.example.bledevicesscanner.ble.SessionRecorder;
+import com.example.bledevicesscanner.ble.SessionReplayer;
 import com.example.bledevicesscanner.model.BleCharacteristic;
 import com.example.bledevicesscanner.model.BleDevice;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import com.google.android.material.snackbar.Snackbar;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
 public class MainActivity extends AppCompatActivity implements DevicesAdapter.OnDeviceClickListener, BleManager.BleManagerCallback {
@@ -109,6 +117,8 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
         super.onResume();
         if (bleManager != null) {
             bleManager.addCallback(this);
+            // Devices found before a rotation or while another screen was on top
+            bleManager.deliverKnownDevices(this);
         }
         updateEmptyView();
     }
@@ -117,17 +127,99 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
     protected void onPause() {
         if (bleManager != null) {
             bleManager.removeCallback(this);
-            bleManager.stopScan();
+            // A replay keeps playing behind the details screen; BleApplication stops it once nothing is on screen
+            if (!bleManager.isReplaying()) {
+                bleManager.stopScan();
+            }
         }
         super.onPause();
     }
 
     @Override
-    protected void onDestroy() {
-        if (bleManager != null) {
-            bleManager.close();
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_main, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        // The recording belongs to the shared manager and outlives this activity
+        menu.findItem(R.id.action_record_session).setChecked(bleManager != null && bleManager.getSessionRecorder() != null);
+        menu.findItem(R.id.action_replay_session).setChecked(bleManager != null && bleManager.isReplaying());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        int itemId = item.getItemId();
+        if (itemId == R.id.action_sort_rssi) {
+            return applySortMode(item, DevicesAdapter.SortMode.RSSI);
+        } else if (itemId == R.id.action_sort_name) {
+            return applySortMode(item, DevicesAdapter.SortMode.NAME);
+        } else if (itemId == R.id.action_sort_last_seen) {
+            return applySortMode(item, DevicesAdapter.SortMode.LAST_SEEN);
+        } else if (itemId == R.id.action_continuous_scan) {
+            item.setChecked(!item.isChecked());
+            if (bleManager != null) {
+                bleManager.setContinuousScan(item.isChecked());
+            }
+            return true;
+        } else if (itemId == R.id.action_record_session) {
+            toggleRecording();
+            return true;
+        } else if (itemId == R.id.action_replay_session) {
+            toggleReplay();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void toggleRecording() {
+        if (bleManager == null) {
+            return;
+        }
+        SessionRecorder recorder = bleManager.getSessionRecorder();
+        if (recorder != null) {
+            bleManager.stopRecording();
+            showToast(getString(R.string.recording_stopped, recorder.getRecordCount(), recorder.getDroppedCount()));
+            return;
+        }
+        try {
+            File directory = ((BleApplication) getApplication()).getSessionsDirectory();
+            recorder = bleManager.startRecording(directory);
+            showToast(getString(R.string.recording_started, recorder.getFiles().get(0).getName()));
+        } catch (IOException e) {
+            showToast(getString(R.string.recording_failed, e.getMessage()));
         }
-        super.onDestroy();
+    }
+
+    // Plays the newest recorded session in place of the radio, or goes back to live scanning
+    private void toggleReplay() {
+        if (bleManager == null) {
+            return;
+        }
+        if (bleManager.isReplaying()) {
+            bleManager.setReplaySession(null);
+            return;
+        }
+        List<File> files = SessionReader.findLastFiles(((BleApplication) getApplication()).getSessionsDirectory());
+        if (files.isEmpty()) {
+            showToast(getString(R.string.no_recorded_session));
+            return;
+        }
+        try {
+            bleManager.setReplaySession(new SessionReplayer(files));
+        } catch (IOException e) {
+            showToast(getString(R.string.replay_failed, e.getMessage()));
+            return;
+        }
+        refreshDevicesList();
+    }
+
+    private boolean applySortMode(MenuItem item, DevicesAdapter.SortMode sortMode) {
+        item.setChecked(true);
+        devicesAdapter.setSortMode(sortMode);
+        return true;
     }
 
     private void initBleManager() {
@@ -138,7 +230,7 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
             return;
         }
 
-        // Initialize BluetoothManager and BleManager
+        // Check that the device has a Bluetooth adapter
         BluetoothManager bluetoothManager = (BluetoothManager) getSystemService(Context.BLUETOOTH_SERVICE);
         if (bluetoothManager == null) {
             showToast(getString(R.string.bluetooth_not_supported));
@@ -146,8 +238,8 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
             return;
         }
 
-        bleManager = new BleManager(this);
-        bleManager.addCallback(this);
+        // Shared with the other screens; callbacks are attached in onResume
+        bleManager = ((BleApplication) getApplication()).getBleManager();
     }
 
     private void startScan() {
@@ -157,8 +249,8 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
             return;
         }
 
-        // Check if Bluetooth is enabled
-        if (!bleManager.isBluetoothEnabled()) {
+        // Check if Bluetooth is enabled; a replayed session does not need the radio
+        if (!bleManager.isReplaying() && !bleManager.isBluetoothEnabled()) {
             Intent enableBtIntent = new Intent(BluetoothAdapter.ACTION_REQUEST_ENABLE);
             enableBtLauncher.launch(enableBtIntent);
             return;
@@ -256,8 +348,14 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
     }
 
     @Override
-    public void onDeviceFound(BleDevice device) {
-        devicesAdapter.addDevice(device);
+    public void onDevicesFound(List<BleDevice> devices) {
+        devicesAdapter.addDevices(devices);
+        updateEmptyView();
+    }
+
+    @Override
+    public void onDevicesLost(List<BleDevice> devices) {
+        devicesAdapter.removeDevices(devices);
         updateEmptyView();
     }
 
@@ -281,6 +379,11 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
         // Not used in this activity
     }
 
+    @Override
+    public void onReconnecting(int attempt, long delayMs) {
+        // Not used in this activity
+    }
+
     @Override
     public void onServicesDiscovered(List<BleCharacteristic> characteristics) {
         // Not used in this activity
@@ -295,4 +398,14 @@ public class MainActivity extends AppCompatActivity implements DevicesAdapter.On
     public void onCharacteristicChanged(BleCharacteristic characteristic) {
         // Not used in this activity
     }
-} 
\ No newline at end of file
+
+    @Override
+    public void onNotificationsChanged(BleCharacteristic characteristic, boolean enabled) {
+        // Not used in this activity
+    }
+
+    @Override
+    public void onBulkReadFinished(BulkReadSession.Summary summary) {
+        // Not used in this activity
+    }
+}
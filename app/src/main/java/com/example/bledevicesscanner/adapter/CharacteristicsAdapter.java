@@ -10,18 +10,27 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bledevicesscanner.R;
 import com.example.bledevicesscanner.model.BleCharacteristic;
+import com.example.bledevicesscanner.util.ValueFormatter;
 import com.google.android.material.button.MaterialButton;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class CharacteristicsAdapter extends RecyclerView.Adapter<CharacteristicsAdapter.CharacteristicViewHolder> {
 
     private final List<BleCharacteristic> characteristics = new ArrayList<>();
+    private final Set<String> subscribedUuids = new HashSet<>();
+    // Display format chosen per characteristic, carried over to the instances that replace it
+    private final Map<String, ValueFormatter.Format> formats = new HashMap<>();
     private OnCharacteristicActionListener listener;
 
     public interface OnCharacteristicActionListener {
         void onReadCharacteristic(BleCharacteristic characteristic);
+        void onToggleNotifications(BleCharacteristic characteristic);
     }
 
     public CharacteristicsAdapter(OnCharacteristicActionListener listener) {
@@ -49,6 +58,8 @@ public class CharacteristicsAdapter extends RecyclerView.Adapter<Characteristics
 
     public void setCharacteristics(List<BleCharacteristic> characteristics) {
         this.characteristics.clear();
+        subscribedUuids.clear();
+        formats.clear();
         if (characteristics != null) {
             this.characteristics.addAll(characteristics);
         }
@@ -58,6 +69,10 @@ public class CharacteristicsAdapter extends RecyclerView.Adapter<Characteristics
     public void updateCharacteristic(BleCharacteristic characteristic) {
         for (int i = 0; i < characteristics.size(); i++) {
             if (characteristics.get(i).getUuid().equals(characteristic.getUuid())) {
+                ValueFormatter.Format format = formats.get(characteristic.getUuid());
+                if (format != null) {
+                    characteristic.setFormat(format);
+                }
                 characteristics.set(i, characteristic);
                 notifyItemChanged(i);
                 break;
@@ -65,28 +80,63 @@ public class CharacteristicsAdapter extends RecyclerView.Adapter<Characteristics
         }
     }
 
+    public void setSubscribed(BleCharacteristic characteristic, boolean subscribed) {
+        boolean changed = subscribed ? subscribedUuids.add(characteristic.getUuid()) : subscribedUuids.remove(characteristic.getUuid());
+        if (!changed) {
+            return;
+        }
+        for (int i = 0; i < characteristics.size(); i++) {
+            if (characteristics.get(i).getUuid().equals(characteristic.getUuid())) {
+                notifyItemChanged(i);
+                break;
+            }
+        }
+    }
+
+    public List<BleCharacteristic> getCharacteristics() {
+        return new ArrayList<>(characteristics);
+    }
+
     public boolean isEmpty() {
         return characteristics.isEmpty();
     }
 
+    // Step to the next display format; the row rebinds and formats the value once in it
+    private void cycleFormat(BleCharacteristic characteristic) {
+        ValueFormatter.Format[] values = ValueFormatter.Format.values();
+        ValueFormatter.Format next = values[(characteristic.getFormat().ordinal() + 1) % values.length];
+        characteristic.setFormat(next);
+        formats.put(characteristic.getUuid(), next);
+        int index = characteristics.indexOf(characteristic);
+        if (index >= 0) {
+            notifyItemChanged(index);
+        }
+    }
+
     class CharacteristicViewHolder extends RecyclerView.ViewHolder {
         private final TextView characteristicUuidTextView;
         private final TextView characteristicPropertiesTextView;
         private final TextView characteristicValueTextView;
+        private final MaterialButton formatCharacteristicButton;
         private final MaterialButton readCharacteristicButton;
+        private final MaterialButton notifyCharacteristicButton;
 
         CharacteristicViewHolder(@NonNull View itemView) {
             super(itemView);
             characteristicUuidTextView = itemView.findViewById(R.id.characteristicUuidTextView);
             characteristicPropertiesTextView = itemView.findViewById(R.id.characteristicPropertiesTextView);
             characteristicValueTextView = itemView.findViewById(R.id.characteristicValueTextView);
+            formatCharacteristicButton = itemView.findViewById(R.id.formatCharacteristicButton);
             readCharacteristicButton = itemView.findViewById(R.id.readCharacteristicButton);
+            notifyCharacteristicButton = itemView.findViewById(R.id.notifyCharacteristicButton);
         }
 
         void bind(BleCharacteristic characteristic) {
             characteristicUuidTextView.setText(characteristic.getUuid());
             characteristicPropertiesTextView.setText(characteristic.getPropertiesString());
             characteristicValueTextView.setText(characteristic.getValueAsString());
+            formatCharacteristicButton.setText(characteristic.getFormat().name());
+            formatCharacteristicButton.setOnClickListener(v -> cycleFormat(characteristic));
 
             if (characteristic.isReadable()) {
                 readCharacteristicButton.setVisibility(View.VISIBLE);
@@ -98,6 +148,19 @@ public class CharacteristicsAdapter extends RecyclerView.Adapter<Characteristics
             } else {
                 readCharacteristicButton.setVisibility(View.GONE);
             }
+
+            if (characteristic.supportsSubscription()) {
+                notifyCharacteristicButton.setVisibility(View.VISIBLE);
+                notifyCharacteristicButton.setText(subscribedUuids.contains(characteristic.getUuid())
+                        ? R.string.stop_notifications : R.string.notify);
+                notifyCharacteristicButton.setOnClickListener(v -> {
+                    if (listener != null) {
+                        listener.onToggleNotifications(characteristic);
+                    }
+                });
+            } else {
+                notifyCharacteristicButton.setVisibility(View.GONE);
+            }
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,83 @@
+package com.example.bledevicesscanner.adapter;
+
+import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Unsorted store of the latest instance per device, indexed by packed MAC address, and
+ * the sorted snapshots {@link DevicesAdapter} hands to its differ. Upserts and removals
+ * are O(1); a snapshot copies and sorts the store.
+ *
+ * Not thread-safe. Has no Android dependencies so it can be benchmarked on the JVM.
+ */
+public class DeviceStore {
+    public static final Comparator<BleDevice> BY_RSSI = withAddressTiebreak(
+            (a, b) -> Long.compare(Math.round(b.getSmoothedRssi()), Math.round(a.getSmoothedRssi())));
+    public static final Comparator<BleDevice> BY_NAME = withAddressTiebreak(
+            (a, b) -> a.getName().compareToIgnoreCase(b.getName()));
+    public static final Comparator<BleDevice> BY_LAST_SEEN = withAddressTiebreak(
+            (a, b) -> Long.compare(b.getTimestampNanos(), a.getTimestampNanos()));
+
+    private final List<BleDevice> devices = new ArrayList<>();
+    private final LongIntHashMap positions = new LongIntHashMap();
+
+    // Stores the device, replacing the previous instance of the same address
+    public void upsert(BleDevice device) {
+        long key = device.getPackedAddress();
+        int index = positions.get(key, -1);
+        if (index < 0) {
+            positions.put(key, devices.size(), -1);
+            devices.add(device);
+        } else {
+            devices.set(index, device);
+        }
+    }
+
+    // Swap the last stored device into the removed slot so removal stays O(1)
+    public boolean remove(long key) {
+        int index = positions.remove(key, -1);
+        if (index < 0) {
+            return false;
+        }
+        int last = devices.size() - 1;
+        BleDevice moved = devices.remove(last);
+        if (index != last) {
+            devices.set(index, moved);
+            positions.put(moved.getPackedAddress(), index, -1);
+        }
+        return true;
+    }
+
+    public void clear() {
+        devices.clear();
+        positions.clear();
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    public boolean isEmpty() {
+        return devices.isEmpty();
+    }
+
+    // Sorted copy of the store; the store itself keeps its order
+    public List<BleDevice> snapshot(Comparator<BleDevice> comparator) {
+        List<BleDevice> snapshot = new ArrayList<>(devices);
+        Collections.sort(snapshot, comparator);
+        return snapshot;
+    }
+
+    // Break ties on the address so equal keys keep a stable order between snapshots
+    private static Comparator<BleDevice> withAddressTiebreak(Comparator<BleDevice> comparator) {
+        return (a, b) -> {
+            int result = comparator.compare(a, b);
+            return result != 0 ? result : Long.compare(a.getPackedAddress(), b.getPackedAddress());
+        };
+    }
+}
@@ -6,18 +6,60 @@ import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.example.bledevicesscanner.R;
 import com.example.bledevicesscanner.model.BleDevice;
 
-import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-
+import java.util.Locale;
+
+/**
+ * Devices list backed by an {@link AsyncListDiffer}. Updates are applied to an
+ * address-indexed {@link DeviceStore} on the main thread, then a sorted snapshot is diffed on a
+ * background thread so only moved or changed rows are rebound. Rows whose only change
+ * is the RSSI are rebound with {@link #PAYLOAD_RSSI} and redraw just that text.
+ *
+ * Snapshot items are never mutated: an update replaces the stored {@link BleDevice}
+ * with the newer instance so the differ can compare old and new contents.
+ */
 public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.DeviceViewHolder> {
 
-    private final List<BleDevice> devices = new ArrayList<>();
+    static final Object PAYLOAD_RSSI = new Object();
+
+    public enum SortMode {
+        RSSI,
+        NAME,
+        LAST_SEEN
+    }
+
+    private static final DiffUtil.ItemCallback<BleDevice> DIFF_CALLBACK = new DiffUtil.ItemCallback<BleDevice>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull BleDevice oldItem, @NonNull BleDevice newItem) {
+            return oldItem.getPackedAddress() == newItem.getPackedAddress();
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull BleDevice oldItem, @NonNull BleDevice newItem) {
+            // Compared as displayed, so sub-dBm movement of the smoothed value does not rebind the row
+            return Math.round(oldItem.getSmoothedRssi()) == Math.round(newItem.getSmoothedRssi())
+                    && formatDistance(oldItem).equals(formatDistance(newItem))
+                    && oldItem.getName().equals(newItem.getName());
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull BleDevice oldItem, @NonNull BleDevice newItem) {
+            return oldItem.getName().equals(newItem.getName()) ? PAYLOAD_RSSI : null;
+        }
+    };
+
+    private final DeviceStore devices = new DeviceStore();
+    private final AsyncListDiffer<BleDevice> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
     private OnDeviceClickListener listener;
+    private SortMode sortMode = SortMode.RSSI;
 
     public interface OnDeviceClickListener {
         void onDeviceClick(BleDevice device);
@@ -25,6 +67,7 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.DeviceVi
 
     public DevicesAdapter(OnDeviceClickListener listener) {
         this.listener = listener;
+        setHasStableIds(true);
     }
 
     @NonNull
@@ -37,36 +80,98 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.DeviceVi
 
     @Override
     public void onBindViewHolder(@NonNull DeviceViewHolder holder, int position) {
-        BleDevice device = devices.get(position);
+        BleDevice device = differ.getCurrentList().get(position);
         holder.bind(device);
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull DeviceViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        // Every queued payload is an RSSI-only change, the latest value is all that matters
+        holder.bindRssi(differ.getCurrentList().get(position));
+    }
+
     @Override
     public int getItemCount() {
-        return devices.size();
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return differ.getCurrentList().get(position).getPackedAddress();
     }
 
     public void addDevice(BleDevice device) {
-        if (!devices.contains(device)) {
-            devices.add(device);
-            notifyItemInserted(devices.size() - 1);
-        } else {
-            // Update RSSI for existing device
-            int index = devices.indexOf(device);
-            devices.get(index).setRssi(device.getRssi());
-            notifyItemChanged(index);
+        devices.upsert(device);
+        submitSnapshot();
+    }
+
+    public void addDevices(List<BleDevice> devices) {
+        for (BleDevice device : devices) {
+            this.devices.upsert(device);
+        }
+        submitSnapshot();
+    }
+
+    public void removeDevices(List<BleDevice> devices) {
+        boolean changed = false;
+        for (BleDevice device : devices) {
+            changed |= this.devices.remove(device.getPackedAddress());
+        }
+        if (changed) {
+            submitSnapshot();
         }
     }
 
     public void clearDevices() {
         devices.clear();
-        notifyDataSetChanged();
+        differ.submitList(null);
     }
 
     public boolean isEmpty() {
         return devices.isEmpty();
     }
 
+    public SortMode getSortMode() {
+        return sortMode;
+    }
+
+    public void setSortMode(SortMode sortMode) {
+        if (this.sortMode != sortMode) {
+            this.sortMode = sortMode;
+            submitSnapshot();
+        }
+    }
+
+    // Sort a copy of the store and let the differ work out the moves off the main thread
+    private void submitSnapshot() {
+        differ.submitList(devices.snapshot(comparatorFor(sortMode)));
+    }
+
+    private static Comparator<BleDevice> comparatorFor(SortMode sortMode) {
+        switch (sortMode) {
+            case NAME:
+                return DeviceStore.BY_NAME;
+            case LAST_SEEN:
+                return DeviceStore.BY_LAST_SEEN;
+            case RSSI:
+            default:
+                return DeviceStore.BY_RSSI;
+        }
+    }
+
+    // Estimated distance as shown next to the RSSI, empty if the device does not advertise its TX power
+    static String formatDistance(BleDevice device) {
+        if (!device.hasDistance()) {
+            return "";
+        }
+        double distance = device.getDistance();
+        return String.format(Locale.getDefault(), distance < 10 ? "%.1f m" : "%.0f m", distance);
+    }
+
     class DeviceViewHolder extends RecyclerView.ViewHolder {
         private final TextView deviceNameTextView;
         private final TextView deviceAddressTextView;
@@ -81,7 +186,7 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.DeviceVi
             itemView.setOnClickListener(v -> {
                 int position = getAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    listener.onDeviceClick(devices.get(position));
+                    listener.onDeviceClick(differ.getCurrentList().get(position));
                 }
             });
         }
@@ -89,7 +194,12 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.DeviceVi
         void bind(BleDevice device) {
             deviceNameTextView.setText(device.getName());
             deviceAddressTextView.setText(device.getAddress());
-            rssiTextView.setText(device.getRssi() + " dBm");
+            bindRssi(device);
+        }
+
+        void bindRssi(BleDevice device) {
+            String distance = formatDistance(device);
+            rssiTextView.setText(Math.round(device.getSmoothedRssi()) + " dBm" + (distance.isEmpty() ? "" : ", " + distance));
         }
     }
-} 
\ No newline at end of file
+}
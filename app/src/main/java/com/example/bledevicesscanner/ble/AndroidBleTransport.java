@@ -0,0 +1,249 @@
+package com.example.bledevicesscanner.ble;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCallback;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+import android.bluetooth.BluetoothProfile;
+import android.bluetooth.le.BluetoothLeScanner;
+import android.bluetooth.le.ScanCallback;
+import android.bluetooth.le.ScanFilter;
+import android.bluetooth.le.ScanResult;
+import android.bluetooth.le.ScanSettings;
+import android.content.Context;
+import android.os.Build;
+import android.os.ParcelUuid;
+
+import com.example.bledevicesscanner.util.MacAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link BleTransport} on the Android Bluetooth stack: {@link BluetoothLeScanner} for
+ * scanning and {@link BluetoothGatt} for connections. Listeners are called on the
+ * stack's Binder threads.
+ */
+public class AndroidBleTransport implements BleTransport {
+    private final Context context;
+    private final BluetoothAdapter bluetoothAdapter;
+    private final Map<ScanListener, ActiveScan> scans = new ConcurrentHashMap<>();
+
+    private static class ActiveScan {
+        final ScanCallback callback;
+        final long reportDelay;
+
+        ActiveScan(ScanCallback callback, long reportDelay) {
+            this.callback = callback;
+            this.reportDelay = reportDelay;
+        }
+    }
+
+    public AndroidBleTransport(Context context, BluetoothAdapter bluetoothAdapter) {
+        this.context = context.getApplicationContext();
+        this.bluetoothAdapter = bluetoothAdapter;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return bluetoothAdapter != null && bluetoothAdapter.isEnabled();
+    }
+
+    @Override
+    public boolean isOffloadedScanBatchingSupported() {
+        return bluetoothAdapter != null && bluetoothAdapter.isOffloadedScanBatchingSupported();
+    }
+
+    @Override
+    public boolean startScan(ScanProfile profile, boolean hardwareFiltering, long reportDelay, final ScanListener listener) {
+        BluetoothLeScanner scanner = isEnabled() ? bluetoothAdapter.getBluetoothLeScanner() : null;
+        if (scanner == null) {
+            return false;
+        }
+        ScanCallback callback = new ScanCallback() {
+            @Override
+            public void onScanResult(int callbackType, ScanResult result) {
+                listener.onScanResult(toAdvertisement(result));
+            }
+
+            @Override
+            public void onBatchScanResults(List<ScanResult> results) {
+                List<Advertisement> advertisements = new ArrayList<>(results.size());
+                for (ScanResult result : results) {
+                    advertisements.add(toAdvertisement(result));
+                }
+                listener.onBatchScanResults(advertisements);
+            }
+
+            @Override
+            public void onScanFailed(int errorCode) {
+                listener.onScanFailed(errorCode);
+            }
+        };
+        scans.put(listener, new ActiveScan(callback, reportDelay));
+        scanner.startScan(hardwareFiltering ? toScanFilters(profile) : null, toScanSettings(profile, reportDelay), callback);
+        return true;
+    }
+
+    @Override
+    public void stopScan(ScanListener listener) {
+        ActiveScan scan = scans.remove(listener);
+        BluetoothLeScanner scanner = isEnabled() ? bluetoothAdapter.getBluetoothLeScanner() : null;
+        if (scan == null || scanner == null) {
+            // Turning Bluetooth off has already stopped every scan
+            return;
+        }
+        if (scan.reportDelay > 0) {
+            // Have the controller hand over what it buffered since the last batch
+            scanner.flushPendingScanResults(scan.callback);
+        }
+        scanner.stopScan(scan.callback);
+    }
+
+    @Override
+    public Connection connect(String address, GattListener listener) {
+        if (!isEnabled() || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            return null;
+        }
+        GattConnection connection = new GattConnection(address, listener);
+        connection.gatt = bluetoothAdapter.getRemoteDevice(address).connectGatt(context, false, connection.callback);
+        if (connection.gatt == null) {
+            return null;
+        }
+        connection.transport = new AndroidGattTransport(connection.gatt);
+        return connection;
+    }
+
+    private static Advertisement toAdvertisement(ScanResult result) {
+        String address = result.getDevice().getAddress();
+        byte[] data = result.getScanRecord() != null ? result.getScanRecord().getBytes() : null;
+        return new Advertisement(address, MacAddress.pack(address), result.getRssi(), data, result.getTimestampNanos());
+    }
+
+    private static List<ScanFilter> toScanFilters(ScanProfile profile) {
+        List<ScanFilter> filters = new ArrayList<>(profile.getHardwareFilterCount());
+        for (UUID serviceUuid : profile.getServiceUuids()) {
+            filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(serviceUuid)).build());
+        }
+        for (ScanProfile.ManufacturerFilter filter : profile.getManufacturerFilters()) {
+            filters.add(new ScanFilter.Builder()
+                    .setManufacturerData(filter.getManufacturerId(), filter.getData(), filter.getMask())
+                    .build());
+        }
+        return filters;
+    }
+
+    private static ScanSettings toScanSettings(ScanProfile profile, long reportDelay) {
+        ScanSettings.Builder builder = new ScanSettings.Builder()
+                .setScanMode(profile.getScanMode())
+                .setReportDelay(reportDelay);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            builder.setMatchMode(profile.getMatchMode())
+                    .setNumOfMatches(profile.getNumOfMatches());
+        }
+        return builder.build();
+    }
+
+    private static List<GattCache.CharacteristicRecord> toRecords(BluetoothGatt gatt) {
+        List<GattCache.CharacteristicRecord> records = new ArrayList<>();
+        for (BluetoothGattService service : gatt.getServices()) {
+            for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
+                records.add(new GattCache.CharacteristicRecord(service.getUuid(), characteristic.getUuid(),
+                        characteristic.getProperties(), characteristic.getPermissions()));
+            }
+        }
+        return records;
+    }
+
+    private static class GattConnection implements Connection {
+        private final String address;
+        private final GattListener listener;
+        private BluetoothGatt gatt;
+        private AndroidGattTransport transport;
+
+        private final BluetoothGattCallback callback = new BluetoothGattCallback() {
+            @Override
+            public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
+                if (status == BluetoothGatt.GATT_SUCCESS && newState == BluetoothProfile.STATE_CONNECTED) {
+                    listener.onConnectionStateChange(status, true);
+                } else if (status != BluetoothGatt.GATT_SUCCESS || newState == BluetoothProfile.STATE_DISCONNECTED) {
+                    gatt.close();
+                    listener.onConnectionStateChange(status, false);
+                }
+            }
+
+            @Override
+            public void onServicesDiscovered(BluetoothGatt gatt, int status) {
+                listener.onServicesDiscovered(status, status == BluetoothGatt.GATT_SUCCESS
+                        ? toRecords(gatt) : new ArrayList<GattCache.CharacteristicRecord>());
+            }
+
+            @Override
+            public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                listener.onCharacteristicRead(characteristic.getUuid(), status, characteristic.getValue());
+            }
+
+            @Override
+            public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
+                listener.onCharacteristicWrite(characteristic.getUuid(), status);
+            }
+
+            @Override
+            public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
+                listener.onDescriptorWrite(descriptor.getCharacteristic().getUuid(), descriptor.getUuid(), status);
+            }
+
+            @Override
+            public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+                listener.onMtuChanged(mtu, status);
+            }
+
+            @Override
+            public void onServiceChanged(BluetoothGatt gatt) {
+                listener.onServiceChanged();
+            }
+
+            @Override
+            public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
+                listener.onCharacteristicChanged(characteristic.getService().getUuid(), characteristic.getUuid(),
+                        characteristic.getValue());
+            }
+        };
+
+        GattConnection(String address, GattListener listener) {
+            this.address = address;
+            this.listener = listener;
+        }
+
+        @Override
+        public String getAddress() {
+            return address;
+        }
+
+        @Override
+        public boolean execute(GattOperation operation) {
+            return transport.execute(operation);
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            return gatt.requestConnectionPriority(priority);
+        }
+
+        @Override
+        public void disconnect() {
+            gatt.disconnect();
+        }
+
+        @Override
+        public void close() {
+            gatt.disconnect();
+            gatt.close();
+        }
+    }
+}
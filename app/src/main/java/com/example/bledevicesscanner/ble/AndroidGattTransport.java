@@ -0,0 +1,79 @@
+package com.example.bledevicesscanner.ble;
+
+import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+import android.bluetooth.BluetoothGattService;
+
+import java.util.UUID;
+
+/**
+ * {@link GattTransport} that executes operations on a {@link BluetoothGatt} connection.
+ */
+public class AndroidGattTransport implements GattTransport {
+    // Client Characteristic Configuration Descriptor
+    public static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private final BluetoothGatt gatt;
+
+    public AndroidGattTransport(BluetoothGatt gatt) {
+        this.gatt = gatt;
+    }
+
+    @Override
+    public boolean execute(GattOperation operation) {
+        switch (operation.getType()) {
+            case READ_CHARACTERISTIC: {
+                BluetoothGattCharacteristic characteristic = findCharacteristic(operation);
+                return characteristic != null && gatt.readCharacteristic(characteristic);
+            }
+            case WRITE_CHARACTERISTIC: {
+                BluetoothGattCharacteristic characteristic = findCharacteristic(operation);
+                if (characteristic == null) {
+                    return false;
+                }
+                characteristic.setWriteType(operation.isWithoutResponse()
+                        ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                        : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+                characteristic.setValue(operation.getValue());
+                return gatt.writeCharacteristic(characteristic);
+            }
+            case WRITE_DESCRIPTOR: {
+                BluetoothGattCharacteristic characteristic = findCharacteristic(operation);
+                BluetoothGattDescriptor descriptor = characteristic != null
+                        ? characteristic.getDescriptor(operation.getDescriptorUuid()) : null;
+                if (descriptor == null) {
+                    return false;
+                }
+                descriptor.setValue(operation.getValue());
+                return gatt.writeDescriptor(descriptor);
+            }
+            case REQUEST_MTU:
+                return gatt.requestMtu(operation.getMtu());
+            case DISCOVER_SERVICES:
+                return gatt.discoverServices();
+            case SET_NOTIFICATION: {
+                BluetoothGattCharacteristic characteristic = findCharacteristic(operation);
+                BluetoothGattDescriptor cccd = characteristic != null ? characteristic.getDescriptor(CCCD_UUID) : null;
+                if (cccd == null || !gatt.setCharacteristicNotification(characteristic, operation.isEnable())) {
+                    return false;
+                }
+                if (!operation.isEnable()) {
+                    cccd.setValue(BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+                } else if (operation.isIndicate()) {
+                    cccd.setValue(BluetoothGattDescriptor.ENABLE_INDICATION_VALUE);
+                } else {
+                    cccd.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                }
+                return gatt.writeDescriptor(cccd);
+            }
+            default:
+                return false;
+        }
+    }
+
+    private BluetoothGattCharacteristic findCharacteristic(GattOperation operation) {
+        BluetoothGattService service = gatt.getService(operation.getServiceUuid());
+        return service != null ? service.getCharacteristic(operation.getCharacteristicUuid()) : null;
+    }
+}
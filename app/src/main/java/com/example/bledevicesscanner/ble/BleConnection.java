@@ -0,0 +1,352 @@
+package com.example.bledevicesscanner.ble;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+import android.util.Log;
+
+import com.example.bledevicesscanner.model.BleCharacteristic;
+import com.example.bledevicesscanner.model.BleDevice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * One GATT connection managed by a {@link ConnectionPool}. Owns the transport's
+ * {@link BleTransport.Connection}, feeds operation results into the link's queue and
+ * reports connection events to its own {@link Listener}, so several devices can be
+ * connected at once.
+ *
+ * Transport callbacks arrive on its own thread and are handed to the scheduler; listener
+ * methods are called on the scheduler's thread, which must be the one the pool runs on.
+ * Only {@link #enqueue(GattOperation)}, {@link #disconnect()} and the getters may be used
+ * from other threads.
+ */
+public class BleConnection {
+    private static final String TAG = "BleConnection";
+    // Discovery walks the whole attribute table, which takes far longer than a single request
+    private static final long DISCOVERY_TIMEOUT = 30000;
+
+    public interface Listener {
+        void onConnected(BleConnection connection);
+
+        // status is GATT_SUCCESS for an orderly disconnect, the failure status otherwise
+        void onDisconnected(BleConnection connection, int status);
+
+        void onServicesDiscovered(BleConnection connection, List<BleCharacteristic> characteristics);
+
+        void onCharacteristicChanged(BleConnection connection, BleCharacteristic characteristic);
+
+        // The attribute table changed; services are discovered again right after
+        void onServiceChanged(BleConnection connection);
+    }
+
+    private final BleDevice device;
+    private final ConnectionProfile profile;
+    private final ConnectionPool pool;
+    private final TaskScheduler scheduler;
+    private final Listener listener;
+    private BleTransport.Connection connection;
+    // Last discovered attribute table, to attach notified values to their characteristic
+    private volatile Map<CharacteristicKey, BluetoothGattCharacteristic> discoveredCharacteristics = Collections.emptyMap();
+    private volatile ConnectionPool.Link link;
+    private volatile int mtu = ConnectionProfile.DEFAULT_MTU;
+
+    // Streamed characteristics are copied into their ring instead of being posted one by one
+    private volatile NotificationStreamer notificationStreamer;
+
+    // Every GATT event is appended here as it arrives, before any streaming or queueing
+    private volatile SessionRecorder sessionRecorder;
+
+    private final BleTransport.GattListener gattListener = new BleTransport.GattListener() {
+        @Override
+        public void onConnectionStateChange(int status, boolean connected) {
+            SessionRecorder recorder = sessionRecorder;
+            if (connected) {
+                Log.i(TAG, "Connected to GATT server " + device.getAddress());
+                if (recorder != null) {
+                    recorder.recordConnected(scheduler.nowNanos(), device.getPackedAddress());
+                }
+                post(() -> {
+                    pool.setConnected(link);
+                    listener.onConnected(BleConnection.this);
+                    applyConnectionProfile();
+                });
+                return;
+            }
+            if (status == BleTransport.GATT_SUCCESS) {
+                Log.i(TAG, "Disconnected from GATT server " + device.getAddress());
+            } else {
+                Log.w(TAG, "Connection state change failed with status: " + status);
+            }
+            if (recorder != null) {
+                recorder.recordDisconnected(scheduler.nowNanos(), device.getPackedAddress(), status);
+            }
+            post(() -> onClosed(status));
+        }
+
+        @Override
+        public void onServicesDiscovered(int status, List<GattCache.CharacteristicRecord> records) {
+            if (status != BleTransport.GATT_SUCCESS) {
+                Log.w(TAG, "Service discovery failed with status: " + status);
+                post(() -> link.getQueue().onServicesDiscovered(status));
+                return;
+            }
+            Log.i(TAG, "Services discovered.");
+            final List<BleCharacteristic> characteristics = toCharacteristics(records);
+            Map<CharacteristicKey, BluetoothGattCharacteristic> byKey = new HashMap<>();
+            for (BleCharacteristic characteristic : characteristics) {
+                BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+                byKey.put(new CharacteristicKey(gattCharacteristic.getService().getUuid(), gattCharacteristic.getUuid()),
+                        gattCharacteristic);
+            }
+            discoveredCharacteristics = byKey;
+            post(() -> {
+                listener.onServicesDiscovered(BleConnection.this, characteristics);
+                link.getQueue().onServicesDiscovered(status);
+            });
+        }
+
+        // Operation results are handed to the queue, which notifies the issuer and starts the next one
+        @Override
+        public void onCharacteristicRead(UUID characteristicUuid, int status, byte[] value) {
+            SessionRecorder recorder = sessionRecorder;
+            if (recorder != null) {
+                recorder.recordCharacteristicRead(scheduler.nowNanos(), device.getPackedAddress(),
+                        characteristicUuid, status, value);
+            }
+            post(() -> link.getQueue().onCharacteristicRead(characteristicUuid, status, value));
+        }
+
+        @Override
+        public void onCharacteristicWrite(UUID characteristicUuid, int status) {
+            post(() -> link.getQueue().onCharacteristicWrite(characteristicUuid, status));
+        }
+
+        @Override
+        public void onDescriptorWrite(UUID characteristicUuid, UUID descriptorUuid, int status) {
+            post(() -> link.getQueue().onDescriptorWrite(characteristicUuid, descriptorUuid, status));
+        }
+
+        @Override
+        public void onMtuChanged(int mtu, int status) {
+            post(() -> {
+                if (status == BleTransport.GATT_SUCCESS) {
+                    Log.i(TAG, "MTU changed to " + mtu);
+                    BleConnection.this.mtu = mtu;
+                }
+                link.getQueue().onMtuChanged(mtu, status);
+            });
+        }
+
+        @Override
+        public void onServiceChanged() {
+            Log.i(TAG, "Service changed on " + device.getAddress());
+            post(() -> {
+                listener.onServiceChanged(BleConnection.this);
+                // Queued like any other request so it cannot overlap one already in flight
+                enqueueNow(discoverServices());
+            });
+        }
+
+        @Override
+        public void onCharacteristicChanged(UUID serviceUuid, UUID characteristicUuid, byte[] value) {
+            SessionRecorder recorder = sessionRecorder;
+            if (recorder != null) {
+                recorder.recordCharacteristicChanged(scheduler.nowNanos(), device.getPackedAddress(),
+                        characteristicUuid, value);
+            }
+            NotificationStreamer streamer = notificationStreamer;
+            if (streamer != null && streamer.offer(serviceUuid, characteristicUuid, value, scheduler.nowNanos())) {
+                return;
+            }
+
+            Log.i(TAG, "Characteristic changed: " + characteristicUuid.toString());
+            BluetoothGattCharacteristic characteristic = discoveredCharacteristics.get(
+                    new CharacteristicKey(serviceUuid, characteristicUuid));
+            if (characteristic == null) {
+                // Notified before discovery completed
+                characteristic = new BluetoothGattCharacteristic(characteristicUuid,
+                        BluetoothGattCharacteristic.PROPERTY_NOTIFY, 0);
+                new BluetoothGattService(serviceUuid, BluetoothGattService.SERVICE_TYPE_PRIMARY)
+                        .addCharacteristic(characteristic);
+            }
+            final BleCharacteristic bleCharacteristic = new BleCharacteristic(characteristic);
+            bleCharacteristic.setValue(value);
+            post(() -> listener.onCharacteristicChanged(BleConnection.this, bleCharacteristic));
+        }
+    };
+
+    BleConnection(BleDevice device, ConnectionProfile profile, ConnectionPool pool, TaskScheduler scheduler, Listener listener) {
+        this.device = device;
+        this.profile = profile;
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    // Opens the GATT connection and registers it with the pool; false if the pool is full
+    boolean connect(BleTransport transport) {
+        if (!pool.canOpen(device.getPackedAddress())) {
+            Log.w(TAG, "Connection pool full, not connecting to " + device.getAddress());
+            return false;
+        }
+        connection = transport.connect(device.getAddress(), gattListener);
+        if (connection == null) {
+            return false;
+        }
+        link = pool.open(device.getPackedAddress(), connection);
+        return true;
+    }
+
+    // Request the profile's connection priority and MTU, then discover services
+    private void applyConnectionProfile() {
+        if (!connection.requestConnectionPriority(profile.getConnectionPriority())) {
+            Log.w(TAG, "Connection priority request rejected for profile " + profile);
+        }
+        if (!profile.requestsMtu()) {
+            enqueueNow(discoverServices());
+            return;
+        }
+        enqueue(GattOperation.requestMtu(profile.getMtu()).setCallback((operation, status) -> {
+            if (status == GattOperation.STATUS_CANCELLED) {
+                return;
+            }
+            if (status != GattOperation.STATUS_SUCCESS) {
+                // Keep going with the default MTU rather than failing the connection
+                Log.w(TAG, "MTU request failed with status: " + status);
+            }
+            enqueueNow(discoverServices());
+        }));
+    }
+
+    private static GattOperation discoverServices() {
+        return GattOperation.discoverServices().setTimeout(DISCOVERY_TIMEOUT).setCallback((operation, status) -> {
+            // Failures reported by the stack are logged when its callback arrives
+            if (status == GattOperation.STATUS_TIMEOUT || status == GattOperation.STATUS_NOT_STARTED) {
+                Log.w(TAG, "Service discovery not completed, status: " + status);
+            }
+        });
+    }
+
+    private void onClosed(int status) {
+        GattOperationQueue queue = link.getQueue();
+        Log.i(TAG, "GATT queue " + device.getAddress() + ": " + queue.getCompletedCount() + " completed, "
+                + queue.getFailedCount() + " failed, average latency "
+                + String.format("%.1f", queue.getAverageLatencyMs()) + " ms");
+        notificationStreamer = null;
+        pool.close(link);
+        listener.onDisconnected(this, status);
+    }
+
+    /**
+     * Queue an operation on this connection; its callback reports the result on the
+     * connection's thread. May be called from any thread.
+     *
+     * @return false if the connection is not up; an operation accepted while the
+     * connection goes down completes with STATUS_CANCELLED or STATUS_NOT_STARTED
+     */
+    public boolean enqueue(final GattOperation operation) {
+        if (!isConnected()) {
+            return false;
+        }
+        post(() -> enqueueNow(operation));
+        return true;
+    }
+
+    // Runs the task on the scheduler's thread after everything already handed to it
+    private void post(Runnable task) {
+        scheduler.schedule(task, 0);
+    }
+
+    private void enqueueNow(GattOperation operation) {
+        if (!isConnected() || !pool.enqueue(link, operation)) {
+            operation.fail(GattOperation.STATUS_NOT_STARTED, scheduler.now());
+        }
+    }
+
+    public void disconnect() {
+        post(() -> {
+            if (connection != null) {
+                connection.disconnect();
+            }
+        });
+    }
+
+    // Tears the connection down immediately without waiting for the disconnect callback
+    void close() {
+        pool.close(link);
+        connection.close();
+    }
+
+    void setNotificationStreamer(NotificationStreamer notificationStreamer) {
+        this.notificationStreamer = notificationStreamer;
+    }
+
+    void setSessionRecorder(SessionRecorder sessionRecorder) {
+        this.sessionRecorder = sessionRecorder;
+    }
+
+    // Rebuilds detached characteristics; operations on them resolve the live ones by UUID
+    static List<BleCharacteristic> toCharacteristics(List<GattCache.CharacteristicRecord> records) {
+        Map<UUID, BluetoothGattService> services = new LinkedHashMap<>();
+        List<BleCharacteristic> characteristics = new ArrayList<>(records.size());
+        for (GattCache.CharacteristicRecord record : records) {
+            BluetoothGattService service = services.get(record.getServiceUuid());
+            if (service == null) {
+                service = new BluetoothGattService(record.getServiceUuid(), BluetoothGattService.SERVICE_TYPE_PRIMARY);
+                services.put(record.getServiceUuid(), service);
+            }
+            BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(record.getUuid(),
+                    record.getProperties(), record.getPermissions());
+            service.addCharacteristic(characteristic);
+            characteristics.add(new BleCharacteristic(characteristic));
+        }
+        return characteristics;
+    }
+
+    public BleDevice getDevice() {
+        return device;
+    }
+
+    public String getAddress() {
+        return device.getAddress();
+    }
+
+    public long getPackedAddress() {
+        return device.getPackedAddress();
+    }
+
+    public ConnectionPool.State getState() {
+        return link != null ? link.getState() : ConnectionPool.State.DISCONNECTED;
+    }
+
+    public boolean isConnected() {
+        return getState() == ConnectionPool.State.CONNECTED;
+    }
+
+    public ConnectionProfile getProfile() {
+        return profile;
+    }
+
+    // ATT MTU in effect on this connection
+    public int getMtu() {
+        return mtu;
+    }
+
+    public int getMaxPayloadSize() {
+        return ConnectionProfile.payloadSizeFor(mtu);
+    }
+
+    public ConnectionPool.Link getLink() {
+        return link;
+    }
+
+    public GattOperationQueue getOperationQueue() {
+        return link.getQueue();
+    }
+}
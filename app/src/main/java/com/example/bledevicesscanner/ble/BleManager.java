@@ -1,285 +1,1300 @@
 package com.example.bledevicesscanner.ble;
 
 import android.bluetooth.BluetoothAdapter;
-import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothGatt;
-import android.bluetooth.BluetoothGattCallback;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.bluetooth.BluetoothManager;
-import android.bluetooth.BluetoothProfile;
-import android.bluetooth.le.BluetoothLeScanner;
-import android.bluetooth.le.ScanCallback;
-import android.bluetooth.le.ScanResult;
-import android.bluetooth.le.ScanSettings;
 import android.content.Context;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
 import android.util.Log;
 
+import com.example.bledevicesscanner.ble.decoder.DecoderRegistry;
+import com.example.bledevicesscanner.ble.decoder.Measurement;
 import com.example.bledevicesscanner.model.BleCharacteristic;
 import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.LongIntHashMap;
+import com.example.bledevicesscanner.util.MacAddress;
+import com.example.bledevicesscanner.util.SignalFilter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class BleManager {
     private static final String TAG = "BleManager";
     private static final long SCAN_PERIOD = 10000; // 10 seconds
+    private static final long SCAN_BATCH_WINDOW = 150; // ms between device list updates
+    private static final int DEVICE_REGISTRY_CAPACITY = 2000;
+    private static final long DEVICE_TTL = 60000; // forget devices not seen for a minute
+    private static final long EVICTION_SWEEP_INTERVAL = 1000;
+    private static final String GATT_CACHE_FILE = "gatt_cache.bin";
 
     private final Context context;
+    // Scans and connections go through the transport; the adapter only turns addresses into devices
     private final BluetoothAdapter bluetoothAdapter;
-    private final BluetoothLeScanner bluetoothLeScanner;
-    private final Handler handler = new Handler(Looper.getMainLooper());
-    private final List<BleManagerCallback> callbacks = new ArrayList<>();
+    private final BleTransport transport;
 
-    private boolean isScanning = false;
-    private BluetoothGatt bluetoothGatt;
-    private boolean isConnected = false;
+    // Scan, registry and connection state is confined to the scheduler's thread; public methods hand their work to it
+    private final HandlerThread bleThread;
+    private final TaskScheduler scheduler;
+    private final Executor mainExecutor = new Handler(Looper.getMainLooper())::post;
+    private final Executor bleExecutor = this::post;
+    private final ListenerRegistry<BleManagerCallback> callbacks = new ListenerRegistry<>();
 
-    // Callback for BLE scan results
-    private final ScanCallback scanCallback = new ScanCallback() {
+    private final ScanBatcher<BleDevice> scanBatcher = new ScanBatcher<>(SCAN_BATCH_WINDOW);
+    private final Runnable flushScanBatch = this::deliverScanBatch;
+    private final DeviceRegistry<BleDevice> deviceRegistry = new DeviceRegistry<>(DEVICE_REGISTRY_CAPACITY, DEVICE_TTL);
+    private final List<BleDevice> lostDevices = new ArrayList<>();
+    private final Runnable evictionSweep = new Runnable() {
         @Override
-        public void onScanResult(int callbackType, ScanResult result) {
-            BluetoothDevice device = result.getDevice();
-            int rssi = result.getRssi();
-            byte[] scanRecord = result.getScanRecord() != null ? result.getScanRecord().getBytes() : null;
-            BleDevice bleDevice = new BleDevice(device, rssi, scanRecord);
-
-            // Notify listeners
-            for (BleManagerCallback callback : callbacks) {
-                callback.onDeviceFound(bleDevice);
+        public void run() {
+            deviceRegistry.evictExpired(scheduler.now());
+            deliverLostDevices();
+            if (isScanning) {
+                scheduler.schedule(this, EVICTION_SWEEP_INTERVAL);
             }
         }
+    };
+
+    private volatile boolean isScanning = false;
+    private volatile boolean continuousScan = false;
+
+    // Filters and settings for the next scan, and the profile and counters of the running one
+    private volatile ScanProfile scanProfile = new ScanProfile();
+    private ScanProfile activeScanProfile;
+    private long activeReportDelay;
+    private boolean hardwareFiltering;
+    private ScanStats scanStats;
+    private volatile ScanStats lastScanStats;
+
+    // Smoothing applied to every device's RSSI, carried from one advertisement to the next
+    private volatile SignalFilter.Settings signalFilterSettings = new SignalFilter.Settings();
+
+    // Turns the radio on and off within a scan session without tripping the platform's start throttle
+    private final ScanScheduler scanScheduler;
+
+    // Open connections; the single-device API works on the primary one
+    private final ConnectionPool connectionPool;
+    private final List<BleConnection> connections = new CopyOnWriteArrayList<>();
+    private volatile BleConnection primaryConnection;
+    private BleDevice primaryDevice;
+    private ConnectionProfile primaryProfile = ConnectionProfile.BALANCED;
 
+    // Brings the primary connection back after a failure, straight to the known device
+    private final Reconnector reconnector;
+    private volatile boolean autoReconnect = true;
+    private int lastFailureStatus;
+
+    // Attribute tables of known devices, shown on connect while discovery validates them
+    private final GattCache gattCache = new GattCache();
+    private final File gattCacheFile;
+    private final ExecutorService gattCacheExecutor = Executors.newSingleThreadExecutor();
+    private long primaryConnectStartedAt;
+    private boolean primaryCharacteristicsShown;
+    private boolean primaryShownFromCache;
+    // Last table shown for the primary connection, so a screen attaching later can show it at once
+    private volatile List<BleCharacteristic> primaryCharacteristics = Collections.emptyList();
+
+    // Typed decoders for standard characteristics; register vendor ones before connecting
+    private final DecoderRegistry decoderRegistry = DecoderRegistry.standard();
+
+    // Ring-buffered delivery for high-rate characteristics, sampled on its own thread
+    private HandlerThread streamingThread;
+    private Handler streamingHandler;
+    private volatile NotificationStreamer notificationStreamer;
+    private final Map<CharacteristicKey, BluetoothGattCharacteristic> streamedCharacteristics = new ConcurrentHashMap<>();
+
+    // Scan results and the GATT events of every connection are appended here while recording
+    private volatile SessionRecorder sessionRecorder;
+
+    // Recorded session played back in place of the radio, or null to scan live
+    private volatile SessionReplayer replaySession;
+    private SessionReplayer activeReplay;
+    // Device a replay stands in a connection to; its recorded GATT events are delivered
+    private volatile long replayTarget = MacAddress.INVALID;
+    private final Map<UUID, BluetoothGattCharacteristic> replayCharacteristics = new HashMap<>();
+    private final SessionReplayer.Listener replayListener = new SessionReplayer.Listener() {
         @Override
-        public void onScanFailed(int errorCode) {
-            Log.e(TAG, "Scan failed with error code: " + errorCode);
-            for (BleManagerCallback callback : callbacks) {
-                callback.onScanFailed(errorCode);
-            }
-            stopScan();
+        public void onRecord(SessionRecord record) {
+            replayRecord(record);
         }
-    };
 
-    // Callback for GATT operations
-    private final BluetoothGattCallback gattCallback = new BluetoothGattCallback() {
         @Override
-        public void onConnectionStateChange(BluetoothGatt gatt, int status, int newState) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                if (newState == BluetoothProfile.STATE_CONNECTED) {
-                    Log.i(TAG, "Connected to GATT server.");
-                    isConnected = true;
-                    
-                    // Notify listeners
-                    handler.post(() -> {
-                        for (BleManagerCallback callback : callbacks) {
-                            callback.onDeviceConnected();
-                        }
-                    });
-                    
-                    // Discover services
-                    bluetoothGatt.discoverServices();
-                } else if (newState == BluetoothProfile.STATE_DISCONNECTED) {
-                    Log.i(TAG, "Disconnected from GATT server.");
-                    isConnected = false;
-                    
-                    // Notify listeners
-                    handler.post(() -> {
-                        for (BleManagerCallback callback : callbacks) {
-                            callback.onDeviceDisconnected();
-                        }
-                    });
-                    
-                    // Close GATT
-                    gatt.close();
-                    bluetoothGatt = null;
-                }
-            } else {
-                Log.w(TAG, "Connection state change failed with status: " + status);
-                isConnected = false;
-                
-                // Notify listeners
-                handler.post(() -> {
-                    for (BleManagerCallback callback : callbacks) {
-                        callback.onConnectionFailed(status);
-                    }
-                });
-                
-                // Close GATT
-                gatt.close();
-                bluetoothGatt = null;
-            }
+        public void onReplayFinished() {
+            activeReplay = null;
+            finishScan();
         }
+    };
+
+    // Characteristics with notifications or indications enabled on the primary connection
+    private final Map<SubscriptionKey, BleCharacteristic> subscriptions = Collections.synchronizedMap(new LinkedHashMap<>());
+    // Callers holding each subscription, confirmed or not, guarded by subscriptions
+    private final Map<SubscriptionKey, Subscribers> subscribers = new LinkedHashMap<>();
 
+    // Listener for BLE scan results
+    private final BleTransport.ScanListener scanListener = new BleTransport.ScanListener() {
         @Override
-        public void onServicesDiscovered(BluetoothGatt gatt, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.i(TAG, "Services discovered.");
-                List<BluetoothGattService> services = gatt.getServices();
-                List<BleCharacteristic> characteristics = new ArrayList<>();
-                
-                // Extract all characteristics from all services
-                for (BluetoothGattService service : services) {
-                    for (BluetoothGattCharacteristic characteristic : service.getCharacteristics()) {
-                        characteristics.add(new BleCharacteristic(characteristic));
-                    }
-                }
-                
-                // Notify listeners
-                handler.post(() -> {
-                    for (BleManagerCallback callback : callbacks) {
-                        callback.onServicesDiscovered(characteristics);
-                    }
-                });
-            } else {
-                Log.w(TAG, "Service discovery failed with status: " + status);
-            }
+        public void onScanResult(BleTransport.Advertisement advertisement) {
+            final BleDevice bleDevice = toBleDevice(advertisement);
+            post(() -> {
+                recordScanCallback(1);
+                onDeviceSeen(bleDevice);
+            });
         }
 
+        /**
+         * Delivered instead of onScanResult when the profile sets a report delay. The
+         * controller reports every advertisement it buffered, so only the latest result per
+         * device is turned into a BleDevice and handed over.
+         */
         @Override
-        public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-            if (status == BluetoothGatt.GATT_SUCCESS) {
-                Log.i(TAG, "Characteristic read successfully: " + characteristic.getUuid().toString());
-                final BleCharacteristic bleCharacteristic = new BleCharacteristic(characteristic);
-                
-                // Notify listeners
-                handler.post(() -> {
-                    for (BleManagerCallback callback : callbacks) {
-                        callback.onCharacteristicRead(bleCharacteristic);
-                    }
-                });
-            } else {
-                Log.w(TAG, "Characteristic read failed with status: " + status);
+        public void onBatchScanResults(List<BleTransport.Advertisement> advertisements) {
+            final int resultCount = advertisements.size();
+            LongIntHashMap latest = new LongIntHashMap(resultCount);
+            for (int i = 0; i < resultCount; i++) {
+                long key = advertisements.get(i).getPackedAddress();
+                int previous = latest.get(key, -1);
+                if (previous < 0 || advertisements.get(previous).getTimestampNanos() <= advertisements.get(i).getTimestampNanos()) {
+                    latest.put(key, i, -1);
+                }
+            }
+            final List<BleDevice> bleDevices = new ArrayList<>(latest.size());
+            for (int i = 0; i < resultCount; i++) {
+                BleTransport.Advertisement advertisement = advertisements.get(i);
+                if (latest.get(advertisement.getPackedAddress(), -1) == i) {
+                    bleDevices.add(toBleDevice(advertisement));
+                }
             }
+            post(() -> onBatchSeen(resultCount, bleDevices));
         }
 
         @Override
-        public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-            Log.i(TAG, "Characteristic changed: " + characteristic.getUuid().toString());
-            final BleCharacteristic bleCharacteristic = new BleCharacteristic(characteristic);
-            
-            // Notify listeners
-            handler.post(() -> {
-                for (BleManagerCallback callback : callbacks) {
-                    callback.onCharacteristicChanged(bleCharacteristic);
-                }
-            });
+        public void onScanFailed(int errorCode) {
+            Log.e(TAG, "Scan failed with error code: " + errorCode);
+            post(() -> onScanStartFailed(errorCode));
         }
     };
 
+    private static HandlerThread startBleThread() {
+        HandlerThread thread = new HandlerThread("BleManager");
+        thread.start();
+        return thread;
+    }
+
     // Constructor
     public BleManager(Context context) {
-        this.context = context;
+        this(context, null);
+    }
+
+    /**
+     * Uses the given transport in place of the Android Bluetooth stack, e.g. a simulated
+     * fleet of peripherals; null for the stack.
+     */
+    public BleManager(Context context, BleTransport transport) {
+        this(context, transport, startBleThread());
+    }
+
+    /**
+     * Runs the manager on the given scheduler instead of a thread of its own. Every task,
+     * timer, transport event and clock read goes through it, so a simulated transport and
+     * a fake clock on the same scheduler drive the manager deterministically. The scheduler
+     * must run tasks one at a time, in order, and accept tasks from other threads: public
+     * methods and the GATT cache's file I/O hand their results to it.
+     */
+    public BleManager(Context context, BleTransport transport, TaskScheduler scheduler) {
+        this(context, transport, null, scheduler);
+    }
+
+    private BleManager(Context context, BleTransport transport, HandlerThread bleThread) {
+        this(context, transport, bleThread, new HandlerTaskScheduler(new Handler(bleThread.getLooper())));
+    }
+
+    private BleManager(Context context, BleTransport transport, HandlerThread bleThread, TaskScheduler scheduler) {
+        this.bleThread = bleThread;
+        this.scheduler = scheduler;
+        this.connectionPool = new ConnectionPool(scheduler);
+        // The manager outlives every screen, so never hold on to an Activity
+        this.context = context.getApplicationContext();
         BluetoothManager bluetoothManager = (BluetoothManager) context.getSystemService(Context.BLUETOOTH_SERVICE);
         this.bluetoothAdapter = bluetoothManager.getAdapter();
-        this.bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        this.transport = transport != null ? transport : new AndroidBleTransport(this.context, bluetoothAdapter);
+        this.deviceRegistry.setEvictionListener((key, device, reason) -> lostDevices.add(device));
+        this.scanScheduler = new ScanScheduler(scheduler, new ScanThrottle(), new ScanScheduler.Scanner() {
+            @Override
+            public void startScan() {
+                startRadio();
+            }
+
+            @Override
+            public void stopScan() {
+                stopRadio();
+            }
+        }, this::finishScan);
+        this.reconnector = new Reconnector(scheduler, new ReconnectPolicy(), new CircuitBreaker(), new Random(),
+                reconnectListener);
+        this.gattCacheFile = new File(context.getFilesDir(), GATT_CACHE_FILE);
+        loadGattCache();
     }
 
-    // Add callback listener
+    // Runs the task on the BLE thread after everything already handed to it
+    private void post(Runnable task) {
+        scheduler.schedule(task, 0);
+    }
+
+    // Add callback listener, notified on the main thread
     public void addCallback(BleManagerCallback callback) {
-        if (!callbacks.contains(callback)) {
-            callbacks.add(callback);
-        }
+        addCallback(callback, mainExecutor);
     }
 
-    // Remove callback listener
+    /**
+     * Add a callback listener notified on the given executor, e.g. {@link #getBleExecutor()}
+     * to handle events on the BLE thread without a hop through the main thread.
+     */
+    public void addCallback(BleManagerCallback callback, Executor executor) {
+        callbacks.add(callback, executor);
+    }
+
+    // Remove callback listener; events already queued for it are dropped
     public void removeCallback(BleManagerCallback callback) {
         callbacks.remove(callback);
     }
 
+    public Executor getMainExecutor() {
+        return mainExecutor;
+    }
+
+    // Serial executor all BLE state lives on; tasks run in submission order
+    public Executor getBleExecutor() {
+        return bleExecutor;
+    }
+
+    /**
+     * Filters and settings used from the next scan on. Filters the controller can evaluate
+     * are offloaded to it; the profile must not be modified afterwards.
+     */
+    public void setScanProfile(ScanProfile scanProfile) {
+        this.scanProfile = scanProfile;
+    }
+
+    public ScanProfile getScanProfile() {
+        return scanProfile;
+    }
+
+    // Counters of the last finished scan, or null before the first one ends
+    public ScanStats getScanStats() {
+        return lastScanStats;
+    }
+
+    // Start scanning with the given profile, which stays in effect for later scans
+    public boolean startScan(ScanProfile scanProfile) {
+        setScanProfile(scanProfile);
+        return startScan();
+    }
+
     // Start scanning for BLE devices
     public boolean startScan() {
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+        if (replaySession == null && !transport.isEnabled()) {
             return false;
         }
+        post(this::startScanOnBleThread);
+        return true;
+    }
 
+    private void startScanOnBleThread() {
         if (isScanning) {
-            return true;
+            return;
         }
 
-        // Configure scan settings
-        ScanSettings settings = new ScanSettings.Builder()
-                .setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-                .build();
+        // Configure filters and scan settings from the profile
+        activeScanProfile = scanProfile;
+        long reportDelay = activeScanProfile.getReportDelay();
+        if (reportDelay > 0 && !transport.isOffloadedScanBatchingSupported()) {
+            // The scan would fail with SCAN_FAILED_FEATURE_UNSUPPORTED
+            Log.w(TAG, "Controller cannot batch scan results, reporting them immediately");
+            reportDelay = 0;
+        }
+        activeReportDelay = reportDelay;
+        hardwareFiltering = activeScanProfile.canOffload();
+        scanStats = new ScanStats(hardwareFiltering, scheduler.now());
 
-        // Start scan
-        handler.postDelayed(this::stopScan, SCAN_PERIOD);
-        bluetoothLeScanner.startScan(null, settings, scanCallback);
+        // Start the session; the scheduler turns the radio on, now or once the throttle allows it
+        scanBatcher.reset();
         isScanning = true;
+        scheduler.schedule(evictionSweep, EVICTION_SWEEP_INTERVAL);
+        SessionReplayer replay = replaySession;
+        if (replay != null) {
+            // A replay lasts as long as the recording
+            activeReplay = replay;
+            replay.start(scheduler, replayListener);
+        } else {
+            scanScheduler.setDuration(continuousScan ? 0 : SCAN_PERIOD);
+            scanScheduler.start();
+        }
 
         // Notify listeners
-        for (BleManagerCallback callback : callbacks) {
-            callback.onScanStarted();
+        callbacks.dispatch(BleManagerCallback::onScanStarted);
+    }
+
+    private void startRadio() {
+        if (!transport.startScan(activeScanProfile, hardwareFiltering, activeReportDelay, scanListener)) {
+            // Bluetooth went off in the meantime; the session runs out without results
+            Log.w(TAG, "Scanner unavailable, radio not started");
         }
+    }
 
-        return true;
+    private void stopRadio() {
+        // Also hands over what the controller buffered since the last batch
+        transport.stopScan(scanListener);
     }
 
     // Stop scanning for BLE devices
     public void stopScan() {
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled() || !isScanning) {
+        post(this::stopScanOnBleThread);
+    }
+
+    private void stopScanOnBleThread() {
+        if (!isScanning) {
             return;
         }
+        // Also drops the pending end of the session, so it cannot cut short a scan started later
+        if (activeReplay != null) {
+            activeReplay.stop();
+            activeReplay = null;
+        } else {
+            scanScheduler.stop();
+        }
+        finishScan();
+    }
 
+    // Ends the session once the radio is off
+    private void finishScan() {
         isScanning = false;
-        bluetoothLeScanner.stopScan(scanCallback);
+
+        // Deliver whatever is still pending before reporting the end of the scan
+        scheduler.cancel(flushScanBatch);
+        scheduler.cancel(evictionSweep);
+        deliverScanBatch();
+        Log.i(TAG, "Scan finished: " + scanBatcher.getInputCount() + " results coalesced into "
+                + scanBatcher.getOutputCount() + " updates (" + String.format("%.1f", scanBatcher.getReductionRatio()) + "x)");
+        scanStats.stop(scheduler.now());
+        lastScanStats = scanStats;
+        Log.i(TAG, "Scan stats: " + scanStats);
 
         // Notify listeners
-        for (BleManagerCallback callback : callbacks) {
-            callback.onScanFinished();
+        callbacks.dispatch(BleManagerCallback::onScanFinished);
+    }
+
+    /**
+     * Retries a scan whose offloaded filters did not fit the controller with the same
+     * filters evaluated in software; any other failure ends the scan.
+     */
+    private void onScanStartFailed(int errorCode) {
+        if (errorCode == BleTransport.SCAN_FAILED_OUT_OF_HARDWARE_RESOURCES && isScanning && hardwareFiltering) {
+            Log.w(TAG, "No room for " + activeScanProfile.getHardwareFilterCount()
+                    + " hardware scan filters, filtering in software");
+            hardwareFiltering = false;
+            scanStats.recordFallback();
+            scanScheduler.restart();
+            return;
+        }
+        callbacks.dispatch(callback -> callback.onScanFailed(errorCode));
+        stopScanOnBleThread();
+    }
+
+    private void recordScanCallback(int resultCount) {
+        if (isScanning) {
+            scanStats.recordCallback(resultCount);
+        }
+    }
+
+    // Record a scan result; listeners are notified once per batch window
+    private void onDeviceSeen(BleDevice bleDevice) {
+        if (accept(bleDevice, scheduler.now()) && scanBatcher.offer(bleDevice.getAddress(), bleDevice)) {
+            scheduler.schedule(flushScanBatch, SCAN_BATCH_WINDOW);
+        }
+    }
+
+    // Record a deduplicated batch; the controller already coalesced it, so listeners are notified right away
+    private void onBatchSeen(int resultCount, List<BleDevice> bleDevices) {
+        if (isScanning) {
+            scanStats.recordCallback(resultCount);
+            scanStats.recordDuplicates(resultCount - bleDevices.size());
+        }
+        long now = scheduler.now();
+        List<BleDevice> devices = new ArrayList<>(bleDevices.size());
+        for (BleDevice bleDevice : bleDevices) {
+            if (accept(bleDevice, now)) {
+                devices.add(bleDevice);
+            }
+        }
+        if (!devices.isEmpty()) {
+            callbacks.dispatch(callback -> callback.onDevicesFound(devices));
+        }
+        deliverLostDevices();
+    }
+
+    // Applies the profile's filters and records a matching device in the registry
+    private boolean accept(BleDevice bleDevice, long now) {
+        // Recorded before filtering, so a replay can try other profiles on the same session
+        SessionRecorder recorder = sessionRecorder;
+        if (recorder != null) {
+            recorder.recordScanResult(bleDevice.getTimestampNanos(), bleDevice.getPackedAddress(), bleDevice.getRssi(),
+                    bleDevice.getScanRecord());
+        }
+        // Also checks offloaded filters, which some controllers apply loosely
+        if (activeScanProfile != null && !activeScanProfile.matches(bleDevice.getAdvertisingData())) {
+            return false;
+        }
+        if (isScanning) {
+            scanStats.recordMatch();
+        }
+        BleDevice previous = deviceRegistry.get(bleDevice.getPackedAddress());
+        SignalFilter signalFilter = previous != null ? previous.getSignalFilter() : null;
+        SignalFilter.Settings settings = signalFilterSettings;
+        if (signalFilter == null || signalFilter.getSettings() != settings) {
+            signalFilter = new SignalFilter(settings);
+        }
+        bleDevice.applySignalFilter(signalFilter);
+        deviceRegistry.touch(bleDevice.getPackedAddress(), bleDevice, now);
+        return true;
+    }
+
+    // Hand the devices coalesced during the last window to listeners
+    private void deliverScanBatch() {
+        List<BleDevice> devices = scanBatcher.drain();
+        if (!devices.isEmpty()) {
+            callbacks.dispatch(callback -> callback.onDevicesFound(devices));
+        }
+        // Capacity evictions happen while touching the registry, report them with the batch
+        deliverLostDevices();
+    }
+
+    // Hand devices evicted from the registry to listeners
+    private void deliverLostDevices() {
+        if (lostDevices.isEmpty()) {
+            return;
         }
+        List<BleDevice> devices = new ArrayList<>(lostDevices);
+        lostDevices.clear();
+        callbacks.dispatch(callback -> callback.onDevicesLost(devices));
     }
 
     // Connect to a BLE device
     public boolean connectToDevice(BleDevice device) {
-        if (bluetoothAdapter == null || !bluetoothAdapter.isEnabled()) {
+        return connectToDevice(device, ConnectionProfile.BALANCED);
+    }
+
+    /**
+     * Connects to a device as the primary connection, which the single-device methods and
+     * BleManagerCallback events refer to. A previous primary connection is closed; other
+     * connections opened with {@link #connect} are left alone.
+     */
+    public boolean connectToDevice(BleDevice device, ConnectionProfile profile) {
+        if (replaySession != null) {
+            post(() -> connectReplay(device.getPackedAddress()));
+            return true;
+        }
+        if (!transport.isEnabled()) {
             return false;
         }
+        post(() -> connectPrimary(device, profile));
+        return true;
+    }
 
-        // Disconnect from any existing connection
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+    private void connectPrimary(BleDevice device, ConnectionProfile profile) {
+        reconnector.cancel();
+        primaryDevice = device;
+        primaryProfile = profile;
+        if (!openPrimaryConnection()) {
+            callbacks.dispatch(callback -> callback.onConnectionFailed(BleTransport.GATT_FAILURE));
+            return;
         }
-
-        // Connect to the device
-        bluetoothGatt = device.getDevice().connectGatt(context, false, gattCallback);
         
         // Notify listeners
-        for (BleManagerCallback callback : callbacks) {
-            callback.onConnecting();
+        callbacks.dispatch(BleManagerCallback::onConnecting);
+    }
+
+    /**
+     * Connects straight to a device by address, without scanning for it first. The last
+     * advertisement seen for it is reused if the device is still in the registry.
+     */
+    public boolean connectToDevice(String address, ConnectionProfile profile) {
+        if (replaySession != null && BluetoothAdapter.checkBluetoothAddress(address)) {
+            post(() -> connectReplay(MacAddress.pack(address)));
+            return true;
         }
-        
+        if (!transport.isEnabled() || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            return false;
+        }
+        post(() -> {
+            BleDevice device = deviceRegistry.get(MacAddress.pack(address));
+            if (device == null) {
+                device = new BleDevice(bluetoothAdapter.getRemoteDevice(address), 0, null, scheduler.nowNanos());
+            }
+            connectPrimary(device, profile);
+        });
         return true;
     }
 
-    // Disconnect from a BLE device
+    // Replaces the primary connection with a new one to primaryDevice
+    private boolean openPrimaryConnection() {
+        if (primaryConnection != null) {
+            closeConnection(primaryConnection);
+        }
+        primaryConnectStartedAt = scheduler.now();
+        primaryCharacteristicsShown = false;
+        primaryShownFromCache = false;
+        primaryCharacteristics = Collections.emptyList();
+        BleConnection connection = createConnection(primaryDevice, primaryProfile, primaryListener);
+        if (!openConnection(connection)) {
+            return false;
+        }
+        primaryConnection = connection;
+        return true;
+    }
+
+    /**
+     * Opens an additional connection alongside the others in the pool. Events for it go
+     * to the given listener only, on the BLE thread, and its operations share the pool's
+     * request slots round-robin with every other connection. If the pool is full the
+     * listener receives onDisconnected with GATT_FAILURE.
+     *
+     * @return the connection, or null if Bluetooth is off
+     */
+    public BleConnection connect(BleDevice device, ConnectionProfile profile, final BleConnection.Listener listener) {
+        if (!transport.isEnabled()) {
+            return null;
+        }
+        final BleConnection connection = createConnection(device, profile, listener);
+        post(() -> {
+            if (!openConnection(connection)) {
+                listener.onDisconnected(connection, BleTransport.GATT_FAILURE);
+            }
+        });
+        return connection;
+    }
+
+    // Wraps the listener so the connection is forgotten once it closes
+    private BleConnection createConnection(BleDevice device, ConnectionProfile profile, final BleConnection.Listener listener) {
+        BleConnection connection = new BleConnection(device, profile, connectionPool, scheduler, new BleConnection.Listener() {
+            @Override
+            public void onConnected(BleConnection connection) {
+                listener.onConnected(connection);
+            }
+
+            @Override
+            public void onDisconnected(BleConnection connection, int status) {
+                if (connections.remove(connection)) {
+                    listener.onDisconnected(connection, status);
+                }
+            }
+
+            @Override
+            public void onServicesDiscovered(BleConnection connection, List<BleCharacteristic> characteristics) {
+                listener.onServicesDiscovered(connection, characteristics);
+            }
+
+            @Override
+            public void onCharacteristicChanged(BleConnection connection, BleCharacteristic characteristic) {
+                listener.onCharacteristicChanged(connection, characteristic);
+            }
+
+            @Override
+            public void onServiceChanged(BleConnection connection) {
+                // The rediscovery that follows must not be taken for a confirmation of the old table
+                gattCache.invalidate(connection.getPackedAddress());
+                saveGattCache();
+                listener.onServiceChanged(connection);
+            }
+        });
+        connection.setSessionRecorder(sessionRecorder);
+        return connection;
+    }
+
+    // Replaces any connection to the same device and starts connecting; false if the pool is full
+    private boolean openConnection(BleConnection connection) {
+        BleConnection existing = findConnection(connection.getPackedAddress());
+        if (existing != null) {
+            closeConnection(existing);
+        }
+        if (!connection.connect(transport)) {
+            return false;
+        }
+        connections.add(connection);
+        return true;
+    }
+
+    // Forwards events of the primary connection to the BleManagerCallback listeners
+    private final BleConnection.Listener primaryListener = new BleConnection.Listener() {
+        @Override
+        public void onConnected(BleConnection connection) {
+            reconnector.onConnected();
+            callbacks.dispatch(BleManagerCallback::onDeviceConnected);
+
+            // Show the cached table right away, discovery validates it once it completes
+            GattCache.Entry cached = gattCache.get(connection.getPackedAddress());
+            if (cached != null) {
+                primaryShownFromCache = true;
+                showCharacteristics(toCharacteristics(cached), true);
+            }
+        }
+
+        @Override
+        public void onDisconnected(BleConnection connection, int status) {
+            if (connection != primaryConnection) {
+                return;
+            }
+            primaryConnection = null;
+            primaryCharacteristics = Collections.emptyList();
+            clearSubscriptions();
+
+            // Failures such as status 133 or a supervision timeout are retried with backoff
+            if (status != BleTransport.GATT_SUCCESS && autoReconnect) {
+                lastFailureStatus = status;
+                reconnector.onConnectionLost(BleManager.this::openPrimaryConnection);
+                return;
+            }
+            if (status == BleTransport.GATT_SUCCESS) {
+                callbacks.dispatch(BleManagerCallback::onDeviceDisconnected);
+            } else {
+                callbacks.dispatch(callback -> callback.onConnectionFailed(status));
+            }
+        }
+
+        @Override
+        public void onServicesDiscovered(BleConnection connection, List<BleCharacteristic> characteristics) {
+            validateAttributeTable(connection, characteristics);
+        }
+
+        @Override
+        public void onCharacteristicChanged(BleConnection connection, BleCharacteristic characteristic) {
+            callbacks.dispatch(callback -> callback.onCharacteristicChanged(characteristic));
+        }
+
+        @Override
+        public void onServiceChanged(BleConnection connection) {
+            // The cached table on screen is stale, so the rediscovered one replaces it
+            primaryShownFromCache = false;
+        }
+    };
+
+    // Hashes the discovered table, preferably with the device's Database Hash, and checks it against the cache
+    private void validateAttributeTable(BleConnection connection, List<BleCharacteristic> characteristics) {
+        final List<GattCache.CharacteristicRecord> records = new ArrayList<>(characteristics.size());
+        BluetoothGattCharacteristic databaseHash = null;
+        for (BleCharacteristic characteristic : characteristics) {
+            BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+            records.add(new GattCache.CharacteristicRecord(gattCharacteristic.getService().getUuid(),
+                    gattCharacteristic.getUuid(), gattCharacteristic.getProperties(), gattCharacteristic.getPermissions()));
+            if (GattCache.DATABASE_HASH_UUID.equals(gattCharacteristic.getUuid()) && characteristic.isReadable()) {
+                databaseHash = gattCharacteristic;
+            }
+        }
+
+        final long address = connection.getPackedAddress();
+        if (databaseHash == null) {
+            onAttributeTableHashed(new GattCache.Entry(address, GattCache.fingerprint(records), records), characteristics);
+            return;
+        }
+        connection.enqueue(GattOperation.read(databaseHash.getService().getUuid(), databaseHash.getUuid())
+                .setCallback((operation, status) -> {
+                    if (status == GattOperation.STATUS_CANCELLED) {
+                        return;
+                    }
+                    byte[] hash = operation.isSuccess() && operation.getValue() != null
+                            ? operation.getValue() : GattCache.fingerprint(records);
+                    onAttributeTableHashed(new GattCache.Entry(address, hash, records), characteristics);
+                }));
+    }
+
+    private void onAttributeTableHashed(GattCache.Entry discovered, List<BleCharacteristic> characteristics) {
+        boolean valid = gattCache.validate(discovered);
+        Log.i(TAG, "GATT cache " + (valid ? "hit" : "miss") + ", hit rate "
+                + String.format("%.0f%%", gattCache.getHitRate() * 100));
+        if (!valid) {
+            saveGattCache();
+        }
+        // A valid cached table is already on screen, anything else is replaced by the discovered one
+        if (!valid || !primaryShownFromCache) {
+            showCharacteristics(characteristics, false);
+        }
+    }
+
+    private void showCharacteristics(List<BleCharacteristic> characteristics, boolean fromCache) {
+        if (!primaryCharacteristicsShown) {
+            primaryCharacteristicsShown = true;
+            long elapsed = scheduler.now() - primaryConnectStartedAt;
+            gattCache.recordTimeToFirstCharacteristic(elapsed, fromCache);
+            Log.i(TAG, "Time to first characteristic " + elapsed + " ms (" + (fromCache ? "cached" : "discovered")
+                    + "), cached: " + gattCache.getTimeToFirstCharacteristic(true)
+                    + ", discovered: " + gattCache.getTimeToFirstCharacteristic(false));
+        }
+        primaryCharacteristics = Collections.unmodifiableList(new ArrayList<>(characteristics));
+        callbacks.dispatch(callback -> callback.onServicesDiscovered(characteristics));
+    }
+
+    private BleDevice toBleDevice(BleTransport.Advertisement advertisement) {
+        return new BleDevice(bluetoothAdapter.getRemoteDevice(advertisement.getAddress()), advertisement.getRssi(),
+                advertisement.getData(), advertisement.getTimestampNanos());
+    }
+
+    private static List<BleCharacteristic> toCharacteristics(GattCache.Entry entry) {
+        return BleConnection.toCharacteristics(entry.getCharacteristics());
+    }
+
+    private void loadGattCache() {
+        gattCacheExecutor.execute(() -> {
+            try {
+                final List<GattCache.Entry> entries = GattCache.read(gattCacheFile);
+                // Nothing to hand over on a first start
+                if (!entries.isEmpty()) {
+                    post(() -> gattCache.merge(entries));
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Discarding unreadable GATT cache", e);
+                gattCacheFile.delete();
+            }
+        });
+    }
+
+    private void saveGattCache() {
+        final List<GattCache.Entry> entries = gattCache.snapshot();
+        gattCacheExecutor.execute(() -> {
+            try {
+                GattCache.write(gattCacheFile, entries);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not save GATT cache", e);
+            }
+        });
+    }
+
+    private final Reconnector.Listener reconnectListener = new Reconnector.Listener() {
+        @Override
+        public void onReconnectScheduled(int attempt, long delayMs) {
+            Log.i(TAG, "Reconnect attempt " + attempt + " in " + delayMs + " ms");
+            callbacks.dispatch(callback -> callback.onReconnecting(attempt, delayMs));
+        }
+
+        @Override
+        public void onReconnected(int attempts, long downtimeMs) {
+            Log.i(TAG, "Reconnected after " + attempts + " attempts, " + downtimeMs + " ms down. Time to reconnect: "
+                    + reconnector.getTimeToReconnect());
+        }
+
+        @Override
+        public void onGaveUp(int attempts) {
+            Log.w(TAG, "Giving up reconnecting after " + attempts + " attempts");
+            callbacks.dispatch(callback -> callback.onConnectionFailed(lastFailureStatus));
+        }
+    };
+
+    // Closes a connection right away; its listener is not told about the disconnect
+    private void closeConnection(BleConnection connection) {
+        connections.remove(connection);
+        if (connection == primaryConnection) {
+            primaryConnection = null;
+            primaryCharacteristics = Collections.emptyList();
+            clearSubscriptions();
+        }
+        connection.close();
+    }
+
+    // Disconnect from the primary device
     public void disconnect() {
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
+        post(() -> {
+            if (replayTarget != MacAddress.INVALID) {
+                disconnectReplay();
+                return;
+            }
+            reconnector.cancel();
+            if (primaryConnection != null) {
+                primaryConnection.disconnect();
+            }
+        });
+    }
+
+    // Disconnect from the device with the given address, listeners are notified once it is closed
+    public void disconnect(String address) {
+        BleConnection connection = getConnection(address);
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    public void disconnectAll() {
+        for (BleConnection connection : connections) {
+            connection.disconnect();
+        }
+    }
+
+    // Open connection to the device with the given address, or null
+    public BleConnection getConnection(String address) {
+        return findConnection(MacAddress.pack(address));
+    }
+
+    private BleConnection findConnection(long key) {
+        for (BleConnection connection : connections) {
+            if (connection.getPackedAddress() == key) {
+                return connection;
+            }
+        }
+        return null;
+    }
+
+    public List<BleConnection> getConnections() {
+        return new ArrayList<>(connections);
+    }
+
+    public BleConnection getPrimaryConnection() {
+        return primaryConnection;
+    }
+
+    // True if the primary connection is up and goes to the device with this address
+    public boolean isConnectedTo(String address) {
+        if (replayTarget != MacAddress.INVALID) {
+            return replayTarget == MacAddress.pack(address);
         }
+        BleConnection connection = primaryConnection;
+        return connection != null && connection.isConnected() && connection.getAddress().equalsIgnoreCase(address);
     }
 
-    // Read a characteristic
+    // Characteristics last reported through onServicesDiscovered for the primary connection
+    public List<BleCharacteristic> getCharacteristics() {
+        return primaryCharacteristics;
+    }
+
+    // Reconnect the primary device with backoff when its connection fails, on by default
+    public void setAutoReconnect(boolean autoReconnect) {
+        this.autoReconnect = autoReconnect;
+        if (!autoReconnect) {
+            post(reconnector::cancel);
+        }
+    }
+
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    public boolean isReconnecting() {
+        return reconnector.isReconnecting();
+    }
+
+    // Hit rate and time-to-first-characteristic with and without the cache; BLE thread only
+    public GattCache getGattCache() {
+        return gattCache;
+    }
+
+    // Backoff state, circuit breaker and time-to-reconnect percentiles; BLE thread only
+    public Reconnector getReconnector() {
+        return reconnector;
+    }
+
+    // Connections that may be open at once, e.g. to poll a fleet of sensors
+    public void setMaxConnections(int maxConnections) {
+        post(() -> connectionPool.setMaxConnections(maxConnections));
+    }
+
+    // GATT requests in flight across all connections; slots are handed out round-robin
+    public void setMaxConcurrentOperations(int maxConcurrentOperations) {
+        post(() -> connectionPool.setMaxConcurrentOperations(maxConcurrentOperations));
+    }
+
+    // BLE thread only
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    // Queue a GATT operation on the primary connection; its callback reports the result
+    public boolean enqueueOperation(GattOperation operation) {
+        BleConnection connection = primaryConnection;
+        return connection != null && connection.enqueue(operation);
+    }
+
+    // Queue a GATT operation on the connection to the given address
+    public boolean enqueueOperation(String address, GattOperation operation) {
+        BleConnection connection = getConnection(address);
+        return connection != null && connection.enqueue(operation);
+    }
+
+    public DecoderRegistry getDecoderRegistry() {
+        return decoderRegistry;
+    }
+
+    /**
+     * Decodes the characteristic's current value into out, e.g. from onCharacteristicChanged.
+     * Keep one Measurement per calling thread.
+     *
+     * @return false if there is no value, no decoder for the characteristic or the value is malformed
+     */
+    public boolean decodeValue(BleCharacteristic characteristic, Measurement out) {
+        byte[] value = characteristic.getValue();
+        if (value == null) {
+            out.clear();
+            return false;
+        }
+        return decoderRegistry.decode(characteristic.getCharacteristic().getUuid(), value, 0, value.length, out);
+    }
+
+    // Read a characteristic, listeners receive the value through onCharacteristicRead
     public boolean readCharacteristic(BleCharacteristic characteristic) {
-        if (bluetoothGatt == null || !isConnected) {
+        BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+        GattOperation operation = GattOperation.read(gattCharacteristic.getService().getUuid(), gattCharacteristic.getUuid())
+                .setCallback((op, status) -> {
+                    if (status != GattOperation.STATUS_SUCCESS) {
+                        Log.w(TAG, "Characteristic read failed with status: " + status);
+                        return;
+                    }
+                    Log.i(TAG, "Characteristic read successfully: " + gattCharacteristic.getUuid().toString());
+                    BleCharacteristic bleCharacteristic = new BleCharacteristic(gattCharacteristic);
+                    bleCharacteristic.setValue(op.getValue());
+                    callbacks.dispatch(callback -> callback.onCharacteristicRead(bleCharacteristic));
+                });
+        return enqueueOperation(operation);
+    }
+
+    /**
+     * Reads every readable characteristic back-to-back. Values are delivered through
+     * onCharacteristicRead as they arrive, followed by onBulkReadFinished with totals.
+     */
+    public boolean readAllCharacteristics(List<BleCharacteristic> characteristics) {
+        if (!isConnected()) {
+            return false;
+        }
+        final List<BleCharacteristic> readable = new ArrayList<>();
+        for (BleCharacteristic characteristic : characteristics) {
+            if (characteristic.isReadable()) {
+                readable.add(characteristic);
+            }
+        }
+
+        final BulkReadSession session = new BulkReadSession(scheduler, new BulkReadSession.Listener() {
+            @Override
+            public void onRead(int index, GattOperation operation) {
+                if (!operation.isSuccess()) {
+                    return;
+                }
+                BleCharacteristic bleCharacteristic = new BleCharacteristic(readable.get(index).getCharacteristic());
+                bleCharacteristic.setValue(operation.getValue());
+                callbacks.dispatch(callback -> callback.onCharacteristicRead(bleCharacteristic));
+            }
+
+            @Override
+            public void onFinished(BulkReadSession.Summary summary) {
+                Log.i(TAG, "Bulk read finished: " + summary);
+                callbacks.dispatch(callback -> callback.onBulkReadFinished(summary));
+            }
+        });
+        for (BleCharacteristic characteristic : readable) {
+            BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+            session.addRead(gattCharacteristic.getService().getUuid(), gattCharacteristic.getUuid());
+        }
+        post(() -> {
+            BleConnection connection = primaryConnection;
+            if (connection == null || !session.start(connectionPool, connection.getLink())) {
+                // Disconnected in the meantime, report every read as failed
+                BulkReadSession.Summary summary = new BulkReadSession.Summary(readable.size(), readable.size(), 0, 0);
+                callbacks.dispatch(callback -> callback.onBulkReadFinished(summary));
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Enables notifications, or indications if the characteristic only supports those,
+     * by setting up local delivery and writing the CCCD through the operation queue.
+     * Listeners learn the outcome through onNotificationsChanged.
+     *
+     * Subscriptions are counted: only the first subscriber writes the CCCD, and it is
+     * written back when the last one unsubscribes.
+     */
+    public boolean subscribe(BleCharacteristic characteristic) {
+        if (!characteristic.supportsSubscription()) {
+            return false;
+        }
+        BleConnection connection = primaryConnection;
+        if (connection == null) {
+            return false;
+        }
+        SubscriptionKey key = SubscriptionKey.of(connection.getPackedAddress(), characteristic);
+        synchronized (subscriptions) {
+            Subscribers holders = subscribers.get(key);
+            if (holders != null) {
+                holders.count++;
+                return true;
+            }
+            if (!setNotifications(connection, key, characteristic, true)) {
+                return false;
+            }
+            subscribers.put(key, new Subscribers(characteristic));
+            return true;
+        }
+    }
+
+    // Drops one subscriber; the last one disables notifications and writes the CCCD back to its default
+    public boolean unsubscribe(BleCharacteristic characteristic) {
+        BleConnection connection = primaryConnection;
+        if (connection == null) {
             return false;
         }
+        SubscriptionKey key = SubscriptionKey.of(connection.getPackedAddress(), characteristic);
+        synchronized (subscriptions) {
+            Subscribers holders = subscribers.get(key);
+            if (holders == null) {
+                return false;
+            }
+            if (--holders.count > 0) {
+                return true;
+            }
+            subscribers.remove(key);
+            return setNotifications(connection, key, characteristic, false);
+        }
+    }
+
+    // Tears down every subscription whatever its count while staying connected; disconnecting ends them anyway
+    public void unsubscribeAll() {
+        BleConnection connection = primaryConnection;
+        if (connection == null) {
+            return;
+        }
+        synchronized (subscriptions) {
+            for (Map.Entry<SubscriptionKey, Subscribers> entry : subscribers.entrySet()) {
+                setNotifications(connection, entry.getKey(), entry.getValue().characteristic, false);
+            }
+            subscribers.clear();
+        }
+    }
+
+    public boolean isSubscribed(BleCharacteristic characteristic) {
+        BleConnection connection = primaryConnection;
+        return connection != null
+                && subscriptions.containsKey(SubscriptionKey.of(connection.getPackedAddress(), characteristic));
+    }
+
+    public List<BleCharacteristic> getSubscriptions() {
+        synchronized (subscriptions) {
+            return new ArrayList<>(subscriptions.values());
+        }
+    }
+
+    // Number of callers holding the characteristic's subscription, counting ones still being enabled
+    public int getSubscriberCount(BleCharacteristic characteristic) {
+        BleConnection connection = primaryConnection;
+        if (connection == null) {
+            return 0;
+        }
+        synchronized (subscriptions) {
+            Subscribers holders = subscribers.get(SubscriptionKey.of(connection.getPackedAddress(), characteristic));
+            return holders != null ? holders.count : 0;
+        }
+    }
+
+    private boolean setNotifications(BleConnection connection, final SubscriptionKey key,
+                                     BleCharacteristic characteristic, boolean enable) {
+        // Prefer notifications, they need no acknowledgement round trip
+        boolean indicate = !characteristic.isNotifiable();
+        GattOperation operation = GattOperation.setNotification(key.serviceUuid, key.characteristicUuid, enable, indicate)
+                .setCallback((op, status) -> {
+                    if (status != GattOperation.STATUS_SUCCESS) {
+                        Log.w(TAG, "Setting notifications failed with status: " + status);
+                        if (enable) {
+                            // Nobody is subscribed after all; a later subscribe writes the CCCD again
+                            synchronized (subscriptions) {
+                                subscribers.remove(key);
+                            }
+                        }
+                        return;
+                    }
+                    if (enable) {
+                        subscriptions.put(key, characteristic);
+                    } else {
+                        subscriptions.remove(key);
+                    }
+                    callbacks.dispatch(callback -> callback.onNotificationsChanged(characteristic, enable));
+                });
+        return connection.enqueue(operation);
+    }
+
+    // Identifies a characteristic across rediscoveries; the same UUID may appear in several services
+    private static final class SubscriptionKey {
+        final long address;
+        final UUID serviceUuid;
+        final UUID characteristicUuid;
+
+        private SubscriptionKey(long address, UUID serviceUuid, UUID characteristicUuid) {
+            this.address = address;
+            this.serviceUuid = serviceUuid;
+            this.characteristicUuid = characteristicUuid;
+        }
+
+        static SubscriptionKey of(long address, BleCharacteristic characteristic) {
+            BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+            return new SubscriptionKey(address, gattCharacteristic.getService().getUuid(), gattCharacteristic.getUuid());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            SubscriptionKey other = (SubscriptionKey) o;
+            return address == other.address && serviceUuid.equals(other.serviceUuid)
+                    && characteristicUuid.equals(other.characteristicUuid);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Long.hashCode(address) * 31 + serviceUuid.hashCode()) * 31 + characteristicUuid.hashCode();
+        }
+    }
+
+    private static final class Subscribers {
+        final BleCharacteristic characteristic;
+        int count = 1;
+
+        Subscribers(BleCharacteristic characteristic) {
+            this.characteristic = characteristic;
+        }
+    }
+
+    // The peer forgets CCCD values of unbonded clients, so subscriptions end with the link
+    private void clearSubscriptions() {
+        synchronized (subscriptions) {
+            subscriptions.clear();
+            subscribers.clear();
+        }
+        stopStreaming();
+    }
 
+    /**
+     * Switches a characteristic between per-notification delivery and streaming mode. In
+     * streaming mode notifications are buffered off the main thread and listeners receive
+     * the latest value through onCharacteristicChanged at most once per display frame.
+     */
+    public void setNotificationStreaming(BleCharacteristic characteristic, boolean enabled) {
+        final BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+        final CharacteristicKey key = new CharacteristicKey(gattCharacteristic.getService().getUuid(),
+                gattCharacteristic.getUuid());
+        post(() -> {
+            if (enabled) {
+                ensureStreamer();
+                streamedCharacteristics.put(key, gattCharacteristic);
+                final int slotSize = getMaxPayloadSize();
+                final NotificationStreamer streamer = notificationStreamer;
+                streamingHandler.post(() -> streamer.start(key.serviceUuid, key.characteristicUuid, slotSize));
+            } else if (notificationStreamer != null) {
+                streamedCharacteristics.remove(key);
+                final NotificationStreamer streamer = notificationStreamer;
+                streamingHandler.post(() -> streamer.stop(key.serviceUuid, key.characteristicUuid));
+            }
+        });
+    }
+
+    // Receive, drop and backpressure counters of a streamed characteristic, or null
+    public NotificationStreamer.Channel getNotificationChannel(BleCharacteristic characteristic) {
+        NotificationStreamer streamer = notificationStreamer;
         BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
-        return bluetoothGatt.readCharacteristic(gattCharacteristic);
+        return streamer != null
+                ? streamer.getChannel(gattCharacteristic.getService().getUuid(), gattCharacteristic.getUuid()) : null;
+    }
+
+    private void ensureStreamer() {
+        if (notificationStreamer != null) {
+            return;
+        }
+        streamingThread = new HandlerThread("BleNotificationStreamer");
+        streamingThread.start();
+        streamingHandler = new Handler(streamingThread.getLooper());
+        notificationStreamer = new NotificationStreamer(new HandlerTaskScheduler(streamingHandler),
+                NotificationStreamer.DEFAULT_SAMPLE_INTERVAL, (serviceUuid, uuid, value, timestampNanos, sampleCount) -> {
+                    BluetoothGattCharacteristic gattCharacteristic =
+                            streamedCharacteristics.get(new CharacteristicKey(serviceUuid, uuid));
+                    if (gattCharacteristic == null) {
+                        return;
+                    }
+                    final BleCharacteristic bleCharacteristic = new BleCharacteristic(gattCharacteristic);
+                    bleCharacteristic.setValue(value);
+                    callbacks.dispatch(callback -> callback.onCharacteristicChanged(bleCharacteristic));
+                });
+        if (primaryConnection != null) {
+            primaryConnection.setNotificationStreamer(notificationStreamer);
+        }
+    }
+
+    private void stopStreaming() {
+        if (notificationStreamer == null) {
+            return;
+        }
+        final NotificationStreamer streamer = notificationStreamer;
+        notificationStreamer = null;
+        if (primaryConnection != null) {
+            primaryConnection.setNotificationStreamer(null);
+        }
+        streamedCharacteristics.clear();
+        streamingHandler.post(streamer::stopAll);
+        streamingThread.quitSafely();
+        streamingThread = null;
+        streamingHandler = null;
+    }
+
+    // Write a characteristic; the callback, if any, receives the outcome
+    public boolean writeCharacteristic(BleCharacteristic characteristic, byte[] value, GattOperation.Callback callback) {
+        BluetoothGattCharacteristic gattCharacteristic = characteristic.getCharacteristic();
+        boolean withoutResponse = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE) == 0;
+        return enqueueOperation(GattOperation.write(gattCharacteristic.getService().getUuid(), gattCharacteristic.getUuid(),
+                value, withoutResponse).setCallback(callback));
+    }
+
+    // Profile of the primary connection
+    public ConnectionProfile getConnectionProfile() {
+        BleConnection connection = primaryConnection;
+        return connection != null ? connection.getProfile() : ConnectionProfile.BALANCED;
+    }
+
+    // ATT MTU in effect on the primary connection
+    public int getMtu() {
+        BleConnection connection = primaryConnection;
+        return connection != null ? connection.getMtu() : ConnectionProfile.DEFAULT_MTU;
+    }
+
+    // Largest value that fits one notification or write without response
+    public int getMaxPayloadSize() {
+        return ConnectionProfile.payloadSizeFor(getMtu());
+    }
+
+    // Operations waiting or in flight on the primary connection; BLE thread only
+    public int getOperationQueueDepth() {
+        BleConnection connection = primaryConnection;
+        return connection != null ? connection.getLink().getDepth() : 0;
+    }
+
+    // BLE thread only
+    public GattOperationQueue getOperationQueue() {
+        BleConnection connection = primaryConnection;
+        return connection != null ? connection.getOperationQueue() : null;
     }
 
     // Check if Bluetooth is enabled
     public boolean isBluetoothEnabled() {
-        return bluetoothAdapter != null && bluetoothAdapter.isEnabled();
+        return transport.isEnabled();
     }
 
     // Check if device is connected
     public boolean isConnected() {
-        return isConnected;
+        BleConnection connection = primaryConnection;
+        return (connection != null && connection.isConnected()) || replayTarget != MacAddress.INVALID;
     }
 
     // Check if currently scanning
@@ -287,15 +1302,251 @@ public class BleManager {
         return isScanning;
     }
 
-    // Clean up resources
-    public void close() {
-        stopScan();
-        if (bluetoothGatt != null) {
-            bluetoothGatt.disconnect();
-            bluetoothGatt.close();
-            bluetoothGatt = null;
+    /**
+     * Scan in windows of onTimeMs separated by offTimeMs instead of keeping the radio on,
+     * from the next scan on; 0 for onTimeMs restores an uninterrupted scan. Window starts
+     * are spaced out as needed to stay within five scan starts per 30 seconds.
+     */
+    public void setScanDutyCycle(long onTimeMs, long offTimeMs) {
+        ScanScheduler.checkDutyCycle(onTimeMs, offTimeMs);
+        post(() -> scanScheduler.setDutyCycle(onTimeMs, offTimeMs));
+    }
+
+    // BLE thread only
+    public ScanScheduler getScanScheduler() {
+        return scanScheduler;
+    }
+
+    /**
+     * How RSSI is smoothed and distance estimated for scanned devices. Devices already
+     * known start over with the new settings on their next advertisement; the settings
+     * must not be modified afterwards.
+     */
+    public void setSignalFilterSettings(SignalFilter.Settings signalFilterSettings) {
+        this.signalFilterSettings = signalFilterSettings;
+    }
+
+    public SignalFilter.Settings getSignalFilterSettings() {
+        return signalFilterSettings;
+    }
+
+    /**
+     * Plays a recorded session instead of scanning: from the next startScan() on, its scan
+     * results go through the same filtering, batching and callbacks as live ones, and the
+     * scan finishes when the recording ends. Connecting to a device then stands in for a
+     * connection and delivers that device's recorded GATT events. Null goes back to the
+     * radio. A scan in progress is stopped.
+     */
+    public void setReplaySession(SessionReplayer replaySession) {
+        this.replaySession = replaySession;
+        post(() -> {
+            stopScanOnBleThread();
+            disconnectReplay();
+        });
+    }
+
+    public SessionReplayer getReplaySession() {
+        return replaySession;
+    }
+
+    public boolean isReplaying() {
+        return replaySession != null;
+    }
+
+    private void replayRecord(SessionRecord record) {
+        long address = record.getAddress();
+        switch (record.getType()) {
+            case SessionRecord.TYPE_SCAN_RESULT:
+                // Stamped on delivery like a live result, so ages and smoothing follow the replay speed
+                BleDevice bleDevice = new BleDevice(bluetoothAdapter.getRemoteDevice(MacAddress.unpack(address)),
+                        record.getRssi(), record.getPayload(), scheduler.nowNanos());
+                recordScanCallback(1);
+                onDeviceSeen(bleDevice);
+                break;
+            case SessionRecord.TYPE_CONNECTED:
+                if (address == replayTarget) {
+                    callbacks.dispatch(BleManagerCallback::onDeviceConnected);
+                }
+                break;
+            case SessionRecord.TYPE_DISCONNECTED:
+                if (address == replayTarget) {
+                    int status = record.getStatus();
+                    if (status == BleTransport.GATT_SUCCESS) {
+                        callbacks.dispatch(BleManagerCallback::onDeviceDisconnected);
+                    } else {
+                        callbacks.dispatch(callback -> callback.onConnectionFailed(status));
+                    }
+                }
+                break;
+            case SessionRecord.TYPE_CHARACTERISTIC_READ:
+                if (address == replayTarget && record.getStatus() == BleTransport.GATT_SUCCESS) {
+                    BleCharacteristic characteristic = replayCharacteristic(record);
+                    callbacks.dispatch(callback -> callback.onCharacteristicRead(characteristic));
+                }
+                break;
+            case SessionRecord.TYPE_CHARACTERISTIC_CHANGED:
+                if (address == replayTarget) {
+                    BleCharacteristic characteristic = replayCharacteristic(record);
+                    callbacks.dispatch(callback -> callback.onCharacteristicChanged(characteristic));
+                }
+                break;
+        }
+    }
+
+    /**
+     * Stands in a connection to a recorded device: reports it connected at once, with the
+     * characteristics it read or notified anywhere in the recording as its attribute table.
+     */
+    private void connectReplay(long address) {
+        SessionReplayer replay = replaySession;
+        if (replay == null) {
+            return;
         }
+        replayTarget = address;
+        replayCharacteristics.clear();
+        callbacks.dispatch(BleManagerCallback::onConnecting);
+        callbacks.dispatch(BleManagerCallback::onDeviceConnected);
+
+        // Recordings keep no service UUIDs, so the characteristics share a placeholder service
+        BluetoothGattService service = new BluetoothGattService(new UUID(0, 0), BluetoothGattService.SERVICE_TYPE_PRIMARY);
+        List<BleCharacteristic> characteristics = new ArrayList<>();
+        for (Map.Entry<UUID, Integer> entry : replay.getCharacteristics(address).entrySet()) {
+            int properties = 0;
+            if ((entry.getValue() & SessionReplayer.CHARACTERISTIC_READ) != 0) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_READ;
+            }
+            if ((entry.getValue() & SessionReplayer.CHARACTERISTIC_CHANGED) != 0) {
+                properties |= BluetoothGattCharacteristic.PROPERTY_NOTIFY;
+            }
+            BluetoothGattCharacteristic characteristic = new BluetoothGattCharacteristic(entry.getKey(), properties,
+                    BluetoothGattCharacteristic.PERMISSION_READ);
+            service.addCharacteristic(characteristic);
+            replayCharacteristics.put(entry.getKey(), characteristic);
+            characteristics.add(new BleCharacteristic(characteristic));
+        }
+        primaryCharacteristics = characteristics;
+        callbacks.dispatch(callback -> callback.onServicesDiscovered(characteristics));
+    }
+
+    private void disconnectReplay() {
+        if (replayTarget == MacAddress.INVALID) {
+            return;
+        }
+        replayTarget = MacAddress.INVALID;
+        replayCharacteristics.clear();
+        primaryCharacteristics = Collections.emptyList();
+        callbacks.dispatch(BleManagerCallback::onDeviceDisconnected);
+    }
+
+    private BleCharacteristic replayCharacteristic(SessionRecord record) {
+        BluetoothGattCharacteristic gattCharacteristic = replayCharacteristics.get(record.getUuid());
+        if (gattCharacteristic == null) {
+            gattCharacteristic = new BluetoothGattCharacteristic(record.getUuid(), 0, BluetoothGattCharacteristic.PERMISSION_READ);
+            replayCharacteristics.put(record.getUuid(), gattCharacteristic);
+        }
+        BleCharacteristic characteristic = new BleCharacteristic(gattCharacteristic);
+        characteristic.setValue(record.getPayload());
+        return characteristic;
+    }
+
+    /**
+     * Appends every scan result and GATT event from now on to a new session log in
+     * directory, named after the current time, and ends any recording in progress.
+     *
+     * @return the recorder, for its counters and files
+     * @throws IOException if the log cannot be created
+     */
+    public synchronized SessionRecorder startRecording(File directory) throws IOException {
+        SessionRecorder recorder = new SessionRecorder(directory, "session-" + System.currentTimeMillis());
+        replaceSessionRecorder(recorder);
+        return recorder;
+    }
+
+    // Ends the recording in progress; its last commit completes in the background
+    public synchronized void stopRecording() {
+        replaceSessionRecorder(null);
+    }
+
+    public SessionRecorder getSessionRecorder() {
+        return sessionRecorder;
+    }
+
+    private void replaceSessionRecorder(SessionRecorder recorder) {
+        final SessionRecorder previous = sessionRecorder;
+        sessionRecorder = recorder;
+        for (BleConnection connection : connections) {
+            connection.setSessionRecorder(recorder);
+        }
+        if (previous == null) {
+            return;
+        }
+        // Closing waits for the final force, so keep it off the caller's thread
+        gattCacheExecutor.execute(() -> {
+            try {
+                previous.close();
+                Log.i(TAG, "Session recorded: " + previous.getRecordCount() + " records, "
+                        + previous.getDroppedCount() + " dropped, " + previous.getFiles().size() + " files");
+            } catch (IOException e) {
+                Log.w(TAG, "Session log incomplete", e);
+            }
+        });
+    }
+
+    // Keep scanning until stopScan() instead of stopping after SCAN_PERIOD
+    public void setContinuousScan(boolean continuousScan) {
+        this.continuousScan = continuousScan;
+    }
+
+    public boolean isContinuousScan() {
+        return continuousScan;
+    }
+
+    // Devices seen recently, bounded in size and expiring after DEVICE_TTL
+    public DeviceRegistry<BleDevice> getDeviceRegistry() {
+        return deviceRegistry;
+    }
+
+    /**
+     * Hands the devices still in the registry to one callback through onDevicesFound on the
+     * main thread, so a screen created after the scan, e.g. after a rotation, can show them.
+     * Nothing is delivered if the registry is empty.
+     */
+    public void deliverKnownDevices(BleManagerCallback callback) {
+        deliverKnownDevices(callback, mainExecutor);
+    }
+
+    // Same, on the given executor
+    public void deliverKnownDevices(BleManagerCallback callback, Executor executor) {
+        post(() -> {
+            final List<BleDevice> devices = deviceRegistry.snapshot();
+            if (!devices.isEmpty()) {
+                executor.execute(() -> callback.onDevicesFound(devices));
+            }
+        });
+    }
+
+    // Scan results received per device update delivered during the current scan
+    public double getScanReductionRatio() {
+        return scanBatcher.getReductionRatio();
+    }
+
+    // Releases everything; the manager cannot be used afterwards
+    public void close() {
         callbacks.clear();
+        stopRecording();
+        post(() -> {
+            stopScanOnBleThread();
+            reconnector.cancel();
+            stopStreaming();
+            for (BleConnection connection : connections) {
+                closeConnection(connection);
+            }
+        });
+        // Runs the teardown above, then stops the thread
+        if (bleThread != null) {
+            bleThread.quitSafely();
+        }
+        gattCacheExecutor.shutdown();
     }
 
     // Interface for callback listeners
@@ -303,13 +1554,17 @@ public class BleManager {
         void onScanStarted();
         void onScanFinished();
         void onScanFailed(int errorCode);
-        void onDeviceFound(BleDevice device);
+        void onDevicesFound(List<BleDevice> devices);
+        void onDevicesLost(List<BleDevice> devices);
         void onConnecting();
         void onDeviceConnected();
         void onDeviceDisconnected();
         void onConnectionFailed(int status);
+        void onReconnecting(int attempt, long delayMs);
         void onServicesDiscovered(List<BleCharacteristic> characteristics);
         void onCharacteristicRead(BleCharacteristic characteristic);
         void onCharacteristicChanged(BleCharacteristic characteristic);
+        void onNotificationsChanged(BleCharacteristic characteristic, boolean enabled);
+        void onBulkReadFinished(BulkReadSession.Summary summary);
     }
 } 
\ No newline at end of file
@@ -0,0 +1,141 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * The radio as {@link BleManager} and {@link BleConnection} use it: scanning,
+ * connecting, service discovery and the GATT operations of a connection.
+ *
+ * {@link AndroidBleTransport} drives the Android Bluetooth stack. The simulator in the
+ * unit tests' {@code ble.sim} implements the same interface in-process with virtual
+ * peripherals, so the layers above it can be exercised without hardware. Given a
+ * transport and a {@link TaskScheduler}, BleManager itself runs in a JVM test; it only
+ * needs a Context and an adapter to turn addresses into devices. The interface uses no
+ * Android types: addresses are strings as the stack reports them, attribute tables are
+ * {@link GattCache.CharacteristicRecord}s and statuses are the ATT/GATT codes.
+ *
+ * Listeners may be called on any thread the implementation chooses, one call at a time
+ * per listener; callers hand the work over to their own thread.
+ */
+public interface BleTransport {
+    // Same values as BluetoothGatt and ScanCallback
+    int GATT_SUCCESS = 0;
+    int GATT_FAILURE = 0x101;
+    int SCAN_FAILED_OUT_OF_HARDWARE_RESOURCES = 5;
+
+    /**
+     * One advertisement, or advertisement plus scan response, as received.
+     */
+    class Advertisement {
+        private final String address;
+        private final long packedAddress;
+        private final int rssi;
+        private final byte[] data;
+        private final long timestampNanos;
+
+        public Advertisement(String address, long packedAddress, int rssi, byte[] data, long timestampNanos) {
+            this.address = address;
+            this.packedAddress = packedAddress;
+            this.rssi = rssi;
+            this.data = data;
+            this.timestampNanos = timestampNanos;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public long getPackedAddress() {
+            return packedAddress;
+        }
+
+        public int getRssi() {
+            return rssi;
+        }
+
+        // Raw AD structures, null if the stack reported none
+        public byte[] getData() {
+            return data;
+        }
+
+        // Time of reception, in elapsed realtime nanoseconds
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+    }
+
+    interface ScanListener {
+        void onScanResult(Advertisement advertisement);
+
+        // Delivered instead of onScanResult when the scan has a report delay
+        void onBatchScanResults(List<Advertisement> advertisements);
+
+        void onScanFailed(int errorCode);
+    }
+
+    /**
+     * Events of one connection. Operation results are meant for the connection's
+     * {@link GattOperationQueue}; the rest for its owner.
+     */
+    interface GattListener {
+        // connected is false once the link is gone; status is GATT_SUCCESS for an orderly disconnect
+        void onConnectionStateChange(int status, boolean connected);
+
+        void onServicesDiscovered(int status, List<GattCache.CharacteristicRecord> characteristics);
+
+        void onCharacteristicRead(UUID characteristicUuid, int status, byte[] value);
+
+        void onCharacteristicWrite(UUID characteristicUuid, int status);
+
+        void onDescriptorWrite(UUID characteristicUuid, UUID descriptorUuid, int status);
+
+        void onMtuChanged(int mtu, int status);
+
+        // Identified by service as well, the same characteristic may appear in several services
+        void onCharacteristicChanged(UUID serviceUuid, UUID characteristicUuid, byte[] value);
+
+        // The peer's attribute table changed; services have to be discovered again
+        void onServiceChanged();
+    }
+
+    /**
+     * A connection being set up or up. Operations are started through
+     * {@link GattTransport#execute} and complete through the {@link GattListener}.
+     */
+    interface Connection extends GattTransport {
+        String getAddress();
+
+        // One of the ConnectionProfile priorities; false if the request was refused
+        boolean requestConnectionPriority(int priority);
+
+        // Starts an orderly disconnect, reported through onConnectionStateChange
+        void disconnect();
+
+        // Releases the connection at once; no more events follow
+        void close();
+    }
+
+    boolean isEnabled();
+
+    // Whether the controller can hold results back for a scan with a report delay
+    boolean isOffloadedScanBatchingSupported();
+
+    /**
+     * Starts a scan with the profile's settings, passing its filters to the controller if
+     * hardwareFiltering is set. Results arrive in batches if reportDelay is above 0.
+     *
+     * @return false if the scan could not be started at all
+     */
+    boolean startScan(ScanProfile profile, boolean hardwareFiltering, long reportDelay, ScanListener listener);
+
+    // Stops the scan started with this listener, delivering any results still held back first
+    void stopScan(ScanListener listener);
+
+    /**
+     * Starts connecting to the device with this address.
+     *
+     * @return the connection, or null if it could not be started
+     */
+    Connection connect(String address, GattListener listener);
+}
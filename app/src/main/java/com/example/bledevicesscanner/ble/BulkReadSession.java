@@ -0,0 +1,140 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Reads a set of characteristics back-to-back through a {@link GattOperationQueue} or a
+ * {@link ConnectionPool} link. All reads are queued at once so the queue starts each one
+ * as soon as the previous completes; results are streamed to the listener in completion
+ * order and a {@link Summary} is delivered once every read has finished.
+ */
+public class BulkReadSession {
+
+    public interface Listener {
+        // index is the position of the read in the list passed to the session
+        void onRead(int index, GattOperation operation);
+
+        void onFinished(Summary summary);
+    }
+
+    public static class Summary {
+        private final int operationCount;
+        private final int failedCount;
+        private final long totalBytes;
+        private final long elapsedMs;
+
+        Summary(int operationCount, int failedCount, long totalBytes, long elapsedMs) {
+            this.operationCount = operationCount;
+            this.failedCount = failedCount;
+            this.totalBytes = totalBytes;
+            this.elapsedMs = elapsedMs;
+        }
+
+        public int getOperationCount() {
+            return operationCount;
+        }
+
+        public int getFailedCount() {
+            return failedCount;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public long getElapsedMs() {
+            return elapsedMs;
+        }
+
+        public double getOperationsPerSecond() {
+            return elapsedMs == 0 ? 0 : operationCount * 1000.0 / elapsedMs;
+        }
+
+        public double getBytesPerSecond() {
+            return elapsedMs == 0 ? 0 : totalBytes * 1000.0 / elapsedMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d reads (%d failed), %d bytes in %d ms, %.1f ops/s, %.0f B/s",
+                    operationCount, failedCount, totalBytes, elapsedMs, getOperationsPerSecond(), getBytesPerSecond());
+        }
+    }
+
+    private final TaskScheduler scheduler;
+    private final Listener listener;
+    private final List<GattOperation> operations = new ArrayList<>();
+
+    private long startedAt;
+    private int remaining;
+    private int failedCount;
+    private long totalBytes;
+
+    public BulkReadSession(TaskScheduler scheduler, Listener listener) {
+        this.scheduler = scheduler;
+        this.listener = listener;
+    }
+
+    // Adds a read; reads are queued in the order they were added
+    public void addRead(UUID serviceUuid, UUID characteristicUuid) {
+        final int index = operations.size();
+        operations.add(GattOperation.read(serviceUuid, characteristicUuid)
+                .setCallback((operation, status) -> onRead(index, operation)));
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    public void start(GattOperationQueue queue) {
+        if (begin()) {
+            for (GattOperation operation : operations) {
+                queue.enqueue(operation);
+            }
+        }
+    }
+
+    // Starts the reads on a pooled connection, sharing its request slots with the other links
+    public boolean start(ConnectionPool pool, ConnectionPool.Link link) {
+        if (link.getState() == ConnectionPool.State.DISCONNECTED) {
+            return false;
+        }
+        if (begin()) {
+            for (GattOperation operation : operations) {
+                pool.enqueue(link, operation);
+            }
+        }
+        return true;
+    }
+
+    // Resets the counters, finishing right away if there is nothing to read
+    private boolean begin() {
+        startedAt = scheduler.now();
+        remaining = operations.size();
+        if (remaining == 0) {
+            listener.onFinished(new Summary(0, 0, 0, 0));
+            return false;
+        }
+        return true;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    private void onRead(int index, GattOperation operation) {
+        if (operation.isSuccess()) {
+            byte[] value = operation.getValue();
+            totalBytes += value != null ? value.length : 0;
+        } else {
+            failedCount++;
+        }
+        listener.onRead(index, operation);
+        if (--remaining == 0) {
+            listener.onFinished(new Summary(operations.size(), failedCount, totalBytes, scheduler.now() - startedAt));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.UUID;
+
+/**
+ * A characteristic within one connection's attribute table. The same characteristic UUID
+ * may appear in several services, such as a Battery Level in two Battery services, so
+ * notifications are matched on both UUIDs.
+ */
+final class CharacteristicKey {
+    final UUID serviceUuid;
+    final UUID characteristicUuid;
+
+    CharacteristicKey(UUID serviceUuid, UUID characteristicUuid) {
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CharacteristicKey other = (CharacteristicKey) o;
+        return serviceUuid.equals(other.serviceUuid) && characteristicUuid.equals(other.characteristicUuid);
+    }
+
+    @Override
+    public int hashCode() {
+        return serviceUuid.hashCode() * 31 + characteristicUuid.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return serviceUuid + "/" + characteristicUuid;
+    }
+}
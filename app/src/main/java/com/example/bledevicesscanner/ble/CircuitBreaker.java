@@ -0,0 +1,80 @@
+package com.example.bledevicesscanner.ble;
+
+/**
+ * Stops hammering a device that keeps refusing connections. After a run of consecutive
+ * failures the breaker opens and holds further attempts off for a cool-down period;
+ * afterwards a single trial attempt is let through (half-open) and its outcome either
+ * closes the breaker again or reopens it.
+ *
+ * Times are in the clock of whoever drives the breaker, normally {@link TaskScheduler#now()}.
+ */
+public class CircuitBreaker {
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_DURATION = 60000;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openDurationMs;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private long tripCount;
+
+    public CircuitBreaker() {
+        this(DEFAULT_FAILURE_THRESHOLD, DEFAULT_OPEN_DURATION);
+    }
+
+    public CircuitBreaker(int failureThreshold, long openDurationMs) {
+        if (failureThreshold <= 0 || openDurationMs < 0) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.failureThreshold = failureThreshold;
+        this.openDurationMs = openDurationMs;
+    }
+
+    public State getState(long now) {
+        if (state == State.OPEN && now - openedAt >= openDurationMs) {
+            state = State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public boolean allowsAttempt(long now) {
+        return getState(now) != State.OPEN;
+    }
+
+    // Time until an attempt is allowed again, 0 if one is allowed now
+    public long getRemainingOpenTime(long now) {
+        return getState(now) == State.OPEN ? openDurationMs - (now - openedAt) : 0;
+    }
+
+    public void recordSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    public void recordFailure(long now) {
+        consecutiveFailures++;
+        // A failed trial reopens right away, otherwise wait for the threshold
+        if (getState(now) == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = now;
+            tripCount++;
+        }
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures;
+    }
+
+    // Times the breaker has opened
+    public long getTripCount() {
+        return tripCount;
+    }
+}
@@ -0,0 +1,302 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Set of concurrent GATT connections keyed by packed MAC address.
+ *
+ * Every link owns a {@link GattOperationQueue} that keeps at most one request outstanding
+ * on its connection. On top of that the pool limits how many links may be open at once and
+ * how many requests may be in flight across all links, and hands free request slots to
+ * links in round-robin order so a link with a long backlog cannot starve the others.
+ * Operations wait in the link's backlog until the pool grants them a slot, and only links
+ * in {@link State#CONNECTED} are granted one.
+ *
+ * Like {@link GattOperationQueue}, every method must be called on the thread the
+ * {@link TaskScheduler} runs tasks on, and the class has no Android dependencies.
+ */
+public class ConnectionPool {
+    // Android controllers commonly support up to seven simultaneous LE links
+    public static final int DEFAULT_MAX_CONNECTIONS = 7;
+    public static final int DEFAULT_MAX_CONCURRENT_OPERATIONS = DEFAULT_MAX_CONNECTIONS;
+
+    public enum State {
+        CONNECTING,
+        CONNECTED,
+        DISCONNECTED
+    }
+
+    public interface LinkListener {
+        void onStateChanged(Link link, State state);
+
+        // Called after the operation's own callback
+        void onOperationComplete(Link link, GattOperation operation, int status);
+    }
+
+    public static class Link {
+        private final long key;
+        private final GattOperationQueue queue;
+        private final ArrayDeque<GattOperation> backlog = new ArrayDeque<>();
+        // Read by other threads to check whether a connection is up
+        private volatile State state = State.CONNECTING;
+        private LinkListener listener;
+        private boolean granted;
+        private long grantedCount;
+
+        Link(long key, GattOperationQueue queue) {
+            this.key = key;
+            this.queue = queue;
+        }
+
+        public long getKey() {
+            return key;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public GattOperationQueue getQueue() {
+            return queue;
+        }
+
+        public void setListener(LinkListener listener) {
+            this.listener = listener;
+        }
+
+        // Operations waiting for a slot plus the one in flight
+        public int getDepth() {
+            return backlog.size() + queue.getDepth();
+        }
+
+        // Operations this link has been granted a slot for
+        public long getGrantedCount() {
+            return grantedCount;
+        }
+    }
+
+    private final TaskScheduler scheduler;
+    private final List<Link> links = new ArrayList<>();
+    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private int maxConcurrentOperations = DEFAULT_MAX_CONCURRENT_OPERATIONS;
+
+    // Index of the link that is offered the next free slot first
+    private int cursor;
+    private int inFlight;
+    private boolean dispatching;
+    private int maxInFlight;
+
+    public ConnectionPool(TaskScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Max connections must be positive: " + maxConnections);
+        }
+        this.maxConnections = maxConnections;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public void setMaxConcurrentOperations(int maxConcurrentOperations) {
+        if (maxConcurrentOperations <= 0) {
+            throw new IllegalArgumentException("Max concurrent operations must be positive: " + maxConcurrentOperations);
+        }
+        this.maxConcurrentOperations = maxConcurrentOperations;
+        dispatch();
+    }
+
+    public int getMaxConcurrentOperations() {
+        return maxConcurrentOperations;
+    }
+
+    // True if a new link may be opened, or a link for key is already open
+    public boolean canOpen(long key) {
+        return get(key) != null || links.size() < maxConnections;
+    }
+
+    /**
+     * Adds a link in {@link State#CONNECTING} that executes operations on the transport.
+     *
+     * @return the new link, the existing link if one is already open for key, or null if
+     * the pool is full
+     */
+    public Link open(long key, GattTransport transport) {
+        Link link = get(key);
+        if (link != null) {
+            return link;
+        }
+        if (links.size() >= maxConnections) {
+            return null;
+        }
+        link = new Link(key, new GattOperationQueue(transport, scheduler));
+        links.add(link);
+        return link;
+    }
+
+    public Link get(long key) {
+        for (int i = 0; i < links.size(); i++) {
+            Link link = links.get(i);
+            if (link.key == key) {
+                return link;
+            }
+        }
+        return null;
+    }
+
+    // Open links in the order they were opened
+    public List<Link> getLinks() {
+        return new ArrayList<>(links);
+    }
+
+    public int size() {
+        return links.size();
+    }
+
+    // Marks the link as connected and starts granting it slots for its backlog
+    public void setConnected(Link link) {
+        if (link.state != State.CONNECTING) {
+            return;
+        }
+        setState(link, State.CONNECTED);
+        dispatch();
+    }
+
+    /**
+     * Queues an operation on the link. It is started once the link is connected and the
+     * pool grants it a slot.
+     *
+     * @return false if the link has already been closed
+     */
+    public boolean enqueue(Link link, GattOperation operation) {
+        if (link.state == State.DISCONNECTED) {
+            return false;
+        }
+        operation.markEnqueued(scheduler.now());
+        link.backlog.addLast(operation);
+        dispatch();
+        return true;
+    }
+
+    // Fails the link's operation in flight and its backlog with STATUS_CANCELLED
+    public void cancelAll(Link link) {
+        // Empty the backlog first so cancelling the operation in flight cannot grant the next one
+        List<GattOperation> cancelled = new ArrayList<>(link.backlog);
+        link.backlog.clear();
+        link.queue.cancelAll();
+        for (GattOperation operation : cancelled) {
+            operation.fail(GattOperation.STATUS_CANCELLED, scheduler.now());
+        }
+    }
+
+    // Removes the link, cancelling its operations, and frees its connection slot
+    public void close(Link link) {
+        int index = links.indexOf(link);
+        if (index < 0) {
+            return;
+        }
+        links.remove(index);
+        if (index < cursor) {
+            cursor--;
+        }
+        // Closed before cancelling so callbacks of cancelled operations cannot queue new ones
+        link.state = State.DISCONNECTED;
+        cancelAll(link);
+        if (link.listener != null) {
+            link.listener.onStateChanged(link, State.DISCONNECTED);
+        }
+        dispatch();
+    }
+
+    public void closeAll() {
+        while (!links.isEmpty()) {
+            close(links.get(links.size() - 1));
+        }
+    }
+
+    // Requests in flight across all links
+    public int getInFlightCount() {
+        return inFlight;
+    }
+
+    public int getMaxInFlightCount() {
+        return maxInFlight;
+    }
+
+    // Operations waiting or in flight across all links
+    public int getDepth() {
+        int depth = 0;
+        for (int i = 0; i < links.size(); i++) {
+            depth += links.get(i).getDepth();
+        }
+        return depth;
+    }
+
+    private void setState(Link link, State state) {
+        link.state = state;
+        if (link.listener != null) {
+            link.listener.onStateChanged(link, state);
+        }
+    }
+
+    // Hands free slots to links with a backlog, starting after the link served last
+    private void dispatch() {
+        if (dispatching) {
+            // Operations completing synchronously re-enter here; the outer loop picks up their slot
+            return;
+        }
+        dispatching = true;
+        try {
+            while (inFlight < maxConcurrentOperations) {
+                Link link = nextReady();
+                if (link == null) {
+                    break;
+                }
+                grant(link, link.backlog.pollFirst());
+            }
+        } finally {
+            dispatching = false;
+        }
+    }
+
+    private Link nextReady() {
+        int count = links.size();
+        for (int i = 0; i < count; i++) {
+            int index = (cursor + i) % count;
+            Link link = links.get(index);
+            if (link.state == State.CONNECTED && !link.granted && !link.backlog.isEmpty()) {
+                cursor = (index + 1) % count;
+                return link;
+            }
+        }
+        return null;
+    }
+
+    private void grant(final Link link, GattOperation operation) {
+        final GattOperation.Callback callback = operation.getCallback();
+        link.granted = true;
+        link.grantedCount++;
+        inFlight++;
+        maxInFlight = Math.max(maxInFlight, inFlight);
+
+        // Release the slot before the issuer's callback runs so it can queue follow-ups right away
+        operation.setCallback((op, status) -> {
+            op.setCallback(callback);
+            link.granted = false;
+            inFlight--;
+            if (callback != null) {
+                callback.onComplete(op, status);
+            }
+            if (link.listener != null) {
+                link.listener.onOperationComplete(link, op, status);
+            }
+            dispatch();
+        });
+        link.queue.add(operation);
+    }
+}
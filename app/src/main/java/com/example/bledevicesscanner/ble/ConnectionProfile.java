@@ -0,0 +1,57 @@
+package com.example.bledevicesscanner.ble;
+
+/**
+ * Link tuning applied right after a connection is established: the ATT MTU to negotiate
+ * and the connection priority to request.
+ */
+public enum ConnectionProfile {
+    // Android's default interval (30-50 ms) with an MTU that fits one LE data length extended packet
+    BALANCED(247, ConnectionProfile.PRIORITY_BALANCED, 45),
+    // Shortest interval (11.25-15 ms) and the largest MTU Android supports
+    HIGH_THROUGHPUT(517, ConnectionProfile.PRIORITY_HIGH, 15),
+    // Long interval (100-125 ms) and the default MTU, so no exchange is performed at all
+    LOW_POWER(ConnectionProfile.DEFAULT_MTU, ConnectionProfile.PRIORITY_LOW_POWER, 120);
+
+    public static final int DEFAULT_MTU = 23;
+    public static final int MAX_MTU = 517;
+    // ATT notification and write headers take 3 bytes of every MTU
+    public static final int ATT_HEADER_SIZE = 3;
+
+    // Same values as BluetoothGatt.CONNECTION_PRIORITY_*, kept here so the enum stays plain Java
+    static final int PRIORITY_BALANCED = 0;
+    static final int PRIORITY_HIGH = 1;
+    static final int PRIORITY_LOW_POWER = 2;
+
+    private final int mtu;
+    private final int connectionPriority;
+    private final int connectionIntervalMs;
+
+    ConnectionProfile(int mtu, int connectionPriority, int connectionIntervalMs) {
+        this.mtu = mtu;
+        this.connectionPriority = connectionPriority;
+        this.connectionIntervalMs = connectionIntervalMs;
+    }
+
+    // MTU to request; DEFAULT_MTU means the exchange is skipped
+    public int getMtu() {
+        return mtu;
+    }
+
+    public boolean requestsMtu() {
+        return mtu > DEFAULT_MTU;
+    }
+
+    public int getConnectionPriority() {
+        return connectionPriority;
+    }
+
+    // Typical connection interval the stack picks for the priority, used by the simulator
+    public int getConnectionIntervalMs() {
+        return connectionIntervalMs;
+    }
+
+    // Largest value that fits a single notification or write without response at the given MTU
+    public static int payloadSizeFor(int mtu) {
+        return mtu - ATT_HEADER_SIZE;
+    }
+}
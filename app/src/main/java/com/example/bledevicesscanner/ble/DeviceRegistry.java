@@ -0,0 +1,239 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Bounded registry of recently seen devices keyed by packed MAC address.
+ *
+ * Entries live in preallocated slots linked into an LRU list ordered by last-seen time,
+ * so touching a device on every advertisement is O(1) and the memory footprint is fixed
+ * by the capacity no matter how many distinct addresses are observed. Entries are evicted
+ * when the registry is full (least recently seen first) or when they have not been seen
+ * for longer than the TTL, see {@link #evictExpired(long)}.
+ *
+ * Not thread-safe; BleManager confines it to the thread that receives scan results.
+ */
+public class DeviceRegistry<T> {
+    private static final int NONE = -1;
+
+    public enum EvictionReason {
+        EXPIRED,
+        CAPACITY
+    }
+
+    public interface EvictionListener<T> {
+        void onEvicted(long key, T value, EvictionReason reason);
+    }
+
+    private final int capacity;
+    private final long ttlMs;
+    private final LongIntHashMap index;
+
+    private final long[] keys;
+    private final Object[] values;
+    private final long[] lastSeen;
+    private final int[] prev;
+    private final int[] next;
+
+    // Most and least recently seen slots
+    private int head = NONE;
+    private int tail = NONE;
+    private int freeHead;
+    private int size;
+    private long evictionCount;
+
+    private EvictionListener<T> evictionListener;
+
+    public DeviceRegistry(int capacity, long ttlMs) {
+        if (capacity <= 0 || ttlMs <= 0) {
+            throw new IllegalArgumentException("Capacity and TTL must be positive");
+        }
+        this.capacity = capacity;
+        this.ttlMs = ttlMs;
+        this.index = new LongIntHashMap(capacity);
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.lastSeen = new long[capacity];
+        this.prev = new int[capacity];
+        this.next = new int[capacity];
+        resetSlots();
+    }
+
+    public void setEvictionListener(EvictionListener<T> evictionListener) {
+        this.evictionListener = evictionListener;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * Stores value for key and marks it as seen at nowMs, evicting the least recently
+     * seen entry first if a new key arrives while the registry is full.
+     *
+     * @return true if the key was not present before
+     */
+    public boolean touch(long key, T value, long nowMs) {
+        int slot = index.get(key, NONE);
+        if (slot != NONE) {
+            values[slot] = value;
+            lastSeen[slot] = nowMs;
+            moveToHead(slot);
+            return false;
+        }
+
+        if (size == capacity) {
+            evict(tail, EvictionReason.CAPACITY);
+        }
+        slot = freeHead;
+        freeHead = next[slot];
+        keys[slot] = key;
+        values[slot] = value;
+        lastSeen[slot] = nowMs;
+        linkAtHead(slot);
+        index.put(key, slot, NONE);
+        size++;
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(long key) {
+        int slot = index.get(key, NONE);
+        return slot == NONE ? null : (T) values[slot];
+    }
+
+    public boolean contains(long key) {
+        return index.containsKey(key);
+    }
+
+    // Last time key was touched, or -1 if it is not registered
+    public long getLastSeen(long key) {
+        int slot = index.get(key, NONE);
+        return slot == NONE ? -1 : lastSeen[slot];
+    }
+
+    // The current values in a new list, most recently seen first
+    @SuppressWarnings("unchecked")
+    public List<T> snapshot() {
+        List<T> snapshot = new ArrayList<>(size);
+        for (int slot = head; slot != NONE; slot = next[slot]) {
+            snapshot.add((T) values[slot]);
+        }
+        return snapshot;
+    }
+
+    // Removes key without notifying the eviction listener
+    @SuppressWarnings("unchecked")
+    public T remove(long key) {
+        int slot = index.remove(key, NONE);
+        if (slot == NONE) {
+            return null;
+        }
+        T value = (T) values[slot];
+        release(slot);
+        return value;
+    }
+
+    /**
+     * Evicts every entry that has not been seen for longer than the TTL. Only expired
+     * entries are visited since they sit at the tail of the LRU list.
+     *
+     * @return number of evicted entries
+     */
+    public int evictExpired(long nowMs) {
+        int evicted = 0;
+        while (tail != NONE && nowMs - lastSeen[tail] > ttlMs) {
+            evict(tail, EvictionReason.EXPIRED);
+            evicted++;
+        }
+        return evicted;
+    }
+
+    // Drops every entry without notifying the eviction listener
+    public void clear() {
+        index.clear();
+        Arrays.fill(values, null);
+        resetSlots();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void evict(int slot, EvictionReason reason) {
+        long key = keys[slot];
+        T value = (T) values[slot];
+        index.remove(key, NONE);
+        release(slot);
+        evictionCount++;
+        if (evictionListener != null) {
+            evictionListener.onEvicted(key, value, reason);
+        }
+    }
+
+    private void release(int slot) {
+        unlink(slot);
+        values[slot] = null;
+        next[slot] = freeHead;
+        freeHead = slot;
+        size--;
+    }
+
+    private void moveToHead(int slot) {
+        if (slot != head) {
+            unlink(slot);
+            linkAtHead(slot);
+        }
+    }
+
+    private void linkAtHead(int slot) {
+        prev[slot] = NONE;
+        next[slot] = head;
+        if (head != NONE) {
+            prev[head] = slot;
+        }
+        head = slot;
+        if (tail == NONE) {
+            tail = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p != NONE) {
+            next[p] = n;
+        } else {
+            head = n;
+        }
+        if (n != NONE) {
+            prev[n] = p;
+        } else {
+            tail = p;
+        }
+    }
+
+    private void resetSlots() {
+        head = NONE;
+        tail = NONE;
+        size = 0;
+        // Chain every slot into the free list through next[]
+        for (int i = 0; i < capacity; i++) {
+            next[i] = i + 1 < capacity ? i + 1 : NONE;
+        }
+        freeHead = 0;
+    }
+}
@@ -0,0 +1,305 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.util.LatencyRecorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Attribute tables of previously connected devices, keyed by packed MAC address and
+ * tagged with the table's database hash. A cached table can be shown as soon as a device
+ * connects; once discovery has run, {@link #validate(Entry)} compares the fresh table with
+ * the cached one and replaces it if the device changed its database.
+ *
+ * The hash is the value of the Database Hash characteristic (0x2B2A) when the device has
+ * one, otherwise a fingerprint of the table itself, see {@link #fingerprint(List)}.
+ * Entries are immutable and can be handed to another thread for persisting. The cache
+ * itself is not thread-safe and has no Android dependencies.
+ */
+public class GattCache {
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+    public static final UUID DATABASE_HASH_UUID = UUID.fromString("00002b2a-0000-1000-8000-00805f9b34fb");
+
+    private static final int FILE_MAGIC = 0x47415454; // "GATT"
+    private static final int FILE_VERSION = 1;
+    private static final int TIME_TO_FIRST_CHARACTERISTIC_SAMPLES = 128;
+
+    public static class CharacteristicRecord {
+        private final UUID serviceUuid;
+        private final UUID uuid;
+        private final int properties;
+        private final int permissions;
+
+        public CharacteristicRecord(UUID serviceUuid, UUID uuid, int properties, int permissions) {
+            this.serviceUuid = serviceUuid;
+            this.uuid = uuid;
+            this.properties = properties;
+            this.permissions = permissions;
+        }
+
+        public UUID getServiceUuid() {
+            return serviceUuid;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        public int getProperties() {
+            return properties;
+        }
+
+        public int getPermissions() {
+            return permissions;
+        }
+
+        boolean sameAs(CharacteristicRecord other) {
+            return properties == other.properties && permissions == other.permissions
+                    && uuid.equals(other.uuid) && serviceUuid.equals(other.serviceUuid);
+        }
+    }
+
+    public static class Entry {
+        private final long address;
+        private final byte[] hash;
+        private final List<CharacteristicRecord> characteristics;
+
+        public Entry(long address, byte[] hash, List<CharacteristicRecord> characteristics) {
+            this.address = address;
+            this.hash = hash.clone();
+            this.characteristics = Collections.unmodifiableList(new ArrayList<>(characteristics));
+        }
+
+        public long getAddress() {
+            return address;
+        }
+
+        public byte[] getHash() {
+            return hash.clone();
+        }
+
+        // Characteristics in discovery order
+        public List<CharacteristicRecord> getCharacteristics() {
+            return characteristics;
+        }
+
+        // Same database hash and the same characteristics in the same order
+        public boolean matches(Entry other) {
+            if (!Arrays.equals(hash, other.hash) || characteristics.size() != other.characteristics.size()) {
+                return false;
+            }
+            for (int i = 0; i < characteristics.size(); i++) {
+                if (!characteristics.get(i).sameAs(other.characteristics.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final Map<Long, Entry> entries;
+    private final LatencyRecorder timeToFirstCharacteristicCached = new LatencyRecorder(TIME_TO_FIRST_CHARACTERISTIC_SAMPLES);
+    private final LatencyRecorder timeToFirstCharacteristicDiscovered = new LatencyRecorder(TIME_TO_FIRST_CHARACTERISTIC_SAMPLES);
+
+    private long hitCount;
+    private long missCount;
+    private long invalidationCount;
+
+    public GattCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public GattCache(final int maxEntries) {
+        // Access order, so the least recently connected device is dropped first
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public Entry get(long address) {
+        return entries.get(address);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Checks a freshly discovered table against the cached one and stores it if they differ.
+     *
+     * @return true if the cached table was still valid
+     */
+    public boolean validate(Entry discovered) {
+        Entry cached = entries.get(discovered.address);
+        if (cached != null && cached.matches(discovered)) {
+            hitCount++;
+            return true;
+        }
+        missCount++;
+        if (cached != null) {
+            invalidationCount++;
+        }
+        entries.put(discovered.address, discovered);
+        return false;
+    }
+
+    // Drops the table of a device that reported Service Changed
+    public void invalidate(long address) {
+        if (entries.remove(address) != null) {
+            invalidationCount++;
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    // Adds entries read from storage without replacing tables learned since
+    public void merge(List<Entry> loaded) {
+        for (Entry entry : loaded) {
+            if (!entries.containsKey(entry.address)) {
+                entries.put(entry.address, entry);
+            }
+        }
+    }
+
+    // Entries from least to most recently used, safe to persist on another thread
+    public List<Entry> snapshot() {
+        return new ArrayList<>(entries.values());
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    // Share of validated connections whose cached table was still valid
+    public double getHitRate() {
+        long total = hitCount + missCount;
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    // Time from the connect request until the characteristics were first shown
+    public void recordTimeToFirstCharacteristic(long elapsedMs, boolean fromCache) {
+        (fromCache ? timeToFirstCharacteristicCached : timeToFirstCharacteristicDiscovered).record(elapsedMs);
+    }
+
+    public LatencyRecorder getTimeToFirstCharacteristic(boolean fromCache) {
+        return fromCache ? timeToFirstCharacteristicCached : timeToFirstCharacteristicDiscovered;
+    }
+
+    // 64-bit FNV-1a over the table, used as the hash of devices without a Database Hash characteristic
+    public static byte[] fingerprint(List<CharacteristicRecord> characteristics) {
+        long hash = 0xcbf29ce484222325L;
+        for (CharacteristicRecord record : characteristics) {
+            hash = fnv(hash, record.serviceUuid.getMostSignificantBits());
+            hash = fnv(hash, record.serviceUuid.getLeastSignificantBits());
+            hash = fnv(hash, record.uuid.getMostSignificantBits());
+            hash = fnv(hash, record.uuid.getLeastSignificantBits());
+            hash = fnv(hash, ((long) record.properties << 32) | (record.permissions & 0xFFFFFFFFL));
+        }
+        byte[] bytes = new byte[8];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (hash >>> (56 - i * 8));
+        }
+        return bytes;
+    }
+
+    private static long fnv(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash ^= (value >>> (i * 8)) & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Writes the entries to a temporary file and renames it over the target
+    public static void write(File file, List<Entry> entries) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                out.writeLong(entry.address);
+                out.writeShort(entry.hash.length);
+                out.write(entry.hash);
+                out.writeShort(entry.characteristics.size());
+                for (CharacteristicRecord record : entry.characteristics) {
+                    writeUuid(out, record.serviceUuid);
+                    writeUuid(out, record.uuid);
+                    out.writeInt(record.properties);
+                    out.writeInt(record.permissions);
+                }
+            }
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /**
+     * Reads entries written by {@link #write(File, List)}.
+     *
+     * @return the entries, or an empty list if the file does not exist
+     * @throws IOException if the file is unreadable or was written by another version
+     */
+    public static List<Entry> read(File file) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        if (!file.exists()) {
+            return entries;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Unsupported GATT cache file " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long address = in.readLong();
+                byte[] hash = new byte[in.readUnsignedShort()];
+                in.readFully(hash);
+                int characteristicCount = in.readUnsignedShort();
+                List<CharacteristicRecord> characteristics = new ArrayList<>(characteristicCount);
+                for (int j = 0; j < characteristicCount; j++) {
+                    UUID serviceUuid = readUuid(in);
+                    UUID uuid = readUuid(in);
+                    characteristics.add(new CharacteristicRecord(serviceUuid, uuid, in.readInt(), in.readInt()));
+                }
+                entries.add(new Entry(address, hash, characteristics));
+            }
+        }
+        return entries;
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
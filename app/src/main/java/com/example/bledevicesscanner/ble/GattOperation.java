@@ -0,0 +1,227 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.UUID;
+
+/**
+ * A single GATT request waiting in or executed by a {@link GattOperationQueue}.
+ *
+ * Targets are identified by UUIDs rather than Android GATT objects so operations can be
+ * created and executed against any {@link GattTransport}.
+ */
+public class GattOperation {
+    public static final int STATUS_SUCCESS = 0;
+    // Negative statuses never come from the stack
+    public static final int STATUS_TIMEOUT = -1;
+    public static final int STATUS_NOT_STARTED = -2;
+    public static final int STATUS_CANCELLED = -3;
+
+    public enum Type {
+        READ_CHARACTERISTIC,
+        WRITE_CHARACTERISTIC,
+        WRITE_DESCRIPTOR,
+        REQUEST_MTU,
+        SET_NOTIFICATION,
+        DISCOVER_SERVICES
+    }
+
+    public interface Callback {
+        // Called once per operation, on the queue's thread
+        void onComplete(GattOperation operation, int status);
+    }
+
+    private final Type type;
+    private final UUID serviceUuid;
+    private final UUID characteristicUuid;
+    private final UUID descriptorUuid;
+    private byte[] value;
+    private int mtu;
+    private boolean enable;
+    private boolean indicate;
+    private boolean withoutResponse;
+    private Callback callback;
+
+    // Per-operation overrides of the queue defaults, negative means "use the default"
+    private long timeoutMs = -1;
+    private int maxRetries = -1;
+
+    private int attempts;
+    private long enqueuedAt;
+    private long firstStartedAt;
+    private long startedAt;
+    private long completedAt;
+    private int status = STATUS_NOT_STARTED;
+
+    private GattOperation(Type type, UUID serviceUuid, UUID characteristicUuid, UUID descriptorUuid) {
+        this.type = type;
+        this.serviceUuid = serviceUuid;
+        this.characteristicUuid = characteristicUuid;
+        this.descriptorUuid = descriptorUuid;
+    }
+
+    public static GattOperation read(UUID serviceUuid, UUID characteristicUuid) {
+        return new GattOperation(Type.READ_CHARACTERISTIC, serviceUuid, characteristicUuid, null);
+    }
+
+    public static GattOperation write(UUID serviceUuid, UUID characteristicUuid, byte[] value, boolean withoutResponse) {
+        GattOperation operation = new GattOperation(Type.WRITE_CHARACTERISTIC, serviceUuid, characteristicUuid, null);
+        operation.value = value;
+        operation.withoutResponse = withoutResponse;
+        return operation;
+    }
+
+    public static GattOperation writeDescriptor(UUID serviceUuid, UUID characteristicUuid, UUID descriptorUuid, byte[] value) {
+        GattOperation operation = new GattOperation(Type.WRITE_DESCRIPTOR, serviceUuid, characteristicUuid, descriptorUuid);
+        operation.value = value;
+        return operation;
+    }
+
+    public static GattOperation requestMtu(int mtu) {
+        GattOperation operation = new GattOperation(Type.REQUEST_MTU, null, null, null);
+        operation.mtu = mtu;
+        return operation;
+    }
+
+    // Discovers the attribute table; the result arrives through the transport's onServicesDiscovered
+    public static GattOperation discoverServices() {
+        return new GattOperation(Type.DISCOVER_SERVICES, null, null, null);
+    }
+
+    // Enables or disables notifications (or indications) including the CCCD write
+    public static GattOperation setNotification(UUID serviceUuid, UUID characteristicUuid, boolean enable, boolean indicate) {
+        GattOperation operation = new GattOperation(Type.SET_NOTIFICATION, serviceUuid, characteristicUuid, null);
+        operation.enable = enable;
+        operation.indicate = indicate;
+        return operation;
+    }
+
+    public GattOperation setCallback(Callback callback) {
+        this.callback = callback;
+        return this;
+    }
+
+    public GattOperation setTimeout(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    public GattOperation setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public UUID getServiceUuid() {
+        return serviceUuid;
+    }
+
+    public UUID getCharacteristicUuid() {
+        return characteristicUuid;
+    }
+
+    public UUID getDescriptorUuid() {
+        return descriptorUuid;
+    }
+
+    // Value to write, or the value read once a read has completed
+    public byte[] getValue() {
+        return value;
+    }
+
+    // Requested MTU, or the negotiated MTU once the request has completed
+    public int getMtu() {
+        return mtu;
+    }
+
+    public boolean isEnable() {
+        return enable;
+    }
+
+    public boolean isIndicate() {
+        return indicate;
+    }
+
+    public boolean isWithoutResponse() {
+        return withoutResponse;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public boolean isSuccess() {
+        return status == STATUS_SUCCESS;
+    }
+
+    // Number of times the operation was started, including retries
+    public int getAttempts() {
+        return attempts;
+    }
+
+    // Time spent waiting in the queue before the first attempt
+    public long getQueueTimeMs() {
+        return firstStartedAt - enqueuedAt;
+    }
+
+    // Time from enqueue to completion
+    public long getLatencyMs() {
+        return completedAt - enqueuedAt;
+    }
+
+    // Time from the last attempt being started to its completion
+    public long getExecutionTimeMs() {
+        return completedAt - startedAt;
+    }
+
+    Callback getCallback() {
+        return callback;
+    }
+
+    long getTimeoutMs(long defaultTimeoutMs) {
+        return timeoutMs >= 0 ? timeoutMs : defaultTimeoutMs;
+    }
+
+    int getMaxRetries(int defaultMaxRetries) {
+        return maxRetries >= 0 ? maxRetries : defaultMaxRetries;
+    }
+
+    void markEnqueued(long now) {
+        enqueuedAt = now;
+    }
+
+    void markStarted(long now) {
+        if (attempts == 0) {
+            firstStartedAt = now;
+        }
+        startedAt = now;
+        attempts++;
+    }
+
+    void complete(int status, byte[] value, int mtu, long now) {
+        this.status = status;
+        this.completedAt = now;
+        if (value != null) {
+            this.value = value;
+        }
+        if (mtu > 0) {
+            this.mtu = mtu;
+        }
+    }
+
+    // Completes an operation that never reached a queue, e.g. one cancelled or rejected before it started
+    void fail(int status, long now) {
+        complete(status, null, 0, now);
+        if (callback != null) {
+            callback.onComplete(this, status);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + (characteristicUuid != null ? " " + characteristicUuid : "")
+                + (descriptorUuid != null ? "/" + descriptorUuid : "")
+                + (type == Type.REQUEST_MTU ? " " + mtu : "");
+    }
+}
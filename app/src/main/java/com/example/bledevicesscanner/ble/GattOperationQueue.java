@@ -0,0 +1,249 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+/**
+ * Serializes GATT operations on one connection. Android only allows a single outstanding
+ * GATT request per connection and silently drops the rest, so operations are queued and
+ * the next one is started as soon as the previous one completes, times out or fails.
+ *
+ * Requests the stack refuses to start and requests that time out are retried up to the
+ * operation's retry limit. Either way the request is started again after a short delay
+ * that grows with every attempt, giving the stack time to finish whatever kept it busy.
+ * Completion callbacks from the stack are fed in through the {@code on*} methods and
+ * ignored unless they match the operation in flight, so a late callback for an operation
+ * that already timed out cannot complete the next one.
+ *
+ * Every method must be called on the thread the {@link TaskScheduler} runs tasks on. The
+ * class has no Android dependencies so it can be driven by a fake transport on the JVM.
+ */
+public class GattOperationQueue {
+    public static final long DEFAULT_TIMEOUT = 5000;
+    public static final int DEFAULT_MAX_RETRIES = 1;
+    // Wait before the first retry of a request; later retries wait a multiple of it
+    public static final long DEFAULT_RETRY_DELAY = 50;
+
+    private final GattTransport transport;
+    private final TaskScheduler scheduler;
+    private final ArrayDeque<GattOperation> pending = new ArrayDeque<>();
+    private final Runnable timeoutTask = this::onTimeout;
+    private final Runnable retryTask = this::onRetry;
+    private long defaultTimeoutMs = DEFAULT_TIMEOUT;
+    private int defaultMaxRetries = DEFAULT_MAX_RETRIES;
+    private long retryDelayMs = DEFAULT_RETRY_DELAY;
+
+    // In flight, or refused and waiting for its retry
+    private GattOperation current;
+
+    private long completedCount;
+    private long failedCount;
+    private long retryCount;
+    private long totalLatencyMs;
+    private long maxLatencyMs;
+    private int maxDepth;
+
+    public GattOperationQueue(GattTransport transport, TaskScheduler scheduler) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+    }
+
+    public void setDefaultTimeout(long timeoutMs) {
+        this.defaultTimeoutMs = timeoutMs;
+    }
+
+    public void setDefaultMaxRetries(int maxRetries) {
+        this.defaultMaxRetries = maxRetries;
+    }
+
+    public void setRetryDelay(long retryDelayMs) {
+        this.retryDelayMs = retryDelayMs;
+    }
+
+    public void enqueue(GattOperation operation) {
+        operation.markEnqueued(scheduler.now());
+        add(operation);
+    }
+
+    // Queues an operation whose enqueue time was already recorded, e.g. by a ConnectionPool
+    void add(GattOperation operation) {
+        pending.addLast(operation);
+        maxDepth = Math.max(maxDepth, getDepth());
+        if (current == null) {
+            dispatchNext();
+        }
+    }
+
+    // Fails the operation in flight and every pending one with STATUS_CANCELLED
+    public void cancelAll() {
+        scheduler.cancel(timeoutTask);
+        scheduler.cancel(retryTask);
+        GattOperation inFlight = current;
+        current = null;
+        if (inFlight != null) {
+            finish(inFlight, GattOperation.STATUS_CANCELLED, null, 0);
+        }
+        GattOperation operation;
+        while ((operation = pending.pollFirst()) != null) {
+            finish(operation, GattOperation.STATUS_CANCELLED, null, 0);
+        }
+    }
+
+    // Operations waiting plus the one in flight
+    public int getDepth() {
+        return pending.size() + (current != null ? 1 : 0);
+    }
+
+    public boolean isIdle() {
+        return current == null && pending.isEmpty();
+    }
+
+    public GattOperation getCurrentOperation() {
+        return current;
+    }
+
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    public long getRetryCount() {
+        return retryCount;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxLatencyMs() {
+        return maxLatencyMs;
+    }
+
+    // Mean enqueue-to-completion time of every finished operation
+    public double getAverageLatencyMs() {
+        long finished = completedCount + failedCount;
+        return finished == 0 ? 0 : (double) totalLatencyMs / finished;
+    }
+
+    public void onCharacteristicRead(UUID characteristicUuid, int status, byte[] value) {
+        if (matches(GattOperation.Type.READ_CHARACTERISTIC, characteristicUuid)) {
+            completeCurrent(status, value, 0);
+        }
+    }
+
+    public void onCharacteristicWrite(UUID characteristicUuid, int status) {
+        if (matches(GattOperation.Type.WRITE_CHARACTERISTIC, characteristicUuid)) {
+            completeCurrent(status, null, 0);
+        }
+    }
+
+    // Completes descriptor writes as well as notification changes, which end with the CCCD write
+    public void onDescriptorWrite(UUID characteristicUuid, UUID descriptorUuid, int status) {
+        if (matches(GattOperation.Type.WRITE_DESCRIPTOR, characteristicUuid)
+                && current.getDescriptorUuid().equals(descriptorUuid)) {
+            completeCurrent(status, null, 0);
+        } else if (matches(GattOperation.Type.SET_NOTIFICATION, characteristicUuid)) {
+            completeCurrent(status, null, 0);
+        }
+    }
+
+    public void onMtuChanged(int mtu, int status) {
+        if (current != null && current.getType() == GattOperation.Type.REQUEST_MTU) {
+            completeCurrent(status, null, mtu);
+        }
+    }
+
+    public void onServicesDiscovered(int status) {
+        if (current != null && current.getType() == GattOperation.Type.DISCOVER_SERVICES) {
+            completeCurrent(status, null, 0);
+        }
+    }
+
+    private boolean matches(GattOperation.Type type, UUID characteristicUuid) {
+        return current != null && current.getType() == type
+                && current.getCharacteristicUuid().equals(characteristicUuid);
+    }
+
+    private void dispatchNext() {
+        while (current == null && !pending.isEmpty()) {
+            current = pending.pollFirst();
+            startCurrent();
+        }
+    }
+
+    /**
+     * Starts the current operation. If the stack refuses it, the operation stays current
+     * and is tried again after the retry delay, so the operations behind it keep their
+     * order; once it is out of retries it fails and current is cleared.
+     */
+    private void startCurrent() {
+        GattOperation operation = current;
+        operation.markStarted(scheduler.now());
+        if (transport.execute(operation)) {
+            scheduler.schedule(timeoutTask, operation.getTimeoutMs(defaultTimeoutMs));
+            return;
+        }
+        if (operation.getAttempts() > operation.getMaxRetries(defaultMaxRetries)) {
+            current = null;
+            finish(operation, GattOperation.STATUS_NOT_STARTED, null, 0);
+            return;
+        }
+        scheduleRetry(operation);
+    }
+
+    // The operation stays current while it waits, so nothing overtakes it
+    private void scheduleRetry(GattOperation operation) {
+        retryCount++;
+        scheduler.schedule(retryTask, retryDelayMs * operation.getAttempts());
+    }
+
+    private void onRetry() {
+        if (current != null) {
+            startCurrent();
+        }
+        dispatchNext();
+    }
+
+    private void onTimeout() {
+        GattOperation operation = current;
+        if (operation == null) {
+            return;
+        }
+        if (operation.getAttempts() <= operation.getMaxRetries(defaultMaxRetries)) {
+            scheduleRetry(operation);
+            return;
+        }
+        current = null;
+        finish(operation, GattOperation.STATUS_TIMEOUT, null, 0);
+        dispatchNext();
+    }
+
+    private void completeCurrent(int status, byte[] value, int mtu) {
+        GattOperation operation = current;
+        current = null;
+        scheduler.cancel(timeoutTask);
+        scheduler.cancel(retryTask);
+        finish(operation, status, value, mtu);
+        dispatchNext();
+    }
+
+    private void finish(GattOperation operation, int status, byte[] value, int mtu) {
+        operation.complete(status, value, mtu, scheduler.now());
+        if (status == GattOperation.STATUS_SUCCESS) {
+            completedCount++;
+        } else {
+            failedCount++;
+        }
+        long latency = operation.getLatencyMs();
+        totalLatencyMs += latency;
+        maxLatencyMs = Math.max(maxLatencyMs, latency);
+
+        GattOperation.Callback callback = operation.getCallback();
+        if (callback != null) {
+            callback.onComplete(operation, status);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.bledevicesscanner.ble;
+
+/**
+ * Starts GATT operations on a connection. Completion is reported asynchronously by
+ * feeding the matching callback into {@link GattOperationQueue}.
+ */
+public interface GattTransport {
+    /**
+     * Starts the operation.
+     *
+     * @return false if the stack refused to start it, in which case no completion follows
+     */
+    boolean execute(GattOperation operation);
+}
@@ -0,0 +1,37 @@
+package com.example.bledevicesscanner.ble;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+/**
+ * {@link TaskScheduler} that runs tasks on a {@link Handler}'s looper. Time is
+ * {@link SystemClock#elapsedRealtime()}, the clock scan results are stamped with, so it
+ * keeps counting while the device sleeps.
+ */
+public class HandlerTaskScheduler implements TaskScheduler {
+    private final Handler handler;
+
+    public HandlerTaskScheduler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public long now() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    @Override
+    public long nowNanos() {
+        return SystemClock.elapsedRealtimeNanos();
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        handler.postDelayed(task, delayMs);
+    }
+
+    @Override
+    public void cancel(Runnable task) {
+        handler.removeCallbacks(task);
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * Thread-safe set of listeners, each notified on the executor it registered with.
+ *
+ * Registrations live in a copy-on-write list, so dispatching never locks and never sees a
+ * half-updated list, while adding or removing a listener copies the (short) list once.
+ * A listener removed while events for it are still queued on its executor does not
+ * receive them: every delivery re-checks that the registration is still active.
+ */
+public class ListenerRegistry<L> {
+
+    public interface Event<L> {
+        void deliver(L listener);
+    }
+
+    private static final class Registration<L> {
+        final L listener;
+        final Executor executor;
+        volatile boolean active = true;
+
+        Registration(L listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+    }
+
+    private final CopyOnWriteArrayList<Registration<L>> registrations = new CopyOnWriteArrayList<>();
+
+    /**
+     * Registers a listener to be notified on the given executor.
+     *
+     * @return false if the listener was already registered, in which case its executor is kept
+     */
+    public synchronized boolean add(L listener, Executor executor) {
+        if (indexOf(listener) >= 0) {
+            return false;
+        }
+        registrations.add(new Registration<>(listener, executor));
+        return true;
+    }
+
+    public synchronized boolean remove(L listener) {
+        int index = indexOf(listener);
+        if (index < 0) {
+            return false;
+        }
+        registrations.remove(index).active = false;
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (Registration<L> registration : registrations) {
+            registration.active = false;
+        }
+        registrations.clear();
+    }
+
+    public boolean isEmpty() {
+        return registrations.isEmpty();
+    }
+
+    public int size() {
+        return registrations.size();
+    }
+
+    // Hands the event to every listener registered at the time of the call
+    public void dispatch(final Event<L> event) {
+        for (final Registration<L> registration : registrations) {
+            registration.executor.execute(() -> {
+                if (registration.active) {
+                    event.deliver(registration.listener);
+                }
+            });
+        }
+    }
+
+    private int indexOf(L listener) {
+        for (int i = 0; i < registrations.size(); i++) {
+            if (registrations.get(i).listener == listener) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Preallocated single-producer/single-consumer ring of notification payloads.
+ *
+ * The producer (the GATT callback thread; Android delivers one connection's callbacks
+ * sequentially) copies each payload into a fixed slot, the consumer drains slots in
+ * order. Neither side allocates or locks. When the ring is full new samples are dropped
+ * rather than blocking the producer, and counted.
+ */
+public class NotificationRingBuffer {
+
+    public interface SampleHandler {
+        // buffer is only valid for the duration of the call
+        void onSample(byte[] buffer, int offset, int length, long timestampNanos);
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final int slotSize;
+    private final int highWatermark;
+    private final byte[] data;
+    private final int[] lengths;
+    private final long[] timestamps;
+
+    // Sequence numbers of the next slot to write and to read
+    private final AtomicLong writeSequence = new AtomicLong();
+    private final AtomicLong readSequence = new AtomicLong();
+
+    // Written by the producer only
+    private volatile long offeredCount;
+    private volatile long droppedCount;
+    private volatile long truncatedCount;
+    private volatile long backpressureCount;
+
+    // capacity is rounded up to a power of two; payloads longer than slotSize are truncated
+    public NotificationRingBuffer(int capacity, int slotSize) {
+        this.capacity = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.slotSize = slotSize;
+        this.highWatermark = this.capacity - this.capacity / 4;
+        this.data = new byte[this.capacity * slotSize];
+        this.lengths = new int[this.capacity];
+        this.timestamps = new long[this.capacity];
+    }
+
+    /**
+     * Copies a payload into the ring. Producer thread only.
+     *
+     * @return false if the ring was full and the sample was dropped
+     */
+    public boolean offer(byte[] value, long timestampNanos) {
+        offeredCount++;
+        long write = writeSequence.get();
+        long used = write - readSequence.get();
+        if (used >= capacity) {
+            droppedCount++;
+            return false;
+        }
+        if (used >= highWatermark) {
+            // The consumer is falling behind
+            backpressureCount++;
+        }
+
+        int slot = (int) (write & mask);
+        int length = value != null ? value.length : 0;
+        if (length > slotSize) {
+            length = slotSize;
+            truncatedCount++;
+        }
+        if (length > 0) {
+            System.arraycopy(value, 0, data, slot * slotSize, length);
+        }
+        lengths[slot] = length;
+        timestamps[slot] = timestampNanos;
+        // Publish the slot to the consumer
+        writeSequence.lazySet(write + 1);
+        return true;
+    }
+
+    /**
+     * Hands up to maxSamples queued samples to the handler, oldest first. Consumer thread only.
+     *
+     * @return the number of samples drained
+     */
+    public int drain(SampleHandler handler, int maxSamples) {
+        long read = readSequence.get();
+        long available = writeSequence.get() - read;
+        int count = (int) Math.min(available, maxSamples);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((read + i) & mask);
+            handler.onSample(data, slot * slotSize, lengths[slot], timestamps[slot]);
+        }
+        // Release the slots back to the producer
+        readSequence.lazySet(read + count);
+        return count;
+    }
+
+    public int size() {
+        return (int) (writeSequence.get() - readSequence.get());
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSlotSize() {
+        return slotSize;
+    }
+
+    public long getOfferedCount() {
+        return offeredCount;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    public long getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    // Number of samples accepted while the ring was more than three quarters full
+    public long getBackpressureCount() {
+        return backpressureCount;
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decouples high-rate notifications from the UI. Payloads for streamed characteristics
+ * are copied into a per-characteristic {@link NotificationRingBuffer} on the GATT
+ * callback thread; a sampling task running on the streamer's own scheduler drains every
+ * ring at display rate and hands only the latest sample of each characteristic to the
+ * listener, together with the number of samples it stands for.
+ *
+ * Characteristics are identified by their service and characteristic UUID, since a device
+ * may expose the same characteristic in more than one service.
+ */
+public class NotificationStreamer {
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final long DEFAULT_SAMPLE_INTERVAL = 16; // ~60 updates per second
+
+    public interface Listener {
+        // Called on the streamer's thread; value is a fresh copy the listener may keep
+        void onSample(UUID serviceUuid, UUID characteristicUuid, byte[] value, long timestampNanos, int sampleCount);
+    }
+
+    /**
+     * Ring and counters for one characteristic.
+     */
+    public static class Channel implements NotificationRingBuffer.SampleHandler {
+        private final CharacteristicKey key;
+        private final NotificationRingBuffer ring;
+        // Latest drained sample, reused between drains
+        private final byte[] latest;
+        private int latestLength;
+        private long latestTimestamp;
+        private long deliveredCount;
+
+        Channel(CharacteristicKey key, int capacity, int slotSize) {
+            this.key = key;
+            this.ring = new NotificationRingBuffer(capacity, slotSize);
+            this.latest = new byte[slotSize];
+        }
+
+        @Override
+        public void onSample(byte[] buffer, int offset, int length, long timestampNanos) {
+            System.arraycopy(buffer, offset, latest, 0, length);
+            latestLength = length;
+            latestTimestamp = timestampNanos;
+        }
+
+        public UUID getServiceUuid() {
+            return key.serviceUuid;
+        }
+
+        public UUID getCharacteristicUuid() {
+            return key.characteristicUuid;
+        }
+
+        public long getReceivedCount() {
+            return ring.getOfferedCount();
+        }
+
+        public long getDroppedCount() {
+            return ring.getDroppedCount();
+        }
+
+        public long getBackpressureCount() {
+            return ring.getBackpressureCount();
+        }
+
+        // Samples handed to the listener, at most one per sampling interval
+        public long getDeliveredCount() {
+            return deliveredCount;
+        }
+
+        public int getQueuedCount() {
+            return ring.size();
+        }
+    }
+
+    private final TaskScheduler scheduler;
+    private final Listener listener;
+    private final Map<CharacteristicKey, Channel> channels = new ConcurrentHashMap<>();
+    private final Runnable sampleTask = this::sample;
+    private final long sampleIntervalMs;
+    private boolean sampling;
+
+    public NotificationStreamer(TaskScheduler scheduler, long sampleIntervalMs, Listener listener) {
+        this.scheduler = scheduler;
+        this.sampleIntervalMs = sampleIntervalMs;
+        this.listener = listener;
+    }
+
+    // Starts streaming a characteristic; call on the streamer's thread
+    public Channel start(UUID serviceUuid, UUID characteristicUuid, int slotSize) {
+        CharacteristicKey key = new CharacteristicKey(serviceUuid, characteristicUuid);
+        Channel channel = channels.get(key);
+        if (channel == null) {
+            channel = new Channel(key, DEFAULT_CAPACITY, slotSize);
+            channels.put(key, channel);
+        }
+        if (!sampling) {
+            sampling = true;
+            scheduler.schedule(sampleTask, sampleIntervalMs);
+        }
+        return channel;
+    }
+
+    // Stops streaming a characteristic; call on the streamer's thread
+    public void stop(UUID serviceUuid, UUID characteristicUuid) {
+        channels.remove(new CharacteristicKey(serviceUuid, characteristicUuid));
+    }
+
+    public void stopAll() {
+        channels.clear();
+        sampling = false;
+        scheduler.cancel(sampleTask);
+    }
+
+    public boolean isStreaming(UUID serviceUuid, UUID characteristicUuid) {
+        return channels.containsKey(new CharacteristicKey(serviceUuid, characteristicUuid));
+    }
+
+    public Channel getChannel(UUID serviceUuid, UUID characteristicUuid) {
+        return channels.get(new CharacteristicKey(serviceUuid, characteristicUuid));
+    }
+
+    /**
+     * Queues a notification payload. Called on the GATT callback thread.
+     *
+     * @return false if the characteristic is not being streamed, so the caller should
+     * handle the notification itself
+     */
+    public boolean offer(UUID serviceUuid, UUID characteristicUuid, byte[] value, long timestampNanos) {
+        Channel channel = channels.get(new CharacteristicKey(serviceUuid, characteristicUuid));
+        if (channel == null) {
+            return false;
+        }
+        channel.ring.offer(value, timestampNanos);
+        return true;
+    }
+
+    // Drains every ring and delivers the latest sample of each channel that received any
+    void sample() {
+        for (Channel channel : channels.values()) {
+            int count = channel.ring.drain(channel, channel.ring.getCapacity());
+            if (count > 0) {
+                byte[] value = new byte[channel.latestLength];
+                System.arraycopy(channel.latest, 0, value, 0, channel.latestLength);
+                channel.deliveredCount++;
+                listener.onSample(channel.key.serviceUuid, channel.key.characteristicUuid, value,
+                        channel.latestTimestamp, count);
+            }
+        }
+        if (channels.isEmpty()) {
+            sampling = false;
+        } else {
+            scheduler.schedule(sampleTask, sampleIntervalMs);
+        }
+    }
+}
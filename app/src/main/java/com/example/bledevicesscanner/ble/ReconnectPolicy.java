@@ -0,0 +1,69 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.Random;
+
+/**
+ * Backoff schedule for reconnect attempts: the delay before attempt n grows as
+ * {@code initialDelay * multiplier^n} up to {@code maxDelay}, and a random part of it is
+ * jittered away so devices that dropped together do not all retry in lockstep.
+ */
+public class ReconnectPolicy {
+    public static final long DEFAULT_INITIAL_DELAY = 250;
+    public static final long DEFAULT_MAX_DELAY = 30000;
+    public static final double DEFAULT_MULTIPLIER = 2.0;
+    public static final double DEFAULT_JITTER = 0.5;
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+
+    private long initialDelayMs = DEFAULT_INITIAL_DELAY;
+    private long maxDelayMs = DEFAULT_MAX_DELAY;
+    private double multiplier = DEFAULT_MULTIPLIER;
+    private double jitter = DEFAULT_JITTER;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+    public ReconnectPolicy setInitialDelay(long initialDelayMs) {
+        this.initialDelayMs = initialDelayMs;
+        return this;
+    }
+
+    public ReconnectPolicy setMaxDelay(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+        return this;
+    }
+
+    public ReconnectPolicy setMultiplier(double multiplier) {
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    // Fraction of each delay that is randomized, 0 for none and 1 for full jitter
+    public ReconnectPolicy setJitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1: " + jitter);
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    // Attempts per outage before giving up
+    public ReconnectPolicy setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+        return this;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    // Delay without jitter before the given attempt, counting from 0
+    public long getBaseDelay(int attempt) {
+        double delay = initialDelayMs * Math.pow(multiplier, attempt);
+        return (long) Math.min(delay, maxDelayMs);
+    }
+
+    // Delay before the given attempt, counting from 0, drawn from [base * (1 - jitter), base]
+    public long getDelay(int attempt, Random random) {
+        long base = getBaseDelay(attempt);
+        long jittered = (long) (base * jitter * random.nextDouble());
+        return base - jittered;
+    }
+}
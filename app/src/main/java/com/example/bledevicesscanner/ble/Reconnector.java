@@ -0,0 +1,147 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.util.LatencyRecorder;
+
+import java.util.Random;
+
+/**
+ * Brings a dropped connection back without user involvement. After a loss, attempts are
+ * scheduled according to a {@link ReconnectPolicy} and gated by a {@link CircuitBreaker}
+ * that outlives single outages, so a device that keeps failing is left alone for a while.
+ * The time from the loss to the link being back up is recorded for every outage.
+ *
+ * The owner reports connection events through {@link #onConnectionLost(Target)},
+ * {@link #onAttemptFailed()} and {@link #onConnected()}. Every method must be called on
+ * the thread the {@link TaskScheduler} runs tasks on; there are no Android dependencies.
+ */
+public class Reconnector {
+    private static final int TIME_TO_RECONNECT_SAMPLES = 256;
+
+    public interface Target {
+        // Starts a connection attempt; false if it could not even be started
+        boolean connect();
+    }
+
+    public interface Listener {
+        // attempt counts from 1 within the current outage
+        void onReconnectScheduled(int attempt, long delayMs);
+
+        void onReconnected(int attempts, long downtimeMs);
+
+        void onGaveUp(int attempts);
+    }
+
+    private final TaskScheduler scheduler;
+    private final ReconnectPolicy policy;
+    private final CircuitBreaker circuitBreaker;
+    private final Random random;
+    private final Listener listener;
+    private final LatencyRecorder timeToReconnect = new LatencyRecorder(TIME_TO_RECONNECT_SAMPLES);
+    private final Runnable attemptTask = this::attempt;
+
+    private Target target;
+    private boolean active;
+    private long lostAt;
+    private int attempts;
+    private long givenUpCount;
+
+    public Reconnector(TaskScheduler scheduler, ReconnectPolicy policy, CircuitBreaker circuitBreaker,
+                       Random random, Listener listener) {
+        this.scheduler = scheduler;
+        this.policy = policy;
+        this.circuitBreaker = circuitBreaker;
+        this.random = random;
+        this.listener = listener;
+    }
+
+    // Starts reconnecting to target; a loss reported while already reconnecting counts as a failed attempt
+    public void onConnectionLost(Target target) {
+        if (active) {
+            onAttemptFailed();
+            return;
+        }
+        this.target = target;
+        active = true;
+        lostAt = scheduler.now();
+        attempts = 0;
+        scheduleNext();
+    }
+
+    public void onAttemptFailed() {
+        if (!active) {
+            return;
+        }
+        circuitBreaker.recordFailure(scheduler.now());
+        scheduleNext();
+    }
+
+    // Reports that the link is up, ending the current outage if there is one
+    public void onConnected() {
+        circuitBreaker.recordSuccess();
+        if (!active) {
+            return;
+        }
+        long downtime = scheduler.now() - lostAt;
+        timeToReconnect.record(downtime);
+        active = false;
+        target = null;
+        listener.onReconnected(attempts, downtime);
+    }
+
+    // Stops reconnecting, e.g. because the user disconnected or picked another device
+    public void cancel() {
+        scheduler.cancel(attemptTask);
+        active = false;
+        target = null;
+    }
+
+    public boolean isReconnecting() {
+        return active;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getGivenUpCount() {
+        return givenUpCount;
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    // Loss-to-connected time of every outage that ended in a reconnect
+    public LatencyRecorder getTimeToReconnect() {
+        return timeToReconnect;
+    }
+
+    private void scheduleNext() {
+        if (attempts >= policy.getMaxAttempts()) {
+            active = false;
+            target = null;
+            givenUpCount++;
+            listener.onGaveUp(attempts);
+            return;
+        }
+        long now = scheduler.now();
+        long delay = Math.max(policy.getDelay(attempts, random), circuitBreaker.getRemainingOpenTime(now));
+        attempts++;
+        scheduler.schedule(attemptTask, delay);
+        listener.onReconnectScheduled(attempts, delay);
+    }
+
+    private void attempt() {
+        if (!active) {
+            return;
+        }
+        long now = scheduler.now();
+        if (!circuitBreaker.allowsAttempt(now)) {
+            scheduler.schedule(attemptTask, circuitBreaker.getRemainingOpenTime(now));
+            return;
+        }
+        if (!target.connect()) {
+            onAttemptFailed();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces scan results per device address so that listeners receive at most one
+ * batch of changed devices per frame window instead of one call per advertisement.
+ *
+ * The class does not schedule anything itself: {@link #offer(String, Object)} reports
+ * when a new batch has been opened and the owner is expected to call {@link #drain()}
+ * once the window has elapsed. This keeps the core free of Android dependencies so it
+ * can be driven directly with synthetic scan streams.
+ */
+public class ScanBatcher<T> {
+    private final long windowMs;
+    private final Map<String, T> pending = new LinkedHashMap<>();
+
+    private long inputCount;
+    private long outputCount;
+    private long batchCount;
+
+    public ScanBatcher(long windowMs) {
+        if (windowMs <= 0) {
+            throw new IllegalArgumentException("Window must be positive: " + windowMs);
+        }
+        this.windowMs = windowMs;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Records a scan result, replacing any result already pending for the same address.
+     *
+     * @return true if this result opened a new batch and a drain should be scheduled
+     * {@link #getWindowMs()} from now
+     */
+    public synchronized boolean offer(String address, T result) {
+        inputCount++;
+        boolean opened = pending.isEmpty();
+        pending.put(address, result);
+        return opened;
+    }
+
+    // Remove and return the latest result for every address seen since the last drain
+    public synchronized List<T> drain() {
+        if (pending.isEmpty()) {
+            return new ArrayList<>(0);
+        }
+        List<T> batch = new ArrayList<>(pending.values());
+        pending.clear();
+        outputCount += batch.size();
+        batchCount++;
+        return batch;
+    }
+
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    public synchronized long getInputCount() {
+        return inputCount;
+    }
+
+    public synchronized long getOutputCount() {
+        return outputCount;
+    }
+
+    public synchronized long getBatchCount() {
+        return batchCount;
+    }
+
+    // Number of scan results received for every device update delivered to listeners
+    public synchronized double getReductionRatio() {
+        return outputCount == 0 ? 0 : (double) inputCount / outputCount;
+    }
+
+    // Drop pending results and statistics, e.g. when a new scan session starts
+    public synchronized void reset() {
+        pending.clear();
+        inputCount = 0;
+        outputCount = 0;
+        batchCount = 0;
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.model.AdvertisingData;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * What to scan for and how: a set of filters plus the scan mode, report delay and match
+ * mode to run the scan with. A device matches the profile if it matches any one filter;
+ * a profile without filters matches every device.
+ *
+ * Service UUID and manufacturer data filters can be offloaded to the controller, so the
+ * host is only woken for matching advertisements. Name prefixes cannot be expressed as a
+ * platform ScanFilter and are only ever checked in software by {@link #matches}, which
+ * evaluates the same filters on a parsed advertisement and is what the scanner falls back
+ * to when the controller runs out of filter slots.
+ *
+ * A profile must not be modified once a scan has been started with it. The class has no
+ * Android dependencies.
+ */
+public class ScanProfile {
+    // Same values as ScanSettings.SCAN_MODE_*, kept here so the class stays plain Java
+    public static final int SCAN_MODE_OPPORTUNISTIC = -1;
+    public static final int SCAN_MODE_LOW_POWER = 0;
+    public static final int SCAN_MODE_BALANCED = 1;
+    public static final int SCAN_MODE_LOW_LATENCY = 2;
+
+    // Same values as ScanSettings.MATCH_MODE_*
+    public static final int MATCH_MODE_AGGRESSIVE = 1;
+    public static final int MATCH_MODE_STICKY = 2;
+
+    // Same values as ScanSettings.MATCH_NUM_*
+    public static final int MATCH_NUM_ONE_ADVERTISEMENT = 1;
+    public static final int MATCH_NUM_FEW_ADVERTISEMENT = 2;
+    public static final int MATCH_NUM_MAX_ADVERTISEMENT = 3;
+
+    public static class ManufacturerFilter {
+        private final int manufacturerId;
+        private final byte[] data;
+        private final byte[] mask;
+
+        ManufacturerFilter(int manufacturerId, byte[] data, byte[] mask) {
+            this.manufacturerId = manufacturerId;
+            this.data = data.clone();
+            this.mask = mask != null ? mask.clone() : null;
+        }
+
+        public int getManufacturerId() {
+            return manufacturerId;
+        }
+
+        public byte[] getData() {
+            return data.clone();
+        }
+
+        // Null if every bit of the data has to match
+        public byte[] getMask() {
+            return mask != null ? mask.clone() : null;
+        }
+
+        // Same rule as the platform: data must start with the masked bytes
+        boolean matches(AdvertisingData advertisingData) {
+            int index = advertisingData.indexOfManufacturer(manufacturerId);
+            if (index < 0 || advertisingData.getManufacturerDataLength(index) < data.length) {
+                return false;
+            }
+            byte[] bytes = advertisingData.getBytes();
+            int offset = advertisingData.getManufacturerDataOffset(index);
+            for (int i = 0; i < data.length; i++) {
+                int m = mask != null ? mask[i] : 0xFF;
+                if ((bytes[offset + i] & m) != (data[i] & m)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final List<UUID> serviceUuids = new ArrayList<>();
+    private final List<ManufacturerFilter> manufacturerFilters = new ArrayList<>();
+    private final List<String> namePrefixes = new ArrayList<>();
+    private int scanMode = SCAN_MODE_LOW_LATENCY;
+    private long reportDelayMs;
+    private int matchMode = MATCH_MODE_AGGRESSIVE;
+    private int numOfMatches = MATCH_NUM_MAX_ADVERTISEMENT;
+
+    // Matches devices advertising the service UUID
+    public ScanProfile addServiceUuid(UUID serviceUuid) {
+        serviceUuids.add(serviceUuid);
+        return this;
+    }
+
+    // Matches devices whose manufacturer data for the company starts with data
+    public ScanProfile addManufacturerData(int manufacturerId, byte[] data) {
+        return addManufacturerData(manufacturerId, data, null);
+    }
+
+    /**
+     * Matches devices whose manufacturer data for the company starts with data, comparing
+     * only the bits set in mask.
+     */
+    public ScanProfile addManufacturerData(int manufacturerId, byte[] data, byte[] mask) {
+        if (manufacturerId < 0 || manufacturerId > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid manufacturer id: " + manufacturerId);
+        }
+        if (mask != null && mask.length != data.length) {
+            throw new IllegalArgumentException("Mask length " + mask.length + " differs from data length " + data.length);
+        }
+        manufacturerFilters.add(new ManufacturerFilter(manufacturerId, data, mask));
+        return this;
+    }
+
+    // Matches devices whose advertised local name starts with the ASCII prefix; software only
+    public ScanProfile addNamePrefix(String prefix) {
+        namePrefixes.add(prefix);
+        return this;
+    }
+
+    public ScanProfile setScanMode(int scanMode) {
+        if (scanMode < SCAN_MODE_OPPORTUNISTIC || scanMode > SCAN_MODE_LOW_LATENCY) {
+            throw new IllegalArgumentException("Invalid scan mode: " + scanMode);
+        }
+        this.scanMode = scanMode;
+        return this;
+    }
+
+    // Results are held by the controller and delivered in batches every reportDelayMs, 0 for immediately
+    public ScanProfile setReportDelay(long reportDelayMs) {
+        if (reportDelayMs < 0) {
+            throw new IllegalArgumentException("Report delay must not be negative: " + reportDelayMs);
+        }
+        this.reportDelayMs = reportDelayMs;
+        return this;
+    }
+
+    public ScanProfile setMatchMode(int matchMode) {
+        if (matchMode != MATCH_MODE_AGGRESSIVE && matchMode != MATCH_MODE_STICKY) {
+            throw new IllegalArgumentException("Invalid match mode: " + matchMode);
+        }
+        this.matchMode = matchMode;
+        return this;
+    }
+
+    // Advertisements the controller must see before reporting a device
+    public ScanProfile setNumOfMatches(int numOfMatches) {
+        if (numOfMatches < MATCH_NUM_ONE_ADVERTISEMENT || numOfMatches > MATCH_NUM_MAX_ADVERTISEMENT) {
+            throw new IllegalArgumentException("Invalid number of matches: " + numOfMatches);
+        }
+        this.numOfMatches = numOfMatches;
+        return this;
+    }
+
+    public List<UUID> getServiceUuids() {
+        return Collections.unmodifiableList(serviceUuids);
+    }
+
+    public List<ManufacturerFilter> getManufacturerFilters() {
+        return Collections.unmodifiableList(manufacturerFilters);
+    }
+
+    public List<String> getNamePrefixes() {
+        return Collections.unmodifiableList(namePrefixes);
+    }
+
+    public int getScanMode() {
+        return scanMode;
+    }
+
+    public long getReportDelay() {
+        return reportDelayMs;
+    }
+
+    public int getMatchMode() {
+        return matchMode;
+    }
+
+    public int getNumOfMatches() {
+        return numOfMatches;
+    }
+
+    public boolean hasFilters() {
+        return !serviceUuids.isEmpty() || !manufacturerFilters.isEmpty() || !namePrefixes.isEmpty();
+    }
+
+    /**
+     * True if every filter can be handed to the controller. Platform filters are ORed
+     * together, so a single software-only filter means the controller has to report
+     * everything and the whole profile is evaluated in software.
+     */
+    public boolean canOffload() {
+        return hasFilters() && namePrefixes.isEmpty();
+    }
+
+    // Filters the controller would need a slot for
+    public int getHardwareFilterCount() {
+        return serviceUuids.size() + manufacturerFilters.size();
+    }
+
+    // Evaluates the filters in software; allocates nothing
+    public boolean matches(AdvertisingData advertisingData) {
+        if (!hasFilters()) {
+            return true;
+        }
+        if (advertisingData == null) {
+            return false;
+        }
+        for (int i = 0; i < serviceUuids.size(); i++) {
+            if (advertisingData.hasServiceUuid(serviceUuids.get(i))) {
+                return true;
+            }
+        }
+        for (int i = 0; i < manufacturerFilters.size(); i++) {
+            if (manufacturerFilters.get(i).matches(advertisingData)) {
+                return true;
+            }
+        }
+        for (int i = 0; i < namePrefixes.size(); i++) {
+            if (advertisingData.localNameStartsWith(namePrefixes.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
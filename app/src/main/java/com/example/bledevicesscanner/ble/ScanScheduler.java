@@ -0,0 +1,180 @@
+package com.example.bledevicesscanner.ble;
+
+/**
+ * Runs a scan session as a duty cycle of scan windows, e.g. 4 s on and 1 s off, for a
+ * fixed duration or until stopped. Every start of the radio goes through a
+ * {@link ScanThrottle}; a start the platform would throttle is deferred until it is
+ * allowed, which stretches the off period instead of silently losing results.
+ *
+ * All pending work is held in a few task fields and cancelled by {@link #stop()}, so a
+ * session stopped and started again right away cannot be ended by a timer left over
+ * from the previous one.
+ *
+ * Every method must be called on the thread the {@link TaskScheduler} runs tasks on, and
+ * the class has no Android dependencies, so the timing can be driven by a virtual clock.
+ */
+public class ScanScheduler {
+
+    public interface Scanner {
+        void startScan();
+
+        void stopScan();
+    }
+
+    public interface Listener {
+        // The session ran for its whole duration and the radio has been stopped
+        void onSessionFinished();
+    }
+
+    private final TaskScheduler scheduler;
+    private final ScanThrottle throttle;
+    private final Scanner scanner;
+    private final Listener listener;
+    private final Runnable windowStart = this::startWindow;
+    private final Runnable windowEnd = this::endWindow;
+    private final Runnable sessionEnd = this::endSession;
+
+    // 0 means the radio stays on for the whole session
+    private long onTimeMs;
+    private long offTimeMs;
+    // 0 means the session runs until stop()
+    private long durationMs;
+
+    private boolean running;
+    private boolean scanning;
+    private long windowCount;
+
+    public ScanScheduler(TaskScheduler scheduler, ScanThrottle throttle, Scanner scanner, Listener listener) {
+        this.scheduler = scheduler;
+        this.throttle = throttle;
+        this.scanner = scanner;
+        this.listener = listener;
+    }
+
+    /**
+     * Scan for onTimeMs, pause for offTimeMs, repeat. An onTimeMs of 0 keeps the radio on.
+     * Takes effect from the next session.
+     */
+    public void setDutyCycle(long onTimeMs, long offTimeMs) {
+        checkDutyCycle(onTimeMs, offTimeMs);
+        this.onTimeMs = onTimeMs;
+        this.offTimeMs = offTimeMs;
+    }
+
+    public static void checkDutyCycle(long onTimeMs, long offTimeMs) {
+        if (onTimeMs < 0 || offTimeMs < 0 || (onTimeMs > 0 && offTimeMs == 0)) {
+            throw new IllegalArgumentException("Invalid duty cycle " + onTimeMs + "/" + offTimeMs + " ms");
+        }
+    }
+
+    // Session length, 0 to run until stop(); takes effect from the next session
+    public void setDuration(long durationMs) {
+        if (durationMs < 0) {
+            throw new IllegalArgumentException("Duration must not be negative: " + durationMs);
+        }
+        this.durationMs = durationMs;
+    }
+
+    public long getOnTime() {
+        return onTimeMs;
+    }
+
+    public long getOffTime() {
+        return offTimeMs;
+    }
+
+    public long getDuration() {
+        return durationMs;
+    }
+
+    // Starts a session; does nothing if one is running
+    public void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        windowCount = 0;
+        if (durationMs > 0) {
+            scheduler.schedule(sessionEnd, durationMs);
+        }
+        startWindow();
+    }
+
+    // Ends the session, stopping the radio if it is on and dropping every pending timer
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.cancel(windowStart);
+        scheduler.cancel(windowEnd);
+        scheduler.cancel(sessionEnd);
+        if (scanning) {
+            scanning = false;
+            scanner.stopScan();
+        }
+    }
+
+    /**
+     * Restarts the radio within the running session, e.g. with different filters. The
+     * restart counts against the throttle and is deferred like any other start.
+     */
+    public void restart() {
+        if (!running) {
+            return;
+        }
+        scheduler.cancel(windowStart);
+        scheduler.cancel(windowEnd);
+        if (scanning) {
+            scanning = false;
+            scanner.stopScan();
+        }
+        startWindow();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // True while the radio is on
+    public boolean isScanning() {
+        return scanning;
+    }
+
+    // Scan windows opened in the current or last session
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    public ScanThrottle getThrottle() {
+        return throttle;
+    }
+
+    private void startWindow() {
+        long now = scheduler.now();
+        long delay = throttle.getDelayUntilAllowed(now);
+        if (delay > 0) {
+            throttle.recordDeferred();
+            scheduler.schedule(windowStart, delay);
+            return;
+        }
+        throttle.recordStart(now);
+        scanning = true;
+        windowCount++;
+        scanner.startScan();
+        if (onTimeMs > 0) {
+            scheduler.schedule(windowEnd, onTimeMs);
+        }
+    }
+
+    private void endWindow() {
+        scanning = false;
+        scanner.stopScan();
+        scheduler.schedule(windowStart, offTimeMs);
+    }
+
+    private void endSession() {
+        stop();
+        listener.onSessionFinished();
+    }
+}
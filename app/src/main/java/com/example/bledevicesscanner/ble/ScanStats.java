@@ -0,0 +1,126 @@
+package com.example.bledevicesscanner.ble;
+
+import java.util.Locale;
+
+/**
+ * Counters for one scan, used to compare filtered and unfiltered scans. Every scan
+ * callback wakes the app process, so {@link #getCallbacksPerSecond()} is the number that
+ * matters for battery; {@link #getResultsPerSecond()} is higher when the controller
+ * batches results, and the share of results that matched shows how much work the
+ * controller could have saved had the filters been offloaded.
+ *
+ * Updated on a single thread while the scan runs and not modified once stopped. The
+ * class has no Android dependencies.
+ */
+public class ScanStats {
+    private final boolean hardwareFiltered;
+    private final long startedAt;
+    private long stoppedAt = -1;
+    private boolean fellBack;
+
+    private long callbackCount;
+    private long resultCount;
+    private long matchedCount;
+    private long duplicateCount;
+
+    public ScanStats(boolean hardwareFiltered, long startedAt) {
+        this.hardwareFiltered = hardwareFiltered;
+        this.startedAt = startedAt;
+    }
+
+    // One callback from the scanner delivering resultCount results
+    public void recordCallback(int resultCount) {
+        callbackCount++;
+        this.resultCount += resultCount;
+    }
+
+    // Results dropped because a later one for the same device arrived in the same batch
+    public void recordDuplicates(int duplicateCount) {
+        this.duplicateCount += duplicateCount;
+    }
+
+    // A result that passed the profile's filters
+    public void recordMatch() {
+        matchedCount++;
+    }
+
+    // The controller ran out of filter slots and the scan was restarted with software filtering
+    public void recordFallback() {
+        fellBack = true;
+    }
+
+    public void stop(long now) {
+        stoppedAt = now;
+    }
+
+    // Filters were handed to the controller when the scan started
+    public boolean isHardwareFiltered() {
+        return hardwareFiltered;
+    }
+
+    public boolean hasFallenBack() {
+        return fellBack;
+    }
+
+    public long getCallbackCount() {
+        return callbackCount;
+    }
+
+    public long getResultCount() {
+        return resultCount;
+    }
+
+    public long getMatchedCount() {
+        return matchedCount;
+    }
+
+    public long getDuplicateCount() {
+        return duplicateCount;
+    }
+
+    // Results delivered per wakeup, 1 unless the controller batches them
+    public double getResultsPerCallback() {
+        return callbackCount == 0 ? 0 : (double) resultCount / callbackCount;
+    }
+
+    public long getDurationMs(long now) {
+        return (stoppedAt >= 0 ? stoppedAt : now) - startedAt;
+    }
+
+    public double getCallbacksPerSecond(long now) {
+        return perSecond(callbackCount, now);
+    }
+
+    public double getResultsPerSecond(long now) {
+        return perSecond(resultCount, now);
+    }
+
+    // Share of distinct delivered results the profile was interested in, 1 when filtering is perfect
+    public double getMatchRatio() {
+        long distinct = resultCount - duplicateCount;
+        return distinct == 0 ? 0 : (double) matchedCount / distinct;
+    }
+
+    // Rates over the whole scan; only meaningful once stopped
+    public double getCallbacksPerSecond() {
+        return getCallbacksPerSecond(stoppedAt);
+    }
+
+    public double getResultsPerSecond() {
+        return getResultsPerSecond(stoppedAt);
+    }
+
+    private double perSecond(long count, long now) {
+        long duration = getDurationMs(now);
+        return duration <= 0 ? 0 : count * 1000.0 / duration;
+    }
+
+    @Override
+    public String toString() {
+        long now = stoppedAt >= 0 ? stoppedAt : startedAt;
+        return String.format(Locale.US, "%s%s: %d callbacks (%.1f/s), %d results (%.1f/s), %d duplicates, %d matched (%.0f%%) in %d ms",
+                hardwareFiltered ? "filters offloaded" : "filters in software", fellBack ? " after fallback" : "",
+                callbackCount, getCallbacksPerSecond(now), resultCount, getResultsPerSecond(now),
+                duplicateCount, matchedCount, getMatchRatio() * 100, getDurationMs(now));
+    }
+}
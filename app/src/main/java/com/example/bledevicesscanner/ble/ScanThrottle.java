@@ -0,0 +1,68 @@
+package com.example.bledevicesscanner.ble;
+
+/**
+ * Tracks recent scan starts against Android's limit of five starts per app in any 30
+ * second window. Going over it does not fail the start: the platform silently withholds
+ * results until the window has passed, so the only safe option is to never try.
+ *
+ * Times are in the clock of whoever drives the throttle, normally {@link TaskScheduler#now()}.
+ */
+public class ScanThrottle {
+    public static final int DEFAULT_MAX_STARTS = 5;
+    public static final long DEFAULT_WINDOW = 30000;
+
+    private final long windowMs;
+    // Start times of the last maxStarts starts, oldest at next
+    private final long[] starts;
+    private int next;
+    private int count;
+    private long deferredCount;
+
+    public ScanThrottle() {
+        this(DEFAULT_MAX_STARTS, DEFAULT_WINDOW);
+    }
+
+    public ScanThrottle(int maxStarts, long windowMs) {
+        if (maxStarts <= 0 || windowMs <= 0) {
+            throw new IllegalArgumentException("Invalid scan throttle settings");
+        }
+        this.starts = new long[maxStarts];
+        this.windowMs = windowMs;
+    }
+
+    // Time until a start is allowed, 0 if one is allowed now
+    public long getDelayUntilAllowed(long now) {
+        if (count < starts.length) {
+            return 0;
+        }
+        // The oldest of the last maxStarts starts has to leave the window first
+        return Math.max(0, starts[next] + windowMs - now);
+    }
+
+    public boolean allowsStart(long now) {
+        return getDelayUntilAllowed(now) == 0;
+    }
+
+    public void recordStart(long now) {
+        starts[next] = now;
+        next = (next + 1) % starts.length;
+        count = Math.min(count + 1, starts.length);
+    }
+
+    // A start that had to wait for the window
+    public void recordDeferred() {
+        deferredCount++;
+    }
+
+    public long getDeferredCount() {
+        return deferredCount;
+    }
+
+    public int getMaxStarts() {
+        return starts.length;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.bledevicesscanner.ble;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Streams the records of a log written by {@link SessionRecorder}, across all of its
+ * files in order, holding only a small read buffer in memory.
+ *
+ * A file that ends in the middle of a record, as one does when the app died between two
+ * writes of a commit, is read up to its last whole record and reported through
+ * {@link #getTruncatedCount()}. Records of types newer than this reader are skipped.
+ */
+public class SessionReader implements Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BODY_SIZE = SessionRecord.BASE_SIZE + SessionRecord.UUID_SIZE
+            + SessionRecord.MAX_PAYLOAD_SIZE;
+
+    private final List<File> files;
+    private int nextFile;
+    private FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+    private boolean endOfFile;
+    private long recordCount;
+    private int truncatedCount;
+
+    public SessionReader(File file) {
+        this(Collections.singletonList(file));
+    }
+
+    public SessionReader(List<File> files) {
+        this.files = new ArrayList<>(files);
+    }
+
+    // The files of the log with the given name in a directory, in the order they were written
+    public static List<File> findFiles(File directory, String name) {
+        File[] found = directory.listFiles((dir, fileName) -> fileName.startsWith(name + "-")
+                && fileName.endsWith(SessionRecorder.FILE_SUFFIX));
+        if (found == null) {
+            return Collections.emptyList();
+        }
+        // The index is zero-padded, so name order is write order
+        Arrays.sort(found);
+        return Arrays.asList(found);
+    }
+
+    // The files of the log whose name sorts last, e.g. the newest session-<time> log, or none
+    public static List<File> findLastFiles(File directory) {
+        String first = "-0000" + SessionRecorder.FILE_SUFFIX;
+        File[] found = directory.listFiles((dir, fileName) -> fileName.endsWith(first));
+        if (found == null || found.length == 0) {
+            return Collections.emptyList();
+        }
+        Arrays.sort(found);
+        String fileName = found[found.length - 1].getName();
+        return findFiles(directory, fileName.substring(0, fileName.length() - first.length()));
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the record, or null once every file has been read
+     * @throws IOException if a file cannot be read or is not a session log
+     */
+    public SessionRecord next() throws IOException {
+        while (true) {
+            if (channel == null && !openNextFile()) {
+                return null;
+            }
+            if (!fill(SessionRecord.LENGTH_SIZE)) {
+                finishFile();
+                continue;
+            }
+            int length = buffer.getInt(buffer.position());
+            if (length < SessionRecord.BASE_SIZE || length > MAX_BODY_SIZE) {
+                // Garbage after the last commit; nothing of this file past here can be trusted
+                truncatedCount++;
+                closeFile();
+                continue;
+            }
+            if (!fill(SessionRecord.LENGTH_SIZE + length)) {
+                finishFile();
+                continue;
+            }
+            int type = buffer.get(buffer.position() + SessionRecord.LENGTH_SIZE);
+            if (SessionRecord.isKnownType(type) && length < SessionRecord.minBodySize(type)) {
+                // Too short for its own header, so the length cannot be trusted either
+                truncatedCount++;
+                closeFile();
+                continue;
+            }
+            buffer.position(buffer.position() + SessionRecord.LENGTH_SIZE);
+            SessionRecord record = SessionRecord.decode(buffer, length);
+            if (record != null) {
+                recordCount++;
+                return record;
+            }
+        }
+    }
+
+    // Records returned so far
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // Files that ended in a partial or unreadable record
+    public int getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        nextFile = files.size();
+        closeFile();
+    }
+
+    private boolean openNextFile() throws IOException {
+        if (nextFile >= files.size()) {
+            return false;
+        }
+        File file = files.get(nextFile++);
+        channel = new FileInputStream(file).getChannel();
+        buffer.clear().limit(0);
+        endOfFile = false;
+        if (!fill(SessionRecord.FILE_HEADER_SIZE) || buffer.getInt() != SessionRecord.FILE_MAGIC) {
+            closeFile();
+            throw new IOException("Not a session log: " + file);
+        }
+        int version = buffer.getInt();
+        if (version != SessionRecord.FILE_VERSION) {
+            closeFile();
+            throw new IOException("Unsupported session log version " + version + ": " + file);
+        }
+        return true;
+    }
+
+    // Moves past the end of the current file, noting whether it stopped inside a record
+    private void finishFile() throws IOException {
+        if (buffer.hasRemaining()) {
+            truncatedCount++;
+        }
+        closeFile();
+    }
+
+    // Makes at least count bytes available, returns false if the file ends first
+    private boolean fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return true;
+        }
+        if (count > buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocate(count);
+            larger.put(buffer).flip();
+            buffer = larger;
+        }
+        buffer.compact();
+        while (!endOfFile && buffer.position() < count) {
+            if (channel.read(buffer) < 0) {
+                endOfFile = true;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= count;
+    }
+
+    private void closeFile() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        buffer.clear().limit(0);
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.bledevicesscanner.ble;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * One event of a recorded session: a scan result or a GATT event of a device.
+ *
+ * On disk every record is length-prefixed so a reader can skip types it does not know:
+ * <pre>
+ * int   length of everything below
+ * byte  type
+ * long  timestamp, elapsed realtime nanoseconds
+ * long  packed MAC address
+ * short RSSI for scan results (signed), GATT status for GATT events (unsigned)
+ * long  characteristic UUID, most significant bits   (characteristic events only)
+ * long  characteristic UUID, least significant bits  (characteristic events only)
+ * byte[] payload: advertisement or characteristic value
+ * </pre>
+ * All values are big-endian. Each log file starts with {@link #FILE_MAGIC} and
+ * {@link #FILE_VERSION}, so rotated files can be read on their own. Version 1 kept the
+ * RSSI/status in a single byte, which cut statuses such as GATT_FAILURE (0x101); its
+ * files are rejected rather than misread.
+ */
+public class SessionRecord {
+    public static final int FILE_MAGIC = 0x424C4553; // "BLES"
+    public static final int FILE_VERSION = 2;
+    public static final int FILE_HEADER_SIZE = 8;
+
+    // Extended advertisements and the longest attribute values both fit easily
+    public static final int MAX_PAYLOAD_SIZE = 65535;
+
+    public static final int TYPE_SCAN_RESULT = 1;
+    public static final int TYPE_CONNECTED = 2;
+    public static final int TYPE_DISCONNECTED = 3;
+    public static final int TYPE_CHARACTERISTIC_READ = 4;
+    public static final int TYPE_CHARACTERISTIC_CHANGED = 5;
+
+    // Type, timestamp, address and RSSI/status, without the length prefix
+    static final int BASE_SIZE = 1 + 8 + 8 + 2;
+    static final int UUID_SIZE = 16;
+    static final int LENGTH_SIZE = 4;
+
+    private final int type;
+    private final long timestampNanos;
+    private final long address;
+    private final int rssiOrStatus;
+    private final UUID uuid;
+    private final byte[] payload;
+
+    public SessionRecord(int type, long timestampNanos, long address, int rssiOrStatus, UUID uuid, byte[] payload) {
+        if (hasUuid(type) != (uuid != null)) {
+            throw new IllegalArgumentException("Record type " + type + (uuid == null ? " needs" : " takes no") + " UUID");
+        }
+        this.type = type;
+        this.timestampNanos = timestampNanos;
+        this.address = address;
+        this.rssiOrStatus = rssiOrStatus;
+        this.uuid = uuid;
+        this.payload = payload != null ? payload : new byte[0];
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    // Scan results only
+    public int getRssi() {
+        return rssiOrStatus;
+    }
+
+    // GATT events only
+    public int getStatus() {
+        return rssiOrStatus;
+    }
+
+    // Characteristic events only, null otherwise
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    // Types this version reads; newer ones are skipped
+    static boolean isKnownType(int type) {
+        return type >= TYPE_SCAN_RESULT && type <= TYPE_CHARACTERISTIC_CHANGED;
+    }
+
+    static boolean hasUuid(int type) {
+        return type == TYPE_CHARACTERISTIC_READ || type == TYPE_CHARACTERISTIC_CHANGED;
+    }
+
+    // Shortest body a record of a known type can have, without the length prefix
+    static int minBodySize(int type) {
+        return BASE_SIZE + (hasUuid(type) ? UUID_SIZE : 0);
+    }
+
+    // Bytes the record takes on disk, including the length prefix
+    static int encodedSize(int type, int payloadLength) {
+        return LENGTH_SIZE + BASE_SIZE + (hasUuid(type) ? UUID_SIZE : 0) + payloadLength;
+    }
+
+    // Writes a record into buffer, which must have encodedSize bytes left
+    static void encode(ByteBuffer buffer, int type, long timestampNanos, long address, int rssiOrStatus,
+                       UUID uuid, byte[] payload, int offset, int length) {
+        buffer.putInt(encodedSize(type, length) - LENGTH_SIZE);
+        buffer.put((byte) type);
+        buffer.putLong(timestampNanos);
+        buffer.putLong(address);
+        buffer.putShort((short) rssiOrStatus);
+        if (uuid != null) {
+            buffer.putLong(uuid.getMostSignificantBits());
+            buffer.putLong(uuid.getLeastSignificantBits());
+        }
+        if (length > 0) {
+            buffer.put(payload, offset, length);
+        }
+    }
+
+    /**
+     * Reads the record body that follows a length prefix of bodyLength bytes, which must be
+     * at least {@link #minBodySize} for its type.
+     *
+     * @return the record, or null if its type is unknown; the body is consumed either way
+     */
+    static SessionRecord decode(ByteBuffer buffer, int bodyLength) {
+        int end = buffer.position() + bodyLength;
+        int type = buffer.get();
+        if (!isKnownType(type)) {
+            buffer.position(end);
+            return null;
+        }
+        long timestampNanos = buffer.getLong();
+        long address = buffer.getLong();
+        int rssiOrStatus = type == TYPE_SCAN_RESULT ? buffer.getShort() : buffer.getShort() & 0xFFFF;
+        UUID uuid = null;
+        if (hasUuid(type)) {
+            uuid = new UUID(buffer.getLong(), buffer.getLong());
+        }
+        byte[] payload = new byte[end - buffer.position()];
+        buffer.get(payload);
+        return new SessionRecord(type, timestampNanos, address, rssiOrStatus, uuid, payload);
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.bledevicesscanner.ble;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Appends scan results and GATT events to an append-only binary log, in the format
+ * described in {@link SessionRecord}.
+ *
+ * Callers only encode the record into an in-memory buffer under a short lock; a writer
+ * thread swaps that buffer for an empty one every commit interval, or earlier once it is
+ * half full, and writes the whole batch through a {@link FileChannel} followed by a single
+ * force. Recording therefore never waits for the disk. If the disk falls so far behind that
+ * the buffer fills up, further records are dropped and counted rather than blocking the
+ * BLE thread.
+ *
+ * The log is split into files of at most maxFileSize bytes, named
+ * {@code <name>-0000.bslog}, {@code <name>-0001.bslog} and so on. Records never span two
+ * files, and every file starts with its own header.
+ *
+ * Thread-safe; record from any thread.
+ */
+public class SessionRecorder implements Closeable {
+    public static final String FILE_SUFFIX = ".bslog";
+    public static final long DEFAULT_MAX_FILE_SIZE = 8 * 1024 * 1024;
+    // Holds several seconds of a busy scan, so a slow flash write does not drop records
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_COMMIT_INTERVAL = 200; // ms
+
+    private final File directory;
+    private final String name;
+    private final long maxFileSize;
+    private final long commitIntervalMs;
+    private final int commitThreshold;
+    private final Thread writer;
+
+    private final Object lock = new Object();
+    // Guarded by lock; the writer owns the spare buffer between swaps
+    private ByteBuffer active;
+    private ByteBuffer spare;
+    private boolean commitRequested;
+    private boolean closed;
+    private long recordCount;
+    private long droppedCount;
+
+    // Writer thread only, apart from the first file opened by the constructor
+    private FileChannel channel;
+    private long fileSize;
+    private int fileIndex;
+
+    private final List<File> files = new ArrayList<>();
+    private volatile long commitCount;
+    private volatile long bytesWritten;
+    private volatile IOException error;
+
+    public SessionRecorder(File directory, String name) throws IOException {
+        this(directory, name, DEFAULT_MAX_FILE_SIZE, DEFAULT_BUFFER_SIZE, DEFAULT_COMMIT_INTERVAL);
+    }
+
+    /**
+     * Opens the first file of a new log and starts the writer thread.
+     *
+     * @throws IOException if the first file cannot be created
+     */
+    public SessionRecorder(File directory, String name, long maxFileSize, int bufferSize, long commitIntervalMs)
+            throws IOException {
+        if (maxFileSize <= SessionRecord.FILE_HEADER_SIZE) {
+            throw new IllegalArgumentException("Max file size too small: " + maxFileSize);
+        }
+        if (bufferSize < SessionRecord.encodedSize(SessionRecord.TYPE_CHARACTERISTIC_READ, 0)) {
+            throw new IllegalArgumentException("Buffer size too small: " + bufferSize);
+        }
+        if (commitIntervalMs <= 0) {
+            throw new IllegalArgumentException("Commit interval must be positive: " + commitIntervalMs);
+        }
+        this.directory = directory;
+        this.name = name;
+        this.maxFileSize = maxFileSize;
+        this.commitIntervalMs = commitIntervalMs;
+        this.commitThreshold = bufferSize / 2;
+        active = ByteBuffer.allocate(bufferSize);
+        spare = ByteBuffer.allocate(bufferSize);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        openFile();
+        writer = new Thread(this::writeLoop, "SessionRecorder");
+        writer.start();
+    }
+
+    public boolean recordScanResult(long timestampNanos, long address, int rssi, byte[] payload) {
+        return record(SessionRecord.TYPE_SCAN_RESULT, timestampNanos, address, rssi, null, payload);
+    }
+
+    public boolean recordConnected(long timestampNanos, long address) {
+        return record(SessionRecord.TYPE_CONNECTED, timestampNanos, address, 0, null, null);
+    }
+
+    public boolean recordDisconnected(long timestampNanos, long address, int status) {
+        return record(SessionRecord.TYPE_DISCONNECTED, timestampNanos, address, status, null, null);
+    }
+
+    public boolean recordCharacteristicRead(long timestampNanos, long address, UUID uuid, int status, byte[] value) {
+        return record(SessionRecord.TYPE_CHARACTERISTIC_READ, timestampNanos, address, status, uuid, value);
+    }
+
+    public boolean recordCharacteristicChanged(long timestampNanos, long address, UUID uuid, byte[] value) {
+        return record(SessionRecord.TYPE_CHARACTERISTIC_CHANGED, timestampNanos, address, 0, uuid, value);
+    }
+
+    public boolean record(SessionRecord record) {
+        return record(record.getType(), record.getTimestampNanos(), record.getAddress(), record.getRssi(),
+                record.getUuid(), record.getPayload());
+    }
+
+    /**
+     * Queues one record for the next commit.
+     *
+     * @return false if the recorder is closed or failed, or the record was dropped because
+     *         the buffer is full
+     */
+    public boolean record(int type, long timestampNanos, long address, int rssiOrStatus, UUID uuid, byte[] payload) {
+        if (SessionRecord.hasUuid(type) != (uuid != null)) {
+            throw new IllegalArgumentException("Record type " + type + (uuid == null ? " needs" : " takes no") + " UUID");
+        }
+        int length = payload != null ? payload.length : 0;
+        if (length > SessionRecord.MAX_PAYLOAD_SIZE) {
+            throw new IllegalArgumentException("Payload too large: " + length);
+        }
+        int size = SessionRecord.encodedSize(type, length);
+        synchronized (lock) {
+            if (closed || error != null) {
+                return false;
+            }
+            if (active.remaining() < size) {
+                droppedCount++;
+                return false;
+            }
+            SessionRecord.encode(active, type, timestampNanos, address, rssiOrStatus, uuid, payload, 0, length);
+            recordCount++;
+            if (!commitRequested && active.position() >= commitThreshold) {
+                commitRequested = true;
+                lock.notify();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Commits what is buffered, closes the current file and stops the writer thread.
+     *
+     * @throws IOException the first write error, if any; records after it were not written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notify();
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // Records accepted so far, including those not yet committed
+    public long getRecordCount() {
+        synchronized (lock) {
+            return recordCount;
+        }
+    }
+
+    // Records dropped because the buffer was full
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    // Batches written, each followed by one force
+    public long getCommitCount() {
+        return commitCount;
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    // Files of this log in order, including the one being written
+    public List<File> getFiles() {
+        synchronized (files) {
+            return new ArrayList<>(files);
+        }
+    }
+
+    // The write error that stopped the recorder, or null
+    public IOException getError() {
+        return error;
+    }
+
+    private void writeLoop() {
+        try {
+            boolean last = false;
+            while (!last) {
+                ByteBuffer batch;
+                synchronized (lock) {
+                    long deadline = System.nanoTime() + commitIntervalMs * 1000000L;
+                    long remaining;
+                    while (!closed && !commitRequested && (remaining = deadline - System.nanoTime()) > 0) {
+                        lock.wait(Math.max(1, remaining / 1000000L));
+                    }
+                    commitRequested = false;
+                    last = closed;
+                    batch = active;
+                    active = spare;
+                    spare = batch;
+                }
+                batch.flip();
+                if (batch.hasRemaining()) {
+                    commit(batch);
+                }
+                batch.clear();
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            error = new IOException("Recorder interrupted", e);
+        } finally {
+            closeFile();
+        }
+    }
+
+    // Writes a batch of whole records, moving to a new file wherever the current one would overflow
+    private void commit(ByteBuffer batch) throws IOException {
+        int written = 0;
+        while (batch.hasRemaining()) {
+            int end = fittingEnd(batch, maxFileSize - fileSize);
+            if (end == batch.position()) {
+                if (fileSize > SessionRecord.FILE_HEADER_SIZE) {
+                    rotate();
+                    continue;
+                }
+                // A single record larger than a whole file gets a file of its own
+                end = batch.position() + SessionRecord.LENGTH_SIZE + batch.getInt(batch.position());
+            }
+            int limit = batch.limit();
+            fileSize += end - batch.position();
+            batch.limit(end);
+            while (batch.hasRemaining()) {
+                written += channel.write(batch);
+            }
+            batch.limit(limit);
+        }
+        channel.force(false);
+        bytesWritten += written;
+        commitCount++;
+    }
+
+    // End of the longest run of whole records from the batch position that fits in room bytes
+    private static int fittingEnd(ByteBuffer batch, long room) {
+        int start = batch.position();
+        int end = start;
+        while (end < batch.limit()) {
+            int next = end + SessionRecord.LENGTH_SIZE + batch.getInt(end);
+            if (next - start > room) {
+                break;
+            }
+            end = next;
+        }
+        return end;
+    }
+
+    private void rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        fileIndex++;
+        openFile();
+    }
+
+    private void openFile() throws IOException {
+        File file = new File(directory, String.format(Locale.US, "%s-%04d%s", name, fileIndex, FILE_SUFFIX));
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(0);
+        channel = randomAccessFile.getChannel();
+        ByteBuffer header = ByteBuffer.allocate(SessionRecord.FILE_HEADER_SIZE);
+        header.putInt(SessionRecord.FILE_MAGIC).putInt(SessionRecord.FILE_VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        fileSize = SessionRecord.FILE_HEADER_SIZE;
+        bytesWritten += SessionRecord.FILE_HEADER_SIZE;
+        synchronized (files) {
+            files.add(file);
+        }
+    }
+
+    private void closeFile() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        channel = null;
+    }
+}
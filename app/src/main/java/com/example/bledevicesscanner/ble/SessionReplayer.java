@@ -0,0 +1,280 @@
+package com.example.bledevicesscanner.ble;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Plays a log written by {@link SessionRecorder} back in recorded order, at the recorded
+ * pace, N times faster, or as fast as the listener takes the records.
+ *
+ * The files are memory-mapped once when the replayer is created, and one pass over the
+ * record headers indexes the session: its record count, time span and the
+ * characteristics seen per device. Replay then decodes straight from the mapping, so a
+ * session can be played any number of times, e.g. as a repeatable load for benchmarks.
+ *
+ * Pacing goes through a {@link TaskScheduler}; {@link #start} and {@link #stop} must be
+ * called on the thread it runs tasks on, which is also where the listener is called. At
+ * {@link #SPEED_MAX} records are emitted in bounded batches, one task per batch, so other
+ * work on that thread still gets a turn.
+ */
+public class SessionReplayer {
+    public static final double SPEED_MAX = Double.POSITIVE_INFINITY;
+
+    // Flags of getCharacteristics(): which kinds of events the characteristic appeared in
+    public static final int CHARACTERISTIC_READ = 1;
+    public static final int CHARACTERISTIC_CHANGED = 2;
+
+    private static final int MAX_SPEED_BATCH = 256;
+    private static final int MAX_BODY_SIZE = SessionRecord.BASE_SIZE + SessionRecord.UUID_SIZE
+            + SessionRecord.MAX_PAYLOAD_SIZE;
+
+    public interface Listener {
+        void onRecord(SessionRecord record);
+
+        // The last record was played and looping is off
+        void onReplayFinished();
+    }
+
+    // Mapped files, limited to their last whole record
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final Map<Long, Map<UUID, Integer>> characteristics = new HashMap<>();
+    private long recordCount;
+    private long firstTimestampNanos = Long.MAX_VALUE;
+    private long lastTimestampNanos = Long.MIN_VALUE;
+    private int truncatedCount;
+
+    private double speed = 1;
+    private boolean looping;
+
+    private final Runnable step = this::step;
+    private TaskScheduler scheduler;
+    private Listener listener;
+    private boolean running;
+    // Lets a step left over from a stopped replay notice that the replay was restarted
+    private int generation;
+    private int segmentIndex;
+    private ByteBuffer current;
+    private long startedAt;
+    private long replayedCount;
+    private long loopCount;
+
+    /**
+     * Maps and indexes the files of a session, in the order they were written.
+     *
+     * @throws IOException if a file cannot be mapped or is not a session log
+     */
+    public SessionReplayer(List<File> files) throws IOException {
+        for (File file : files) {
+            ByteBuffer segment = map(file);
+            index(segment);
+            segments.add(segment);
+        }
+    }
+
+    // 1 plays in real time, 10 ten times faster, SPEED_MAX without waiting
+    public SessionReplayer setSpeed(double speed) {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("Speed must be positive: " + speed);
+        }
+        this.speed = speed;
+        return this;
+    }
+
+    // Start over from the first record instead of finishing
+    public SessionReplayer setLooping(boolean looping) {
+        this.looping = looping;
+        return this;
+    }
+
+    public double getSpeed() {
+        return speed;
+    }
+
+    public boolean isLooping() {
+        return looping;
+    }
+
+    // Records in the session, not counting unknown types
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    // Time between the first and the last record, as recorded
+    public long getDurationNanos() {
+        return recordCount == 0 ? 0 : lastTimestampNanos - firstTimestampNanos;
+    }
+
+    // Files that ended in a partial record; replay stops at their last whole record
+    public int getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    /**
+     * Characteristics the device read or notified during the session, in the order they
+     * first appeared, each with CHARACTERISTIC_READ and CHARACTERISTIC_CHANGED flags.
+     */
+    public Map<UUID, Integer> getCharacteristics(long address) {
+        Map<UUID, Integer> seen = characteristics.get(address);
+        return seen != null ? Collections.unmodifiableMap(seen) : Collections.<UUID, Integer>emptyMap();
+    }
+
+    // Starts from the first record; does nothing if the replay is running
+    public void start(TaskScheduler scheduler, Listener listener) {
+        if (running) {
+            return;
+        }
+        this.scheduler = scheduler;
+        this.listener = listener;
+        running = true;
+        generation++;
+        replayedCount = 0;
+        loopCount = 0;
+        rewind();
+        step();
+    }
+
+    // Stops without calling onReplayFinished
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        scheduler.cancel(step);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Records played since start, across loops
+    public long getReplayedCount() {
+        return replayedCount;
+    }
+
+    public long getLoopCount() {
+        return loopCount;
+    }
+
+    private void rewind() {
+        segmentIndex = 0;
+        current = segments.isEmpty() ? null : segments.get(0).duplicate();
+        startedAt = scheduler.now();
+    }
+
+    private void step() {
+        int emitted = 0;
+        int started = generation;
+        while (running && generation == started) {
+            if (current == null || !current.hasRemaining()) {
+                if (current != null && ++segmentIndex < segments.size()) {
+                    current = segments.get(segmentIndex).duplicate();
+                    continue;
+                }
+                if (looping && recordCount > 0) {
+                    loopCount++;
+                    rewind();
+                    continue;
+                }
+                running = false;
+                listener.onReplayFinished();
+                return;
+            }
+            int position = current.position();
+            if (speed == SPEED_MAX) {
+                if (emitted == MAX_SPEED_BATCH) {
+                    scheduler.schedule(step, 0);
+                    return;
+                }
+            } else {
+                long timestampNanos = current.getLong(position + SessionRecord.LENGTH_SIZE + 1);
+                long due = startedAt + (long) ((timestampNanos - firstTimestampNanos) / 1e6 / speed);
+                long now = scheduler.now();
+                if (due > now) {
+                    scheduler.schedule(step, due - now);
+                    return;
+                }
+            }
+            int length = current.getInt();
+            SessionRecord record = SessionRecord.decode(current, length);
+            emitted++;
+            if (record != null) {
+                replayedCount++;
+                // May stop the replay, which ends the loop
+                listener.onRecord(record);
+            }
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.remaining() < SessionRecord.FILE_HEADER_SIZE || mapped.getInt() != SessionRecord.FILE_MAGIC) {
+                throw new IOException("Not a session log: " + file);
+            }
+            int version = mapped.getInt();
+            if (version != SessionRecord.FILE_VERSION) {
+                throw new IOException("Unsupported session log version " + version + ": " + file);
+            }
+            return mapped.slice();
+        }
+    }
+
+    // Reads every record header without copying payloads and cuts the segment at a partial record
+    private void index(ByteBuffer segment) {
+        int position = 0;
+        int limit = segment.limit();
+        while (position < limit) {
+            if (limit - position < SessionRecord.LENGTH_SIZE) {
+                break;
+            }
+            int length = segment.getInt(position);
+            if (length < SessionRecord.BASE_SIZE || length > MAX_BODY_SIZE
+                    || limit - position - SessionRecord.LENGTH_SIZE < length) {
+                break;
+            }
+            int body = position + SessionRecord.LENGTH_SIZE;
+            int type = segment.get(body);
+            if (SessionRecord.isKnownType(type) && length < SessionRecord.minBodySize(type)) {
+                // Too short for its own header, so nothing after it can be trusted
+                break;
+            }
+            if (SessionRecord.isKnownType(type)) {
+                long timestampNanos = segment.getLong(body + 1);
+                firstTimestampNanos = Math.min(firstTimestampNanos, timestampNanos);
+                lastTimestampNanos = Math.max(lastTimestampNanos, timestampNanos);
+                recordCount++;
+                if (SessionRecord.hasUuid(type)) {
+                    long address = segment.getLong(body + 9);
+                    UUID uuid = new UUID(segment.getLong(body + SessionRecord.BASE_SIZE),
+                            segment.getLong(body + SessionRecord.BASE_SIZE + 8));
+                    Map<UUID, Integer> seen = characteristics.get(address);
+                    if (seen == null) {
+                        seen = new LinkedHashMap<>();
+                        characteristics.put(address, seen);
+                    }
+                    Integer flags = seen.get(uuid);
+                    int flag = type == SessionRecord.TYPE_CHARACTERISTIC_READ ? CHARACTERISTIC_READ : CHARACTERISTIC_CHANGED;
+                    seen.put(uuid, (flags != null ? flags : 0) | flag);
+                }
+            }
+            position = body + length;
+        }
+        if (position < limit) {
+            truncatedCount++;
+            segment.limit(position);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bledevicesscanner.ble;
+
+/**
+ * Clock and delayed execution used by the BLE state machines. Android code backs it with
+ * a {@link android.os.Handler}; tests and simulations can drive it with a fake clock.
+ */
+public interface TaskScheduler {
+    // Monotonic time in milliseconds
+    long now();
+
+    // The same clock in nanoseconds, as stamped on scan results and recorded events
+    default long nowNanos() {
+        return now() * 1000000L;
+    }
+
+    // Runs task after delayMs; scheduling an already pending task adds another run
+    void schedule(Runnable task, long delayMs);
+
+    // Removes every pending run of task
+    void cancel(Runnable task);
+}
@@ -0,0 +1,16 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+/**
+ * Decodes the value of one kind of characteristic into a {@link Measurement}. Decoders
+ * are stateless and may be shared between threads; they take the value as a slice so
+ * samples can be decoded straight out of a ring buffer slot.
+ */
+public interface CharacteristicDecoder {
+    /**
+     * Appends the fields of the value in buffer[offset, offset + length) to out.
+     *
+     * @return false if the value is too short for what its flags announce; out may then
+     * hold the fields decoded before the problem was found
+     */
+    boolean decode(byte[] buffer, int offset, int length, Measurement out);
+}
@@ -0,0 +1,38 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+/**
+ * Cycling Speed and Cadence Measurement (0x2A5B): flags, then the cumulative wheel
+ * revolutions with the last wheel event time and the cumulative crank revolutions with
+ * the last crank event time, each pair present when its flag is set. Speed and cadence
+ * come from the differences between consecutive measurements.
+ */
+public class CscMeasurementDecoder implements CharacteristicDecoder {
+    private static final int FLAG_WHEEL = 0x01;
+    private static final int FLAG_CRANK = 0x02;
+
+    @Override
+    public boolean decode(byte[] buffer, int offset, int length, Measurement out) {
+        if (length < 1) {
+            return false;
+        }
+        int end = offset + length;
+        int flags = buffer[offset] & 0xFF;
+        int position = offset + 1;
+        if ((flags & FLAG_WHEEL) != 0) {
+            if (end - position < 6) {
+                return false;
+            }
+            out.add(Measurement.WHEEL_REVOLUTIONS, Decoders.int32(buffer, position) & 0xFFFFFFFFL);
+            out.add(Measurement.WHEEL_EVENT_TIME, Decoders.uint16(buffer, position + 4) / 1024.0);
+            position += 6;
+        }
+        if ((flags & FLAG_CRANK) != 0) {
+            if (end - position < 4) {
+                return false;
+            }
+            out.add(Measurement.CRANK_REVOLUTIONS, Decoders.uint16(buffer, position));
+            out.add(Measurement.CRANK_EVENT_TIME, Decoders.uint16(buffer, position + 2) / 1024.0);
+        }
+        return true;
+    }
+}
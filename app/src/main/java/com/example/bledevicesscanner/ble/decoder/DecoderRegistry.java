@@ -0,0 +1,106 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+import com.example.bledevicesscanner.util.LongIntHashMap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Finds the {@link CharacteristicDecoder} for a characteristic. SIG characteristics are
+ * keyed by their 16-bit UUID in a primitive map, so the lookup on every notification is
+ * O(1) without boxing; vendor characteristics outside the Bluetooth base UUID are kept
+ * by their full UUID.
+ *
+ * Register decoders before sharing the registry; lookups are then safe from any thread.
+ */
+public class DecoderRegistry {
+    public static final int HEART_RATE_MEASUREMENT = 0x2A37;
+    public static final int BATTERY_LEVEL = 0x2A19;
+    public static final int TEMPERATURE_MEASUREMENT = 0x2A1C;
+    public static final int INTERMEDIATE_TEMPERATURE = 0x2A1E;
+    public static final int CSC_MEASUREMENT = 0x2A5B;
+    public static final int TEMPERATURE = 0x2A6E;
+    public static final int HUMIDITY = 0x2A6F;
+    public static final int PRESSURE = 0x2A6D;
+
+    // Bluetooth base UUID 00000000-0000-1000-8000-00805F9B34FB
+    private static final long BASE_UUID_MSB = 0x0000000000001000L;
+    private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+    private final LongIntHashMap shortIndex = new LongIntHashMap();
+    private final List<CharacteristicDecoder> shortDecoders = new ArrayList<>();
+    private final Map<UUID, CharacteristicDecoder> vendorDecoders = new HashMap<>();
+
+    // Registry with decoders for the common SIG characteristics
+    public static DecoderRegistry standard() {
+        TemperatureMeasurementDecoder temperatureMeasurement = new TemperatureMeasurementDecoder();
+        return new DecoderRegistry()
+                .register(HEART_RATE_MEASUREMENT, new HeartRateMeasurementDecoder())
+                .register(BATTERY_LEVEL, new ScaledValueDecoder(Measurement.BATTERY_LEVEL, 1, false, 0))
+                .register(TEMPERATURE_MEASUREMENT, temperatureMeasurement)
+                .register(INTERMEDIATE_TEMPERATURE, temperatureMeasurement)
+                .register(CSC_MEASUREMENT, new CscMeasurementDecoder())
+                .register(TEMPERATURE, new ScaledValueDecoder(Measurement.TEMPERATURE_CELSIUS, 2, true, -2))
+                .register(HUMIDITY, new ScaledValueDecoder(Measurement.HUMIDITY, 2, false, -2))
+                .register(PRESSURE, new ScaledValueDecoder(Measurement.PRESSURE, 4, false, -1));
+    }
+
+    // Registers or replaces the decoder for a 16-bit SIG UUID
+    public DecoderRegistry register(int uuid16, CharacteristicDecoder decoder) {
+        if (uuid16 < 0 || uuid16 > 0xFFFF) {
+            throw new IllegalArgumentException("Not a 16-bit UUID: " + uuid16);
+        }
+        int index = shortIndex.get(uuid16, -1);
+        if (index < 0) {
+            shortIndex.put(uuid16, shortDecoders.size(), -1);
+            shortDecoders.add(decoder);
+        } else {
+            shortDecoders.set(index, decoder);
+        }
+        return this;
+    }
+
+    // Registers or replaces the decoder for a full UUID, which may be on the base UUID
+    public DecoderRegistry register(UUID uuid, CharacteristicDecoder decoder) {
+        int uuid16 = toUuid16(uuid);
+        if (uuid16 >= 0) {
+            return register(uuid16, decoder);
+        }
+        vendorDecoders.put(uuid, decoder);
+        return this;
+    }
+
+    // Decoder for a 16-bit SIG UUID, or null
+    public CharacteristicDecoder get(int uuid16) {
+        int index = shortIndex.get(uuid16, -1);
+        return index >= 0 ? shortDecoders.get(index) : null;
+    }
+
+    public CharacteristicDecoder get(UUID uuid) {
+        int uuid16 = toUuid16(uuid);
+        return uuid16 >= 0 ? get(uuid16) : vendorDecoders.get(uuid);
+    }
+
+    /**
+     * Clears out and decodes the value into it.
+     *
+     * @return false if there is no decoder for the UUID or the value is malformed
+     */
+    public boolean decode(UUID uuid, byte[] buffer, int offset, int length, Measurement out) {
+        out.clear();
+        CharacteristicDecoder decoder = get(uuid);
+        return decoder != null && decoder.decode(buffer, offset, length, out);
+    }
+
+    // The 16-bit form of a UUID on the Bluetooth base UUID, or -1 for any other UUID
+    public static int toUuid16(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        if (uuid.getLeastSignificantBits() != BASE_UUID_LSB || (msb & 0xFFFF0000FFFFFFFFL) != BASE_UUID_MSB) {
+            return -1;
+        }
+        return (int) (msb >>> 32);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+// Little-endian reads shared by the decoders
+final class Decoders {
+    private Decoders() {
+    }
+
+    static int uint16(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8;
+    }
+
+    static int int32(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xFF) | (buffer[offset + 1] & 0xFF) << 8
+                | (buffer[offset + 2] & 0xFF) << 16 | (buffer[offset + 3] & 0xFF) << 24;
+    }
+}
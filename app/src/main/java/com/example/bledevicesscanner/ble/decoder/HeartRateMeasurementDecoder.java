@@ -0,0 +1,49 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+/**
+ * Heart Rate Measurement (0x2A37): flags, an 8 or 16-bit heart rate, the optional
+ * energy expended and any number of RR intervals in 1/1024 s.
+ */
+public class HeartRateMeasurementDecoder implements CharacteristicDecoder {
+    private static final int FLAG_UINT16 = 0x01;
+    private static final int FLAG_CONTACT_DETECTED = 0x02;
+    private static final int FLAG_CONTACT_SUPPORTED = 0x04;
+    private static final int FLAG_ENERGY_EXPENDED = 0x08;
+    private static final int FLAG_RR_INTERVALS = 0x10;
+
+    @Override
+    public boolean decode(byte[] buffer, int offset, int length, Measurement out) {
+        if (length < 2) {
+            return false;
+        }
+        int end = offset + length;
+        int flags = buffer[offset] & 0xFF;
+        int position = offset + 1;
+        if ((flags & FLAG_UINT16) != 0) {
+            if (end - position < 2) {
+                return false;
+            }
+            out.add(Measurement.HEART_RATE, Decoders.uint16(buffer, position));
+            position += 2;
+        } else {
+            out.add(Measurement.HEART_RATE, buffer[position] & 0xFF);
+            position++;
+        }
+        if ((flags & FLAG_CONTACT_SUPPORTED) != 0) {
+            out.add(Measurement.SENSOR_CONTACT, (flags & FLAG_CONTACT_DETECTED) != 0 ? 1 : 0);
+        }
+        if ((flags & FLAG_ENERGY_EXPENDED) != 0) {
+            if (end - position < 2) {
+                return false;
+            }
+            out.add(Measurement.ENERGY_EXPENDED, Decoders.uint16(buffer, position));
+            position += 2;
+        }
+        if ((flags & FLAG_RR_INTERVALS) != 0) {
+            for (; end - position >= 2; position += 2) {
+                out.add(Measurement.RR_INTERVAL, Decoders.uint16(buffer, position) / 1024.0);
+            }
+        }
+        return true;
+    }
+}
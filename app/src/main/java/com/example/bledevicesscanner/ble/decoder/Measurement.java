@@ -0,0 +1,109 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+/**
+ * Reusable holder a {@link CharacteristicDecoder} writes a decoded value into, as a list
+ * of (field, value) pairs of primitives. A field may repeat, as the RR intervals of a
+ * heart rate measurement do, and optional fields the peripheral left out are simply
+ * absent. Values are in the units given by the field constants.
+ *
+ * Field ids from {@link #FIRST_VENDOR_FIELD} up are free for vendor decoders.
+ * Not thread-safe; keep one per consuming thread and clear it between values.
+ */
+public final class Measurement {
+    // Beats per minute
+    public static final int HEART_RATE = 1;
+    // 1 if the sensor reports skin contact, 0 if not; absent if contact is not detected at all
+    public static final int SENSOR_CONTACT = 2;
+    // Kilojoules since the last reset
+    public static final int ENERGY_EXPENDED = 3;
+    // Seconds between beats, one per interval in the notification
+    public static final int RR_INTERVAL = 4;
+    public static final int TEMPERATURE_CELSIUS = 5;
+    public static final int TEMPERATURE_FAHRENHEIT = 6;
+    // Body location code from the Temperature Type characteristic, e.g. 2 for body
+    public static final int TEMPERATURE_TYPE = 7;
+    // Percent
+    public static final int BATTERY_LEVEL = 8;
+    public static final int WHEEL_REVOLUTIONS = 9;
+    // Seconds, wrapping every 64 s
+    public static final int WHEEL_EVENT_TIME = 10;
+    public static final int CRANK_REVOLUTIONS = 11;
+    // Seconds, wrapping every 64 s
+    public static final int CRANK_EVENT_TIME = 12;
+    // Percent relative humidity
+    public static final int HUMIDITY = 13;
+    // Pascal
+    public static final int PRESSURE = 14;
+
+    public static final int FIRST_VENDOR_FIELD = 1000;
+
+    private int[] fields = new int[16];
+    private double[] values = new double[16];
+    private int size;
+
+    public void clear() {
+        size = 0;
+    }
+
+    public Measurement add(int field, double value) {
+        if (size == fields.length) {
+            int[] grownFields = new int[size * 2];
+            double[] grownValues = new double[size * 2];
+            System.arraycopy(fields, 0, grownFields, 0, size);
+            System.arraycopy(values, 0, grownValues, 0, size);
+            fields = grownFields;
+            values = grownValues;
+        }
+        fields[size] = field;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getField(int index) {
+        return fields[index];
+    }
+
+    public double getValue(int index) {
+        return values[index];
+    }
+
+    public boolean has(int field) {
+        return indexOf(field) >= 0;
+    }
+
+    // First value of the field, or missingValue if it is absent
+    public double get(int field, double missingValue) {
+        int index = indexOf(field);
+        return index >= 0 ? values[index] : missingValue;
+    }
+
+    // Number of values of a repeated field
+    public int count(int field) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (fields[i] == field) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // A decoded value holds a handful of fields, so a scan beats any index
+    private int indexOf(int field) {
+        for (int i = 0; i < size; i++) {
+            if (fields[i] == field) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+/**
+ * Decoder for characteristics holding a single little-endian integer scaled by a power
+ * of ten, the "d" of the GATT specification's represented values, such as Battery Level
+ * or the Environmental Sensing temperature, humidity and pressure. Covers most simple
+ * vendor characteristics as well.
+ */
+public class ScaledValueDecoder implements CharacteristicDecoder {
+    private final int field;
+    private final int width;
+    private final boolean signed;
+    // Exactly 10^|decimalExponent|; dividing by it rounds correctly where multiplying by 0.01 would not
+    private final double powerOfTen;
+    private final boolean divide;
+
+    /**
+     * @param width  size of the integer in bytes, 1 to 4
+     * @param signed whether the integer is two's complement
+     * @param decimalExponent value = raw * 10^decimalExponent, e.g. -2 for hundredths
+     */
+    public ScaledValueDecoder(int field, int width, boolean signed, int decimalExponent) {
+        if (width < 1 || width > 4) {
+            throw new IllegalArgumentException("Width must be 1 to 4 bytes: " + width);
+        }
+        this.field = field;
+        this.width = width;
+        this.signed = signed;
+        this.powerOfTen = Math.pow(10, Math.abs(decimalExponent));
+        this.divide = decimalExponent < 0;
+    }
+
+    @Override
+    public boolean decode(byte[] buffer, int offset, int length, Measurement out) {
+        if (length < width) {
+            return false;
+        }
+        long raw = 0;
+        for (int i = width - 1; i >= 0; i--) {
+            raw = raw << 8 | (buffer[offset + i] & 0xFF);
+        }
+        if (signed) {
+            int shift = 64 - width * 8;
+            raw = raw << shift >> shift;
+        }
+        out.add(field, divide ? raw / powerOfTen : raw * powerOfTen);
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+import com.example.bledevicesscanner.util.Ieee11073;
+
+/**
+ * Health Thermometer Temperature Measurement (0x2A1C) and Intermediate Temperature
+ * (0x2A1E): flags, an IEEE-11073 FLOAT in Celsius or Fahrenheit, an optional time stamp
+ * and an optional temperature type. The time stamp is skipped; the phone's receive time
+ * is what the streams carry.
+ */
+public class TemperatureMeasurementDecoder implements CharacteristicDecoder {
+    private static final int FLAG_FAHRENHEIT = 0x01;
+    private static final int FLAG_TIME_STAMP = 0x02;
+    private static final int FLAG_TEMPERATURE_TYPE = 0x04;
+    private static final int TIME_STAMP_LENGTH = 7;
+
+    @Override
+    public boolean decode(byte[] buffer, int offset, int length, Measurement out) {
+        if (length < 5) {
+            return false;
+        }
+        int end = offset + length;
+        int flags = buffer[offset] & 0xFF;
+        double temperature = Ieee11073.floatToDouble(Decoders.int32(buffer, offset + 1));
+        out.add((flags & FLAG_FAHRENHEIT) != 0 ? Measurement.TEMPERATURE_FAHRENHEIT : Measurement.TEMPERATURE_CELSIUS,
+                temperature);
+        int position = offset + 5;
+        if ((flags & FLAG_TIME_STAMP) != 0) {
+            if (end - position < TIME_STAMP_LENGTH) {
+                return false;
+            }
+            position += TIME_STAMP_LENGTH;
+        }
+        if ((flags & FLAG_TEMPERATURE_TYPE) != 0) {
+            if (end - position < 1) {
+                return false;
+            }
+            out.add(Measurement.TEMPERATURE_TYPE, buffer[position] & 0xFF);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,360 @@
+package com.example.bledevicesscanner.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Flyweight view over a raw advertisement / scan response payload.
+ *
+ * {@link #parse(byte[])} walks the AD structures in place and only records offsets and
+ * primitive values, so a parse allocates nothing and an instance can be reused for any
+ * number of payloads. Accessors that return objects ({@link #getLocalName()},
+ * {@link #getServiceUuid(int)}) allocate on demand; the primitive accessors and the
+ * matching helpers do not.
+ *
+ * The view keeps a reference to the parsed array, which must not be modified while the
+ * view is in use.
+ */
+public class AdvertisingData {
+    public static final int TX_POWER_UNKNOWN = Integer.MIN_VALUE;
+    public static final int FLAGS_UNKNOWN = -1;
+
+    // Per-payload limits; anything beyond them is counted in getOverflowCount() but not indexed
+    public static final int MAX_SERVICE_UUIDS = 16;
+    public static final int MAX_MANUFACTURER_DATA = 4;
+    public static final int MAX_SERVICE_DATA = 4;
+
+    // AD types from the Bluetooth Assigned Numbers
+    private static final int AD_FLAGS = 0x01;
+    private static final int AD_UUID16_INCOMPLETE = 0x02;
+    private static final int AD_UUID16_COMPLETE = 0x03;
+    private static final int AD_UUID32_INCOMPLETE = 0x04;
+    private static final int AD_UUID32_COMPLETE = 0x05;
+    private static final int AD_UUID128_INCOMPLETE = 0x06;
+    private static final int AD_UUID128_COMPLETE = 0x07;
+    private static final int AD_NAME_SHORT = 0x08;
+    private static final int AD_NAME_COMPLETE = 0x09;
+    private static final int AD_TX_POWER = 0x0A;
+    private static final int AD_SERVICE_DATA_16 = 0x16;
+    private static final int AD_SERVICE_DATA_32 = 0x20;
+    private static final int AD_SERVICE_DATA_128 = 0x21;
+    private static final int AD_MANUFACTURER_DATA = 0xFF;
+
+    // Bluetooth base UUID 00000000-0000-1000-8000-00805F9B34FB
+    private static final long BASE_UUID_MSB = 0x0000000000001000L;
+    private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+
+    private byte[] bytes;
+    private boolean truncated;
+
+    private int flags;
+    private int txPowerLevel;
+    private int nameOffset;
+    private int nameLength;
+    private boolean nameComplete;
+
+    private int serviceUuidCount;
+    private final int[] serviceUuidOffsets = new int[MAX_SERVICE_UUIDS];
+    private final byte[] serviceUuidWidths = new byte[MAX_SERVICE_UUIDS];
+
+    private int manufacturerDataCount;
+    private final int[] manufacturerDataOffsets = new int[MAX_MANUFACTURER_DATA];
+    private final int[] manufacturerDataLengths = new int[MAX_MANUFACTURER_DATA];
+
+    private int serviceDataCount;
+    // Entries past the limits above, dropped from the index
+    private int overflowCount;
+    private final int[] serviceDataOffsets = new int[MAX_SERVICE_DATA];
+    private final int[] serviceDataLengths = new int[MAX_SERVICE_DATA];
+    private final byte[] serviceDataUuidWidths = new byte[MAX_SERVICE_DATA];
+
+    public AdvertisingData() {
+        reset(null);
+    }
+
+    /**
+     * Parses the given payload, replacing whatever this view held before.
+     *
+     * @return false if the payload was null or an AD structure ran past the end of the
+     * array; fields parsed before the malformed structure remain available
+     */
+    public boolean parse(byte[] record) {
+        reset(record);
+        if (record == null) {
+            return false;
+        }
+
+        int pos = 0;
+        while (pos < record.length) {
+            int length = record[pos] & 0xFF;
+            if (length == 0) {
+                // Zero length marks the start of the non-significant padding
+                break;
+            }
+            int end = pos + 1 + length;
+            if (end > record.length) {
+                truncated = true;
+                break;
+            }
+            int type = record[pos + 1] & 0xFF;
+            int data = pos + 2;
+            int dataLength = length - 1;
+
+            switch (type) {
+                case AD_FLAGS:
+                    if (dataLength >= 1) {
+                        flags = record[data] & 0xFF;
+                    }
+                    break;
+                case AD_UUID16_INCOMPLETE:
+                case AD_UUID16_COMPLETE:
+                    addServiceUuids(data, dataLength, 2);
+                    break;
+                case AD_UUID32_INCOMPLETE:
+                case AD_UUID32_COMPLETE:
+                    addServiceUuids(data, dataLength, 4);
+                    break;
+                case AD_UUID128_INCOMPLETE:
+                case AD_UUID128_COMPLETE:
+                    addServiceUuids(data, dataLength, 16);
+                    break;
+                case AD_NAME_SHORT:
+                case AD_NAME_COMPLETE:
+                    // Prefer the complete name when both are present
+                    if (nameOffset < 0 || type == AD_NAME_COMPLETE) {
+                        nameOffset = data;
+                        nameLength = dataLength;
+                        nameComplete = type == AD_NAME_COMPLETE;
+                    }
+                    break;
+                case AD_TX_POWER:
+                    if (dataLength >= 1) {
+                        txPowerLevel = record[data];
+                    }
+                    break;
+                case AD_SERVICE_DATA_16:
+                    addServiceData(data, dataLength, 2);
+                    break;
+                case AD_SERVICE_DATA_32:
+                    addServiceData(data, dataLength, 4);
+                    break;
+                case AD_SERVICE_DATA_128:
+                    addServiceData(data, dataLength, 16);
+                    break;
+                case AD_MANUFACTURER_DATA:
+                    if (dataLength < 2) {
+                        break;
+                    }
+                    if (manufacturerDataCount == MAX_MANUFACTURER_DATA) {
+                        overflowCount++;
+                        break;
+                    }
+                    manufacturerDataOffsets[manufacturerDataCount] = data;
+                    manufacturerDataLengths[manufacturerDataCount] = dataLength;
+                    manufacturerDataCount++;
+                    break;
+                default:
+                    // Other AD types are not indexed
+                    break;
+            }
+            pos = end;
+        }
+        return !truncated;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    // True if the last parse stopped at an AD structure longer than the payload
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public int getTxPowerLevel() {
+        return txPowerLevel;
+    }
+
+    public boolean hasTxPowerLevel() {
+        return txPowerLevel != TX_POWER_UNKNOWN;
+    }
+
+    public boolean hasLocalName() {
+        return nameOffset >= 0;
+    }
+
+    public boolean isLocalNameComplete() {
+        return nameComplete;
+    }
+
+    public String getLocalName() {
+        return nameOffset < 0 ? null : new String(bytes, nameOffset, nameLength, StandardCharsets.UTF_8);
+    }
+
+    // Compares the local name with an ASCII prefix without decoding it
+    public boolean localNameStartsWith(String prefix) {
+        if (nameOffset < 0 || prefix.length() > nameLength) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if ((bytes[nameOffset + i] & 0xFF) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public int getServiceUuidCount() {
+        return serviceUuidCount;
+    }
+
+    // Width of the i-th service UUID in bytes: 2, 4 or 16
+    public int getServiceUuidWidth(int index) {
+        return serviceUuidWidths[index];
+    }
+
+    // 16- or 32-bit value of the i-th service UUID; only meaningful for short UUIDs
+    public long getServiceUuidShort(int index) {
+        return readUnsigned(serviceUuidOffsets[index], serviceUuidWidths[index]);
+    }
+
+    public UUID getServiceUuid(int index) {
+        return new UUID(uuidMsb(serviceUuidOffsets[index], serviceUuidWidths[index]),
+                uuidLsb(serviceUuidOffsets[index], serviceUuidWidths[index]));
+    }
+
+    public boolean hasServiceUuid(UUID uuid) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        for (int i = 0; i < serviceUuidCount; i++) {
+            int offset = serviceUuidOffsets[i];
+            int width = serviceUuidWidths[i];
+            if (uuidMsb(offset, width) == msb && uuidLsb(offset, width) == lsb) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getManufacturerDataCount() {
+        return manufacturerDataCount;
+    }
+
+    // Bluetooth SIG company identifier of the i-th manufacturer data entry
+    public int getManufacturerId(int index) {
+        return (int) readUnsigned(manufacturerDataOffsets[index], 2);
+    }
+
+    // Offset into getBytes() of the manufacturer data, after the company identifier
+    public int getManufacturerDataOffset(int index) {
+        return manufacturerDataOffsets[index] + 2;
+    }
+
+    public int getManufacturerDataLength(int index) {
+        return manufacturerDataLengths[index] - 2;
+    }
+
+    // Index of the first manufacturer data entry with the given company id, or -1
+    public int indexOfManufacturer(int manufacturerId) {
+        for (int i = 0; i < manufacturerDataCount; i++) {
+            if (getManufacturerId(i) == manufacturerId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public int getServiceDataCount() {
+        return serviceDataCount;
+    }
+
+    // Service UUIDs, manufacturer and service data entries beyond the per-payload limits
+    public int getOverflowCount() {
+        return overflowCount;
+    }
+
+    public UUID getServiceDataUuid(int index) {
+        int offset = serviceDataOffsets[index];
+        int width = serviceDataUuidWidths[index];
+        return new UUID(uuidMsb(offset, width), uuidLsb(offset, width));
+    }
+
+    // 16- or 32-bit service UUID of the i-th service data entry
+    public long getServiceDataUuidShort(int index) {
+        return readUnsigned(serviceDataOffsets[index], serviceDataUuidWidths[index]);
+    }
+
+    // Offset into getBytes() of the service data, after the service UUID
+    public int getServiceDataOffset(int index) {
+        return serviceDataOffsets[index] + serviceDataUuidWidths[index];
+    }
+
+    public int getServiceDataLength(int index) {
+        return serviceDataLengths[index] - serviceDataUuidWidths[index];
+    }
+
+    private void reset(byte[] record) {
+        bytes = record;
+        truncated = false;
+        flags = FLAGS_UNKNOWN;
+        txPowerLevel = TX_POWER_UNKNOWN;
+        nameOffset = -1;
+        nameLength = 0;
+        nameComplete = false;
+        serviceUuidCount = 0;
+        manufacturerDataCount = 0;
+        serviceDataCount = 0;
+        overflowCount = 0;
+    }
+
+    private void addServiceUuids(int offset, int length, int width) {
+        for (int pos = offset; pos + width <= offset + length; pos += width) {
+            if (serviceUuidCount == MAX_SERVICE_UUIDS) {
+                overflowCount++;
+                continue;
+            }
+            serviceUuidOffsets[serviceUuidCount] = pos;
+            serviceUuidWidths[serviceUuidCount] = (byte) width;
+            serviceUuidCount++;
+        }
+    }
+
+    private void addServiceData(int offset, int length, int uuidWidth) {
+        if (length < uuidWidth) {
+            return;
+        }
+        if (serviceDataCount == MAX_SERVICE_DATA) {
+            overflowCount++;
+            return;
+        }
+        serviceDataOffsets[serviceDataCount] = offset;
+        serviceDataLengths[serviceDataCount] = length;
+        serviceDataUuidWidths[serviceDataCount] = (byte) uuidWidth;
+        serviceDataCount++;
+    }
+
+    // Little-endian unsigned integer of 1 to 8 bytes
+    private long readUnsigned(int offset, int width) {
+        long value = 0;
+        for (int i = width - 1; i >= 0; i--) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private long uuidMsb(int offset, int width) {
+        if (width == 16) {
+            // 128-bit UUIDs are transmitted least significant byte first
+            return readUnsigned(offset + 8, 8);
+        }
+        return (readUnsigned(offset, width) << 32) | BASE_UUID_MSB;
+    }
+
+    private long uuidLsb(int offset, int width) {
+        return width == 16 ? readUnsigned(offset, 8) : BASE_UUID_LSB;
+    }
+}
@@ -2,6 +2,8 @@ package com.example.bledevicesscanner.model;
 
 import android.bluetooth.BluetoothGattCharacteristic;
 
+import com.example.bledevicesscanner.util.ValueFormatter;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -9,8 +11,18 @@ import java.util.List;
  * Model class to hold BLE characteristic information
  */
 public class BleCharacteristic {
+    // Models are shared across threads, so each thread formats into its own buffer
+    private static final ThreadLocal<ValueFormatter> FORMATTERS = new ThreadLocal<ValueFormatter>() {
+        @Override
+        protected ValueFormatter initialValue() {
+            return new ValueFormatter();
+        }
+    };
+
     private final BluetoothGattCharacteristic characteristic;
     private byte[] value;
+    private ValueFormatter.Format format = ValueFormatter.Format.AUTO;
+    private String formatted;
 
     public BleCharacteristic(BluetoothGattCharacteristic characteristic) {
         this.characteristic = characteristic;
@@ -68,51 +80,48 @@ public class BleCharacteristic {
         return (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) != 0;
     }
 
+    public boolean isIndicatable() {
+        return (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0;
+    }
+
+    // True if the characteristic can push values, by notification or indication
+    public boolean supportsSubscription() {
+        return isNotifiable() || isIndicatable();
+    }
+
     public byte[] getValue() {
         return value;
     }
 
     public void setValue(byte[] value) {
         this.value = value;
+        formatted = null;
     }
 
+    /**
+     * The value as text in the selected format. The text is cached until the value or the
+     * format changes, so rebinding an unchanged row does not format it again.
+     */
     public String getValueAsString() {
-        if (value == null) {
-            return "No value";
+        if (formatted == null) {
+            formatted = FORMATTERS.get().format(value, format);
         }
-
-        // Try to convert to UTF-8 string if possible
-        try {
-            String utf8String = new String(value, "UTF-8");
-            if (isPrintable(utf8String)) {
-                return utf8String;
-            }
-        } catch (Exception e) {
-            // If not convertible to UTF-8, fall back to hex representation
-        }
-
-        // Hex representation
-        StringBuilder sb = new StringBuilder();
-        for (byte b : value) {
-            sb.append(String.format("%02X ", b));
-        }
-        return sb.toString().trim();
+        return formatted;
     }
 
-    public String getPropertiesString() {
-        return String.join(", ", getPropertiesNames());
+    public ValueFormatter.Format getFormat() {
+        return format;
     }
 
-    private boolean isPrintable(String str) {
-        for (int i = 0; i < str.length(); i++) {
-            if (!isPrintableChar(str.charAt(i))) {
-                return false;
-            }
+    public BleCharacteristic setFormat(ValueFormatter.Format format) {
+        if (this.format != format) {
+            this.format = format;
+            formatted = null;
         }
-        return true;
+        return this;
     }
 
-    private boolean isPrintableChar(char c) {
-        return c >= 32 && c < 127;
+    public String getPropertiesString() {
+        return String.join(", ", getPropertiesNames());
     }
-} 
\ No newline at end of file
+}
@@ -1,6 +1,10 @@
 package com.example.bledevicesscanner.model;
 
 import android.bluetooth.BluetoothDevice;
+import android.os.SystemClock;
+
+import com.example.bledevicesscanner.util.MacAddress;
+import com.example.bledevicesscanner.util.SignalFilter;
 
 /**
  * Model class to hold BLE device information
@@ -9,11 +13,26 @@ public class BleDevice {
     private final BluetoothDevice device;
     private int rssi;
     private byte[] scanRecord;
+    private long packedAddress = MacAddress.INVALID;
+    private String name;
+    private AdvertisingData advertisingData;
+    private boolean advertisingDataParsed;
+    private final long timestampNanos;
+
+    // Filter carried over from the previous instance of this device; values are copied out for other threads
+    private SignalFilter signalFilter;
+    private double smoothedRssi = Double.NaN;
+    private double distance = Double.NaN;
 
     public BleDevice(BluetoothDevice device, int rssi, byte[] scanRecord) {
+        this(device, rssi, scanRecord, SystemClock.elapsedRealtimeNanos());
+    }
+
+    public BleDevice(BluetoothDevice device, int rssi, byte[] scanRecord, long timestampNanos) {
         this.device = device;
         this.rssi = rssi;
         this.scanRecord = scanRecord;
+        this.timestampNanos = timestampNanos;
     }
 
     public BluetoothDevice getDevice() {
@@ -24,25 +43,95 @@ public class BleDevice {
         return device.getAddress();
     }
 
+    // Address packed into a long, computed once and used as a primitive key
+    public long getPackedAddress() {
+        if (packedAddress == MacAddress.INVALID) {
+            packedAddress = MacAddress.pack(device.getAddress());
+        }
+        return packedAddress;
+    }
+
     public String getName() {
-        String name = device.getName();
-        return name != null && !name.isEmpty() ? name : "Unknown Device";
+        // BluetoothDevice.getName() is a binder call, resolve it once per instance
+        if (name == null) {
+            String deviceName = device.getName();
+            if (deviceName == null || deviceName.isEmpty()) {
+                AdvertisingData data = getAdvertisingData();
+                deviceName = data != null ? data.getLocalName() : null;
+            }
+            name = deviceName != null && !deviceName.isEmpty() ? deviceName : "Unknown Device";
+        }
+        return name;
+    }
+
+    // Time the advertisement was received, in elapsed realtime nanoseconds
+    public long getTimestampNanos() {
+        return timestampNanos;
     }
 
     public int getRssi() {
         return rssi;
     }
 
+    // Raw RSSI of this advertisement; does not touch the filter
     public void setRssi(int rssi) {
         this.rssi = rssi;
     }
 
+    /**
+     * Feeds this advertisement's RSSI into the device's filter and keeps the smoothed
+     * value and the distance estimate. The filter is passed on from instance to instance
+     * of the same device and must only be used on one thread.
+     */
+    public void applySignalFilter(SignalFilter signalFilter) {
+        this.signalFilter = signalFilter;
+        smoothedRssi = signalFilter.update(rssi, timestampNanos);
+        AdvertisingData data = getAdvertisingData();
+        int txPowerLevel = data != null ? data.getTxPowerLevel() : AdvertisingData.TX_POWER_UNKNOWN;
+        distance = SignalFilter.estimateDistance(smoothedRssi, txPowerLevel, signalFilter.getSettings());
+    }
+
+    public SignalFilter getSignalFilter() {
+        return signalFilter;
+    }
+
+    // Smoothed RSSI when a filter has been applied, the raw RSSI otherwise
+    public double getSmoothedRssi() {
+        return Double.isNaN(smoothedRssi) ? rssi : smoothedRssi;
+    }
+
+    // Estimated distance in metres, NaN if the device does not advertise its TX power
+    public double getDistance() {
+        return distance;
+    }
+
+    public boolean hasDistance() {
+        return !Double.isNaN(distance);
+    }
+
     public byte[] getScanRecord() {
         return scanRecord;
     }
 
     public void setScanRecord(byte[] scanRecord) {
         this.scanRecord = scanRecord;
+        advertisingDataParsed = false;
+    }
+
+    // Parsed view of the scan record, or null if there is none. Parsed once per record.
+    public AdvertisingData getAdvertisingData() {
+        if (!advertisingDataParsed) {
+            advertisingDataParsed = true;
+            if (scanRecord == null) {
+                advertisingData = null;
+            } else {
+                if (advertisingData == null) {
+                    advertisingData = new AdvertisingData();
+                }
+                advertisingData.parse(scanRecord);
+            }
+        }
+        return advertisingData;
     }
 
     @Override
@@ -0,0 +1,110 @@
+package com.example.bledevicesscanner.util;
+
+/**
+ * The IEEE 11073-20601 SFLOAT (16-bit) and FLOAT (32-bit) types GATT health and sensor
+ * characteristics use: a signed base-10 exponent in the top bits and a signed mantissa
+ * in the rest, with reserved mantissas for NaN, NRes and the infinities.
+ */
+public final class Ieee11073 {
+    // Reserved SFLOAT mantissas, 12 bits
+    public static final int SFLOAT_NAN = 0x07FF;
+    public static final int SFLOAT_NRES = 0x0800;
+    public static final int SFLOAT_POSITIVE_INFINITY = 0x07FE;
+    public static final int SFLOAT_NEGATIVE_INFINITY = 0x0802;
+    public static final int SFLOAT_RESERVED = 0x0801;
+
+    // Reserved FLOAT mantissas, 24 bits
+    public static final int FLOAT_NAN = 0x007FFFFF;
+    public static final int FLOAT_NRES = 0x00800000;
+    public static final int FLOAT_POSITIVE_INFINITY = 0x007FFFFE;
+    public static final int FLOAT_NEGATIVE_INFINITY = 0x00800002;
+    public static final int FLOAT_RESERVED = 0x00800001;
+
+    // Exact as doubles; dividing by them rounds correctly where multiplying by 1e-n would not
+    private static final double[] POWERS_OF_TEN = {
+            1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private Ieee11073() {
+    }
+
+    // Raw 12-bit SFLOAT mantissa, before sign extension
+    public static int sfloatMantissaBits(int raw) {
+        return raw & 0x0FFF;
+    }
+
+    public static int sfloatMantissa(int raw) {
+        return (raw << 20) >> 20;
+    }
+
+    public static int sfloatExponent(int raw) {
+        return (raw << 16) >> 28;
+    }
+
+    public static boolean isSfloatSpecial(int raw) {
+        int bits = sfloatMantissaBits(raw);
+        return bits >= SFLOAT_POSITIVE_INFINITY && bits <= SFLOAT_NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Value of a 16-bit SFLOAT as read little-endian from the characteristic; NaN for
+     * NaN, NRes and the reserved value, an infinity for the infinities.
+     */
+    public static double sfloatToDouble(int raw) {
+        switch (sfloatMantissaBits(raw)) {
+            case SFLOAT_POSITIVE_INFINITY:
+                return Double.POSITIVE_INFINITY;
+            case SFLOAT_NEGATIVE_INFINITY:
+                return Double.NEGATIVE_INFINITY;
+            case SFLOAT_NAN:
+            case SFLOAT_NRES:
+            case SFLOAT_RESERVED:
+                return Double.NaN;
+            default:
+                return scale(sfloatMantissa(raw), sfloatExponent(raw));
+        }
+    }
+
+    // Raw 24-bit FLOAT mantissa, before sign extension
+    public static int floatMantissaBits(int raw) {
+        return raw & 0x00FFFFFF;
+    }
+
+    public static int floatMantissa(int raw) {
+        return (raw << 8) >> 8;
+    }
+
+    public static int floatExponent(int raw) {
+        return raw >> 24;
+    }
+
+    public static boolean isFloatSpecial(int raw) {
+        int bits = floatMantissaBits(raw);
+        return bits >= FLOAT_POSITIVE_INFINITY && bits <= FLOAT_NEGATIVE_INFINITY;
+    }
+
+    // Value of a 32-bit FLOAT, with the same special values as sfloatToDouble
+    public static double floatToDouble(int raw) {
+        switch (floatMantissaBits(raw)) {
+            case FLOAT_POSITIVE_INFINITY:
+                return Double.POSITIVE_INFINITY;
+            case FLOAT_NEGATIVE_INFINITY:
+                return Double.NEGATIVE_INFINITY;
+            case FLOAT_NAN:
+            case FLOAT_NRES:
+            case FLOAT_RESERVED:
+                return Double.NaN;
+            default:
+                return scale(floatMantissa(raw), floatExponent(raw));
+        }
+    }
+
+    // mantissa * 10^exponent
+    private static double scale(int mantissa, int exponent) {
+        if (exponent >= 0) {
+            return exponent < POWERS_OF_TEN.length ? mantissa * POWERS_OF_TEN[exponent] : mantissa * Math.pow(10, exponent);
+        }
+        return -exponent < POWERS_OF_TEN.length ? mantissa / POWERS_OF_TEN[-exponent] : mantissa / Math.pow(10, -exponent);
+    }
+}
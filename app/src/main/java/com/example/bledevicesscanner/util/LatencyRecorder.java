@@ -0,0 +1,76 @@
+package com.example.bledevicesscanner.util;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a fixed-size ring and reports percentiles over
+ * them. Recording is O(1) and allocation-free; percentiles sort a copy of the window, so
+ * they are meant for occasional reporting rather than the hot path. Not thread-safe.
+ */
+public class LatencyRecorder {
+    private final long[] samples;
+    private int next;
+    private int size;
+    private long count;
+    private long total;
+    private long max;
+
+    public LatencyRecorder(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.samples = new long[capacity];
+    }
+
+    public void record(long valueMs) {
+        samples[next] = valueMs;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        count++;
+        total += valueMs;
+        max = Math.max(max, valueMs);
+    }
+
+    // Samples recorded since the last reset, including those no longer in the window
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Nearest-rank percentile of the samples in the window.
+     *
+     * @param percentile between 0 and 100
+     * @return the percentile, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        if (size == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, size);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * size);
+        return sorted[Math.max(0, Math.min(size - 1, rank - 1))];
+    }
+
+    public void reset() {
+        next = 0;
+        size = 0;
+        count = 0;
+        total = 0;
+        max = 0;
+    }
+
+    @Override
+    public String toString() {
+        return count + " samples, p50 " + getPercentile(50) + " ms, p90 " + getPercentile(90)
+                + " ms, p99 " + getPercentile(99) + " ms, max " + max + " ms";
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.bledevicesscanner.util;
+
+/**
+ * Helpers for packing a Bluetooth MAC address ("AA:BB:CC:DD:EE:FF") into the low
+ * 48 bits of a long so it can be used as a primitive map key.
+ */
+public final class MacAddress {
+    // Returned for strings that are not a well-formed MAC address
+    public static final long INVALID = -1L;
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private MacAddress() {
+    }
+
+    public static long pack(String address) {
+        if (address == null || address.length() != 17) {
+            return INVALID;
+        }
+        long packed = 0;
+        for (int i = 0; i < 17; i += 3) {
+            int hi = Character.digit(address.charAt(i), 16);
+            int lo = Character.digit(address.charAt(i + 1), 16);
+            if (hi < 0 || lo < 0 || (i < 15 && address.charAt(i + 2) != ':')) {
+                return INVALID;
+            }
+            packed = (packed << 8) | (hi << 4) | lo;
+        }
+        return packed;
+    }
+
+    public static String unpack(long packed) {
+        char[] chars = new char[17];
+        for (int i = 0; i < 6; i++) {
+            int b = (int) (packed >>> (40 - i * 8)) & 0xFF;
+            int pos = i * 3;
+            chars[pos] = HEX[b >>> 4];
+            chars[pos + 1] = HEX[b & 0x0F];
+            if (i < 5) {
+                chars[pos + 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.bledevicesscanner.util;
+
+import com.example.bledevicesscanner.model.AdvertisingData;
+
+/**
+ * Smooths the RSSI of one device across advertisements and estimates its distance.
+ *
+ * Two filters are available. {@link Mode#EWMA} is an exponentially weighted moving
+ * average with a fixed weight per sample. {@link Mode#KALMAN} is a one-dimensional Kalman
+ * filter whose process noise grows with the time since the last sample, so it trusts a
+ * fresh reading more after a long gap and settles quickly while advertisements keep
+ * arriving. Both keep their state in primitive fields and never allocate on update.
+ *
+ * Not thread-safe; readers on other threads should be handed the values, not the filter.
+ */
+public class SignalFilter {
+    public enum Mode {
+        EWMA,
+        KALMAN
+    }
+
+    /**
+     * Filter parameters, shared by every device filtered the same way. Must not be modified
+     * once filters use it.
+     */
+    public static class Settings {
+        public static final double DEFAULT_ALPHA = 0.25;
+        // dBm^2 of drift per second and of noise per reading, typical for a phone in a room
+        public static final double DEFAULT_PROCESS_NOISE = 2.0;
+        public static final double DEFAULT_MEASUREMENT_NOISE = 16.0;
+        // Free space; 2.5 to 4 suits cluttered indoor spaces
+        public static final double DEFAULT_PATH_LOSS_EXPONENT = 2.0;
+        // Loss over the first metre at 2.4 GHz, turns advertised TX power into RSSI at 1 m
+        public static final int DEFAULT_ONE_METRE_LOSS = 41;
+
+        private Mode mode = Mode.KALMAN;
+        private double alpha = DEFAULT_ALPHA;
+        private double processNoise = DEFAULT_PROCESS_NOISE;
+        private double measurementNoise = DEFAULT_MEASUREMENT_NOISE;
+        private double pathLossExponent = DEFAULT_PATH_LOSS_EXPONENT;
+        private int oneMetreLoss = DEFAULT_ONE_METRE_LOSS;
+
+        public Settings setMode(Mode mode) {
+            this.mode = mode;
+            return this;
+        }
+
+        // Weight of the newest sample in EWMA mode, between 0 (ignore) and 1 (no smoothing)
+        public Settings setAlpha(double alpha) {
+            if (alpha <= 0 || alpha > 1) {
+                throw new IllegalArgumentException("Alpha must be in (0, 1]: " + alpha);
+            }
+            this.alpha = alpha;
+            return this;
+        }
+
+        // Variance the true signal gains per second in Kalman mode
+        public Settings setProcessNoise(double processNoise) {
+            if (processNoise <= 0) {
+                throw new IllegalArgumentException("Process noise must be positive: " + processNoise);
+            }
+            this.processNoise = processNoise;
+            return this;
+        }
+
+        // Variance of a single reading in Kalman mode
+        public Settings setMeasurementNoise(double measurementNoise) {
+            if (measurementNoise <= 0) {
+                throw new IllegalArgumentException("Measurement noise must be positive: " + measurementNoise);
+            }
+            this.measurementNoise = measurementNoise;
+            return this;
+        }
+
+        public Settings setPathLossExponent(double pathLossExponent) {
+            if (pathLossExponent <= 0) {
+                throw new IllegalArgumentException("Path loss exponent must be positive: " + pathLossExponent);
+            }
+            this.pathLossExponent = pathLossExponent;
+            return this;
+        }
+
+        public Settings setOneMetreLoss(int oneMetreLoss) {
+            this.oneMetreLoss = oneMetreLoss;
+            return this;
+        }
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public double getPathLossExponent() {
+            return pathLossExponent;
+        }
+
+        public int getOneMetreLoss() {
+            return oneMetreLoss;
+        }
+    }
+
+    private final Settings settings;
+    private double estimate;
+    // Kalman error variance; unused by EWMA
+    private double variance;
+    private long lastUpdateNanos;
+    private long updateCount;
+
+    public SignalFilter(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Feeds one reading taken at timestampNanos, in any monotonic clock.
+     *
+     * @return the smoothed RSSI
+     */
+    public double update(int rssi, long timestampNanos) {
+        if (updateCount++ == 0) {
+            estimate = rssi;
+            variance = settings.measurementNoise;
+            lastUpdateNanos = timestampNanos;
+            return estimate;
+        }
+        if (settings.mode == Mode.EWMA) {
+            estimate += settings.alpha * (rssi - estimate);
+        } else {
+            // Out of order readings add no drift
+            double elapsedSeconds = Math.max(0, timestampNanos - lastUpdateNanos) / 1e9;
+            double predicted = variance + settings.processNoise * elapsedSeconds;
+            double gain = predicted / (predicted + settings.measurementNoise);
+            estimate += gain * (rssi - estimate);
+            variance = (1 - gain) * predicted;
+        }
+        lastUpdateNanos = Math.max(lastUpdateNanos, timestampNanos);
+        return estimate;
+    }
+
+    // Smoothed RSSI in dBm, NaN before the first reading
+    public double getRssi() {
+        return updateCount == 0 ? Double.NaN : estimate;
+    }
+
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    // Distance in metres for the smoothed RSSI, NaN if unknown; see estimateDistance
+    public double getDistance(int txPowerLevel) {
+        return updateCount == 0 ? Double.NaN : estimateDistance(estimate, txPowerLevel, settings);
+    }
+
+    public void reset() {
+        updateCount = 0;
+        estimate = 0;
+        variance = 0;
+        lastUpdateNanos = 0;
+    }
+
+    /**
+     * Log-distance path loss estimate {@code 10 ^ ((txPower - oneMetreLoss - rssi) / (10 * n))}
+     * from the TX power level a device advertises. Indoors it is only good for ranking
+     * and for telling near from far.
+     *
+     * @param txPowerLevel advertised TX power in dBm, or {@link AdvertisingData#TX_POWER_UNKNOWN}
+     * @return the distance in metres, or NaN if the TX power is unknown
+     */
+    public static double estimateDistance(double rssi, int txPowerLevel, Settings settings) {
+        if (txPowerLevel == AdvertisingData.TX_POWER_UNKNOWN || Double.isNaN(rssi)) {
+            return Double.NaN;
+        }
+        double rssiAtOneMetre = txPowerLevel - settings.oneMetreLoss;
+        return Math.pow(10, (rssiAtOneMetre - rssi) / (10 * settings.pathLossExponent));
+    }
+}
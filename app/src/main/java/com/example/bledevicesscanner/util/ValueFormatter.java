@@ -0,0 +1,272 @@
+package com.example.bledevicesscanner.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns characteristic values into display text. Text is assembled in a reusable
+ * {@code char[]}, hex digits come from a lookup table and printability is checked on
+ * the bytes, so formatting a value allocates only the resulting String.
+ *
+ * Multi-byte formats read the value as consecutive little-endian fields of their width,
+ * separated by spaces; a value whose length is not a multiple of the width is shown as
+ * hex instead. Instances are not thread-safe; use one per thread.
+ */
+public class ValueFormatter {
+    public static final String NO_VALUE = "No value";
+
+    public enum Format {
+        // Printable ASCII as text, anything else as hex
+        AUTO(1),
+        HEX(1),
+        UTF8(1),
+        UINT8(1),
+        UINT16(2),
+        UINT32(4),
+        SINT8(1),
+        SINT16(2),
+        SINT32(4),
+        // IEEE-11073 16-bit SFLOAT and 32-bit FLOAT
+        SFLOAT(2),
+        FLOAT(4);
+
+        private final int width;
+
+        Format(int width) {
+            this.width = width;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] NAN = "NaN".toCharArray();
+    private static final char[] NRES = "NRes".toCharArray();
+    private static final char[] POSITIVE_INFINITY = "+INF".toCharArray();
+    private static final char[] NEGATIVE_INFINITY = "-INF".toCharArray();
+    private static final char[] RESERVED = "Reserved".toCharArray();
+
+    private char[] buffer = new char[64];
+    private int length;
+
+    public String format(byte[] value, Format format) {
+        if (value == null) {
+            return NO_VALUE;
+        }
+        if (value.length % format.width != 0) {
+            format = Format.HEX;
+        }
+        switch (format) {
+            case AUTO:
+                if (isPrintable(value)) {
+                    return new String(value, StandardCharsets.US_ASCII);
+                }
+                return hex(value);
+            case UTF8:
+                return new String(value, StandardCharsets.UTF_8);
+            case HEX:
+                return hex(value);
+            default:
+                return fields(value, format);
+        }
+    }
+
+    // True if every byte is printable ASCII, which is what decoding as UTF-8 and checking the chars would find
+    public static boolean isPrintable(byte[] value) {
+        for (byte b : value) {
+            if (b < 32 || b == 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Upper-case hex, one space between bytes
+    public String hex(byte[] value) {
+        if (value.length == 0) {
+            return "";
+        }
+        length = 0;
+        ensureCapacity(value.length * 3);
+        char[] out = buffer;
+        int position = 0;
+        for (byte b : value) {
+            out[position] = HEX_DIGITS[(b >> 4) & 0x0F];
+            out[position + 1] = HEX_DIGITS[b & 0x0F];
+            out[position + 2] = ' ';
+            position += 3;
+        }
+        return new String(out, 0, position - 1);
+    }
+
+    private String fields(byte[] value, Format format) {
+        length = 0;
+        for (int offset = 0; offset < value.length; offset += format.width) {
+            if (offset > 0) {
+                append(' ');
+            }
+            switch (format) {
+                case UINT8:
+                    appendLong(value[offset] & 0xFF);
+                    break;
+                case UINT16:
+                    appendLong(uint16(value, offset));
+                    break;
+                case UINT32:
+                    appendLong(uint32(value, offset) & 0xFFFFFFFFL);
+                    break;
+                case SINT8:
+                    appendLong(value[offset]);
+                    break;
+                case SINT16:
+                    appendLong((short) uint16(value, offset));
+                    break;
+                case SINT32:
+                    appendLong(uint32(value, offset));
+                    break;
+                case SFLOAT:
+                    appendSfloat(uint16(value, offset));
+                    break;
+                case FLOAT:
+                    appendFloat(uint32(value, offset));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Not a field format: " + format);
+            }
+        }
+        return new String(buffer, 0, length);
+    }
+
+    private static int uint16(byte[] value, int offset) {
+        return (value[offset] & 0xFF) | (value[offset + 1] & 0xFF) << 8;
+    }
+
+    private static int uint32(byte[] value, int offset) {
+        return (value[offset] & 0xFF) | (value[offset + 1] & 0xFF) << 8
+                | (value[offset + 2] & 0xFF) << 16 | (value[offset + 3] & 0xFF) << 24;
+    }
+
+    private void appendSfloat(int raw) {
+        switch (Ieee11073.sfloatMantissaBits(raw)) {
+            case Ieee11073.SFLOAT_NAN:
+                append(NAN);
+                return;
+            case Ieee11073.SFLOAT_NRES:
+                append(NRES);
+                return;
+            case Ieee11073.SFLOAT_POSITIVE_INFINITY:
+                append(POSITIVE_INFINITY);
+                return;
+            case Ieee11073.SFLOAT_NEGATIVE_INFINITY:
+                append(NEGATIVE_INFINITY);
+                return;
+            case Ieee11073.SFLOAT_RESERVED:
+                append(RESERVED);
+                return;
+            default:
+                appendDecimal(Ieee11073.sfloatMantissa(raw), Ieee11073.sfloatExponent(raw));
+        }
+    }
+
+    private void appendFloat(int raw) {
+        switch (Ieee11073.floatMantissaBits(raw)) {
+            case Ieee11073.FLOAT_NAN:
+                append(NAN);
+                return;
+            case Ieee11073.FLOAT_NRES:
+                append(NRES);
+                return;
+            case Ieee11073.FLOAT_POSITIVE_INFINITY:
+                append(POSITIVE_INFINITY);
+                return;
+            case Ieee11073.FLOAT_NEGATIVE_INFINITY:
+                append(NEGATIVE_INFINITY);
+                return;
+            case Ieee11073.FLOAT_RESERVED:
+                append(RESERVED);
+                return;
+            default:
+                appendDecimal(Ieee11073.floatMantissa(raw), Ieee11073.floatExponent(raw));
+        }
+    }
+
+    // mantissa * 10^exponent written out exactly, e.g. 365, -1 as 36.5 and 5, -3 as 0.005
+    private void appendDecimal(int mantissa, int exponent) {
+        if (mantissa == 0) {
+            append('0');
+            return;
+        }
+        if (mantissa < 0) {
+            append('-');
+            mantissa = -mantissa;
+        }
+        int start = length;
+        appendLong(mantissa);
+        if (exponent >= 0) {
+            for (int i = 0; i < exponent; i++) {
+                append('0');
+            }
+            return;
+        }
+        int digits = length - start;
+        int fraction = -exponent;
+        if (digits > fraction) {
+            // Open a gap for the point in front of the last fraction digits
+            ensureCapacity(length + 1);
+            System.arraycopy(buffer, length - fraction, buffer, length - fraction + 1, fraction);
+            buffer[length - fraction] = '.';
+            length++;
+            return;
+        }
+        // "0." and any zeros between the point and the digits
+        int shift = 2 + fraction - digits;
+        ensureCapacity(length + shift);
+        System.arraycopy(buffer, start, buffer, start + shift, digits);
+        buffer[start] = '0';
+        buffer[start + 1] = '.';
+        for (int i = start + 2; i < start + shift; i++) {
+            buffer[i] = '0';
+        }
+        length += shift;
+    }
+
+    private void appendLong(long value) {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        ensureCapacity(length + 20);
+        int end = length;
+        do {
+            buffer[end++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // Digits came out least significant first
+        for (int i = length, j = end - 1; i < j; i++, j--) {
+            char c = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = c;
+        }
+        length = end;
+    }
+
+    private void append(char c) {
+        ensureCapacity(length + 1);
+        buffer[length++] = c;
+    }
+
+    private void append(char[] chars) {
+        ensureCapacity(length + chars.length);
+        System.arraycopy(chars, 0, buffer, length, chars.length);
+        length += chars.length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            char[] grown = new char[Math.max(capacity, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, length);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bledevicesscanner.adapter;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.MacAddress;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DeviceStoreTest {
+    private static final int[] SIZES = {10, 100, 1000, 10000};
+    private static final int UPSERTS_PER_ROUND = 200000;
+
+    private static BleDevice device(int index, int rssi) {
+        BluetoothDevice bluetoothDevice = mock(BluetoothDevice.class);
+        when(bluetoothDevice.getAddress()).thenReturn(MacAddress.unpack(0xC0FFEE000000L | index));
+        when(bluetoothDevice.getName()).thenReturn("Sensor " + index);
+        BleDevice device = new BleDevice(bluetoothDevice, rssi, null, index);
+        // Resolve the lazily packed address outside the timed loops
+        device.getPackedAddress();
+        return device;
+    }
+
+    private static BleDevice[] devices(int count, int rssi) {
+        BleDevice[] devices = new BleDevice[count];
+        for (int i = 0; i < count; i++) {
+            devices[i] = device(i, rssi);
+        }
+        return devices;
+    }
+
+    @Test
+    public void upsertReplacesInstanceOfSameAddress() {
+        DeviceStore store = new DeviceStore();
+        BleDevice first = device(1, -70);
+        BleDevice second = device(2, -60);
+        BleDevice firstAgain = device(1, -40);
+        store.upsert(first);
+        store.upsert(second);
+        store.upsert(firstAgain);
+
+        List<BleDevice> snapshot = store.snapshot(DeviceStore.BY_RSSI);
+        assertEquals(2, store.size());
+        assertSame(firstAgain, snapshot.get(0));
+        assertSame(second, snapshot.get(1));
+    }
+
+    @Test
+    public void removeMovesLastDeviceIntoFreedSlot() {
+        DeviceStore store = new DeviceStore();
+        BleDevice[] devices = devices(5, -50);
+        for (BleDevice device : devices) {
+            store.upsert(device);
+        }
+        assertTrue(store.remove(devices[1].getPackedAddress()));
+        assertFalse(store.remove(devices[1].getPackedAddress()));
+
+        // The device moved into the freed slot must still be found and replaced, not duplicated
+        BleDevice lastAgain = device(4, -30);
+        store.upsert(lastAgain);
+        assertEquals(4, store.size());
+        assertSame(lastAgain, store.snapshot(DeviceStore.BY_RSSI).get(0));
+
+        store.clear();
+        assertTrue(store.isEmpty());
+    }
+
+    /**
+     * Upserting into a store of 10 and of 10,000 devices must cost about the same. A
+     * linear search would make the large store a thousand times slower; the bound allows
+     * for cache misses on the larger tables and noise on a shared machine.
+     */
+    @Test
+    public void upsertCostIsFlatFrom10To10000Devices() {
+        // Mocks are slow to create, so every size gets its devices once
+        BleDevice[] stored = devices(SIZES[SIZES.length - 1], -60);
+        BleDevice[] updates = devices(SIZES[SIZES.length - 1], -50);
+        double[] nanosPerUpsert = new double[SIZES.length];
+        // The first pass warms up the JIT, the second is measured
+        for (int pass = 0; pass < 2; pass++) {
+            for (int s = 0; s < SIZES.length; s++) {
+                nanosPerUpsert[s] = measureUpsert(SIZES[s], stored, updates);
+            }
+        }
+        double smallest = nanosPerUpsert[0];
+        for (int s = 1; s < SIZES.length; s++) {
+            assertTrue(String.format("%.1f ns per upsert with %d devices, %.1f ns with %d",
+                            nanosPerUpsert[s], SIZES[s], smallest, SIZES[0]),
+                    nanosPerUpsert[s] < Math.max(smallest, 20) * 10);
+        }
+    }
+
+    // Best of three rounds of updating every stored device in turn
+    private static double measureUpsert(int size, BleDevice[] stored, BleDevice[] updates) {
+        DeviceStore store = new DeviceStore();
+        for (int i = 0; i < size; i++) {
+            store.upsert(stored[i]);
+        }
+        double best = Double.MAX_VALUE;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < UPSERTS_PER_ROUND; i++) {
+                store.upsert(updates[i % size]);
+            }
+            best = Math.min(best, (double) (System.nanoTime() - start) / UPSERTS_PER_ROUND);
+        }
+        assertEquals(size, store.size());
+        return best;
+    }
+}
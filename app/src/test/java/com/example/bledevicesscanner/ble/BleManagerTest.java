@@ -0,0 +1,326 @@
+package com.example.bledevicesscanner.ble;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.example.bledevicesscanner.ble.sim.RecordingCallback;
+import com.example.bledevicesscanner.ble.sim.SimulatedBleTransport;
+import com.example.bledevicesscanner.ble.sim.SimulatedContext;
+import com.example.bledevicesscanner.ble.sim.SimulatedGattObjects;
+import com.example.bledevicesscanner.ble.sim.SimulatedPeripheral;
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+import com.example.bledevicesscanner.model.BleCharacteristic;
+import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.MacAddress;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs a {@link BleManager} on a virtual clock, with its transport under the test's
+ * control and its callbacks recorded on the scheduler's thread.
+ */
+public class BleManagerTest {
+    private static final String A = MacAddress.unpack(0xC0FFEE00000AL);
+    private static final String B = MacAddress.unpack(0xC0FFEE00000BL);
+    private static final String C = MacAddress.unpack(0xC0FFEE00000CL);
+    private static final long SEED = 10;
+    private static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID HEART_RATE_MEASUREMENT = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_LEVEL = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+    private static final UUID GENERIC_ACCESS = UUID.fromString("00001800-0000-1000-8000-00805f9b34fb");
+    private static final UUID DEVICE_NAME = UUID.fromString("00002a00-0000-1000-8000-00805f9b34fb");
+    private static final long HEART_RATE_INTERVAL = 100;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final RecordingCallback events = new RecordingCallback();
+    private final ScanTransport scanTransport = new ScanTransport();
+    private SimulatedGattObjects gattObjects;
+    private BleManager manager;
+
+    // Hands the test the listener of the running scan
+    private static class ScanTransport implements BleTransport {
+        ScanListener listener;
+
+        @Override
+        public boolean isEnabled() {
+            return true;
+        }
+
+        @Override
+        public boolean isOffloadedScanBatchingSupported() {
+            return true;
+        }
+
+        @Override
+        public boolean startScan(ScanProfile profile, boolean hardwareFiltering, long reportDelay, ScanListener listener) {
+            this.listener = listener;
+            return true;
+        }
+
+        @Override
+        public void stopScan(ScanListener listener) {
+            this.listener = null;
+        }
+
+        @Override
+        public Connection connect(String address, GattListener listener) {
+            return null;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        gattObjects = new SimulatedGattObjects();
+    }
+
+    @After
+    public void tearDown() {
+        if (manager != null) {
+            manager.close();
+            scheduler.runUntilIdle();
+        }
+        gattObjects.close();
+    }
+
+    private void start(BleTransport transport) throws IOException {
+        manager = new BleManager(SimulatedContext.create(folder.newFolder()), transport, scheduler);
+        manager.addCallback(events, Runnable::run);
+    }
+
+    // A heart rate sensor notifying every HEART_RATE_INTERVAL, with a battery that notifies too
+    private SimulatedBleTransport sensor() {
+        return new SimulatedBleTransport(scheduler, SEED).addPeripheral(new SimulatedPeripheral(A)
+                .addCharacteristic(GENERIC_ACCESS, DEVICE_NAME, SimulatedPeripheral.PROPERTY_READ,
+                        "HRM".getBytes(StandardCharsets.UTF_8))
+                .addCharacteristic(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT, SimulatedPeripheral.PROPERTY_NOTIFY, null)
+                .addCharacteristic(BATTERY_SERVICE, BATTERY_LEVEL,
+                        SimulatedPeripheral.PROPERTY_READ | SimulatedPeripheral.PROPERTY_NOTIFY, new byte[]{90})
+                .setNotifications(HEART_RATE_MEASUREMENT, HEART_RATE_INTERVAL, random -> new byte[]{0, 72})
+                .setNotifications(BATTERY_LEVEL, 60000, random -> new byte[]{89}));
+    }
+
+    // Connects to A and waits for its attribute table
+    private void connect(BleTransport transport) throws IOException {
+        start(transport);
+        BluetoothDevice device = mock(BluetoothDevice.class);
+        when(device.getAddress()).thenReturn(A);
+        assertTrue(manager.connectToDevice(new BleDevice(device, -60, null), ConnectionProfile.BALANCED));
+        scheduler.advanceBy(1000);
+        assertEquals(1, events.connected);
+        assertNotNull("services not discovered", events.characteristics);
+    }
+
+    private BleCharacteristic characteristic(UUID serviceUuid, UUID uuid) {
+        for (BleCharacteristic characteristic : events.characteristics) {
+            if (characteristic.getCharacteristic().getService().getUuid().equals(serviceUuid)
+                    && characteristic.getCharacteristic().getUuid().equals(uuid)) {
+                return characteristic;
+            }
+        }
+        throw new AssertionError("not discovered: " + serviceUuid + "/" + uuid);
+    }
+
+    // A manufacturer data structure carrying one distinguishing byte
+    private static byte[] data(int value) {
+        return new byte[]{4, (byte) 0xFF, 0x59, 0x00, (byte) value};
+    }
+
+    private static BleTransport.Advertisement advertisement(String address, int rssi, int data, long timestampNanos) {
+        return new BleTransport.Advertisement(address, MacAddress.pack(address), rssi, data(data), timestampNanos);
+    }
+
+    @Test
+    public void batchIsReducedToTheLatestResultPerDevice() throws IOException {
+        start(scanTransport);
+        assertTrue(manager.startScan(new ScanProfile().setReportDelay(1000)));
+        scheduler.advanceBy(0);
+        assertNotNull("scan not started", scanTransport.listener);
+
+        List<BleTransport.Advertisement> batch = Arrays.asList(
+                advertisement(A, -70, 1, 1000),
+                advertisement(B, -60, 2, 2000),
+                advertisement(A, -65, 3, 3000),
+                advertisement(C, -50, 4, 4000),
+                advertisement(B, -55, 5, 5000),
+                advertisement(A, -80, 6, 6000),
+                // Reported late but received earlier, so not the latest for C
+                advertisement(C, -90, 7, 3500));
+        scanTransport.listener.onBatchScanResults(batch);
+        scheduler.advanceBy(0);
+
+        // The whole batch is one update with one entry per device
+        assertEquals(1, events.deviceUpdates.size());
+        Map<String, BleDevice> update = new HashMap<>();
+        for (BleDevice device : events.deviceUpdates.get(0)) {
+            assertNull("device twice in one update", update.put(device.getAddress(), device));
+        }
+        assertEquals(3, update.size());
+        assertDevice(update.get(A), -80, 6, 6000);
+        assertDevice(update.get(B), -55, 5, 5000);
+        assertDevice(update.get(C), -50, 4, 4000);
+        assertDevice(manager.getDeviceRegistry().get(MacAddress.pack(A)), -80, 6, 6000);
+
+        manager.stopScan();
+        scheduler.advanceBy(0);
+        ScanStats stats = manager.getScanStats();
+        assertEquals(1, stats.getCallbackCount());
+        assertEquals(batch.size(), stats.getResultCount());
+        assertEquals(batch.size() - 3, stats.getDuplicateCount());
+        assertEquals(3, stats.getMatchedCount());
+    }
+
+    @Test
+    public void readAllSkipsCharacteristicsThatCannotBeRead() throws IOException {
+        SimulatedBleTransport transport = sensor();
+        connect(transport);
+        assertEquals(3, events.characteristics.size());
+
+        assertTrue(manager.readAllCharacteristics(events.characteristics));
+        scheduler.advanceBy(1000);
+
+        // The heart rate measurement only notifies
+        assertEquals(2, events.reads.size());
+        assertEquals(DEVICE_NAME, events.reads.get(0).getCharacteristic().getUuid());
+        assertArrayEquals("HRM".getBytes(StandardCharsets.UTF_8), events.reads.get(0).getValue());
+        assertEquals(BATTERY_LEVEL, events.reads.get(1).getCharacteristic().getUuid());
+        assertArrayEquals(new byte[]{90}, events.reads.get(1).getValue());
+        BulkReadSession.Summary summary = events.bulkReadSummary;
+        assertNotNull(summary);
+        assertEquals(2, summary.getOperationCount());
+        assertEquals(0, summary.getFailedCount());
+        assertEquals(4, summary.getTotalBytes());
+        // One round trip per read, back to back
+        assertEquals(2 * transport.getRoundTrip(), summary.getElapsedMs());
+    }
+
+    @Test
+    public void subscriptionsAreCountedAndWriteTheCccdOnlyForTheFirstAndLast() throws IOException {
+        SimulatedBleTransport transport = sensor();
+        connect(transport);
+        BleCharacteristic heartRate = characteristic(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT);
+
+        assertTrue(manager.subscribe(heartRate));
+        assertTrue(manager.subscribe(heartRate));
+        assertEquals(2, manager.getSubscriberCount(heartRate));
+        scheduler.advanceBy(HEART_RATE_INTERVAL / 2);
+        assertEquals(1, transport.getCccdWriteCount());
+        assertTrue(manager.isSubscribed(heartRate));
+        assertEquals(Arrays.asList(true), events.notificationStates);
+
+        scheduler.advanceBy(10 * HEART_RATE_INTERVAL);
+        assertEquals(10, events.changes.size());
+        for (BleCharacteristic change : events.changes) {
+            assertEquals(HEART_RATE_SERVICE, change.getCharacteristic().getService().getUuid());
+            assertEquals(HEART_RATE_MEASUREMENT, change.getCharacteristic().getUuid());
+            assertArrayEquals(new byte[]{0, 72}, change.getValue());
+        }
+
+        // The second subscriber keeps notifications on
+        assertTrue(manager.unsubscribe(heartRate));
+        scheduler.advanceBy(HEART_RATE_INTERVAL);
+        assertEquals(1, transport.getCccdWriteCount());
+        assertEquals(1, manager.getSubscriberCount(heartRate));
+        assertTrue(manager.isSubscribed(heartRate));
+        assertEquals(11, events.changes.size());
+
+        assertTrue(manager.unsubscribe(heartRate));
+        assertEquals(0, manager.getSubscriberCount(heartRate));
+        scheduler.advanceBy(HEART_RATE_INTERVAL / 2);
+        assertEquals(2, transport.getCccdWriteCount());
+        assertFalse(manager.isSubscribed(heartRate));
+        assertEquals(Arrays.asList(true, false), events.notificationStates);
+        int changes = events.changes.size();
+        scheduler.advanceBy(10 * HEART_RATE_INTERVAL);
+        assertEquals(changes, events.changes.size());
+
+        assertFalse("unsubscribed twice", manager.unsubscribe(heartRate));
+        scheduler.advanceBy(HEART_RATE_INTERVAL);
+        assertEquals(2, transport.getCccdWriteCount());
+    }
+
+    @Test
+    public void unsubscribeAllTearsDownEverySubscriptionWhateverItsCount() throws IOException {
+        SimulatedBleTransport transport = sensor();
+        connect(transport);
+        BleCharacteristic heartRate = characteristic(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT);
+        BleCharacteristic battery = characteristic(BATTERY_SERVICE, BATTERY_LEVEL);
+        assertTrue(manager.subscribe(heartRate));
+        assertTrue(manager.subscribe(heartRate));
+        assertTrue(manager.subscribe(battery));
+        // The two writes go through the queue one after the other
+        scheduler.advanceBy(HEART_RATE_INTERVAL);
+        assertEquals(2, transport.getCccdWriteCount());
+        assertEquals(2, manager.getSubscriptions().size());
+
+        manager.unsubscribeAll();
+        scheduler.advanceBy(HEART_RATE_INTERVAL);
+        assertEquals(4, transport.getCccdWriteCount());
+        assertTrue(manager.getSubscriptions().isEmpty());
+        assertEquals(0, manager.getSubscriberCount(heartRate));
+        assertEquals(0, manager.getSubscriberCount(battery));
+        assertEquals(Arrays.asList(true, true, false, false), events.notificationStates);
+
+        // Counting starts over
+        assertTrue(manager.subscribe(heartRate));
+        scheduler.advanceBy(HEART_RATE_INTERVAL / 2);
+        assertEquals(5, transport.getCccdWriteCount());
+        assertEquals(1, manager.getSubscriberCount(heartRate));
+    }
+
+    @Test
+    public void knownDevicesAreDeliveredToALateCallback() throws IOException {
+        start(scanTransport);
+        RecordingCallback late = new RecordingCallback();
+        manager.deliverKnownDevices(late, Runnable::run);
+        scheduler.advanceBy(0);
+        assertTrue("nothing to deliver yet", late.deviceUpdates.isEmpty());
+
+        assertTrue(manager.startScan());
+        scheduler.advanceBy(0);
+        scanTransport.listener.onScanResult(advertisement(A, -70, 1, 1000));
+        scanTransport.listener.onScanResult(advertisement(B, -60, 2, 2000));
+        scheduler.advanceBy(1000);
+        manager.stopScan();
+        scheduler.advanceBy(0);
+
+        // As a screen recreated after a rotation would ask
+        manager.deliverKnownDevices(late, Runnable::run);
+        scheduler.advanceBy(0);
+        assertEquals(1, late.deviceUpdates.size());
+        List<BleDevice> devices = late.deviceUpdates.get(0);
+        assertEquals(2, devices.size());
+        assertDevice(devices.get(0), -60, 2, 2000);
+        assertDevice(devices.get(1), -70, 1, 1000);
+    }
+
+    private static void assertDevice(BleDevice device, int rssi, int data, long timestampNanos) {
+        assertNotNull(device);
+        assertEquals(rssi, device.getRssi());
+        assertArrayEquals(data(data), device.getScanRecord());
+        assertEquals(timestampNanos, device.getTimestampNanos());
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.ble.sim.SimulatedGattPeer;
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a {@link BulkReadSession} through a {@link GattOperationQueue} against a
+ * {@link SimulatedGattPeer} that answers every read after a fixed latency, so the
+ * summary's bytes, elapsed time and rates are known exactly.
+ */
+public class BulkReadSessionTest {
+    private static final UUID SERVICE_UUID = UUID.fromString("0000fff0-0000-1000-8000-00805f9b34fb");
+    private static final long LATENCY = 20;
+
+    private final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+    private final SimulatedGattPeer peer = new SimulatedGattPeer(scheduler, LATENCY);
+    private final GattOperationQueue queue = new GattOperationQueue(peer, scheduler);
+    private final List<Integer> reads = new ArrayList<>();
+    private final List<Boolean> successes = new ArrayList<>();
+    private BulkReadSession.Summary summary;
+
+    private final BulkReadSession.Listener listener = new BulkReadSession.Listener() {
+        @Override
+        public void onRead(int index, GattOperation operation) {
+            reads.add(index);
+            successes.add(operation.isSuccess());
+        }
+
+        @Override
+        public void onFinished(BulkReadSession.Summary summary) {
+            assertNull("finished twice", BulkReadSessionTest.this.summary);
+            BulkReadSessionTest.this.summary = summary;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        peer.attach(queue);
+    }
+
+    private static UUID characteristic(int index) {
+        return UUID.fromString(String.format("0000ff%02x-0000-1000-8000-00805f9b34fb", index + 1));
+    }
+
+    @Test
+    public void readsBackToBackAndTotalsTheBytes() {
+        int[] sizes = {4, 20, 1, -1, 7};
+        BulkReadSession session = new BulkReadSession(scheduler, listener);
+        for (int i = 0; i < sizes.length; i++) {
+            // A negative size leaves the characteristic without a value, so its read fails
+            if (sizes[i] >= 0) {
+                peer.setValue(characteristic(i), new byte[sizes[i]]);
+            }
+            session.addRead(SERVICE_UUID, characteristic(i));
+        }
+        assertEquals(sizes.length, session.size());
+
+        // Elapsed time is measured from the start, not from when the reads were added
+        scheduler.advanceTo(1000);
+        session.start(queue);
+        assertEquals(sizes.length, session.getRemaining());
+        scheduler.runUntilIdle();
+
+        assertEquals(0, session.getRemaining());
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), reads);
+        assertEquals(Arrays.asList(true, true, true, false, true), successes);
+        assertNotNull(summary);
+        assertEquals(5, summary.getOperationCount());
+        assertEquals(1, summary.getFailedCount());
+        assertEquals(4 + 20 + 1 + 7, summary.getTotalBytes());
+        // Each read starts as the previous one completes
+        assertEquals(5 * LATENCY, summary.getElapsedMs());
+        assertEquals(50.0, summary.getOperationsPerSecond(), 1e-9);
+        assertEquals(320.0, summary.getBytesPerSecond(), 1e-9);
+        assertEquals(5, peer.getExecutedCount());
+    }
+
+    @Test
+    public void emptySessionFinishesAtOnce() {
+        BulkReadSession session = new BulkReadSession(scheduler, listener);
+        session.start(queue);
+
+        assertNotNull(summary);
+        assertEquals(0, summary.getOperationCount());
+        assertEquals(0, summary.getElapsedMs());
+        assertEquals(0, summary.getOperationsPerSecond(), 0);
+        assertTrue(reads.isEmpty());
+        assertTrue(scheduler.isIdle());
+        assertEquals(0, peer.getExecutedCount());
+    }
+
+    @Test
+    public void disconnectedLinkIsNotStarted() {
+        ConnectionPool pool = new ConnectionPool(scheduler);
+        ConnectionPool.Link link = pool.open(0x0A, peer);
+        pool.close(link);
+        BulkReadSession session = new BulkReadSession(scheduler, listener);
+        session.addRead(SERVICE_UUID, characteristic(0));
+
+        assertFalse(session.start(pool, link));
+        scheduler.runUntilIdle();
+        assertNull(summary);
+        assertEquals(0, peer.getExecutedCount());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+    private static final int THRESHOLD = 3;
+    private static final long OPEN_DURATION = 10000;
+
+    // Fails THRESHOLD times at the given time, which opens the breaker
+    private static CircuitBreaker tripped(long now) {
+        CircuitBreaker breaker = new CircuitBreaker(THRESHOLD, OPEN_DURATION);
+        for (int i = 0; i < THRESHOLD; i++) {
+            breaker.recordFailure(now);
+        }
+        return breaker;
+    }
+
+    @Test
+    public void opensAfterTheThresholdOfConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(THRESHOLD, OPEN_DURATION);
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            breaker.recordFailure(i);
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(i));
+            assertTrue(breaker.allowsAttempt(i));
+        }
+        breaker.recordFailure(100);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(100));
+        assertFalse(breaker.allowsAttempt(100));
+        assertEquals(OPEN_DURATION, breaker.getRemainingOpenTime(100));
+        assertEquals(OPEN_DURATION - 400, breaker.getRemainingOpenTime(500));
+        assertEquals(1, breaker.getTripCount());
+    }
+
+    @Test
+    public void successResetsTheFailureRun() {
+        CircuitBreaker breaker = new CircuitBreaker(THRESHOLD, OPEN_DURATION);
+        for (int i = 0; i < THRESHOLD - 1; i++) {
+            breaker.recordFailure(0);
+        }
+        breaker.recordSuccess();
+        assertEquals(0, breaker.getConsecutiveFailures());
+        breaker.recordFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(0));
+        assertEquals(0, breaker.getTripCount());
+    }
+
+    @Test
+    public void halfOpensOnceTheOpenDurationHasPassed() {
+        CircuitBreaker breaker = tripped(1000);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(1000 + OPEN_DURATION - 1));
+        assertEquals(1, breaker.getRemainingOpenTime(1000 + OPEN_DURATION - 1));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(1000 + OPEN_DURATION));
+        assertTrue(breaker.allowsAttempt(1000 + OPEN_DURATION));
+        assertEquals(0, breaker.getRemainingOpenTime(1000 + OPEN_DURATION));
+    }
+
+    @Test
+    public void failedTrialReopensAtOnce() {
+        CircuitBreaker breaker = tripped(0);
+        long trial = OPEN_DURATION + 500;
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(trial));
+        // One failure is enough, not another THRESHOLD of them
+        breaker.recordFailure(trial);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(trial));
+        assertEquals(2, breaker.getTripCount());
+        // The new cool-down counts from the failed trial
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(trial + OPEN_DURATION - 1));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(trial + OPEN_DURATION));
+    }
+
+    @Test
+    public void successfulTrialCloses() {
+        CircuitBreaker breaker = tripped(0);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(OPEN_DURATION));
+        breaker.recordSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(OPEN_DURATION));
+        assertEquals(0, breaker.getConsecutiveFailures());
+        breaker.recordFailure(OPEN_DURATION);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(OPEN_DURATION));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroThresholdIsRejected() {
+        new CircuitBreaker(0, OPEN_DURATION);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeOpenDurationIsRejected() {
+        new CircuitBreaker(THRESHOLD, -1);
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeviceRegistryTest {
+    // The limits BleManager uses
+    private static final int CAPACITY = 2000;
+    private static final long TTL = 60000;
+    private static final long SWEEP_INTERVAL = 1000;
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int ADDRESSES = 100000;
+    // Addresses arriving together at noon, more than the registry holds
+    private static final int CROWD = 5000;
+    private static final long CROWD_ARRIVAL = DAY / 2;
+    private static final long PRESENCE = 5 * 60 * 1000L;
+    private static final long ADVERTISEMENT_INTERVAL = 20;
+    private static final int VALUE_SIZE = 256;
+
+    private static long key(int address) {
+        return 0xC0FFEE000000L | address;
+    }
+
+    @Test
+    public void touchEvictsLeastRecentlySeenWhenFull() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>(2, TTL);
+        long[] evicted = {-1};
+        registry.setEvictionListener((key, value, reason) -> {
+            assertEquals(DeviceRegistry.EvictionReason.CAPACITY, reason);
+            evicted[0] = key;
+        });
+        assertTrue(registry.touch(key(1), "a", 0));
+        assertTrue(registry.touch(key(2), "b", 10));
+        assertFalse(registry.touch(key(1), "a2", 20));
+        assertTrue(registry.touch(key(3), "c", 30));
+
+        assertEquals(key(2), evicted[0]);
+        assertEquals("a2", registry.get(key(1)));
+        assertNull(registry.get(key(2)));
+        assertEquals(30, registry.getLastSeen(key(3)));
+        assertEquals(1, registry.getEvictionCount());
+    }
+
+    @Test
+    public void snapshotListsMostRecentlySeenFirst() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>(10, TTL);
+        assertTrue(registry.snapshot().isEmpty());
+        registry.touch(key(1), "a", 0);
+        registry.touch(key(2), "b", 10);
+        registry.touch(key(3), "c", 20);
+        registry.touch(key(1), "a2", 30);
+        registry.remove(key(2));
+        assertEquals(Arrays.asList("a2", "c"), registry.snapshot());
+    }
+
+    @Test
+    public void evictExpiredDropsOnlyEntriesPastTheTtl() {
+        DeviceRegistry<String> registry = new DeviceRegistry<>(10, 100);
+        registry.touch(key(1), "a", 0);
+        registry.touch(key(2), "b", 50);
+        assertEquals(0, registry.evictExpired(100));
+        assertEquals(1, registry.evictExpired(101));
+        assertFalse(registry.contains(key(1)));
+        assertTrue(registry.contains(key(2)));
+        assertEquals("b", registry.remove(key(2)));
+        assertEquals(0, registry.size());
+    }
+
+    /**
+     * A day of continuous scanning: 100,000 distinct addresses pass by, each advertising
+     * for five minutes, and a crowd larger than the registry arrives at noon. Every
+     * eviction is checked against an access-ordered LinkedHashMap, the size never exceeds
+     * the capacity, and the heap retained after the day is no more than the capacity's
+     * worth of values.
+     */
+    @Test
+    public void dayOfScanningStaysBoundedAndEvictsByTtlAndLru() {
+        DeviceRegistry<byte[]> registry = new DeviceRegistry<>(CAPACITY, TTL);
+        // Last-seen times in recency order; its eldest entry is the one LRU must evict
+        LinkedHashMap<Long, Long> model = new LinkedHashMap<>(CAPACITY * 2, 0.75f, true);
+        long[] now = {0};
+        long[] evictions = new long[DeviceRegistry.EvictionReason.values().length];
+        registry.setEvictionListener((key, value, reason) -> {
+            Map.Entry<Long, Long> eldest = model.entrySet().iterator().next();
+            assertEquals("evicted entry is not the least recently seen", (long) eldest.getKey(), key);
+            if (reason == DeviceRegistry.EvictionReason.EXPIRED) {
+                assertTrue("evicted before its TTL", now[0] - eldest.getValue() > TTL);
+            }
+            model.remove(key);
+            evictions[reason.ordinal()]++;
+        });
+
+        boolean[] advertised = new boolean[ADDRESSES];
+        long turn = 0;
+        int regular = ADDRESSES - CROWD;
+        long arrivalSpacing = DAY / regular;
+        int newKeys = 0;
+        long baselineHeap = 0;
+        long nextSweep = SWEEP_INTERVAL;
+        for (long t = 0; t < DAY + TTL + SWEEP_INTERVAL; t += ADVERTISEMENT_INTERVAL) {
+            now[0] = t;
+            int address = pickPresent(t, regular, arrivalSpacing, turn++);
+            if (address >= 0) {
+                advertised[address] = true;
+                long key = key(address);
+                if (registry.touch(key, new byte[VALUE_SIZE], t)) {
+                    newKeys++;
+                }
+                model.put(key, t);
+                assertTrue(registry.size() <= CAPACITY);
+            }
+            if (t >= nextSweep) {
+                registry.evictExpired(t);
+                nextSweep += SWEEP_INTERVAL;
+                assertSweptModel(model, t);
+                assertEquals(model.size(), registry.size());
+            }
+            if (baselineHeap == 0 && t >= 60 * 60 * 1000L) {
+                baselineHeap = usedHeap();
+            }
+        }
+
+        for (int address = 0; address < ADDRESSES; address++) {
+            assertTrue("address " + address + " never advertised", advertised[address]);
+        }
+        // Crowd members evicted for capacity register again when next seen
+        assertTrue("only " + newKeys + " addresses were registered", newKeys >= ADDRESSES);
+        assertTrue("the crowd never filled the registry", evictions[DeviceRegistry.EvictionReason.CAPACITY.ordinal()] > 0);
+        assertTrue(evictions[DeviceRegistry.EvictionReason.EXPIRED.ordinal()] > ADDRESSES / 2);
+        // Everyone left a TTL before the stream ended
+        assertEquals(0, registry.size());
+
+        long growth = usedHeap() - baselineHeap;
+        long unbounded = (long) ADDRESSES * VALUE_SIZE;
+        assertTrue("heap grew by " + growth + " bytes over the day", growth < unbounded / 4);
+    }
+
+    /**
+     * The address advertising at t, taking turns among those present so each advertises
+     * regularly: a regular passer-by, or on three turns out of four while it is there one
+     * of the noon crowd.
+     */
+    private static int pickPresent(long t, int regular, long arrivalSpacing, long turn) {
+        if (t >= CROWD_ARRIVAL && t < CROWD_ARRIVAL + PRESENCE && turn % 4 != 0) {
+            // The crowd arrives over its first minute
+            long arrived = Math.min(CROWD, (t - CROWD_ARRIVAL) * CROWD / 60000 + 1);
+            long crowdTurn = turn - turn / 4 - 1;
+            return regular + (int) (crowdTurn % arrived);
+        }
+        int last = (int) Math.min(regular - 1, t / arrivalSpacing);
+        int first = (int) Math.max(0, (t - PRESENCE) / arrivalSpacing + 1);
+        if (t >= DAY || first > last) {
+            return -1;
+        }
+        return first + (int) (turn % (last - first + 1));
+    }
+
+    // After a sweep nothing older than the TTL may remain
+    private static void assertSweptModel(LinkedHashMap<Long, Long> model, long now) {
+        Iterator<Long> lastSeen = model.values().iterator();
+        if (lastSeen.hasNext()) {
+            assertTrue("entry outlived its TTL", now - lastSeen.next() <= TTL);
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+}
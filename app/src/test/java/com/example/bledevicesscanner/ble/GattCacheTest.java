@@ -0,0 +1,220 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GattCacheTest {
+    private static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID HEART_RATE_MEASUREMENT = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID BODY_SENSOR_LOCATION = UUID.fromString("00002a38-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_LEVEL = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<GattCache.CharacteristicRecord> heartRateTable() {
+        return Arrays.asList(
+                new GattCache.CharacteristicRecord(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT, 0x10, 0),
+                new GattCache.CharacteristicRecord(HEART_RATE_SERVICE, BODY_SENSOR_LOCATION, 0x02, 0x01));
+    }
+
+    private static List<GattCache.CharacteristicRecord> batteryTable() {
+        return Collections.singletonList(new GattCache.CharacteristicRecord(BATTERY_SERVICE, BATTERY_LEVEL, 0x12, 0x01));
+    }
+
+    private static GattCache.Entry entry(long address, List<GattCache.CharacteristicRecord> table) {
+        return new GattCache.Entry(address, GattCache.fingerprint(table), table);
+    }
+
+    @Test
+    public void validateCountsHitsMissesAndInvalidations() {
+        GattCache cache = new GattCache();
+        assertEquals(0, cache.getHitRate(), 0);
+
+        // First connection: nothing cached
+        assertFalse(cache.validate(entry(1, heartRateTable())));
+        // Same table again
+        assertTrue(cache.validate(entry(1, heartRateTable())));
+        assertTrue(cache.validate(entry(1, heartRateTable())));
+        // The device changed its database
+        assertFalse(cache.validate(entry(1, batteryTable())));
+        assertEquals(BATTERY_LEVEL, cache.get(1).getCharacteristics().get(0).getUuid());
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.getInvalidationCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void sameHashWithADifferentTableIsAMiss() {
+        GattCache cache = new GattCache();
+        byte[] databaseHash = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16};
+        cache.validate(new GattCache.Entry(1, databaseHash, heartRateTable()));
+        assertFalse(cache.validate(new GattCache.Entry(1, databaseHash, batteryTable())));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void invalidateDropsTheTable() {
+        GattCache cache = new GattCache();
+        cache.validate(entry(1, heartRateTable()));
+        cache.invalidate(1);
+        cache.invalidate(2);
+        assertNull(cache.get(1));
+        assertEquals(1, cache.getInvalidationCount());
+        assertFalse(cache.validate(entry(1, heartRateTable())));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        GattCache cache = new GattCache(3);
+        for (long address = 1; address <= 3; address++) {
+            cache.validate(entry(address, heartRateTable()));
+        }
+        // Reconnecting to 1 makes 2 the oldest
+        assertNotNull(cache.get(1));
+        cache.validate(entry(4, heartRateTable()));
+
+        assertEquals(3, cache.size());
+        assertNull(cache.get(2));
+        List<Long> order = new ArrayList<>();
+        for (GattCache.Entry entry : cache.snapshot()) {
+            order.add(entry.getAddress());
+        }
+        assertEquals(Arrays.asList(3L, 1L, 4L), order);
+    }
+
+    @Test
+    public void mergeKeepsTablesLearnedSinceTheLoad() {
+        GattCache cache = new GattCache();
+        GattCache.Entry fresh = entry(1, batteryTable());
+        cache.validate(fresh);
+        cache.merge(Arrays.asList(entry(1, heartRateTable()), entry(2, heartRateTable())));
+
+        assertSame(fresh, cache.get(1));
+        assertNotNull(cache.get(2));
+        assertEquals(2, cache.size());
+        // Loading is not a validation
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void fingerprintIsStableAndCoversTheTable() {
+        // 64-bit FNV-1a of the table; persisted with the entries, so it must never change
+        assertArrayEquals(new byte[]{0x68, (byte) 0xae, (byte) 0x99, 0x05, 0x22, (byte) 0xbe, 0x06, 0x11},
+                GattCache.fingerprint(heartRateTable()));
+        assertArrayEquals(GattCache.fingerprint(heartRateTable()), GattCache.fingerprint(heartRateTable()));
+        // The FNV offset basis for an empty table
+        assertArrayEquals(new byte[]{(byte) 0xcb, (byte) 0xf2, (byte) 0x9c, (byte) 0xe4, (byte) 0x84, 0x22, 0x23, 0x25},
+                GattCache.fingerprint(Collections.emptyList()));
+
+        List<GattCache.CharacteristicRecord> reordered = new ArrayList<>(heartRateTable());
+        Collections.reverse(reordered);
+        assertFalse(Arrays.equals(GattCache.fingerprint(heartRateTable()), GattCache.fingerprint(reordered)));
+        List<GattCache.CharacteristicRecord> otherProperties = new ArrayList<>(heartRateTable());
+        otherProperties.set(0, new GattCache.CharacteristicRecord(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT, 0x20, 0));
+        assertFalse(Arrays.equals(GattCache.fingerprint(heartRateTable()), GattCache.fingerprint(otherProperties)));
+    }
+
+    @Test
+    public void writtenEntriesReadBackInOrder() throws IOException {
+        File file = new File(folder.getRoot(), "gatt_cache.bin");
+        byte[] databaseHash = {9, 8, 7, 6, 5, 4, 3, 2, 1, 0, 1, 2, 3, 4, 5, 6};
+        List<GattCache.Entry> written = Arrays.asList(entry(0xC0FFEE000001L, heartRateTable()),
+                new GattCache.Entry(0xC0FFEE000002L, databaseHash, batteryTable()),
+                entry(0xC0FFEE000003L, Collections.emptyList()));
+        GattCache.write(file, written);
+
+        List<GattCache.Entry> read = GattCache.read(file);
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(written.get(i).getAddress(), read.get(i).getAddress());
+            assertTrue("entry " + i, written.get(i).matches(read.get(i)));
+        }
+        GattCache.CharacteristicRecord record = read.get(1).getCharacteristics().get(0);
+        assertEquals(BATTERY_SERVICE, record.getServiceUuid());
+        assertEquals(BATTERY_LEVEL, record.getUuid());
+        assertEquals(0x12, record.getProperties());
+        assertEquals(0x01, record.getPermissions());
+    }
+
+    @Test
+    public void writeReplacesTheFileThroughATemporaryOne() throws IOException {
+        File file = new File(folder.getRoot(), "gatt_cache.bin");
+        GattCache.write(file, Arrays.asList(entry(1, heartRateTable()), entry(2, heartRateTable())));
+        GattCache.write(file, Collections.singletonList(entry(3, batteryTable())));
+
+        assertFalse("temporary file left behind", new File(file.getPath() + ".tmp").exists());
+        List<GattCache.Entry> read = GattCache.read(file);
+        assertEquals(1, read.size());
+        assertEquals(3, read.get(0).getAddress());
+    }
+
+    @Test
+    public void missingFileReadsAsEmpty() throws IOException {
+        assertTrue(GattCache.read(new File(folder.getRoot(), "absent.bin")).isEmpty());
+    }
+
+    @Test
+    public void fileWithAnotherMagicIsRejected() throws IOException {
+        assertRejected(header(0x12345678, 1));
+    }
+
+    @Test
+    public void fileFromAnotherVersionIsRejected() throws IOException {
+        assertRejected(header(0x47415454, 2));
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        File file = new File(folder.getRoot(), "gatt_cache.bin");
+        GattCache.write(file, Collections.singletonList(entry(1, heartRateTable())));
+        try (RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+            truncated.setLength(truncated.length() - 4);
+        }
+        assertRejected(file);
+    }
+
+    // An empty cache file with the given header
+    private File header(int magic, int version) throws IOException {
+        File file = folder.newFile();
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(magic);
+            out.writeInt(version);
+            out.writeInt(0);
+        }
+        return file;
+    }
+
+    private static void assertRejected(File file) {
+        try {
+            GattCache.read(file);
+            fail("read " + file);
+        } catch (IOException expected) {
+        }
+    }
+}
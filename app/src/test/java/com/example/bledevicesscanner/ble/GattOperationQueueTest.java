@@ -0,0 +1,234 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link GattOperationQueue} with a transport that refuses to start operations
+ * a given number of times, on a virtual clock, and checks that refused and timed out
+ * operations are retried after a delay rather than at the same instant, and what the
+ * queue counts.
+ */
+public class GattOperationQueueTest {
+    private static final UUID SERVICE_UUID = UUID.fromString("0000fff0-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+
+    // Refuses the first few operations it is asked to start and records when each was tried
+    private static class RefusingTransport implements GattTransport {
+        final VirtualTimeScheduler clock;
+        final List<Long> attempts = new ArrayList<>();
+        final List<GattOperation> started = new ArrayList<>();
+        int refusals;
+
+        RefusingTransport(VirtualTimeScheduler clock, int refusals) {
+            this.clock = clock;
+            this.refusals = refusals;
+        }
+
+        @Override
+        public boolean execute(GattOperation operation) {
+            attempts.add(clock.now());
+            if (refusals > 0) {
+                refusals--;
+                return false;
+            }
+            started.add(operation);
+            return true;
+        }
+    }
+
+    private static GattOperation read() {
+        return GattOperation.read(SERVICE_UUID, CHARACTERISTIC_UUID);
+    }
+
+    @Test
+    public void refusedOperationIsRetriedAfterABackoff() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 2);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation operation = read().setMaxRetries(2);
+        queue.enqueue(operation);
+
+        // Nothing is retried until the clock moves
+        assertEquals(1, transport.attempts.size());
+        assertEquals(operation, queue.getCurrentOperation());
+        clock.advanceBy(GattOperationQueue.DEFAULT_RETRY_DELAY - 1);
+        assertEquals(1, transport.attempts.size());
+        clock.advanceBy(1);
+        assertEquals(2, transport.attempts.size());
+        // The delay grows with the attempts
+        clock.advanceBy(2 * GattOperationQueue.DEFAULT_RETRY_DELAY);
+        assertEquals(3, transport.attempts.size());
+        assertEquals(3 * GattOperationQueue.DEFAULT_RETRY_DELAY, (long) transport.attempts.get(2));
+        assertEquals(2, queue.getRetryCount());
+
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, GattOperation.STATUS_SUCCESS, new byte[]{1});
+        assertTrue(operation.isSuccess());
+        assertEquals(3, operation.getAttempts());
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void operationOutOfRetriesFailsAndTheNextOneStarts() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 2);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation refused = read();
+        GattOperation next = read();
+        queue.enqueue(refused);
+        queue.enqueue(next);
+
+        // The operation behind the refused one waits for it instead of jumping ahead
+        assertEquals(refused, queue.getCurrentOperation());
+        assertEquals(2, queue.getDepth());
+        clock.advanceBy(GattOperationQueue.DEFAULT_RETRY_DELAY);
+        assertEquals(GattOperation.STATUS_NOT_STARTED, refused.getStatus());
+        assertEquals(2, refused.getAttempts());
+        assertEquals(1, transport.started.size());
+        assertEquals(next, transport.started.get(0));
+        assertEquals(next, queue.getCurrentOperation());
+    }
+
+    @Test
+    public void discoveryWaitsForTheOperationInFlight() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 0);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation read = read();
+        GattOperation discovery = GattOperation.discoverServices();
+        queue.enqueue(read);
+        queue.enqueue(discovery);
+        assertEquals(1, transport.started.size());
+
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, GattOperation.STATUS_SUCCESS, new byte[]{1});
+        assertEquals(discovery, queue.getCurrentOperation());
+        // A late read result does not complete the discovery
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, GattOperation.STATUS_SUCCESS, new byte[]{1});
+        assertEquals(discovery, queue.getCurrentOperation());
+        queue.onServicesDiscovered(GattOperation.STATUS_SUCCESS);
+        assertTrue(discovery.isSuccess());
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void cancelAllDropsThePendingRetry() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 1);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation operation = read();
+        queue.enqueue(operation);
+        queue.cancelAll();
+        clock.runUntilIdle();
+
+        assertEquals(GattOperation.STATUS_CANCELLED, operation.getStatus());
+        assertEquals(1, transport.attempts.size());
+        assertNull(queue.getCurrentOperation());
+    }
+
+    @Test
+    public void unansweredOperationTimesOut() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 0);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation operation = read().setMaxRetries(0);
+        GattOperation next = read();
+        queue.enqueue(operation);
+        queue.enqueue(next);
+
+        clock.advanceBy(GattOperationQueue.DEFAULT_TIMEOUT - 1);
+        assertEquals(operation, queue.getCurrentOperation());
+        clock.advanceBy(1);
+        assertEquals(GattOperation.STATUS_TIMEOUT, operation.getStatus());
+        assertFalse(operation.isSuccess());
+        assertEquals(GattOperationQueue.DEFAULT_TIMEOUT, operation.getLatencyMs());
+        assertEquals(1, queue.getFailedCount());
+        assertEquals(0, queue.getRetryCount());
+        // The queue moves on at once
+        assertEquals(next, queue.getCurrentOperation());
+        assertEquals(GattOperationQueue.DEFAULT_TIMEOUT, (long) transport.attempts.get(1));
+    }
+
+    @Test
+    public void timedOutOperationIsRetriedAfterABackoff() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 0);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        long timeout = 1000;
+        GattOperation operation = read().setTimeout(timeout).setMaxRetries(2);
+        queue.enqueue(operation);
+        clock.runUntilIdle();
+
+        // Each retry waits retryDelay * attempts after the timeout that caused it
+        long delay = GattOperationQueue.DEFAULT_RETRY_DELAY;
+        List<Long> expected = new ArrayList<>();
+        expected.add(0L);
+        expected.add(timeout + delay);
+        expected.add(2 * timeout + delay + 2 * delay);
+        assertEquals(expected, transport.attempts);
+        assertEquals(GattOperation.STATUS_TIMEOUT, operation.getStatus());
+        assertEquals(3, operation.getAttempts());
+        assertEquals(2, queue.getRetryCount());
+        assertEquals(1, queue.getFailedCount());
+        assertEquals(3 * timeout + 3 * delay, operation.getLatencyMs());
+        assertTrue(queue.isIdle());
+    }
+
+    @Test
+    public void answerDuringTheBackoffCompletesTheOperation() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 0);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation operation = read();
+        queue.enqueue(operation);
+        clock.advanceBy(GattOperationQueue.DEFAULT_TIMEOUT);
+        assertEquals(operation, queue.getCurrentOperation());
+
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, GattOperation.STATUS_SUCCESS, new byte[]{1});
+        clock.runUntilIdle();
+        assertTrue(operation.isSuccess());
+        assertEquals(1, transport.attempts.size());
+    }
+
+    @Test
+    public void depthAndLatencyAreCounted() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        RefusingTransport transport = new RefusingTransport(clock, 0);
+        GattOperationQueue queue = new GattOperationQueue(transport, clock);
+        GattOperation[] operations = {read(), read(), read()};
+        for (GattOperation operation : operations) {
+            queue.enqueue(operation);
+        }
+        assertEquals(3, queue.getDepth());
+        assertEquals(3, queue.getMaxDepth());
+
+        // Answered 30 ms apart, the last one with an error
+        clock.advanceBy(30);
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, GattOperation.STATUS_SUCCESS, new byte[]{1});
+        clock.advanceBy(30);
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, GattOperation.STATUS_SUCCESS, new byte[]{2});
+        assertEquals(1, queue.getDepth());
+        clock.advanceBy(30);
+        queue.onCharacteristicRead(CHARACTERISTIC_UUID, 0x02, null);
+
+        assertEquals(0, queue.getDepth());
+        assertEquals(3, queue.getMaxDepth());
+        assertEquals(2, queue.getCompletedCount());
+        assertEquals(1, queue.getFailedCount());
+        assertEquals(0x02, operations[2].getStatus());
+        // Latency runs from enqueue, so it includes the time spent waiting behind the others
+        assertEquals(30, operations[1].getExecutionTimeMs());
+        assertEquals(60, operations[1].getLatencyMs());
+        assertEquals(90, queue.getMaxLatencyMs());
+        assertEquals(60, queue.getAverageLatencyMs(), 1e-9);
+    }
+}
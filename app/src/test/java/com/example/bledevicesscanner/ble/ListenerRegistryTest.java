@@ -0,0 +1,158 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ListenerRegistryTest {
+    private static final int DISPATCHERS = 4;
+    private static final int CHURNERS = 4;
+    private static final int EVENTS_PER_DISPATCHER = 200000;
+
+    interface CounterListener {
+        void onEvent();
+    }
+
+    private static class Counter implements CounterListener {
+        final AtomicLong received = new AtomicLong();
+        // Set by the marker task once every delivery queued before the removal has drained
+        volatile boolean sealed;
+        final AtomicLong late;
+
+        Counter(AtomicLong late) {
+            this.late = late;
+        }
+
+        @Override
+        public void onEvent() {
+            if (sealed) {
+                late.incrementAndGet();
+            }
+            received.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void dispatchesThroughEachListenersExecutor() {
+        ListenerRegistry<CounterListener> registry = new ListenerRegistry<>();
+        List<Runnable> queued = new ArrayList<>();
+        Executor deferred = queued::add;
+        Counter counter = new Counter(new AtomicLong());
+        assertTrue(registry.add(counter, deferred));
+        assertFalse(registry.add(counter, deferred));
+
+        registry.dispatch(CounterListener::onEvent);
+        assertEquals(0, counter.received.get());
+        assertEquals(1, queued.size());
+        queued.get(0).run();
+        assertEquals(1, counter.received.get());
+
+        assertTrue(registry.remove(counter));
+        assertFalse(registry.remove(counter));
+        assertTrue(registry.isEmpty());
+    }
+
+    @Test
+    public void removedListenerIsNotCalledForQueuedDeliveries() {
+        ListenerRegistry<CounterListener> registry = new ListenerRegistry<>();
+        List<Runnable> queued = new ArrayList<>();
+        Counter counter = new Counter(new AtomicLong());
+        registry.add(counter, queued::add);
+        registry.dispatch(CounterListener::onEvent);
+        registry.remove(counter);
+        queued.get(0).run();
+        assertEquals(0, counter.received.get());
+    }
+
+    /**
+     * Dispatches from several threads while others keep registering and removing
+     * listeners, each on a single-threaded executor of its own. No listener may receive
+     * an event once a marker posted to its executor right after remove returned has run,
+     * a listener registered for the whole run must receive every event, and nothing may
+     * throw.
+     */
+    @Test
+    public void concurrentAddRemoveAndDispatch() throws InterruptedException {
+        final ListenerRegistry<CounterListener> registry = new ListenerRegistry<>();
+        final AtomicLong late = new AtomicLong();
+        final AtomicLong registrations = new AtomicLong();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<ExecutorService> executors = new ArrayList<>();
+
+        ExecutorService steadyExecutor = Executors.newSingleThreadExecutor();
+        executors.add(steadyExecutor);
+        Counter steady = new Counter(late);
+        registry.add(steady, steadyExecutor);
+
+        final CountDownLatch dispatchersDone = new CountDownLatch(DISPATCHERS);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < DISPATCHERS; i++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (int n = 0; n < EVENTS_PER_DISPATCHER; n++) {
+                        registry.dispatch(CounterListener::onEvent);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    dispatchersDone.countDown();
+                }
+            }, "dispatcher-" + i));
+        }
+        for (int i = 0; i < CHURNERS; i++) {
+            final ExecutorService executor = Executors.newSingleThreadExecutor();
+            executors.add(executor);
+            final long seed = i;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                try {
+                    while (dispatchersDone.getCount() > 0) {
+                        final Counter counter = new Counter(late);
+                        if (!registry.add(counter, executor) || registry.add(counter, executor)) {
+                            throw new IllegalStateException("Duplicate registration accepted");
+                        }
+                        registrations.incrementAndGet();
+                        Thread.sleep(0, random.nextInt(100000));
+                        if (!registry.remove(counter) || registry.remove(counter)) {
+                            throw new IllegalStateException("Removal not reported exactly once");
+                        }
+                        executor.execute(() -> counter.sealed = true);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }, "churner-" + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (ExecutorService executor : executors) {
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        }
+
+        assertNull(failure.get());
+        assertTrue("listeners were never churned", registrations.get() > 0);
+        assertEquals((long) DISPATCHERS * EVENTS_PER_DISPATCHER, steady.received.get());
+        assertEquals("events delivered after removal", 0, late.get());
+        assertEquals(1, registry.size());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NotificationRingBufferTest {
+    private static byte[] copy(byte[] buffer, int offset, int length) {
+        byte[] value = new byte[length];
+        System.arraycopy(buffer, offset, value, 0, length);
+        return value;
+    }
+
+    @Test
+    public void drainsInOrderWithTimestamps() {
+        NotificationRingBuffer ring = new NotificationRingBuffer(4, 8);
+        ring.offer(new byte[]{1}, 10);
+        ring.offer(new byte[]{2, 2}, 20);
+        List<byte[]> values = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        assertEquals(2, ring.drain((buffer, offset, length, timestampNanos) -> {
+            values.add(copy(buffer, offset, length));
+            timestamps.add(timestampNanos);
+        }, 10));
+        assertArrayEquals(new byte[]{1}, values.get(0));
+        assertArrayEquals(new byte[]{2, 2}, values.get(1));
+        assertEquals(Long.valueOf(20), timestamps.get(1));
+        assertEquals(0, ring.size());
+    }
+
+    @Test
+    public void dropsAndCountsWhenFull() {
+        NotificationRingBuffer ring = new NotificationRingBuffer(3, 4);
+        // Rounded up to a power of two
+        assertEquals(4, ring.getCapacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(new byte[]{(byte) i}, i));
+        }
+        assertFalse(ring.offer(new byte[]{4}, 4));
+        assertEquals(5, ring.getOfferedCount());
+        assertEquals(1, ring.getDroppedCount());
+        // The fourth sample was accepted with the ring three quarters full
+        assertEquals(1, ring.getBackpressureCount());
+
+        byte[] first = new byte[1];
+        assertEquals(1, ring.drain((buffer, offset, length, timestampNanos) -> first[0] = buffer[offset], 1));
+        assertEquals(0, first[0]);
+        assertTrue(ring.offer(new byte[]{5}, 5));
+    }
+
+    @Test
+    public void truncatesPayloadsLongerThanTheSlot() {
+        NotificationRingBuffer ring = new NotificationRingBuffer(2, 2);
+        ring.offer(new byte[]{1, 2, 3}, 0);
+        ring.offer(null, 1);
+        int[] lengths = new int[2];
+        int[] count = {0};
+        ring.drain((buffer, offset, length, timestampNanos) -> lengths[count[0]++] = length, 2);
+        assertEquals(2, lengths[0]);
+        assertEquals(0, lengths[1]);
+        assertEquals(1, ring.getTruncatedCount());
+    }
+}
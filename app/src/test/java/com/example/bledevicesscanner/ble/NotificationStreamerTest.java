@@ -0,0 +1,207 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Feeds 10,000 notifications per second through a {@link NotificationStreamer} sampling
+ * at display rate, first in virtual time and then with a real producer thread racing
+ * the sampling thread. No sample may be dropped, and the sample counts handed to the
+ * listener must add up to everything that was offered.
+ */
+public class NotificationStreamerTest {
+    private static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID HEART_RATE = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final int RATE = 10000;
+    private static final int SLOT_SIZE = 20;
+
+    // Counts what the listener receives and checks samples arrive in sequence order
+    private static class CountingListener implements NotificationStreamer.Listener {
+        final AtomicLong samples = new AtomicLong();
+        final AtomicLong deliveries = new AtomicLong();
+        volatile int lastSequence = -1;
+        volatile boolean outOfOrder;
+
+        @Override
+        public void onSample(UUID serviceUuid, UUID characteristicUuid, byte[] value, long timestampNanos, int sampleCount) {
+            int sequence = sequence(value);
+            if (sequence <= lastSequence) {
+                outOfOrder = true;
+            }
+            lastSequence = sequence;
+            samples.addAndGet(sampleCount);
+            deliveries.incrementAndGet();
+        }
+    }
+
+    private static byte[] payload(int sequence) {
+        byte[] value = new byte[SLOT_SIZE];
+        value[0] = (byte) sequence;
+        value[1] = (byte) (sequence >> 8);
+        value[2] = (byte) (sequence >> 16);
+        value[3] = (byte) (sequence >> 24);
+        return value;
+    }
+
+    private static int sequence(byte[] value) {
+        return (value[0] & 0xFF) | (value[1] & 0xFF) << 8 | (value[2] & 0xFF) << 16 | (value[3] & 0xFF) << 24;
+    }
+
+    @Test
+    public void tenThousandPerSecondInVirtualTime() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        CountingListener listener = new CountingListener();
+        NotificationStreamer streamer = new NotificationStreamer(scheduler,
+                NotificationStreamer.DEFAULT_SAMPLE_INTERVAL, listener);
+        NotificationStreamer.Channel channel = streamer.start(HEART_RATE_SERVICE, HEART_RATE, SLOT_SIZE);
+
+        int seconds = 10;
+        int perMs = RATE / 1000;
+        int sequence = 0;
+        for (long t = 1; t <= seconds * 1000L; t++) {
+            scheduler.advanceTo(t);
+            for (int i = 0; i < perMs; i++) {
+                assertTrue(streamer.offer(HEART_RATE_SERVICE, HEART_RATE, payload(sequence), t * 1000000L));
+                sequence++;
+            }
+        }
+        scheduler.advanceBy(NotificationStreamer.DEFAULT_SAMPLE_INTERVAL);
+
+        assertEquals(RATE * seconds, channel.getReceivedCount());
+        assertEquals(0, channel.getDroppedCount());
+        assertEquals(0, channel.getBackpressureCount());
+        assertEquals(RATE * seconds, listener.samples.get());
+        assertEquals(sequence - 1, listener.lastSequence);
+        assertFalse(listener.outOfOrder);
+        // One delivery per sampling interval, not one per notification
+        long intervals = seconds * 1000L / NotificationStreamer.DEFAULT_SAMPLE_INTERVAL;
+        assertTrue(listener.deliveries.get() <= intervals + 1);
+        assertEquals(listener.deliveries.get(), channel.getDeliveredCount());
+        assertFalse(streamer.offer(HEART_RATE_SERVICE, UUID.randomUUID(), payload(0), 0));
+    }
+
+    @Test
+    public void sameCharacteristicInTwoServicesStreamsSeparately() {
+        UUID batteryLevel = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+        UUID mainBattery = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+        UUID caseBattery = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        Map<UUID, byte[]> latest = new HashMap<>();
+        NotificationStreamer streamer = new NotificationStreamer(scheduler, NotificationStreamer.DEFAULT_SAMPLE_INTERVAL,
+                (serviceUuid, characteristicUuid, value, timestampNanos, sampleCount) -> {
+                    assertEquals(batteryLevel, characteristicUuid);
+                    latest.put(serviceUuid, value);
+                });
+        NotificationStreamer.Channel main = streamer.start(mainBattery, batteryLevel, 1);
+        streamer.start(caseBattery, batteryLevel, 1);
+
+        assertTrue(streamer.offer(mainBattery, batteryLevel, new byte[]{80}, 0));
+        assertTrue(streamer.offer(caseBattery, batteryLevel, new byte[]{35}, 0));
+        assertTrue(streamer.offer(mainBattery, batteryLevel, new byte[]{79}, 0));
+        scheduler.advanceBy(NotificationStreamer.DEFAULT_SAMPLE_INTERVAL);
+
+        assertEquals(2, main.getReceivedCount());
+        assertEquals(mainBattery, main.getServiceUuid());
+        assertEquals(79, latest.get(mainBattery)[0]);
+        assertEquals(35, latest.get(caseBattery)[0]);
+
+        streamer.stop(caseBattery, batteryLevel);
+        assertTrue(streamer.isStreaming(mainBattery, batteryLevel));
+        assertFalse(streamer.isStreaming(caseBattery, batteryLevel));
+        assertFalse(streamer.offer(caseBattery, batteryLevel, new byte[]{34}, 0));
+    }
+
+    @Test
+    public void tenThousandPerSecondAcrossThreads() throws Exception {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            CountingListener listener = new CountingListener();
+            NotificationStreamer streamer = new NotificationStreamer(new ExecutorTaskScheduler(executor),
+                    NotificationStreamer.DEFAULT_SAMPLE_INTERVAL, listener);
+            NotificationStreamer.Channel channel = executor.submit(() -> streamer.start(HEART_RATE_SERVICE, HEART_RATE, SLOT_SIZE)).get();
+
+            // Produce on this thread, as the GATT callback thread would, catching up after every park
+            int total = RATE;
+            long start = System.nanoTime();
+            long intervalNanos = 1000000000L / RATE;
+            byte[][] payloads = new byte[total][];
+            for (int i = 0; i < total; i++) {
+                payloads[i] = payload(i);
+            }
+            int sent = 0;
+            while (sent < total) {
+                long due = Math.min(total, (System.nanoTime() - start) / intervalNanos + 1);
+                while (sent < due) {
+                    streamer.offer(HEART_RATE_SERVICE, HEART_RATE, payloads[sent], System.nanoTime());
+                    sent++;
+                }
+                LockSupport.parkNanos(50000);
+            }
+            long deadline = System.currentTimeMillis() + 2000;
+            while (listener.samples.get() < total && System.currentTimeMillis() < deadline) {
+                Thread.sleep(NotificationStreamer.DEFAULT_SAMPLE_INTERVAL);
+            }
+
+            assertEquals(0, channel.getDroppedCount());
+            assertEquals(total, channel.getReceivedCount());
+            assertEquals(total, listener.samples.get());
+            assertEquals(total - 1, listener.lastSequence);
+            assertFalse(listener.outOfOrder);
+            executor.submit(streamer::stopAll).get();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // TaskScheduler on a single-threaded executor, standing in for the BLE handler thread
+    private static class ExecutorTaskScheduler implements TaskScheduler {
+        private final ScheduledExecutorService executor;
+        private final Map<Runnable, List<Future<?>>> pending = new HashMap<>();
+
+        ExecutorTaskScheduler(ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
+        @Override
+        public long now() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+        }
+
+        @Override
+        public synchronized void schedule(Runnable task, long delayMs) {
+            List<Future<?>> futures = pending.get(task);
+            if (futures == null) {
+                futures = new ArrayList<>();
+                pending.put(task, futures);
+            }
+            futures.add(executor.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public synchronized void cancel(Runnable task) {
+            List<Future<?>> futures = pending.remove(task);
+            if (futures != null) {
+                for (Future<?> future : futures) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ReconnectPolicyTest {
+    private static final long SEED = 42;
+    private static final int DRAWS = 1000;
+
+    @Test
+    public void baseDelayDoublesUpToTheMaximum() {
+        ReconnectPolicy policy = new ReconnectPolicy();
+        long[] expected = {250, 500, 1000, 2000, 4000, 8000, 16000, 30000, 30000};
+        for (int attempt = 0; attempt < expected.length; attempt++) {
+            assertEquals("attempt " + attempt, expected[attempt], policy.getBaseDelay(attempt));
+        }
+        // Far past the cap the power overflows to infinity, which is still capped
+        assertEquals(ReconnectPolicy.DEFAULT_MAX_DELAY, policy.getBaseDelay(2000));
+    }
+
+    @Test
+    public void customScheduleIsFollowed() {
+        ReconnectPolicy policy = new ReconnectPolicy().setInitialDelay(100).setMultiplier(3).setMaxDelay(5000);
+        assertEquals(100, policy.getBaseDelay(0));
+        assertEquals(300, policy.getBaseDelay(1));
+        assertEquals(900, policy.getBaseDelay(2));
+        assertEquals(2700, policy.getBaseDelay(3));
+        assertEquals(5000, policy.getBaseDelay(4));
+    }
+
+    @Test
+    public void jitteredDelaysSpanTheJitterRange() {
+        ReconnectPolicy policy = new ReconnectPolicy();
+        Random random = new Random(SEED);
+        for (int attempt = 0; attempt < 10; attempt++) {
+            long base = policy.getBaseDelay(attempt);
+            long lowest = (long) (base * (1 - ReconnectPolicy.DEFAULT_JITTER));
+            long min = Long.MAX_VALUE;
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < DRAWS; i++) {
+                long delay = policy.getDelay(attempt, random);
+                assertTrue("attempt " + attempt + " delay " + delay, delay >= lowest && delay <= base);
+                min = Math.min(min, delay);
+                max = Math.max(max, delay);
+            }
+            // A thousand draws reach within 1% of either end
+            assertTrue("attempt " + attempt + " lowest " + min, min - lowest <= base / 100);
+            assertTrue("attempt " + attempt + " highest " + max, base - max <= base / 100);
+        }
+    }
+
+    @Test
+    public void noJitterGivesTheBaseDelayAndFullJitterReachesZero() {
+        Random random = new Random(SEED);
+        ReconnectPolicy exact = new ReconnectPolicy().setJitter(0);
+        for (int attempt = 0; attempt < 10; attempt++) {
+            assertEquals(exact.getBaseDelay(attempt), exact.getDelay(attempt, random));
+        }
+        ReconnectPolicy full = new ReconnectPolicy().setJitter(1);
+        long min = Long.MAX_VALUE;
+        for (int i = 0; i < DRAWS; i++) {
+            long delay = full.getDelay(4, random);
+            assertTrue(delay >= 0 && delay <= full.getBaseDelay(4));
+            min = Math.min(min, delay);
+        }
+        assertTrue("lowest " + min, min <= full.getBaseDelay(4) / 100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void jitterAboveOneIsRejected() {
+        new ReconnectPolicy().setJitter(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeJitterIsRejected() {
+        new ReconnectPolicy().setJitter(-0.1);
+    }
+}
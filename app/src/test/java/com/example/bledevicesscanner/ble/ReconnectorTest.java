@@ -0,0 +1,215 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+import com.example.bledevicesscanner.util.LatencyRecorder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link Reconnector} on a virtual clock against a device that fails a given
+ * number of connection attempts before it comes back, and checks the backoff, the giving
+ * up, the circuit breaker holding attempts off and the recorded time to reconnect.
+ */
+public class ReconnectorTest {
+    private static final long SEED = 11;
+    // Time the stack takes to report the outcome of a connection attempt
+    private static final long CONNECT_TIME = 100;
+
+    private static class Device implements Reconnector.Target, Reconnector.Listener {
+        final VirtualTimeScheduler clock;
+        final List<Long> attempts = new ArrayList<>();
+        final List<Long> scheduledDelays = new ArrayList<>();
+        Reconnector reconnector;
+        int failuresLeft;
+        int reconnectedAfter = -1;
+        long downtime = -1;
+        int gaveUpAfter = -1;
+
+        Device(VirtualTimeScheduler clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public boolean connect() {
+            attempts.add(clock.now());
+            boolean fails = failuresLeft > 0;
+            if (fails) {
+                failuresLeft--;
+            }
+            clock.schedule(fails ? reconnector::onAttemptFailed : reconnector::onConnected, CONNECT_TIME);
+            return true;
+        }
+
+        @Override
+        public void onReconnectScheduled(int attempt, long delayMs) {
+            scheduledDelays.add(delayMs);
+        }
+
+        @Override
+        public void onReconnected(int attempts, long downtimeMs) {
+            reconnectedAfter = attempts;
+            downtime = downtimeMs;
+        }
+
+        @Override
+        public void onGaveUp(int attempts) {
+            gaveUpAfter = attempts;
+        }
+    }
+
+    private static Device device(VirtualTimeScheduler clock, ReconnectPolicy policy, CircuitBreaker breaker) {
+        Device device = new Device(clock);
+        device.reconnector = new Reconnector(clock, policy, breaker, new Random(SEED), device);
+        return device;
+    }
+
+    @Test
+    public void failedAttemptsBackOffUntilTheDeviceIsBack() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Device device = device(clock, new ReconnectPolicy().setJitter(0), new CircuitBreaker());
+        device.failuresLeft = 2;
+        device.reconnector.onConnectionLost(device);
+        assertTrue(device.reconnector.isReconnecting());
+        clock.runUntilIdle();
+
+        assertEquals(Arrays.asList(250L, 500L, 1000L), device.scheduledDelays);
+        // Each attempt starts its delay after the previous one failed
+        assertEquals(Arrays.asList(250L, 250L + CONNECT_TIME + 500, 250L + 500 + 1000 + 2 * CONNECT_TIME),
+                device.attempts);
+        assertEquals(3, device.reconnectedAfter);
+        assertEquals(250 + 500 + 1000 + 3 * CONNECT_TIME, device.downtime);
+        assertFalse(device.reconnector.isReconnecting());
+        assertEquals(1, device.reconnector.getTimeToReconnect().getCount());
+        assertEquals(CircuitBreaker.State.CLOSED, device.reconnector.getCircuitBreaker().getState(clock.now()));
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        ReconnectPolicy policy = new ReconnectPolicy().setMaxAttempts(4);
+        Device device = device(clock, policy, new CircuitBreaker(100, 1000));
+        device.failuresLeft = Integer.MAX_VALUE;
+        device.reconnector.onConnectionLost(device);
+        clock.runUntilIdle();
+
+        assertEquals(4, device.attempts.size());
+        assertEquals(4, device.gaveUpAfter);
+        assertEquals(-1, device.reconnectedAfter);
+        assertEquals(1, device.reconnector.getGivenUpCount());
+        assertFalse(device.reconnector.isReconnecting());
+        assertEquals(0, device.reconnector.getTimeToReconnect().getCount());
+        // Every delay came from the jitter range of its attempt
+        for (int attempt = 0; attempt < device.scheduledDelays.size(); attempt++) {
+            long base = policy.getBaseDelay(attempt);
+            long delay = device.scheduledDelays.get(attempt);
+            assertTrue("attempt " + attempt + " delay " + delay, delay >= base / 2 && delay <= base);
+        }
+    }
+
+    @Test
+    public void openBreakerHoldsTheNextAttemptOff() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        CircuitBreaker breaker = new CircuitBreaker(2, 10000);
+        Device device = device(clock, new ReconnectPolicy().setJitter(0), breaker);
+        device.failuresLeft = 2;
+        device.reconnector.onConnectionLost(device);
+        clock.runUntilIdle();
+
+        // The second failure opens the breaker, so the third attempt waits out the cool-down
+        assertEquals(Arrays.asList(250L, 500L, 10000L), device.scheduledDelays);
+        long secondFailure = 250 + CONNECT_TIME + 500 + CONNECT_TIME;
+        assertEquals(secondFailure + 10000, (long) device.attempts.get(2));
+        assertEquals(3, device.reconnectedAfter);
+        assertEquals(1, breaker.getTripCount());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(clock.now()));
+    }
+
+    @Test
+    public void attemptDueWhileTheBreakerIsOpenIsRescheduled() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        CircuitBreaker breaker = new CircuitBreaker(1, 10000);
+        Device device = device(clock, new ReconnectPolicy().setJitter(0), breaker);
+        device.reconnector.onConnectionLost(device);
+        // Something else trips the breaker after the first attempt was scheduled
+        breaker.recordFailure(clock.now());
+        clock.advanceBy(250);
+        assertTrue(device.attempts.isEmpty());
+        assertTrue(device.reconnector.isReconnecting());
+        clock.runUntilIdle();
+
+        assertEquals(Arrays.asList(10000L), device.attempts);
+        assertEquals(1, device.reconnectedAfter);
+        assertEquals(10000 + CONNECT_TIME, device.downtime);
+    }
+
+    @Test
+    public void cancelDropsThePendingAttempt() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Device device = device(clock, new ReconnectPolicy(), new CircuitBreaker());
+        device.reconnector.onConnectionLost(device);
+        device.reconnector.cancel();
+        assertTrue(clock.isIdle());
+        clock.advanceBy(ReconnectPolicy.DEFAULT_MAX_DELAY);
+
+        assertTrue(device.attempts.isEmpty());
+        assertFalse(device.reconnector.isReconnecting());
+        assertEquals(-1, device.reconnectedAfter);
+        assertEquals(-1, device.gaveUpAfter);
+    }
+
+    @Test
+    public void lossWhileReconnectingCountsAsAFailedAttempt() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Device device = device(clock, new ReconnectPolicy().setJitter(0), new CircuitBreaker());
+        device.reconnector.onConnectionLost(device);
+        device.reconnector.onConnectionLost(device);
+        assertEquals(Arrays.asList(250L, 500L), device.scheduledDelays);
+        assertEquals(1, device.reconnector.getCircuitBreaker().getConsecutiveFailures());
+    }
+
+    @Test
+    public void timeToReconnectPercentilesMatchTheOutages() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        ReconnectPolicy policy = new ReconnectPolicy();
+        Device device = device(clock, policy, new CircuitBreaker());
+        // Replays the reconnector's draws to work out every outage's downtime
+        Random draws = new Random(SEED);
+        Random outages = new Random(SEED + 1);
+        int count = 200;
+        long[] expected = new long[count];
+        for (int i = 0; i < count; i++) {
+            int failures = outages.nextInt(4);
+            for (int attempt = 0; attempt <= failures; attempt++) {
+                expected[i] += policy.getDelay(attempt, draws) + CONNECT_TIME;
+            }
+            device.failuresLeft = failures;
+            device.reconnector.onConnectionLost(device);
+            clock.runUntilIdle();
+            assertEquals("outage " + i, expected[i], device.downtime);
+            assertEquals("outage " + i, failures + 1, device.reconnectedAfter);
+            // Some time connected before the next loss
+            clock.advanceBy(60000);
+        }
+
+        LatencyRecorder timeToReconnect = device.reconnector.getTimeToReconnect();
+        Arrays.sort(expected);
+        assertEquals(count, timeToReconnect.getCount());
+        assertEquals(expected[count / 2 - 1], timeToReconnect.getPercentile(50));
+        assertEquals(expected[count * 9 / 10 - 1], timeToReconnect.getPercentile(90));
+        assertEquals(expected[count * 99 / 100 - 1], timeToReconnect.getPercentile(99));
+        assertEquals(expected[count - 1], timeToReconnect.getMax());
+        // Without failures the wait is the first delay, between half of it and all of it
+        assertTrue(expected[0] >= ReconnectPolicy.DEFAULT_INITIAL_DELAY / 2 + CONNECT_TIME);
+        // Three failures wait at most 250 + 500 + 1000 + 2000
+        assertTrue(expected[count - 1] <= 3750 + 4 * CONNECT_TIME);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ScanBatcherTest {
+
+    @Test
+    public void onlyTheFirstResultOfAWindowOpensABatch() {
+        ScanBatcher<String> batcher = new ScanBatcher<>(150);
+        assertTrue(batcher.offer("A", "a1"));
+        assertFalse(batcher.offer("B", "b1"));
+        assertFalse(batcher.offer("A", "a2"));
+        batcher.drain();
+        assertTrue(batcher.offer("A", "a3"));
+    }
+
+    @Test
+    public void drainReturnsTheLatestResultPerAddressInFirstSeenOrder() {
+        ScanBatcher<String> batcher = new ScanBatcher<>(150);
+        batcher.offer("A", "a1");
+        batcher.offer("B", "b1");
+        batcher.offer("A", "a2");
+        batcher.offer("C", "c1");
+        batcher.offer("B", "b2");
+        assertEquals(3, batcher.getPendingCount());
+
+        assertEquals(Arrays.asList("a2", "b2", "c1"), batcher.drain());
+        assertEquals(0, batcher.getPendingCount());
+        assertEquals(Collections.emptyList(), batcher.drain());
+
+        // The next window starts from scratch
+        batcher.offer("C", "c2");
+        assertEquals(Collections.singletonList("c2"), batcher.drain());
+    }
+
+    @Test
+    public void reductionRatioIsResultsPerDeliveredUpdate() {
+        ScanBatcher<Integer> batcher = new ScanBatcher<>(150);
+        assertEquals(0, batcher.getReductionRatio(), 0);
+        // Ten devices advertising six times in each of two windows
+        for (int window = 0; window < 2; window++) {
+            for (int i = 0; i < 60; i++) {
+                batcher.offer("device " + i % 10, i);
+            }
+            assertEquals(10, batcher.drain().size());
+        }
+        // An empty drain delivers nothing and is not a batch
+        batcher.drain();
+
+        assertEquals(120, batcher.getInputCount());
+        assertEquals(20, batcher.getOutputCount());
+        assertEquals(2, batcher.getBatchCount());
+        assertEquals(6.0, batcher.getReductionRatio(), 1e-9);
+    }
+
+    @Test
+    public void resetDropsPendingResultsAndCounters() {
+        ScanBatcher<String> batcher = new ScanBatcher<>(150);
+        batcher.offer("A", "a1");
+        batcher.drain();
+        batcher.offer("B", "b1");
+        batcher.reset();
+
+        assertEquals(0, batcher.getPendingCount());
+        assertEquals(0, batcher.getInputCount());
+        assertEquals(0, batcher.getOutputCount());
+        assertEquals(0, batcher.getBatchCount());
+        assertTrue(batcher.drain().isEmpty());
+        assertTrue(batcher.offer("B", "b2"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void windowMustBePositive() {
+        new ScanBatcher<String>(0);
+    }
+}
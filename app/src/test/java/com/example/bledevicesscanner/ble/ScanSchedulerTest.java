@@ -0,0 +1,156 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Drives a {@link ScanScheduler} on a virtual clock through the cases that went wrong
+ * with a fixed postDelayed stop: duty cycles that would start the radio more than five
+ * times in 30 seconds, a session restarted right after being stopped, and a user
+ * toggling the scan rapidly.
+ */
+public class ScanSchedulerTest {
+    private static final long DURATION = 120000;
+
+    private static class Radio implements ScanScheduler.Scanner, ScanScheduler.Listener {
+        final VirtualTimeScheduler clock;
+        final List<Long> starts = new ArrayList<>();
+        long onSince = -1;
+        long onTime;
+        long finishedAt = -1;
+
+        Radio(VirtualTimeScheduler clock) {
+            this.clock = clock;
+        }
+
+        @Override
+        public void startScan() {
+            starts.add(clock.now());
+            onSince = clock.now();
+        }
+
+        @Override
+        public void stopScan() {
+            onTime += clock.now() - onSince;
+            onSince = -1;
+        }
+
+        @Override
+        public void onSessionFinished() {
+            finishedAt = clock.now();
+        }
+
+        // Most starts seen in any window of the given length
+        int maxStartsWithin(long windowMs) {
+            int max = 0;
+            for (int i = 0; i < starts.size(); i++) {
+                int count = 0;
+                for (int j = i; j < starts.size() && starts.get(j) - starts.get(i) < windowMs; j++) {
+                    count++;
+                }
+                max = Math.max(max, count);
+            }
+            return max;
+        }
+    }
+
+    // Runs a whole duty-cycled session and checks it against the throttle
+    private static Radio dutyCycle(long onTimeMs, long offTimeMs, ScanThrottle throttle) {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Radio radio = new Radio(clock);
+        ScanScheduler scanScheduler = new ScanScheduler(clock, throttle, radio, radio);
+        scanScheduler.setDutyCycle(onTimeMs, offTimeMs);
+        scanScheduler.setDuration(DURATION);
+        scanScheduler.start();
+        clock.runUntilIdle();
+
+        assertTrue("throttle exceeded", radio.maxStartsWithin(ScanThrottle.DEFAULT_WINDOW) <= ScanThrottle.DEFAULT_MAX_STARTS);
+        assertEquals(DURATION, radio.finishedAt);
+        assertFalse("radio left on", scanScheduler.isScanning());
+        assertEquals(-1, radio.onSince);
+        return radio;
+    }
+
+    @Test
+    public void fastDutyCycleIsStretchedToTheThrottle() {
+        ScanThrottle throttle = new ScanThrottle();
+        // 4 s on, 1 s off would start the radio six times in 30 s
+        Radio radio = dutyCycle(4000, 1000, throttle);
+        assertTrue(throttle.getDeferredCount() > 0);
+        assertTrue(radio.onTime > DURATION / 2);
+    }
+
+    @Test
+    public void dutyCycleWithinTheThrottleIsNotDeferred() {
+        ScanThrottle throttle = new ScanThrottle();
+        Radio radio = dutyCycle(9000, 1000, throttle);
+        assertEquals(0, throttle.getDeferredCount());
+        assertEquals(DURATION / 10000, radio.starts.size());
+    }
+
+    @Test
+    public void lowDutyCycleKeepsTheRadioMostlyOff() {
+        Radio radio = dutyCycle(2000, 8000, new ScanThrottle());
+        assertTrue("radio on for " + radio.onTime + " ms", radio.onTime <= DURATION / 5 + 2000);
+    }
+
+    @Test
+    public void restartAfterStopIsNotEndedByTheOldTimer() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Radio radio = new Radio(clock);
+        ScanScheduler scanScheduler = new ScanScheduler(clock, new ScanThrottle(), radio, radio);
+        scanScheduler.setDuration(10000);
+        scanScheduler.start();
+        clock.advanceTo(8000);
+        scanScheduler.stop();
+        clock.advanceTo(9000);
+        scanScheduler.start();
+        // The first session's end at 10 s must not stop the second one
+        clock.advanceTo(10000);
+        assertTrue("restarted session stopped by the previous session's timer", scanScheduler.isScanning());
+        clock.runUntilIdle();
+        assertEquals(19000, radio.finishedAt);
+    }
+
+    @Test
+    public void rapidTogglingStaysWithinTheThrottle() {
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Radio radio = new Radio(clock);
+        ScanThrottle throttle = new ScanThrottle();
+        ScanScheduler scanScheduler = new ScanScheduler(clock, throttle, radio, radio);
+        // Pull-to-refresh ten times, half a second apart
+        for (int i = 0; i < 10; i++) {
+            scanScheduler.start();
+            clock.advanceBy(400);
+            scanScheduler.stop();
+            clock.advanceBy(100);
+        }
+        scanScheduler.start();
+        clock.advanceBy(60000);
+        assertTrue("the last start never reached the radio", scanScheduler.isScanning());
+        scanScheduler.stop();
+
+        assertTrue("throttle exceeded", radio.maxStartsWithin(ScanThrottle.DEFAULT_WINDOW) <= ScanThrottle.DEFAULT_MAX_STARTS);
+        assertTrue(throttle.getDeferredCount() > 0);
+        assertFalse("radio left on", scanScheduler.isScanning());
+    }
+
+    @Test
+    public void throttleReportsDelayUntilOldestStartLeavesTheWindow() {
+        ScanThrottle throttle = new ScanThrottle(2, 1000);
+        assertTrue(throttle.allowsStart(0));
+        throttle.recordStart(0);
+        throttle.recordStart(300);
+        assertFalse(throttle.allowsStart(500));
+        assertEquals(500, throttle.getDelayUntilAllowed(500));
+        assertTrue(throttle.allowsStart(1000));
+    }
+}
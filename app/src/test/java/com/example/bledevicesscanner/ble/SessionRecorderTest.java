@@ -0,0 +1,269 @@
+package com.example.bledevicesscanner.ble;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes synthetic sessions with a {@link SessionRecorder} and reads them back with a
+ * {@link SessionReader}: a session paced well within what the writer keeps up with, an
+ * unpaced burst from two threads that overruns the buffer, and a log whose last file was
+ * cut off mid-record, as after a crash. Every accepted record must come back unchanged
+ * and in order, and every record offered must be either recorded or counted as dropped.
+ */
+public class SessionRecorderTest {
+    private static final long MAX_FILE_SIZE = 64 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long COMMIT_INTERVAL = 50;
+    private static final UUID HEART_RATE = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_LEVEL = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+    // GATT_FAILURE (0x101) only fits since the status field became a short
+    private static final int[] STATUSES = {0, 8, 133, 0x101, 0x8F};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    // A plausible mix: mostly advertisements, with a connection streaming notifications
+    private static SessionRecord syntheticRecord(Random random, long timestampNanos) {
+        long address = 0xC0FFEE000000L | random.nextInt(200);
+        int kind = random.nextInt(100);
+        if (kind < 80) {
+            byte[] advertisement = new byte[3 + random.nextInt(29)];
+            random.nextBytes(advertisement);
+            return new SessionRecord(SessionRecord.TYPE_SCAN_RESULT, timestampNanos, address,
+                    -30 - random.nextInt(70), null, advertisement);
+        } else if (kind < 95) {
+            byte[] value = {0, (byte) (60 + random.nextInt(100))};
+            return new SessionRecord(SessionRecord.TYPE_CHARACTERISTIC_CHANGED, timestampNanos, address, 0,
+                    HEART_RATE, value);
+        } else if (kind < 97) {
+            return new SessionRecord(SessionRecord.TYPE_CHARACTERISTIC_READ, timestampNanos, address,
+                    STATUSES[random.nextInt(STATUSES.length)], BATTERY_LEVEL, new byte[]{(byte) random.nextInt(101)});
+        } else if (kind < 99) {
+            return new SessionRecord(SessionRecord.TYPE_CONNECTED, timestampNanos, address, 0, null, null);
+        }
+        return new SessionRecord(SessionRecord.TYPE_DISCONNECTED, timestampNanos, address,
+                STATUSES[random.nextInt(STATUSES.length)], null, null);
+    }
+
+    private static void assertSameRecord(SessionRecord expected, SessionRecord actual, int index) {
+        String message = "record " + index;
+        assertEquals(message, expected.getType(), actual.getType());
+        assertEquals(message, expected.getTimestampNanos(), actual.getTimestampNanos());
+        assertEquals(message, expected.getAddress(), actual.getAddress());
+        assertEquals(message, expected.getRssi(), actual.getRssi());
+        assertTrue(message, Objects.equals(expected.getUuid(), actual.getUuid()));
+        assertTrue(message, Arrays.equals(expected.getPayload(), actual.getPayload()));
+    }
+
+    // Reads the log back and compares it with what the recorder accepted
+    private static void verify(List<File> files, List<SessionRecord> expected, int expectedTruncated)
+            throws IOException {
+        int index = 0;
+        try (SessionReader reader = new SessionReader(files)) {
+            SessionRecord record;
+            while ((record = reader.next()) != null) {
+                assertTrue("more records than were recorded", index < expected.size());
+                assertSameRecord(expected.get(index), record, index);
+                index++;
+            }
+            assertEquals(expectedTruncated, reader.getTruncatedCount());
+        }
+        assertEquals(expected.size(), index);
+        for (File file : files) {
+            assertTrue(file.getName() + " is " + file.length() + " bytes", file.length() <= MAX_FILE_SIZE);
+        }
+    }
+
+    @Test
+    public void pacedSessionIsRecordedWithoutDrops() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory, "paced", MAX_FILE_SIZE, BUFFER_SIZE, COMMIT_INTERVAL);
+        Random random = new Random(1);
+        List<SessionRecord> accepted = new ArrayList<>();
+        // 5000 events per second for one second
+        int total = 5000;
+        long intervalNanos = 200000;
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            long due = start + i * intervalNanos;
+            while (System.nanoTime() < due) {
+                Thread.yield();
+            }
+            SessionRecord record = syntheticRecord(random, due);
+            if (recorder.record(record)) {
+                accepted.add(record);
+            }
+        }
+        recorder.close();
+
+        assertEquals(0, recorder.getDroppedCount());
+        assertEquals(total, recorder.getRecordCount());
+        assertTrue("never rotated", recorder.getFiles().size() > 1);
+        assertEquals(recorder.getFiles(), SessionReader.findFiles(directory, "paced"));
+        verify(SessionReader.findFiles(directory, "paced"), accepted, 0);
+    }
+
+    @Test
+    public void burstDropsAreCountedAndTheRestReadsBack() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory, "burst", MAX_FILE_SIZE,
+                SessionRecorder.DEFAULT_BUFFER_SIZE, COMMIT_INTERVAL);
+        int eventsPerThread = 200000;
+        Thread[] threads = new Thread[2];
+        long[] rejected = new long[threads.length];
+        for (int t = 0; t < threads.length; t++) {
+            final int index = t;
+            Random random = new Random(t);
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < eventsPerThread; i++) {
+                    if (!recorder.record(syntheticRecord(random, System.nanoTime()))) {
+                        rejected[index]++;
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        recorder.close();
+
+        // Unpaced, the callers outrun the disk; what matters is that no record goes missing uncounted
+        long offered = (long) threads.length * eventsPerThread;
+        assertEquals(offered, recorder.getRecordCount() + recorder.getDroppedCount());
+        assertEquals(rejected[0] + rejected[1], recorder.getDroppedCount());
+        long read = 0;
+        try (SessionReader reader = new SessionReader(recorder.getFiles())) {
+            while (reader.next() != null) {
+                read++;
+            }
+            assertEquals(0, reader.getTruncatedCount());
+        }
+        assertEquals(recorder.getRecordCount(), read);
+    }
+
+    @Test
+    public void truncatedTailKeepsEveryWholeRecord() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory, "crash", MAX_FILE_SIZE, BUFFER_SIZE, COMMIT_INTERVAL);
+        Random random = new Random(2);
+        List<SessionRecord> accepted = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            SessionRecord record = syntheticRecord(random, i * 1000000L);
+            if (recorder.record(record)) {
+                accepted.add(record);
+            }
+            if (i % 500 == 0) {
+                // Let commits interleave instead of dropping into a full buffer
+                Thread.sleep(1);
+            }
+        }
+        recorder.close();
+        assertEquals(20000, accepted.size() + recorder.getDroppedCount());
+
+        List<File> files = recorder.getFiles();
+        File last = files.get(files.size() - 1);
+        try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        verify(files, accepted.subList(0, accepted.size() - 1), 1);
+    }
+
+    @Test
+    public void statusesAboveOneByteSurvive() throws Exception {
+        File directory = folder.newFolder();
+        SessionRecorder recorder = new SessionRecorder(directory, "status");
+        recorder.recordDisconnected(1, 2, 0x101);
+        recorder.recordCharacteristicRead(3, 2, BATTERY_LEVEL, 0x8F, new byte[]{50});
+        recorder.recordScanResult(4, 2, -127, new byte[]{2, 1, 6});
+        recorder.close();
+
+        try (SessionReader reader = new SessionReader(recorder.getFiles())) {
+            assertEquals(0x101, reader.next().getStatus());
+            assertEquals(0x8F, reader.next().getStatus());
+            assertEquals(-127, reader.next().getRssi());
+            assertNull(reader.next());
+        }
+    }
+
+    // Opens a log file and writes its header
+    private static DataOutputStream startLog(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(SessionRecord.FILE_MAGIC);
+        out.writeInt(SessionRecord.FILE_VERSION);
+        return out;
+    }
+
+    // A record with a zero body after the base header, whatever its type needs
+    private static void writeRecord(DataOutputStream out, int length, int type, long timestampNanos)
+            throws IOException {
+        out.writeInt(length);
+        out.writeByte(type);
+        out.writeLong(timestampNanos);
+        out.writeLong(0xC0FFEE000001L);
+        out.writeShort(0);
+        for (int i = SessionRecord.BASE_SIZE; i < length; i++) {
+            out.writeByte(0);
+        }
+    }
+
+    @Test
+    public void characteristicRecordTooShortForItsUuidIsTruncation() throws Exception {
+        File first = folder.newFile("short-0000" + SessionRecorder.FILE_SUFFIX);
+        try (DataOutputStream out = startLog(first)) {
+            writeRecord(out, SessionRecord.BASE_SIZE, SessionRecord.TYPE_CONNECTED, 1);
+            // Long enough for the base header, not for the UUID that follows it
+            writeRecord(out, SessionRecord.BASE_SIZE + 4, SessionRecord.TYPE_CHARACTERISTIC_CHANGED, 2);
+            writeRecord(out, SessionRecord.BASE_SIZE, SessionRecord.TYPE_DISCONNECTED, 3);
+        }
+        File second = folder.newFile("short-0001" + SessionRecorder.FILE_SUFFIX);
+        try (DataOutputStream out = startLog(second)) {
+            writeRecord(out, SessionRecord.BASE_SIZE + SessionRecord.UUID_SIZE, SessionRecord.TYPE_CHARACTERISTIC_READ, 4);
+        }
+
+        try (SessionReader reader = new SessionReader(Arrays.asList(first, second))) {
+            assertEquals(1, reader.next().getTimestampNanos());
+            // The rest of the first file cannot be trusted, the next file is read as usual
+            SessionRecord read = reader.next();
+            assertEquals(4, read.getTimestampNanos());
+            assertEquals(new UUID(0, 0), read.getUuid());
+            assertEquals(0, read.getPayload().length);
+            assertNull(reader.next());
+            assertEquals(1, reader.getTruncatedCount());
+            assertEquals(2, reader.getRecordCount());
+        }
+    }
+
+    @Test
+    public void versionOneLogIsRejected() throws Exception {
+        File file = folder.newFile("old-0000" + SessionRecorder.FILE_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(SessionRecord.FILE_MAGIC);
+            out.writeInt(1);
+        }
+        try (SessionReader reader = new SessionReader(file)) {
+            reader.next();
+            fail("version 1 log read with the version 2 layout");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("version 1"));
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.example.bledevicesscanner.ble;
+
+import com.example.bledevicesscanner.ble.sim.VirtualTimeScheduler;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Records a synthetic ten second session and plays it back with a
+ * {@link SessionReplayer} on a virtual clock. At 1x and 10x every record must arrive
+ * exactly when its recorded offset, divided by the speed, says; at max speed the replay
+ * must not wait at all. Every replay must produce the same records, in the same order,
+ * as a {@link SessionReader} pass over the same files.
+ */
+public class SessionReplayerTest {
+    private static final int DEVICES = 50;
+    private static final int EVENTS_PER_SECOND = 2000;
+    private static final int SECONDS = 10;
+    private static final long HEART_RATE_DEVICE = 0xC0FFEE000007L;
+    private static final UUID HEART_RATE = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private List<File> files;
+    private List<SessionRecord> expected;
+
+    // Collects the replayed records and counts those not played exactly on schedule
+    private static class Collector implements SessionReplayer.Listener {
+        final VirtualTimeScheduler clock;
+        final double speed;
+        final long startedAt;
+        final long firstTimestampNanos;
+        final List<SessionRecord> records = new ArrayList<>();
+        long offSchedule;
+        long finishedAt = -1;
+
+        Collector(VirtualTimeScheduler clock, double speed, long firstTimestampNanos) {
+            this.clock = clock;
+            this.speed = speed;
+            this.startedAt = clock.now();
+            this.firstTimestampNanos = firstTimestampNanos;
+        }
+
+        @Override
+        public void onRecord(SessionRecord record) {
+            long due = speed == SessionReplayer.SPEED_MAX ? startedAt
+                    : startedAt + (long) ((record.getTimestampNanos() - firstTimestampNanos) / 1e6 / speed);
+            if (clock.now() != due) {
+                offSchedule++;
+            }
+            records.add(record);
+        }
+
+        @Override
+        public void onReplayFinished() {
+            finishedAt = clock.now();
+        }
+    }
+
+    @Before
+    public void recordSession() throws IOException {
+        files = record(folder.newFolder(), "replay");
+        expected = readAll(files);
+    }
+
+    // Advertisements from a crowd of devices, one of them connected and streaming heart rate
+    private static List<File> record(File directory, String name) throws IOException {
+        SessionRecorder recorder = new SessionRecorder(directory, name, SessionRecorder.DEFAULT_MAX_FILE_SIZE / 32,
+                4 * 1024 * 1024, SessionRecorder.DEFAULT_COMMIT_INTERVAL);
+        Random random = new Random(3);
+        long intervalNanos = 1000000000L / EVENTS_PER_SECOND;
+        recorder.recordConnected(0, HEART_RATE_DEVICE);
+        for (int i = 0; i < EVENTS_PER_SECOND * SECONDS; i++) {
+            long timestampNanos = i * intervalNanos + random.nextInt((int) intervalNanos);
+            if (i % 20 == 0) {
+                recorder.recordCharacteristicChanged(timestampNanos, HEART_RATE_DEVICE, HEART_RATE,
+                        new byte[]{0, (byte) (60 + random.nextInt(40))});
+            } else {
+                byte[] advertisement = new byte[31];
+                random.nextBytes(advertisement);
+                recorder.recordScanResult(timestampNanos, 0xC0FFEE000000L | random.nextInt(DEVICES),
+                        -40 - random.nextInt(60), advertisement);
+            }
+        }
+        recorder.recordDisconnected(SECONDS * 1000000000L, HEART_RATE_DEVICE, 0x101);
+        recorder.close();
+        assertEquals(0, recorder.getDroppedCount());
+        return recorder.getFiles();
+    }
+
+    private static List<SessionRecord> readAll(List<File> files) throws IOException {
+        List<SessionRecord> records = new ArrayList<>();
+        try (SessionReader reader = new SessionReader(files)) {
+            SessionRecord record;
+            while ((record = reader.next()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    private static void assertSameRecords(List<SessionRecord> expected, List<SessionRecord> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            SessionRecord x = expected.get(i);
+            SessionRecord y = actual.get(i);
+            String message = "record " + i;
+            assertEquals(message, x.getType(), y.getType());
+            assertEquals(message, x.getTimestampNanos(), y.getTimestampNanos());
+            assertEquals(message, x.getAddress(), y.getAddress());
+            assertEquals(message, x.getRssi(), y.getRssi());
+            assertEquals(message, x.getUuid(), y.getUuid());
+            assertArrayEquals(message, x.getPayload(), y.getPayload());
+        }
+    }
+
+    private void assertPaced(double speed) throws IOException {
+        SessionReplayer replayer = new SessionReplayer(files);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        clock.advanceTo(1000);
+        Collector collector = new Collector(clock, speed, expected.get(0).getTimestampNanos());
+        replayer.setSpeed(speed).start(clock, collector);
+        clock.runUntilIdle();
+
+        assertEquals(0, collector.offSchedule);
+        assertEquals(1000 + (long) (replayer.getDurationNanos() / 1e6 / speed), collector.finishedAt);
+        assertSameRecords(expected, collector.records);
+        assertFalse(replayer.isRunning());
+    }
+
+    @Test
+    public void indexCountsRecordsAndCharacteristics() throws IOException {
+        SessionReplayer replayer = new SessionReplayer(files);
+        assertTrue("session never rotated", files.size() > 1);
+        assertEquals(expected.size(), replayer.getRecordCount());
+        assertEquals(SECONDS * 1000000000L, replayer.getDurationNanos());
+        assertEquals(0, replayer.getTruncatedCount());
+        Map<UUID, Integer> characteristics = replayer.getCharacteristics(HEART_RATE_DEVICE);
+        assertEquals(1, characteristics.size());
+        assertEquals(SessionReplayer.CHARACTERISTIC_CHANGED, (int) characteristics.get(HEART_RATE));
+        assertTrue(replayer.getCharacteristics(0xC0FFEE000001L).isEmpty());
+    }
+
+    @Test
+    public void realTimeReplayKeepsTheRecordedPace() throws IOException {
+        assertPaced(1);
+    }
+
+    @Test
+    public void fastReplayDividesTheRecordedPace() throws IOException {
+        assertPaced(10);
+    }
+
+    @Test
+    public void maxSpeedReplayNeverWaits() throws IOException {
+        SessionReplayer replayer = new SessionReplayer(files);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Collector collector = new Collector(clock, SessionReplayer.SPEED_MAX, 0);
+        replayer.setSpeed(SessionReplayer.SPEED_MAX).start(clock, collector);
+        clock.runUntilIdle();
+
+        assertEquals(0, clock.now());
+        assertEquals(0, collector.finishedAt);
+        assertSameRecords(expected, collector.records);
+    }
+
+    @Test
+    public void loopingReplayRunsUntilStopped() throws IOException {
+        SessionReplayer replayer = new SessionReplayer(files);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        int loops = 3;
+        long[] count = new long[1];
+        boolean[] finished = new boolean[1];
+        replayer.setSpeed(SessionReplayer.SPEED_MAX).setLooping(true).start(clock, new SessionReplayer.Listener() {
+            @Override
+            public void onRecord(SessionRecord record) {
+                if (++count[0] == loops * expected.size()) {
+                    replayer.stop();
+                }
+            }
+
+            @Override
+            public void onReplayFinished() {
+                finished[0] = true;
+            }
+        });
+        clock.runUntilIdle();
+
+        assertEquals(loops * expected.size(), count[0]);
+        assertEquals(loops - 1, replayer.getLoopCount());
+        assertFalse(replayer.isRunning());
+        assertFalse("stop reported as the end of the recording", finished[0]);
+    }
+
+    @Test
+    public void restartDropsTheStepOfTheStoppedReplay() throws IOException {
+        SessionReplayer replayer = new SessionReplayer(files);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        replayer.start(clock, new Collector(clock, 1, 0));
+        clock.advanceBy(5000);
+        replayer.stop();
+        clock.advanceBy(1000);
+
+        Collector collector = new Collector(clock, 1, expected.get(0).getTimestampNanos());
+        replayer.start(clock, collector);
+        clock.runUntilIdle();
+        assertEquals(0, collector.offSchedule);
+        assertSameRecords(expected, collector.records);
+    }
+
+    @Test
+    public void characteristicRecordTooShortForItsUuidEndsTheIndex() throws IOException {
+        SessionRecorder recorder = new SessionRecorder(folder.newFolder(), "short");
+        recorder.recordConnected(1, HEART_RATE_DEVICE);
+        recorder.recordCharacteristicChanged(2, HEART_RATE_DEVICE, HEART_RATE, new byte[]{0, 72});
+        recorder.recordDisconnected(3, HEART_RATE_DEVICE, 0);
+        recorder.close();
+        List<File> shortFiles = recorder.getFiles();
+        // Leave the notification's length long enough for the base header but not its UUID
+        long lengthAt = SessionRecord.FILE_HEADER_SIZE + SessionRecord.encodedSize(SessionRecord.TYPE_CONNECTED, 0);
+        try (RandomAccessFile file = new RandomAccessFile(shortFiles.get(0), "rw")) {
+            file.seek(lengthAt);
+            assertEquals(SessionRecord.encodedSize(SessionRecord.TYPE_CHARACTERISTIC_CHANGED, 2)
+                    - SessionRecord.LENGTH_SIZE, file.readInt());
+            file.seek(lengthAt);
+            file.writeInt(SessionRecord.BASE_SIZE + 4);
+        }
+
+        SessionReplayer replayer = new SessionReplayer(shortFiles);
+        assertEquals(1, replayer.getRecordCount());
+        assertEquals(1, replayer.getTruncatedCount());
+        assertTrue(replayer.getCharacteristics(HEART_RATE_DEVICE).isEmpty());
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Collector collector = new Collector(clock, SessionReplayer.SPEED_MAX, 0);
+        replayer.setSpeed(SessionReplayer.SPEED_MAX).start(clock, collector);
+        clock.runUntilIdle();
+        assertEquals(1, collector.records.size());
+        assertEquals(SessionRecord.TYPE_CONNECTED, collector.records.get(0).getType());
+        assertSameRecords(readAll(shortFiles), collector.records);
+    }
+
+    // The menu action's path: find the newest recording in a directory and play it through
+    @Test
+    public void lastRecordedSessionIsFoundAndReplayed() throws IOException {
+        File directory = folder.newFolder();
+        assertTrue(SessionReader.findLastFiles(directory).isEmpty());
+        SessionRecorder older = new SessionRecorder(directory, "session-1000");
+        older.recordConnected(1, HEART_RATE_DEVICE);
+        older.close();
+        List<File> newer = record(directory, "session-2000");
+
+        List<File> found = SessionReader.findLastFiles(directory);
+        assertEquals(newer, found);
+        SessionReplayer replayer = new SessionReplayer(found);
+        VirtualTimeScheduler clock = new VirtualTimeScheduler();
+        Collector collector = new Collector(clock, SessionReplayer.SPEED_MAX, 0);
+        replayer.setSpeed(SessionReplayer.SPEED_MAX).start(clock, collector);
+        clock.runUntilIdle();
+        assertSameRecords(readAll(newer), collector.records);
+        SessionRecord last = collector.records.get(collector.records.size() - 1);
+        assertEquals(SessionRecord.TYPE_DISCONNECTED, last.getType());
+        assertEquals(0x101, last.getStatus());
+        assertTrue(Arrays.asList(directory.list()).contains("session-1000-0000" + SessionRecorder.FILE_SUFFIX));
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.bledevicesscanner.ble.decoder;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Decodes hand-built values of every standard characteristic through
+ * {@link DecoderRegistry#standard()} and checks the fields, including values cut short
+ * of what their flags announce, a vendor registration and UUIDs with no decoder.
+ */
+public class DecoderRegistryTest {
+    private static final UUID VENDOR = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private final DecoderRegistry registry = DecoderRegistry.standard();
+    private final Measurement out = new Measurement();
+
+    private static UUID sig(int uuid16) {
+        return UUID.fromString(String.format(Locale.US, "0000%04x-0000-1000-8000-00805f9b34fb", uuid16));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private boolean decode(int uuid16, byte[] value) {
+        return registry.decode(sig(uuid16), value, 0, value.length, out);
+    }
+
+    private void expect(int field, double expected, String label) {
+        assertEquals(label, expected, out.get(field, Double.NaN), 0);
+    }
+
+    @Test
+    public void heartRateMeasurement() {
+        assertTrue("8-bit heart rate rejected", decode(DecoderRegistry.HEART_RATE_MEASUREMENT, bytes(0x00, 72)));
+        expect(Measurement.HEART_RATE, 72, "8-bit heart rate");
+        assertEquals("8-bit heart rate has extra fields", 1, out.size());
+
+        // 16-bit rate, contact detected, energy expended and two RR intervals
+        byte[] value = bytes(0x1F, 0x2C, 0x01, 0x10, 0x00, 0x00, 0x04, 0x00, 0x02);
+        assertTrue("full heart rate rejected", decode(DecoderRegistry.HEART_RATE_MEASUREMENT, value));
+        expect(Measurement.HEART_RATE, 300, "16-bit heart rate");
+        expect(Measurement.SENSOR_CONTACT, 1, "sensor contact");
+        expect(Measurement.ENERGY_EXPENDED, 16, "energy expended");
+        assertEquals("RR intervals", 2, out.count(Measurement.RR_INTERVAL));
+        expect(Measurement.RR_INTERVAL, 1.0, "first RR interval");
+        assertEquals("second RR interval", 0.5, out.getValue(out.size() - 1), 0);
+
+        // Energy expended announced but missing
+        assertFalse("short heart rate accepted", decode(DecoderRegistry.HEART_RATE_MEASUREMENT, bytes(0x08, 72)));
+        assertFalse("short 16-bit rate accepted", decode(DecoderRegistry.HEART_RATE_MEASUREMENT, bytes(0x01, 72)));
+    }
+
+    @Test
+    public void temperatureAndEnvironmentalSensing() {
+        // 36.5 C as FLOAT 365 * 10^-1
+        byte[] celsius = bytes(0x00, 0x6D, 0x01, 0x00, 0xFF);
+        assertTrue("temperature rejected", decode(DecoderRegistry.TEMPERATURE_MEASUREMENT, celsius));
+        expect(Measurement.TEMPERATURE_CELSIUS, 36.5, "temperature in Celsius");
+
+        // 98.6 F with a time stamp and temperature type 2 (body)
+        byte[] fahrenheit = bytes(0x07, 0xDA, 0x03, 0x00, 0xFF, 0xEA, 0x07, 10, 18, 9, 30, 0, 2);
+        assertTrue("Fahrenheit rejected", decode(DecoderRegistry.INTERMEDIATE_TEMPERATURE, fahrenheit));
+        expect(Measurement.TEMPERATURE_FAHRENHEIT, 98.6, "temperature in Fahrenheit");
+        assertFalse("Fahrenheit reported as Celsius", out.has(Measurement.TEMPERATURE_CELSIUS));
+        expect(Measurement.TEMPERATURE_TYPE, 2, "temperature type");
+
+        byte[] truncated = bytes(0x02, 0x6D, 0x01, 0x00, 0xFF, 0xEA, 0x07);
+        assertFalse("short time stamp accepted", decode(DecoderRegistry.TEMPERATURE_MEASUREMENT, truncated));
+
+        // Environmental Sensing: -12.34 C, 45.67 %, 101325.0 Pa
+        assertTrue("ESS temperature rejected", decode(DecoderRegistry.TEMPERATURE, bytes(0x2E, 0xFB)));
+        expect(Measurement.TEMPERATURE_CELSIUS, -12.34, "ESS temperature");
+        assertTrue("humidity rejected", decode(DecoderRegistry.HUMIDITY, bytes(0xD7, 0x11)));
+        expect(Measurement.HUMIDITY, 45.67, "humidity");
+        assertTrue("pressure rejected", decode(DecoderRegistry.PRESSURE, bytes(0x02, 0x76, 0x0F, 0x00)));
+        expect(Measurement.PRESSURE, 101325.0, "pressure");
+    }
+
+    @Test
+    public void batteryLevelAndCyclingSpeedAndCadence() {
+        assertTrue("battery rejected", decode(DecoderRegistry.BATTERY_LEVEL, bytes(87)));
+        expect(Measurement.BATTERY_LEVEL, 87, "battery level");
+        assertFalse("empty battery accepted", decode(DecoderRegistry.BATTERY_LEVEL, new byte[0]));
+
+        // Wheel 0x80000001 revolutions at 2 s, crank 500 revolutions at 63.5 s
+        byte[] both = bytes(0x03, 0x01, 0x00, 0x00, 0x80, 0x00, 0x08, 0xF4, 0x01, 0x00, 0xFE);
+        assertTrue("CSC rejected", decode(DecoderRegistry.CSC_MEASUREMENT, both));
+        expect(Measurement.WHEEL_REVOLUTIONS, 2147483649.0, "wheel revolutions");
+        expect(Measurement.WHEEL_EVENT_TIME, 2.0, "wheel event time");
+        expect(Measurement.CRANK_REVOLUTIONS, 500, "crank revolutions");
+        expect(Measurement.CRANK_EVENT_TIME, 63.5, "crank event time");
+
+        assertTrue("crank only rejected", decode(DecoderRegistry.CSC_MEASUREMENT, bytes(0x02, 0x0A, 0x00, 0x00, 0x04)));
+        assertFalse("crank only has wheel fields", out.has(Measurement.WHEEL_REVOLUTIONS));
+        assertEquals(2, out.size());
+        assertFalse("short CSC accepted", decode(DecoderRegistry.CSC_MEASUREMENT, bytes(0x01, 0x0A, 0x00)));
+    }
+
+    @Test
+    public void vendorRegistrationAndUnknownUuids() {
+        assertEquals(0x2A37, DecoderRegistry.toUuid16(sig(0x2A37)));
+        assertEquals("vendor UUID taken for a SIG UUID", -1, DecoderRegistry.toUuid16(VENDOR));
+        assertFalse("Device Name decoded", decode(0x2A00, bytes(1, 2)));
+        assertTrue(out.isEmpty());
+        assertNull("vendor decoder before registering", registry.get(VENDOR));
+
+        CharacteristicDecoder vendor = (buffer, offset, length, measurement) -> {
+            measurement.add(Measurement.FIRST_VENDOR_FIELD, length);
+            return true;
+        };
+        registry.register(VENDOR, vendor);
+        assertSame("vendor decoder not found", vendor, registry.get(VENDOR));
+        assertTrue("vendor decode failed", registry.decode(VENDOR, new byte[5], 0, 3, out));
+        expect(Measurement.FIRST_VENDOR_FIELD, 3, "vendor field");
+
+        // Registering a full base UUID lands on the 16-bit key and replaces the standard decoder
+        registry.register(sig(0x2A19), vendor);
+        assertSame("base UUID registration not keyed by 16 bits", vendor, registry.get(0x2A19));
+    }
+
+    // A stream through one reused Measurement decodes every value in full
+    @Test
+    public void heartRateStream() {
+        Random random = new Random(1);
+        byte[][] values = new byte[256][];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = bytes(0x16, 60 + random.nextInt(120), random.nextInt(256), 0x03, random.nextInt(256), 0x03);
+        }
+        UUID uuid = sig(DecoderRegistry.HEART_RATE_MEASUREMENT);
+        int iterations = 100000;
+        long fields = 0;
+        for (int i = 0; i < iterations; i++) {
+            byte[] value = values[i & 255];
+            assertTrue(registry.decode(uuid, value, 0, value.length, out));
+            fields += out.size();
+        }
+        // Heart rate, contact and two RR intervals per value
+        assertEquals(iterations * 4L, fields);
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.ConnectionPool;
+import com.example.bledevicesscanner.ble.ConnectionProfile;
+import com.example.bledevicesscanner.ble.GattOperation;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Aggregate read throughput of a {@link ConnectionPool} polling N
+ * {@link SimulatedGattPeer}s at once, in virtual time. Every link keeps a backlog of
+ * reads for the whole run, so the result shows how the pool's concurrency limit and
+ * round-robin scheduling share request slots between links.
+ */
+public class ConnectionPoolThroughputTest {
+    private static final UUID SERVICE_UUID = UUID.fromString("0000fff0-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+    private static final int VALUE_SIZE = 244;
+    private static final long DURATION = 10000;
+    // Reads each link keeps queued so it always competes for a slot
+    private static final int BACKLOG = 4;
+
+    private static class Result {
+        double operationsPerSecond;
+        long minLinkOperations = Long.MAX_VALUE;
+        long maxLinkOperations;
+
+        // Reads completed by the least served link divided by the most served one, 1 is perfectly fair
+        double fairness() {
+            return maxLinkOperations == 0 ? 0 : (double) minLinkOperations / maxLinkOperations;
+        }
+    }
+
+    private static Result run(ConnectionProfile profile, int peerCount, int maxConcurrentOperations) {
+        final VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        final ConnectionPool pool = new ConnectionPool(scheduler);
+        pool.setMaxConnections(peerCount);
+        pool.setMaxConcurrentOperations(maxConcurrentOperations);
+
+        final ConnectionPool.Link[] links = new ConnectionPool.Link[peerCount];
+        for (int i = 0; i < peerCount; i++) {
+            SimulatedLink link = SimulatedLink.forProfile(profile);
+            SimulatedGattPeer peer = new SimulatedGattPeer(scheduler, link.getRoundTripMs());
+            peer.setLink(link);
+            peer.setValue(CHARACTERISTIC_UUID, new byte[VALUE_SIZE]);
+            links[i] = pool.open(i, peer);
+            peer.attach(links[i].getQueue());
+            pool.setConnected(links[i]);
+            if (profile.requestsMtu()) {
+                pool.enqueue(links[i], GattOperation.requestMtu(profile.getMtu()));
+            }
+        }
+        scheduler.runUntilIdle();
+
+        final long start = scheduler.now();
+        final long end = start + DURATION;
+        final long[] operations = new long[peerCount];
+        for (int i = 0; i < peerCount; i++) {
+            final int index = i;
+            GattOperation.Callback readAgain = new GattOperation.Callback() {
+                @Override
+                public void onComplete(GattOperation operation, int status) {
+                    assertTrue("read failed with status " + status, operation.isSuccess());
+                    assertEquals(VALUE_SIZE, operation.getValue().length);
+                    operations[index]++;
+                    if (scheduler.now() < end) {
+                        pool.enqueue(links[index], GattOperation.read(SERVICE_UUID, CHARACTERISTIC_UUID).setCallback(this));
+                    }
+                }
+            };
+            for (int j = 0; j < BACKLOG; j++) {
+                pool.enqueue(links[i], GattOperation.read(SERVICE_UUID, CHARACTERISTIC_UUID).setCallback(readAgain));
+            }
+        }
+        scheduler.runUntilIdle();
+
+        Result result = new Result();
+        long total = 0;
+        for (long count : operations) {
+            total += count;
+            result.minLinkOperations = Math.min(result.minLinkOperations, count);
+            result.maxLinkOperations = Math.max(result.maxLinkOperations, count);
+        }
+        result.operationsPerSecond = total * 1000.0 / (scheduler.now() - start);
+        return result;
+    }
+
+    @Test
+    public void throughputScalesWithLinksWhenEachHasASlot() {
+        double single = run(ConnectionProfile.BALANCED, 1, 1).operationsPerSecond;
+        assertTrue(single > 0);
+        for (int peers = 2; peers <= ConnectionPool.DEFAULT_MAX_CONNECTIONS; peers++) {
+            Result result = run(ConnectionProfile.BALANCED, peers, peers);
+            // Links do not share air time in the simulation, so N links read N times as fast
+            assertEquals("ops/s with " + peers + " peers", single * peers, result.operationsPerSecond, single * peers * 0.05);
+            assertTrue("fairness " + result.fairness() + " with " + peers + " peers", result.fairness() > 0.95);
+        }
+    }
+
+    @Test
+    public void singleSharedSlotSerializesLinksFairly() {
+        int peers = ConnectionPool.DEFAULT_MAX_CONNECTIONS;
+        double single = run(ConnectionProfile.BALANCED, 1, 1).operationsPerSecond;
+        Result shared = run(ConnectionProfile.BALANCED, peers, 1);
+        // One request in flight across all links is no faster than a single link
+        assertEquals(single, shared.operationsPerSecond, single * 0.05);
+        // Round robin: no link starves while the others take turns
+        assertTrue("fairness " + shared.fairness(), shared.fairness() > 0.9);
+    }
+}
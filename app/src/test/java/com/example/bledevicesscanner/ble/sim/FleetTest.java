@@ -0,0 +1,438 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.BleManager;
+import com.example.bledevicesscanner.ble.BleTransport;
+import com.example.bledevicesscanner.ble.ConnectionPool;
+import com.example.bledevicesscanner.ble.DeviceRegistry;
+import com.example.bledevicesscanner.ble.GattCache;
+import com.example.bledevicesscanner.ble.GattOperation;
+import com.example.bledevicesscanner.ble.ScanProfile;
+import com.example.bledevicesscanner.ble.ScanStats;
+import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.MacAddress;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the scan and connection paths against a {@link SimulatedBleTransport} fleet on a
+ * virtual clock, with no Android stack involved:
+ * <ul>
+ * <li>a BleManager scanning the fleet must see every advertisement the fleet sent and
+ * the scanner did not drop, at the rate the advertising intervals imply, and find every
+ * heart rate sensor with its smoothed RSSI,</li>
+ * <li>with hardware filtering and a report delay only matching advertisements may
+ * arrive, once per report delay,</li>
+ * <li>a {@link ConnectionPool} connects to every sensor, negotiates the MTU, discovers,
+ * reads and subscribes; values, round trips and notification counts must match what the
+ * peripherals sent,</li>
+ * <li>with failing operations every operation must still complete exactly once,</li>
+ * <li>two runs with the same seed must produce the same events.</li>
+ * </ul>
+ */
+public class FleetTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID HEART_RATE_MEASUREMENT = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID BODY_SENSOR_LOCATION = UUID.fromString("00002a38-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_LEVEL = UUID.fromString("00002a19-0000-1000-8000-00805f9b34fb");
+    private static final UUID DEVICE_INFORMATION_SERVICE = UUID.fromString("0000180a-0000-1000-8000-00805f9b34fb");
+    // A long string characteristic, read with Read Blob below the negotiated MTU
+    private static final UUID SOFTWARE_REVISION = UUID.fromString("00002a28-0000-1000-8000-00805f9b34fb");
+    private static final int SOFTWARE_REVISION_SIZE = 200;
+
+    private static final int DEVICES = 300;
+    private static final int SENSORS = 12;
+    private static final long SCAN_MS = 20000;
+    private static final long STREAM_MS = 10000;
+    private static final long NOTIFY_INTERVAL = 50;
+    private static final long ROUND_TRIP = 30;
+    private static final double ADVERTISEMENT_DROP_RATE = 0.1;
+    private static final double NOTIFICATION_DROP_RATE = 0.05;
+    private static final long SEED = 7;
+
+    private static String address(int index) {
+        return MacAddress.unpack(0xC0FFEE000000L | index);
+    }
+
+    // A crowded room: a few heart rate sensors among phones, tags and beacons
+    static SimulatedBleTransport fleet(VirtualTimeScheduler scheduler, long seed) {
+        SimulatedBleTransport transport = new SimulatedBleTransport(scheduler, seed)
+                .setRoundTrip(ROUND_TRIP)
+                .setAdvertisementDropRate(ADVERTISEMENT_DROP_RATE)
+                .setNotificationDropRate(NOTIFICATION_DROP_RATE);
+        Random random = new Random(seed);
+        byte[] softwareRevision = new byte[SOFTWARE_REVISION_SIZE];
+        Arrays.fill(softwareRevision, (byte) 'r');
+        for (int i = 0; i < DEVICES; i++) {
+            SimulatedPeripheral peripheral = new SimulatedPeripheral(address(i));
+            if (i < SENSORS) {
+                final int base = 60 + i;
+                peripheral.setName("HRM " + i)
+                        .addAdvertisedService(HEART_RATE_SERVICE)
+                        .setTxPower(-8)
+                        .setAdvertisingInterval(100)
+                        .setRssi(-50 - 2 * i, 4)
+                        .addCharacteristic(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT, SimulatedPeripheral.PROPERTY_NOTIFY, null)
+                        .addCharacteristic(HEART_RATE_SERVICE, BODY_SENSOR_LOCATION, SimulatedPeripheral.PROPERTY_READ, new byte[]{1})
+                        .addCharacteristic(BATTERY_SERVICE, BATTERY_LEVEL, SimulatedPeripheral.PROPERTY_READ
+                                | SimulatedPeripheral.PROPERTY_NOTIFY, new byte[]{(byte) (100 - i)})
+                        .addCharacteristic(DEVICE_INFORMATION_SERVICE, SOFTWARE_REVISION, SimulatedPeripheral.PROPERTY_READ,
+                                softwareRevision)
+                        .setNotifications(HEART_RATE_MEASUREMENT, NOTIFY_INTERVAL,
+                                r -> new byte[]{0, (byte) (base + r.nextInt(10))});
+            } else {
+                peripheral.setName("Tag " + i)
+                        .addAdvertisedService(BATTERY_SERVICE)
+                        .setAdvertisingInterval(100 + random.nextInt(900))
+                        .setRssi(-40 - random.nextInt(55), 2 + random.nextInt(6));
+            }
+            transport.addPeripheral(peripheral);
+        }
+        return transport;
+    }
+
+    // Offloaded to the controller
+    static ScanProfile profile() {
+        return new ScanProfile().addServiceUuid(HEART_RATE_SERVICE);
+    }
+
+    // A name prefix cannot be offloaded, so the whole profile is evaluated in software
+    static ScanProfile softwareProfile() {
+        return profile().addNamePrefix("HRM ");
+    }
+
+    private static final class ScanRun {
+        final BleManager manager;
+        final RecordingCallback events = new RecordingCallback();
+        // Order-sensitive digest of every device update, to compare runs
+        long fingerprint = 17;
+
+        ScanRun(BleManager manager) {
+            this.manager = manager;
+        }
+    }
+
+    // Scans the fleet with a real BleManager for SCAN_MS of virtual time
+    private ScanRun scan(long seed, ScanProfile profile) throws IOException {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        SimulatedBleTransport transport = fleet(scheduler, seed);
+        ScanRun run = new ScanRun(new BleManager(SimulatedContext.create(folder.newFolder()), transport, scheduler));
+        run.manager.addCallback(run.events, Runnable::run);
+        run.manager.setContinuousScan(true);
+        assertTrue("scan not started", run.manager.startScan(profile));
+        scheduler.advanceTo(SCAN_MS);
+        run.manager.stopScan();
+        scheduler.advanceBy(0);
+        assertTrue("work left after the scan stopped", scheduler.isIdle());
+        run.manager.close();
+        scheduler.runUntilIdle();
+
+        ScanStats stats = run.manager.getScanStats();
+        assertNotNull("no scan stats", stats);
+        assertTrue(stats.getResultCount() > 0);
+        assertEquals(1, run.events.scansStarted);
+        assertEquals(1, run.events.scansFinished);
+        assertTrue("scan failed with " + run.events.scanErrors, run.events.scanErrors.isEmpty());
+        assertEquals("scan duration on the virtual clock", SCAN_MS, stats.getDurationMs(scheduler.now()));
+        assertEquals(profile.canOffload(), stats.isHardwareFiltered());
+
+        long sent = transport.getAdvertisementCount();
+        long dropped = transport.getDroppedAdvertisementCount();
+        long filtered = transport.getFilteredAdvertisementCount();
+        long received = sent - dropped - filtered;
+        assertEquals("drop rate", ADVERTISEMENT_DROP_RATE, (double) dropped / sent, 0.01);
+
+        // Every advertising event is the interval plus 5 ms of random delay apart on average
+        double expected = 0;
+        for (int i = 0; i < DEVICES; i++) {
+            expected += SCAN_MS / (transport.getPeripheral(address(i)).getAdvertisingInterval() + 5.0);
+        }
+        assertEquals("advertisements sent", expected, sent, expected * 0.02);
+
+        Set<String> found = new HashSet<>();
+        for (List<BleDevice> devices : run.events.deviceUpdates) {
+            for (BleDevice device : devices) {
+                found.add(device.getAddress());
+                run.fingerprint = run.fingerprint * 31 + device.getPackedAddress() * 131 + device.getRssi()
+                        + device.getTimestampNanos();
+            }
+        }
+        Set<String> sensors = new HashSet<>();
+        for (int i = 0; i < SENSORS; i++) {
+            sensors.add(address(i));
+        }
+        assertEquals("devices found", sensors, found);
+
+        // Batching leaves the filter one sample per device and report delay to smooth
+        double rssiTolerance = profile.getReportDelay() > 0 ? 6 : 3;
+        DeviceRegistry<BleDevice> registry = run.manager.getDeviceRegistry();
+        assertEquals(SENSORS, registry.size());
+        for (int i = 0; i < SENSORS; i++) {
+            SimulatedPeripheral sensor = transport.getPeripheral(address(i));
+            BleDevice device = registry.get(sensor.getPackedAddress());
+            assertNotNull(sensor.getName() + " not registered", device);
+            assertEquals("smoothed RSSI of " + sensor.getName(), sensor.getRssi(), device.getSmoothedRssi(),
+                    rssiTolerance);
+            long lastSeen = registry.getLastSeen(sensor.getPackedAddress());
+            assertTrue(sensor.getName() + " last seen at " + lastSeen, lastSeen > SCAN_MS - 1000 && lastSeen <= SCAN_MS);
+        }
+
+        if (stats.isHardwareFiltered()) {
+            assertTrue("hardware filter kept nothing back", filtered > 0);
+            // Only matching advertisements reach the manager
+            assertEquals(stats.getResultCount() - stats.getDuplicateCount(), stats.getMatchedCount());
+        } else {
+            assertEquals("software scan filtered in the transport", 0, filtered);
+            assertTrue(stats.getMatchedCount() > 0 && stats.getMatchedCount() < stats.getResultCount());
+        }
+        long reportDelay = profile.getReportDelay();
+        if (reportDelay > 0) {
+            // One callback per report delay. The controller's last batch is handed over when
+            // the radio stops, after the session's counters closed; only sensors pass the filter
+            assertEquals(SCAN_MS / reportDelay, stats.getCallbackCount());
+            long late = received - stats.getResultCount();
+            assertTrue(late + " results after the scan", late >= 0 && late <= SENSORS);
+            assertTrue("no duplicates in " + stats.getResultCount() + " batched results", stats.getDuplicateCount() > 0);
+        } else {
+            // Every result is delivered on its own and coalesced into per-window updates
+            assertEquals(received, stats.getResultCount());
+            assertEquals(received, stats.getCallbackCount());
+            assertEquals(0, stats.getDuplicateCount());
+            assertEquals((double) stats.getMatchedCount() / run.events.getDeviceUpdateCount(),
+                    run.manager.getScanReductionRatio(), 1e-9);
+            assertTrue(run.manager.getScanReductionRatio() > 1);
+        }
+        return run;
+    }
+
+    // One sensor connection driven the way BleConnection drives it
+    static class SensorLink implements BleTransport.GattListener {
+        final ConnectionPool pool;
+        final SimulatedPeripheral sensor;
+        final boolean negotiateMtu;
+        final List<GattOperation> reads = new ArrayList<>();
+        BleTransport.Connection connection;
+        ConnectionPool.Link link;
+        List<GattCache.CharacteristicRecord> discovered;
+        int mtu = SimulatedBleTransport.DEFAULT_MTU;
+        long notifications;
+        int lastHeartRate;
+        int disconnectStatus = -1;
+
+        SensorLink(ConnectionPool pool, SimulatedPeripheral sensor, boolean negotiateMtu) {
+            this.pool = pool;
+            this.sensor = sensor;
+            this.negotiateMtu = negotiateMtu;
+        }
+
+        boolean open(BleTransport transport) {
+            if (!pool.canOpen(sensor.getPackedAddress())) {
+                return false;
+            }
+            connection = transport.connect(sensor.getAddress(), this);
+            if (connection == null) {
+                return false;
+            }
+            link = pool.open(sensor.getPackedAddress(), connection);
+            return true;
+        }
+
+        @Override
+        public void onConnectionStateChange(int status, boolean connected) {
+            if (connected) {
+                pool.setConnected(link);
+                if (negotiateMtu) {
+                    pool.enqueue(link, GattOperation.requestMtu(247));
+                }
+                pool.enqueue(link, GattOperation.discoverServices());
+                return;
+            }
+            disconnectStatus = status;
+            pool.close(link);
+        }
+
+        @Override
+        public void onServicesDiscovered(int status, List<GattCache.CharacteristicRecord> characteristics) {
+            link.getQueue().onServicesDiscovered(status);
+            discovered = characteristics;
+            for (GattCache.CharacteristicRecord record : characteristics) {
+                if ((record.getProperties() & SimulatedPeripheral.PROPERTY_READ) != 0) {
+                    GattOperation read = GattOperation.read(record.getServiceUuid(), record.getUuid());
+                    reads.add(read);
+                    pool.enqueue(link, read);
+                }
+            }
+            pool.enqueue(link, GattOperation.setNotification(HEART_RATE_SERVICE, HEART_RATE_MEASUREMENT, true, false));
+        }
+
+        @Override
+        public void onCharacteristicRead(UUID characteristicUuid, int status, byte[] value) {
+            link.getQueue().onCharacteristicRead(characteristicUuid, status, value);
+        }
+
+        @Override
+        public void onCharacteristicWrite(UUID characteristicUuid, int status) {
+            link.getQueue().onCharacteristicWrite(characteristicUuid, status);
+        }
+
+        @Override
+        public void onDescriptorWrite(UUID characteristicUuid, UUID descriptorUuid, int status) {
+            link.getQueue().onDescriptorWrite(characteristicUuid, descriptorUuid, status);
+        }
+
+        @Override
+        public void onMtuChanged(int mtu, int status) {
+            this.mtu = mtu;
+            link.getQueue().onMtuChanged(mtu, status);
+        }
+
+        @Override
+        public void onCharacteristicChanged(UUID serviceUuid, UUID characteristicUuid, byte[] value) {
+            notifications++;
+            lastHeartRate = value[1];
+        }
+
+        @Override
+        public void onServiceChanged() {
+        }
+    }
+
+    @Test
+    public void poolConnectsReadsAndStreamsFromEverySensor() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        SimulatedBleTransport transport = fleet(scheduler, SEED);
+        ConnectionPool pool = new ConnectionPool(scheduler);
+        pool.setMaxConnections(SENSORS);
+        List<SensorLink> links = new ArrayList<>();
+        for (int i = 0; i < SENSORS; i++) {
+            // The last sensor keeps the default MTU to show the cost of long reads
+            SensorLink link = new SensorLink(pool, transport.getPeripheral(address(i)), i < SENSORS - 1);
+            assertTrue("could not connect to sensor " + i, link.open(transport));
+            links.add(link);
+        }
+        scheduler.advanceBy(STREAM_MS);
+        for (SensorLink link : links) {
+            link.connection.disconnect();
+        }
+        scheduler.runUntilIdle();
+
+        long received = 0;
+        for (SensorLink link : links) {
+            String name = link.sensor.getName();
+            received += link.notifications;
+            assertNotNull(name + " never discovered", link.discovered);
+            assertEquals(name + " discovered", link.sensor.getCharacteristics().size(), link.discovered.size());
+            assertEquals(name + " MTU", link.negotiateMtu ? 247 : SimulatedBleTransport.DEFAULT_MTU, link.mtu);
+            assertEquals(name + " reads", 3, link.reads.size());
+            for (GattOperation read : link.reads) {
+                assertTrue(name + " read " + read, read.isSuccess());
+                assertArrayEquals(name + " read " + read, link.sensor.getValue(read.getCharacteristicUuid()), read.getValue());
+                if (read.getCharacteristicUuid().equals(SOFTWARE_REVISION)) {
+                    // ATT_MTU - 1 bytes per Read or Read Blob response
+                    long roundTrips = (SOFTWARE_REVISION_SIZE + link.mtu - 2) / (link.mtu - 1);
+                    assertEquals(name + " long read time at MTU " + link.mtu, roundTrips * ROUND_TRIP, read.getExecutionTimeMs());
+                }
+            }
+            assertTrue(name + " received no notifications", link.notifications > 0);
+            assertTrue(name + " heart rate " + link.lastHeartRate, link.lastHeartRate >= 60 + links.indexOf(link));
+            assertEquals(name + " disconnect status", BleTransport.GATT_SUCCESS, link.disconnectStatus);
+            assertEquals(name + " state", ConnectionPool.State.DISCONNECTED, link.link.getState());
+        }
+        long sent = transport.getNotificationCount();
+        assertEquals(sent - transport.getDroppedNotificationCount(), received);
+        assertEquals("notification drop rate", NOTIFICATION_DROP_RATE, (double) transport.getDroppedNotificationCount() / sent, 0.02);
+        assertEquals("links left in the pool", 0, pool.size());
+    }
+
+    // Operations failing at random report the error to their issuer, and each completes exactly once
+    @Test
+    public void failingOperationsCompleteExactlyOnce() {
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        SimulatedBleTransport transport = fleet(scheduler, SEED).setOperationFailureRate(0.1);
+        ConnectionPool pool = new ConnectionPool(scheduler);
+        SimulatedPeripheral sensor = transport.getPeripheral(address(0));
+        final ConnectionPool.Link[] pooled = new ConnectionPool.Link[1];
+        final int[] connectStatus = {-1};
+        BleTransport.Connection connection = null;
+        // Failed connection attempts are retried like the Reconnector would
+        for (int attempt = 0; attempt < 10 && connectStatus[0] != BleTransport.GATT_SUCCESS; attempt++) {
+            connection = transport.connect(sensor.getAddress(), new SensorLink(pool, sensor, false) {
+                @Override
+                public void onConnectionStateChange(int status, boolean connected) {
+                    connectStatus[0] = status;
+                }
+
+                @Override
+                public void onCharacteristicRead(UUID characteristicUuid, int status, byte[] value) {
+                    pooled[0].getQueue().onCharacteristicRead(characteristicUuid, status, value);
+                }
+            });
+            scheduler.runUntilIdle();
+        }
+        assertEquals("never connected", BleTransport.GATT_SUCCESS, connectStatus[0]);
+        pooled[0] = pool.open(sensor.getPackedAddress(), connection);
+        pool.setConnected(pooled[0]);
+
+        int issued = 2000;
+        final int[] completions = new int[issued];
+        final int[] failed = new int[1];
+        for (int i = 0; i < issued; i++) {
+            final int index = i;
+            pool.enqueue(pooled[0], GattOperation.read(BATTERY_SERVICE, BATTERY_LEVEL).setCallback((operation, status) -> {
+                completions[index]++;
+                if (!operation.isSuccess()) {
+                    failed[0]++;
+                }
+            }));
+        }
+        scheduler.runUntilIdle();
+        boolean once = true;
+        for (int count : completions) {
+            once &= count == 1;
+        }
+        assertTrue("an operation did not complete exactly once", once);
+        // Error statuses are final; only refused and timed out operations are retried
+        assertEquals("failed share of reads", 0.1, (double) failed[0] / issued, 0.02);
+        assertEquals(failed[0], pooled[0].getQueue().getFailedCount());
+    }
+
+    @Test
+    public void softwareScanSeesEveryAdvertisementNotDropped() throws IOException {
+        scan(SEED, softwareProfile());
+    }
+
+    @Test
+    public void hardwareFilteredBatchedScanSeesOnlyMatches() throws IOException {
+        scan(SEED, profile().setReportDelay(1000));
+    }
+
+    @Test
+    public void sameSeedGivesTheSameEvents() throws IOException {
+        ScanRun first = scan(SEED, softwareProfile());
+        ScanRun second = scan(SEED, softwareProfile());
+        assertEquals(first.manager.getScanStats().getResultCount(), second.manager.getScanStats().getResultCount());
+        assertEquals("runs with the same seed differ", first.fingerprint, second.fingerprint);
+        assertNotEquals("runs with different seeds are identical", first.fingerprint,
+                scan(SEED + 1, softwareProfile()).fingerprint);
+    }
+}
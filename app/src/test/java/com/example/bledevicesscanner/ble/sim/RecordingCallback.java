@@ -0,0 +1,116 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.BleManager;
+import com.example.bledevicesscanner.ble.BulkReadSession;
+import com.example.bledevicesscanner.model.BleCharacteristic;
+import com.example.bledevicesscanner.model.BleDevice;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BleManager.BleManagerCallback} that keeps what it is told, for assertions. Register
+ * it with a direct executor so events are recorded on the scheduler's thread as they
+ * happen.
+ */
+public class RecordingCallback implements BleManager.BleManagerCallback {
+    public int scansStarted;
+    public int scansFinished;
+    public final List<Integer> scanErrors = new ArrayList<>();
+    // One entry per onDevicesFound, in delivery order
+    public final List<List<BleDevice>> deviceUpdates = new ArrayList<>();
+    public final List<BleDevice> lostDevices = new ArrayList<>();
+    public int connected;
+    public int disconnected;
+    public final List<Integer> connectionFailures = new ArrayList<>();
+    public List<BleCharacteristic> characteristics;
+    public final List<BleCharacteristic> reads = new ArrayList<>();
+    public final List<BleCharacteristic> changes = new ArrayList<>();
+    // Characteristics whose notifications were switched, and whether on or off
+    public final List<BleCharacteristic> notificationChanges = new ArrayList<>();
+    public final List<Boolean> notificationStates = new ArrayList<>();
+    public BulkReadSession.Summary bulkReadSummary;
+
+    // Devices delivered across every update
+    public int getDeviceUpdateCount() {
+        int count = 0;
+        for (List<BleDevice> devices : deviceUpdates) {
+            count += devices.size();
+        }
+        return count;
+    }
+
+    @Override
+    public void onScanStarted() {
+        scansStarted++;
+    }
+
+    @Override
+    public void onScanFinished() {
+        scansFinished++;
+    }
+
+    @Override
+    public void onScanFailed(int errorCode) {
+        scanErrors.add(errorCode);
+    }
+
+    @Override
+    public void onDevicesFound(List<BleDevice> devices) {
+        deviceUpdates.add(new ArrayList<>(devices));
+    }
+
+    @Override
+    public void onDevicesLost(List<BleDevice> devices) {
+        lostDevices.addAll(devices);
+    }
+
+    @Override
+    public void onConnecting() {
+    }
+
+    @Override
+    public void onDeviceConnected() {
+        connected++;
+    }
+
+    @Override
+    public void onDeviceDisconnected() {
+        disconnected++;
+    }
+
+    @Override
+    public void onConnectionFailed(int status) {
+        connectionFailures.add(status);
+    }
+
+    @Override
+    public void onReconnecting(int attempt, long delayMs) {
+    }
+
+    @Override
+    public void onServicesDiscovered(List<BleCharacteristic> characteristics) {
+        this.characteristics = characteristics;
+    }
+
+    @Override
+    public void onCharacteristicRead(BleCharacteristic characteristic) {
+        reads.add(characteristic);
+    }
+
+    @Override
+    public void onCharacteristicChanged(BleCharacteristic characteristic) {
+        changes.add(characteristic);
+    }
+
+    @Override
+    public void onNotificationsChanged(BleCharacteristic characteristic, boolean enabled) {
+        notificationChanges.add(characteristic);
+        notificationStates.add(enabled);
+    }
+
+    @Override
+    public void onBulkReadFinished(BulkReadSession.Summary summary) {
+        bulkReadSummary = summary;
+    }
+}
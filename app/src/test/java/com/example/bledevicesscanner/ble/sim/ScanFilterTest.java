@@ -0,0 +1,184 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.ScanProfile;
+import com.example.bledevicesscanner.ble.ScanStats;
+import com.example.bledevicesscanner.model.AdvertisingData;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares how often the host is woken during a scan of a crowded room with no filters,
+ * with the profile evaluated in software, with the profile offloaded to the controller
+ * and with offloaded filters plus batched delivery. Advertisements are generated for a
+ * fixed population of devices, a few of which the profile is looking for, and replayed
+ * over virtual time through {@link ScanStats}.
+ */
+public class ScanFilterTest {
+    private static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final int COMPANY_ID = 0x0059;
+    private static final int OTHER_COMPANY_ID = 0x004C;
+    private static final int DEVICES = 200;
+    private static final int TARGETS = 4;
+    private static final long DURATION = 60000;
+
+    private enum Mode {
+        UNFILTERED,
+        SOFTWARE,
+        OFFLOADED
+    }
+
+    private final byte[][] advertisements = new byte[DEVICES][];
+    private final long[] intervalsMs = new long[DEVICES];
+
+    public ScanFilterTest() {
+        Random random = new Random(1);
+        for (int i = 0; i < DEVICES; i++) {
+            advertisements[i] = advertisement(i, i < TARGETS, random);
+            // Typical advertising intervals, from fast connectable to slow beacon
+            intervalsMs[i] = 100 + random.nextInt(900);
+        }
+    }
+
+    // The profile a heart rate app would scan with
+    private static ScanProfile profile() {
+        return new ScanProfile()
+                .addServiceUuid(HEART_RATE_SERVICE)
+                .addManufacturerData(COMPANY_ID, new byte[]{0x01, 0x00}, new byte[]{(byte) 0xFF, 0x00});
+    }
+
+    private ScanStats run(Mode mode, ScanProfile profile) {
+        ScanStats stats = new ScanStats(mode == Mode.OFFLOADED, 0);
+        AdvertisingData advertisingData = new AdvertisingData();
+        boolean[] matches = new boolean[DEVICES];
+        for (int device = 0; device < DEVICES; device++) {
+            advertisingData.parse(advertisements[device]);
+            matches[device] = profile.matches(advertisingData);
+        }
+        // Without a report delay every advertisement is its own callback
+        long window = profile.getReportDelay() > 0 ? profile.getReportDelay() : 1;
+        for (long start = 0; start < DURATION; start += window) {
+            int results = 0;
+            int distinct = 0;
+            for (int device = 0; device < DEVICES; device++) {
+                // The controller drops non-matching advertisements without waking the host
+                if (mode == Mode.OFFLOADED && !matches[device]) {
+                    continue;
+                }
+                int count = advertisementsBetween(intervalsMs[device], start, Math.min(start + window, DURATION));
+                if (count == 0) {
+                    continue;
+                }
+                results += count;
+                distinct++;
+                if (matches[device]) {
+                    stats.recordMatch();
+                }
+            }
+            if (results == 0) {
+                continue;
+            }
+            if (window == 1) {
+                for (int i = 0; i < results; i++) {
+                    stats.recordCallback(1);
+                }
+            } else {
+                stats.recordCallback(results);
+                stats.recordDuplicates(results - distinct);
+            }
+        }
+        stats.stop(DURATION);
+        return stats;
+    }
+
+    // Advertisements sent in [from, to) by a device advertising every interval ms from time 0
+    private static int advertisementsBetween(long interval, long from, long to) {
+        return (int) (ceilDiv(to, interval) - ceilDiv(from, interval));
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static byte[] advertisement(int index, boolean target, Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(2);
+        out.write(0x01);
+        out.write(0x06);
+        if (target && index % 2 == 0) {
+            writeUuid16(out, HEART_RATE_SERVICE);
+        } else {
+            writeUuid16(out, BATTERY_SERVICE);
+        }
+        int company = target && index % 2 == 1 ? COMPANY_ID : OTHER_COMPANY_ID;
+        byte[] payload = new byte[6];
+        random.nextBytes(payload);
+        payload[0] = 0x01;
+        out.write(payload.length + 3);
+        out.write(0xFF);
+        out.write(company & 0xFF);
+        out.write(company >> 8);
+        out.write(payload, 0, payload.length);
+        byte[] name = ("Device " + index).getBytes(StandardCharsets.US_ASCII);
+        out.write(name.length + 1);
+        out.write(0x09);
+        out.write(name, 0, name.length);
+        return out.toByteArray();
+    }
+
+    private static void writeUuid16(ByteArrayOutputStream out, UUID uuid) {
+        int value = (int) (uuid.getMostSignificantBits() >>> 32);
+        out.write(3);
+        out.write(0x03);
+        out.write(value & 0xFF);
+        out.write(value >> 8);
+    }
+
+    @Test
+    public void softwareFilteringWakesTheHostForEveryAdvertisement() {
+        ScanStats unfiltered = run(Mode.UNFILTERED, new ScanProfile());
+        ScanStats software = run(Mode.SOFTWARE, profile());
+        assertEquals(unfiltered.getResultCount(), unfiltered.getMatchedCount());
+        assertEquals(unfiltered.getCallbackCount(), software.getCallbackCount());
+        assertEquals(software.getResultCount(), software.getCallbackCount());
+        assertTrue(software.getMatchedCount() > 0);
+        assertTrue(software.getMatchRatio() < 0.1);
+    }
+
+    @Test
+    public void offloadedFilteringWakesTheHostOnlyForMatches() {
+        ScanStats software = run(Mode.SOFTWARE, profile());
+        ScanStats offloaded = run(Mode.OFFLOADED, profile());
+        assertTrue(offloaded.isHardwareFiltered());
+        assertEquals(software.getMatchedCount(), offloaded.getCallbackCount());
+        assertEquals(offloaded.getResultCount(), offloaded.getMatchedCount());
+        assertTrue(offloaded.getCallbackCount() * 10 < software.getCallbackCount());
+    }
+
+    @Test
+    public void batchingWakesTheHostOncePerReportDelay() {
+        long offloadedResults = run(Mode.OFFLOADED, profile()).getResultCount();
+        for (long reportDelay : new long[]{1000, 5000}) {
+            ScanStats batched = run(Mode.OFFLOADED, profile().setReportDelay(reportDelay));
+            assertEquals(DURATION / reportDelay, batched.getCallbackCount());
+            // Same advertisements, delivered in fewer wakeups with the duplicates counted
+            assertEquals(offloadedResults, batched.getResultCount());
+            assertTrue(batched.getDuplicateCount() > 0);
+        }
+    }
+
+    @Test
+    public void namePrefixKeepsTheProfileOnTheHost() {
+        assertTrue(profile().canOffload());
+        assertFalse(profile().addNamePrefix("HRM").canOffload());
+    }
+}
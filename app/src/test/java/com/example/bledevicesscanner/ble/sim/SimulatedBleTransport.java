@@ -0,0 +1,494 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.BleTransport;
+import com.example.bledevicesscanner.ble.GattCache;
+import com.example.bledevicesscanner.ble.GattOperation;
+import com.example.bledevicesscanner.ble.ScanProfile;
+import com.example.bledevicesscanner.ble.TaskScheduler;
+import com.example.bledevicesscanner.model.AdvertisingData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * {@link BleTransport} over a fleet of {@link SimulatedPeripheral}s, run in-process on a
+ * {@link TaskScheduler}. With a {@link VirtualTimeScheduler} and a fixed seed every run
+ * produces the same events at the same virtual times, so scan and connection handling can
+ * be benchmarked and compared without hardware.
+ *
+ * What is modelled:
+ * <ul>
+ * <li>advertising events every interval plus the link layer's random 0-10 ms delay, each
+ * one lost with the advertisement drop rate and received with a noisy RSSI,</li>
+ * <li>hardware filtering with the profile's own matching and report delays as batches,</li>
+ * <li>connections, service discovery and GATT operations costing link round trips: reads
+ * longer than MTU - 1 take a Read Blob round trip per further chunk, writes longer than
+ * MTU - 3 go through prepared writes,</li>
+ * <li>MTU exchange up to the peripheral's maximum, notifications truncated to MTU - 3 and
+ * lost with the notification drop rate, and operations failing at the failure rate.</li>
+ * </ul>
+ * Listeners are called on the scheduler's thread; every method must be called there too.
+ */
+public class SimulatedBleTransport implements BleTransport {
+    public static final int DEFAULT_MTU = 23;
+    // Status the Android stack reports for a connection attempt that failed
+    public static final int GATT_ERROR = 133;
+    // ATT errors
+    private static final int GATT_READ_NOT_PERMITTED = 0x02;
+    private static final int GATT_WRITE_NOT_PERMITTED = 0x03;
+    private static final int MAX_ADVERTISING_DELAY_MS = 10;
+    private static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    private final TaskScheduler scheduler;
+    private final Random random;
+    private final Map<String, SimulatedPeripheral> peripherals = new LinkedHashMap<>();
+    private final Map<ScanListener, Scan> scans = new HashMap<>();
+
+    private boolean enabled = true;
+    private boolean offloadedScanBatchingSupported = true;
+    private long roundTripMs = 30;
+    private long connectRoundTrips = 3;
+    private double advertisementDropRate;
+    private double notificationDropRate;
+    private double operationFailureRate;
+
+    private long advertisementCount;
+    private long droppedAdvertisementCount;
+    private long filteredAdvertisementCount;
+    private long notificationCount;
+    private long droppedNotificationCount;
+    private long roundTripCount;
+    private long cccdWriteCount;
+
+    public SimulatedBleTransport(TaskScheduler scheduler, long seed) {
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+    }
+
+    public SimulatedBleTransport addPeripheral(SimulatedPeripheral peripheral) {
+        peripherals.put(peripheral.getAddress(), peripheral);
+        return this;
+    }
+
+    public SimulatedPeripheral getPeripheral(String address) {
+        return peripherals.get(address);
+    }
+
+    public SimulatedBleTransport setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    public SimulatedBleTransport setOffloadedScanBatchingSupported(boolean supported) {
+        this.offloadedScanBatchingSupported = supported;
+        return this;
+    }
+
+    // Time for one ATT request and its response
+    public SimulatedBleTransport setRoundTrip(long roundTripMs) {
+        this.roundTripMs = roundTripMs;
+        return this;
+    }
+
+    // Round trips from connect() to the connection being up
+    public SimulatedBleTransport setConnectRoundTrips(long connectRoundTrips) {
+        this.connectRoundTrips = connectRoundTrips;
+        return this;
+    }
+
+    // Fraction of advertising events the scanner misses
+    public SimulatedBleTransport setAdvertisementDropRate(double rate) {
+        this.advertisementDropRate = checkRate(rate);
+        return this;
+    }
+
+    public SimulatedBleTransport setNotificationDropRate(double rate) {
+        this.notificationDropRate = checkRate(rate);
+        return this;
+    }
+
+    // Fraction of connection attempts and GATT operations that fail
+    public SimulatedBleTransport setOperationFailureRate(double rate) {
+        this.operationFailureRate = checkRate(rate);
+        return this;
+    }
+
+    public long getRoundTrip() {
+        return roundTripMs;
+    }
+
+    // Advertising events sent by peripherals while a scan ran
+    public long getAdvertisementCount() {
+        return advertisementCount;
+    }
+
+    public long getDroppedAdvertisementCount() {
+        return droppedAdvertisementCount;
+    }
+
+    // Advertisements the hardware filter kept from the host
+    public long getFilteredAdvertisementCount() {
+        return filteredAdvertisementCount;
+    }
+
+    public long getNotificationCount() {
+        return notificationCount;
+    }
+
+    public long getDroppedNotificationCount() {
+        return droppedNotificationCount;
+    }
+
+    // ATT round trips spent on discovery and operations, across connections
+    public long getRoundTripCount() {
+        return roundTripCount;
+    }
+
+    // Client Characteristic Configuration writes that reached a peripheral, enabling or disabling
+    public long getCccdWriteCount() {
+        return cccdWriteCount;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean isOffloadedScanBatchingSupported() {
+        return offloadedScanBatchingSupported;
+    }
+
+    @Override
+    public boolean startScan(ScanProfile profile, boolean hardwareFiltering, long reportDelay, ScanListener listener) {
+        if (!enabled || scans.containsKey(listener)) {
+            return false;
+        }
+        Scan scan = new Scan(profile, hardwareFiltering, reportDelay, listener);
+        scans.put(listener, scan);
+        scan.start();
+        return true;
+    }
+
+    @Override
+    public void stopScan(ScanListener listener) {
+        Scan scan = scans.remove(listener);
+        if (scan != null) {
+            scan.stop();
+        }
+    }
+
+    @Override
+    public Connection connect(String address, GattListener listener) {
+        if (!enabled) {
+            return null;
+        }
+        SimulatedConnection connection = new SimulatedConnection(address, peripherals.get(address), listener);
+        connection.connect();
+        return connection;
+    }
+
+    private static double checkRate(double rate) {
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("Rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+
+    private boolean fails(double rate) {
+        return rate > 0 && random.nextDouble() < rate;
+    }
+
+    private class Scan {
+        final ScanProfile profile;
+        final boolean hardwareFiltering;
+        final long reportDelay;
+        final ScanListener listener;
+        final List<Runnable> advertisers = new ArrayList<>();
+        final Runnable flush = this::flush;
+        List<Advertisement> pending = new ArrayList<>();
+
+        Scan(ScanProfile profile, boolean hardwareFiltering, long reportDelay, ScanListener listener) {
+            this.profile = profile;
+            this.hardwareFiltering = hardwareFiltering && profile.hasFilters();
+            this.reportDelay = reportDelay;
+            this.listener = listener;
+        }
+
+        void start() {
+            AdvertisingData advertisingData = new AdvertisingData();
+            for (final SimulatedPeripheral peripheral : peripherals.values()) {
+                advertisingData.parse(peripheral.getAdvertisement());
+                final boolean passes = !hardwareFiltering || profile.matches(advertisingData);
+                Runnable advertiser = new Runnable() {
+                    @Override
+                    public void run() {
+                        advertise(peripheral, passes);
+                        scheduler.schedule(this, peripheral.getAdvertisingInterval()
+                                + random.nextInt(MAX_ADVERTISING_DELAY_MS + 1));
+                    }
+                };
+                advertisers.add(advertiser);
+                // Peripherals were advertising before the scan started
+                scheduler.schedule(advertiser, (long) (random.nextDouble() * peripheral.getAdvertisingInterval()));
+            }
+            if (reportDelay > 0) {
+                scheduler.schedule(flush, reportDelay);
+            }
+        }
+
+        void advertise(SimulatedPeripheral peripheral, boolean passes) {
+            advertisementCount++;
+            if (fails(advertisementDropRate)) {
+                droppedAdvertisementCount++;
+                return;
+            }
+            if (!passes) {
+                filteredAdvertisementCount++;
+                return;
+            }
+            int rssi = (int) Math.round(peripheral.getRssi() + random.nextGaussian() * peripheral.getRssiNoise());
+            Advertisement advertisement = new Advertisement(peripheral.getAddress(), peripheral.getPackedAddress(),
+                    Math.max(-127, Math.min(20, rssi)), peripheral.getAdvertisement(), scheduler.nowNanos());
+            if (reportDelay > 0) {
+                pending.add(advertisement);
+            } else {
+                listener.onScanResult(advertisement);
+            }
+        }
+
+        void flush() {
+            deliverPending();
+            scheduler.schedule(flush, reportDelay);
+        }
+
+        void deliverPending() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Advertisement> batch = pending;
+            pending = new ArrayList<>();
+            listener.onBatchScanResults(batch);
+        }
+
+        void stop() {
+            for (Runnable advertiser : advertisers) {
+                scheduler.cancel(advertiser);
+            }
+            scheduler.cancel(flush);
+            deliverPending();
+        }
+    }
+
+    private class SimulatedConnection implements Connection {
+        final String address;
+        final SimulatedPeripheral peripheral;
+        final GattListener listener;
+        final Map<UUID, Runnable> notifying = new HashMap<>();
+        boolean connected;
+        boolean closed;
+        int mtu = DEFAULT_MTU;
+
+        SimulatedConnection(String address, SimulatedPeripheral peripheral, GattListener listener) {
+            this.address = address;
+            this.peripheral = peripheral;
+            this.listener = listener;
+        }
+
+        void connect() {
+            // A device that is not there, or a failed attempt, ends like status 133 after the stack gives up
+            final boolean fails = peripheral == null || fails(operationFailureRate);
+            later(connectRoundTrips, () -> {
+                if (fails) {
+                    closed = true;
+                    listener.onConnectionStateChange(GATT_ERROR, false);
+                    return;
+                }
+                connected = true;
+                listener.onConnectionStateChange(GATT_SUCCESS, true);
+            });
+        }
+
+        // Runs the event after the given number of round trips unless the connection is closed by then
+        void later(long roundTrips, final Runnable event) {
+            scheduler.schedule(() -> {
+                if (!closed) {
+                    event.run();
+                }
+            }, roundTrips * roundTripMs);
+        }
+
+        @Override
+        public String getAddress() {
+            return address;
+        }
+
+        @Override
+        public boolean requestConnectionPriority(int priority) {
+            return connected;
+        }
+
+        @Override
+        public boolean execute(GattOperation operation) {
+            if (!connected) {
+                return false;
+            }
+            if (operation.getType() == GattOperation.Type.REQUEST_MTU) {
+                final int negotiated = Math.max(DEFAULT_MTU, Math.min(operation.getMtu(), peripheral.getMaxMtu()));
+                roundTripCount++;
+                later(1, () -> {
+                    mtu = negotiated;
+                    listener.onMtuChanged(negotiated, GATT_SUCCESS);
+                });
+                return true;
+            }
+            if (operation.getType() == GattOperation.Type.DISCOVER_SERVICES) {
+                // Primary services first, then the characteristics of each
+                long roundTrips = 1 + peripheral.getServiceCount();
+                roundTripCount += roundTrips;
+                final List<GattCache.CharacteristicRecord> records = new ArrayList<>(peripheral.getCharacteristics());
+                later(roundTrips, () -> listener.onServicesDiscovered(GATT_SUCCESS, records));
+                return true;
+            }
+            final UUID uuid = operation.getCharacteristicUuid();
+            GattCache.CharacteristicRecord record = peripheral.findCharacteristic(uuid);
+            if (record == null) {
+                // The stack cannot start an operation on an attribute it did not discover
+                return false;
+            }
+            final boolean fails = fails(operationFailureRate);
+            switch (operation.getType()) {
+                case READ_CHARACTERISTIC: {
+                    final byte[] value = peripheral.getValue(uuid);
+                    final int status = fails ? GATT_FAILURE : (record.getProperties() & SimulatedPeripheral.PROPERTY_READ) == 0
+                            || value == null ? GATT_READ_NOT_PERMITTED : GATT_SUCCESS;
+                    long roundTrips = status == GATT_SUCCESS ? chunks(value.length, mtu - 1) : 1;
+                    roundTripCount += roundTrips;
+                    later(roundTrips, () -> listener.onCharacteristicRead(uuid, status,
+                            status == GATT_SUCCESS ? value.clone() : null));
+                    return true;
+                }
+                case WRITE_CHARACTERISTIC: {
+                    final byte[] value = operation.getValue();
+                    boolean writable = (record.getProperties() & (SimulatedPeripheral.PROPERTY_WRITE
+                            | SimulatedPeripheral.PROPERTY_WRITE_NO_RESPONSE)) != 0;
+                    final int status = fails ? GATT_FAILURE : writable ? GATT_SUCCESS : GATT_WRITE_NOT_PERMITTED;
+                    long roundTrips;
+                    if (value.length <= mtu - 3) {
+                        roundTrips = 1;
+                    } else {
+                        // Prepare Write requests carry MTU - 5 bytes each, then one Execute Write
+                        roundTrips = chunks(value.length, mtu - 5) + 1;
+                    }
+                    roundTripCount += roundTrips;
+                    later(roundTrips, () -> {
+                        if (status == GATT_SUCCESS) {
+                            peripheral.setValue(uuid, value.clone());
+                        }
+                        listener.onCharacteristicWrite(uuid, status);
+                    });
+                    return true;
+                }
+                case WRITE_DESCRIPTOR: {
+                    final UUID descriptorUuid = operation.getDescriptorUuid();
+                    final byte[] value = operation.getValue();
+                    final int status = fails ? GATT_FAILURE : GATT_SUCCESS;
+                    roundTripCount++;
+                    later(1, () -> {
+                        if (status == GATT_SUCCESS && CCCD_UUID.equals(descriptorUuid)) {
+                            cccdWriteCount++;
+                            setNotifying(uuid, value != null && value.length > 0 && (value[0] & 0x03) != 0);
+                        }
+                        listener.onDescriptorWrite(uuid, descriptorUuid, status);
+                    });
+                    return true;
+                }
+                case SET_NOTIFICATION: {
+                    final boolean enable = operation.isEnable();
+                    boolean subscribable = (record.getProperties() & (SimulatedPeripheral.PROPERTY_NOTIFY
+                            | SimulatedPeripheral.PROPERTY_INDICATE)) != 0;
+                    final int status = fails ? GATT_FAILURE : subscribable ? GATT_SUCCESS : GATT_WRITE_NOT_PERMITTED;
+                    roundTripCount++;
+                    later(1, () -> {
+                        if (status == GATT_SUCCESS) {
+                            cccdWriteCount++;
+                            setNotifying(uuid, enable);
+                        }
+                        listener.onDescriptorWrite(uuid, CCCD_UUID, status);
+                    });
+                    return true;
+                }
+                default:
+                    return false;
+            }
+        }
+
+        void setNotifying(final UUID uuid, boolean enable) {
+            Runnable notifier = notifying.remove(uuid);
+            if (notifier != null) {
+                scheduler.cancel(notifier);
+            }
+            final SimulatedPeripheral.Notifier source = peripheral.getNotifier(uuid);
+            if (!enable || source == null) {
+                return;
+            }
+            final UUID serviceUuid = peripheral.findCharacteristic(uuid).getServiceUuid();
+            notifier = new Runnable() {
+                @Override
+                public void run() {
+                    byte[] value = source.source.next(random);
+                    peripheral.setValue(uuid, value);
+                    notificationCount++;
+                    if (fails(notificationDropRate)) {
+                        droppedNotificationCount++;
+                    } else {
+                        // A notification carries at most MTU - 3 bytes of the value
+                        listener.onCharacteristicChanged(serviceUuid, uuid,
+                                value.length > mtu - 3 ? Arrays.copyOf(value, mtu - 3) : value.clone());
+                    }
+                    scheduler.schedule(this, source.intervalMs);
+                }
+            };
+            notifying.put(uuid, notifier);
+            scheduler.schedule(notifier, source.intervalMs);
+        }
+
+        void stopNotifying() {
+            for (Runnable notifier : notifying.values()) {
+                scheduler.cancel(notifier);
+            }
+            notifying.clear();
+        }
+
+        @Override
+        public void disconnect() {
+            if (!connected) {
+                return;
+            }
+            connected = false;
+            stopNotifying();
+            later(1, () -> {
+                closed = true;
+                listener.onConnectionStateChange(GATT_SUCCESS, false);
+            });
+        }
+
+        @Override
+        public void close() {
+            connected = false;
+            closed = true;
+            stopNotifying();
+        }
+    }
+
+    // PDUs needed to carry length bytes at most size bytes at a time, at least one
+    private static long chunks(int length, int size) {
+        return Math.max(1, (length + size - 1) / size);
+    }
+}
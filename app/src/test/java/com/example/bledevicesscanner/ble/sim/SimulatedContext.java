@@ -0,0 +1,49 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothManager;
+import android.content.Context;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * The few framework objects a BleManager needs besides its transport, so a manager can run
+ * on a {@link SimulatedBleTransport} in a plain JVM test: a Context whose files go to the
+ * given directory, and an adapter that turns addresses into devices.
+ */
+public final class SimulatedContext {
+
+    private SimulatedContext() {
+    }
+
+    public static Context create(File filesDir) {
+        Context context = mock(Context.class);
+        BluetoothManager bluetoothManager = mock(BluetoothManager.class);
+        BluetoothAdapter adapter = mock(BluetoothAdapter.class);
+        // One device per address, as the stack hands out, and one mock per device rather than per result
+        Map<String, BluetoothDevice> devices = new HashMap<>();
+        when(adapter.getRemoteDevice(anyString())).thenAnswer(invocation -> {
+            String address = invocation.getArgument(0);
+            BluetoothDevice device = devices.get(address);
+            if (device == null) {
+                device = mock(BluetoothDevice.class);
+                when(device.getAddress()).thenReturn(address);
+                devices.put(address, device);
+            }
+            return device;
+        });
+        when(adapter.isEnabled()).thenReturn(true);
+        when(bluetoothManager.getAdapter()).thenReturn(adapter);
+        when(context.getApplicationContext()).thenReturn(context);
+        when(context.getSystemService(Context.BLUETOOTH_SERVICE)).thenReturn(bluetoothManager);
+        when(context.getFilesDir()).thenReturn(filesDir);
+        return context;
+    }
+}
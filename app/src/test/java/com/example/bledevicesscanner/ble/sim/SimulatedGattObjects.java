@@ -0,0 +1,70 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattService;
+
+import org.mockito.MockedConstruction;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mockConstruction;
+import static org.mockito.Mockito.when;
+
+/**
+ * Makes the framework's GATT service and characteristic classes behave while open, so the
+ * attribute tables a BleManager builds from discovery keep their UUIDs, properties and
+ * services in a plain JVM test. Construction is only intercepted on the opening thread,
+ * which has to be the scheduler's.
+ */
+public final class SimulatedGattObjects implements AutoCloseable {
+    // Service each characteristic was added to
+    private final Map<BluetoothGattCharacteristic, BluetoothGattService> owners = new IdentityHashMap<>();
+    private final Map<BluetoothGattCharacteristic, byte[]> values = new IdentityHashMap<>();
+    private final MockedConstruction<BluetoothGattCharacteristic> characteristics;
+    private final MockedConstruction<BluetoothGattService> services;
+
+    public SimulatedGattObjects() {
+        characteristics = mockConstruction(BluetoothGattCharacteristic.class, (characteristic, context) -> {
+            List<?> arguments = context.arguments();
+            when(characteristic.getUuid()).thenReturn((UUID) arguments.get(0));
+            when(characteristic.getProperties()).thenReturn((Integer) arguments.get(1));
+            when(characteristic.getPermissions()).thenReturn((Integer) arguments.get(2));
+            when(characteristic.getService()).thenAnswer(invocation -> owners.get(characteristic));
+            when(characteristic.getValue()).thenAnswer(invocation -> values.get(characteristic));
+            when(characteristic.setValue(any(byte[].class))).thenAnswer(invocation -> {
+                values.put(characteristic, invocation.getArgument(0));
+                return true;
+            });
+        });
+        services = mockConstruction(BluetoothGattService.class, (service, context) -> {
+            List<BluetoothGattCharacteristic> added = new ArrayList<>();
+            when(service.getUuid()).thenReturn((UUID) context.arguments().get(0));
+            when(service.getCharacteristics()).thenReturn(added);
+            when(service.getCharacteristic(any())).thenAnswer(invocation -> {
+                for (BluetoothGattCharacteristic characteristic : added) {
+                    if (characteristic.getUuid().equals(invocation.getArgument(0))) {
+                        return characteristic;
+                    }
+                }
+                return null;
+            });
+            when(service.addCharacteristic(any())).thenAnswer(invocation -> {
+                BluetoothGattCharacteristic characteristic = invocation.getArgument(0);
+                added.add(characteristic);
+                owners.put(characteristic, service);
+                return true;
+            });
+        });
+    }
+
+    @Override
+    public void close() {
+        services.close();
+        characteristics.close();
+    }
+}
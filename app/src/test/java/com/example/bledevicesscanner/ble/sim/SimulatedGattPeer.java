@@ -0,0 +1,166 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.GattOperation;
+import com.example.bledevicesscanner.ble.GattOperationQueue;
+import com.example.bledevicesscanner.ble.GattTransport;
+import com.example.bledevicesscanner.ble.TaskScheduler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-process GATT server for exercising {@link GattOperationQueue} without hardware.
+ * Every operation completes after a configurable latency on the given scheduler, reading
+ * and writing values from an in-memory attribute table.
+ *
+ * With a {@link SimulatedLink} and a {@link NotificationListener}, a subscribed
+ * characteristic sends its stored value in every connection event, as many notifications
+ * as the link fits in one, each cut to the link's payload size.
+ */
+public class SimulatedGattPeer implements GattTransport {
+    // ATT error returned when reading an attribute that has no value in the table
+    private static final int GATT_READ_NOT_PERMITTED = 0x02;
+    private static final UUID CCCD_UUID = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    public interface NotificationListener {
+        void onNotification(UUID characteristicUuid, byte[] value);
+    }
+
+    private final TaskScheduler scheduler;
+    private final Map<UUID, byte[]> values = new HashMap<>();
+    private final Map<UUID, Runnable> notifying = new HashMap<>();
+    private NotificationListener notificationListener;
+    private GattOperationQueue queue;
+    private SimulatedLink link;
+    private long latencyMs;
+    private int mtu = 23;
+    private int maxMtu = 517;
+    private long executedCount;
+
+    public SimulatedGattPeer(TaskScheduler scheduler, long latencyMs) {
+        this.scheduler = scheduler;
+        this.latencyMs = latencyMs;
+    }
+
+    // Queue that receives the completion callbacks, normally the one executing on this peer
+    public void attach(GattOperationQueue queue) {
+        this.queue = queue;
+    }
+
+    // Applies the link's MTU limits to reads and negotiates the MTU on it
+    public void setLink(SimulatedLink link) {
+        this.link = link;
+    }
+
+    public void setNotificationListener(NotificationListener notificationListener) {
+        this.notificationListener = notificationListener;
+    }
+
+    public void setLatency(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    public void setMaxMtu(int maxMtu) {
+        this.maxMtu = maxMtu;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public long getExecutedCount() {
+        return executedCount;
+    }
+
+    public void setValue(UUID characteristicUuid, byte[] value) {
+        values.put(characteristicUuid, value);
+    }
+
+    public byte[] getValue(UUID characteristicUuid) {
+        return values.get(characteristicUuid);
+    }
+
+    @Override
+    public boolean execute(GattOperation operation) {
+        executedCount++;
+        final UUID characteristicUuid = operation.getCharacteristicUuid();
+        switch (operation.getType()) {
+            case READ_CHARACTERISTIC: {
+                byte[] stored = values.get(characteristicUuid);
+                if (stored != null && link != null && stored.length > link.getMaxReadSize()) {
+                    stored = Arrays.copyOf(stored, link.getMaxReadSize());
+                }
+                final byte[] value = stored;
+                final int status = value != null ? GattOperation.STATUS_SUCCESS : GATT_READ_NOT_PERMITTED;
+                scheduler.schedule(() -> queue.onCharacteristicRead(characteristicUuid, status, value), latencyMs);
+                return true;
+            }
+            case WRITE_CHARACTERISTIC:
+                values.put(characteristicUuid, operation.getValue());
+                scheduler.schedule(() -> queue.onCharacteristicWrite(characteristicUuid, GattOperation.STATUS_SUCCESS), latencyMs);
+                return true;
+            case WRITE_DESCRIPTOR: {
+                final UUID descriptorUuid = operation.getDescriptorUuid();
+                final byte[] value = operation.getValue();
+                scheduler.schedule(() -> {
+                    if (CCCD_UUID.equals(descriptorUuid)) {
+                        setNotifying(characteristicUuid, value != null && value.length > 0 && (value[0] & 0x03) != 0);
+                    }
+                    queue.onDescriptorWrite(characteristicUuid, descriptorUuid, GattOperation.STATUS_SUCCESS);
+                }, latencyMs);
+                return true;
+            }
+            case SET_NOTIFICATION: {
+                final boolean enable = operation.isEnable();
+                scheduler.schedule(() -> {
+                    setNotifying(characteristicUuid, enable);
+                    queue.onDescriptorWrite(characteristicUuid, CCCD_UUID, GattOperation.STATUS_SUCCESS);
+                }, latencyMs);
+                return true;
+            }
+            case REQUEST_MTU:
+                mtu = Math.max(23, Math.min(operation.getMtu(), maxMtu));
+                if (link != null) {
+                    link.setMtu(mtu);
+                }
+                scheduler.schedule(() -> queue.onMtuChanged(mtu, GattOperation.STATUS_SUCCESS), latencyMs);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Starts or stops the notifications of a characteristic, from the next connection event on
+    private void setNotifying(final UUID characteristicUuid, boolean enable) {
+        Runnable notifier = notifying.remove(characteristicUuid);
+        if (notifier != null) {
+            scheduler.cancel(notifier);
+        }
+        if (!enable || link == null || notificationListener == null) {
+            return;
+        }
+        final long startedAt = scheduler.now();
+        notifier = new Runnable() {
+            // Number of the connection event about to be sent, the first one interval after the start
+            long event = 1;
+
+            @Override
+            public void run() {
+                byte[] value = values.get(characteristicUuid);
+                if (value != null) {
+                    byte[] payload = Arrays.copyOf(value, Math.min(value.length, link.getPayloadSize()));
+                    for (int i = link.getNotificationsPerEvent(payload.length); i > 0; i--) {
+                        notificationListener.onNotification(characteristicUuid, payload.clone());
+                    }
+                }
+                // Counted from the start, so a fractional interval does not drift
+                event++;
+                scheduler.schedule(this, startedAt + Math.round(event * link.getConnectionIntervalMs()) - scheduler.now());
+            }
+        };
+        notifying.put(characteristicUuid, notifier);
+        scheduler.schedule(notifier, Math.round(link.getConnectionIntervalMs()));
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.ConnectionProfile;
+
+/**
+ * Timing model of a BLE connection used by the simulator.
+ *
+ * A request/response pair such as a read takes one connection interval. Notifications
+ * are packed into connection events: every ATT PDU (payload plus 3 bytes ATT and 4 bytes
+ * L2CAP header) is split into link layer packets of at most the data length, and the
+ * controller sends a limited number of packets per event.
+ */
+public class SimulatedLink {
+    public static final int DEFAULT_DATA_LENGTH = 27;
+    // With LE Data Length Extension
+    public static final int EXTENDED_DATA_LENGTH = 251;
+    private static final int L2CAP_HEADER_SIZE = 4;
+
+    private int mtu = ConnectionProfile.DEFAULT_MTU;
+    private double connectionIntervalMs;
+    private int dataLength;
+    private int packetsPerEvent;
+
+    public SimulatedLink(double connectionIntervalMs, int dataLength, int packetsPerEvent) {
+        this.connectionIntervalMs = connectionIntervalMs;
+        this.dataLength = dataLength;
+        this.packetsPerEvent = packetsPerEvent;
+    }
+
+    public static SimulatedLink forProfile(ConnectionProfile profile) {
+        return new SimulatedLink(profile.getConnectionIntervalMs(), EXTENDED_DATA_LENGTH, 6);
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public double getConnectionIntervalMs() {
+        return connectionIntervalMs;
+    }
+
+    public void setConnectionIntervalMs(double connectionIntervalMs) {
+        this.connectionIntervalMs = connectionIntervalMs;
+    }
+
+    public int getDataLength() {
+        return dataLength;
+    }
+
+    public int getPacketsPerEvent() {
+        return packetsPerEvent;
+    }
+
+    public int getPayloadSize() {
+        return ConnectionProfile.payloadSizeFor(mtu);
+    }
+
+    // A read response carries at most MTU - 1 bytes of the value
+    public int getMaxReadSize() {
+        return mtu - 1;
+    }
+
+    public long getRoundTripMs() {
+        return Math.max(1, Math.round(connectionIntervalMs));
+    }
+
+    // Link layer packets needed for one notification carrying payloadSize bytes
+    public int getPacketsPerNotification(int payloadSize) {
+        int pdu = Math.min(payloadSize, getPayloadSize()) + ConnectionProfile.ATT_HEADER_SIZE + L2CAP_HEADER_SIZE;
+        return (pdu + dataLength - 1) / dataLength;
+    }
+
+    // Full notifications the controller can push in one connection event
+    public int getNotificationsPerEvent(int payloadSize) {
+        return Math.max(1, packetsPerEvent / getPacketsPerNotification(payloadSize));
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.GattCache;
+import com.example.bledevicesscanner.util.MacAddress;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * One virtual device of a {@link SimulatedBleTransport}: what it advertises and how often,
+ * how strong it is received, and the attribute table a connection to it finds, including
+ * characteristics that notify on their own once subscribed.
+ *
+ * Configure it before adding it to a transport; values written over a connection are kept
+ * for later reads.
+ */
+public class SimulatedPeripheral {
+    // Same values as BluetoothGattCharacteristic
+    public static final int PROPERTY_READ = 0x02;
+    public static final int PROPERTY_WRITE_NO_RESPONSE = 0x04;
+    public static final int PROPERTY_WRITE = 0x08;
+    public static final int PROPERTY_NOTIFY = 0x10;
+    public static final int PROPERTY_INDICATE = 0x20;
+
+    public static final int DEFAULT_MAX_MTU = 247;
+
+    // Produces the next value of a notifying characteristic
+    public interface ValueSource {
+        byte[] next(Random random);
+    }
+
+    static class Notifier {
+        final long intervalMs;
+        final ValueSource source;
+
+        Notifier(long intervalMs, ValueSource source) {
+            this.intervalMs = intervalMs;
+            this.source = source;
+        }
+    }
+
+    private final String address;
+    private final long packedAddress;
+    private String name;
+    private final List<UUID> advertisedServices = new ArrayList<>();
+    private int txPower = Integer.MIN_VALUE;
+    private byte[] advertisement;
+    private long advertisingIntervalMs = 100;
+    private int rssi = -60;
+    private double rssiNoise = 4;
+    private int maxMtu = DEFAULT_MAX_MTU;
+
+    private final List<GattCache.CharacteristicRecord> characteristics = new ArrayList<>();
+    private final Map<UUID, byte[]> values = new HashMap<>();
+    private final Map<UUID, Notifier> notifiers = new LinkedHashMap<>();
+
+    public SimulatedPeripheral(String address) {
+        this.address = address;
+        this.packedAddress = MacAddress.pack(address);
+        if (packedAddress == MacAddress.INVALID) {
+            throw new IllegalArgumentException("Invalid address: " + address);
+        }
+    }
+
+    // Complete local name put in the advertisement
+    public SimulatedPeripheral setName(String name) {
+        this.name = name;
+        advertisement = null;
+        return this;
+    }
+
+    // 16-bit SIG service UUIDs go in as such, others as 128-bit
+    public SimulatedPeripheral addAdvertisedService(UUID serviceUuid) {
+        advertisedServices.add(serviceUuid);
+        advertisement = null;
+        return this;
+    }
+
+    public SimulatedPeripheral setTxPower(int txPower) {
+        this.txPower = txPower;
+        advertisement = null;
+        return this;
+    }
+
+    // Raw AD structures to send instead of the ones built from name, services and TX power
+    public SimulatedPeripheral setAdvertisement(byte[] advertisement) {
+        this.advertisement = advertisement;
+        return this;
+    }
+
+    // Time between advertising events, before the random delay the link layer adds to each
+    public SimulatedPeripheral setAdvertisingInterval(long intervalMs) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Advertising interval must be positive: " + intervalMs);
+        }
+        this.advertisingIntervalMs = intervalMs;
+        return this;
+    }
+
+    // Mean received signal strength and the standard deviation of its fading, in dB
+    public SimulatedPeripheral setRssi(int rssi, double noise) {
+        this.rssi = rssi;
+        this.rssiNoise = noise;
+        return this;
+    }
+
+    public SimulatedPeripheral setMaxMtu(int maxMtu) {
+        this.maxMtu = Math.max(SimulatedBleTransport.DEFAULT_MTU, maxMtu);
+        return this;
+    }
+
+    // Adds a characteristic to the table; value may be null for one that cannot be read yet
+    public SimulatedPeripheral addCharacteristic(UUID serviceUuid, UUID uuid, int properties, byte[] value) {
+        characteristics.add(new GattCache.CharacteristicRecord(serviceUuid, uuid, properties, 0));
+        if (value != null) {
+            values.put(uuid, value);
+        }
+        return this;
+    }
+
+    // Once a connection subscribes, the characteristic sends a new value from source every interval
+    public SimulatedPeripheral setNotifications(UUID uuid, long intervalMs, ValueSource source) {
+        if (intervalMs <= 0) {
+            throw new IllegalArgumentException("Notification interval must be positive: " + intervalMs);
+        }
+        notifiers.put(uuid, new Notifier(intervalMs, source));
+        return this;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public long getPackedAddress() {
+        return packedAddress;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getAdvertisingInterval() {
+        return advertisingIntervalMs;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public double getRssiNoise() {
+        return rssiNoise;
+    }
+
+    public int getMaxMtu() {
+        return maxMtu;
+    }
+
+    public byte[] getAdvertisement() {
+        if (advertisement == null) {
+            advertisement = buildAdvertisement();
+        }
+        return advertisement;
+    }
+
+    public List<GattCache.CharacteristicRecord> getCharacteristics() {
+        return Collections.unmodifiableList(characteristics);
+    }
+
+    public int getServiceCount() {
+        int count = 0;
+        UUID previous = null;
+        for (GattCache.CharacteristicRecord record : characteristics) {
+            if (!record.getServiceUuid().equals(previous)) {
+                count++;
+                previous = record.getServiceUuid();
+            }
+        }
+        return count;
+    }
+
+    public byte[] getValue(UUID uuid) {
+        return values.get(uuid);
+    }
+
+    GattCache.CharacteristicRecord findCharacteristic(UUID uuid) {
+        for (GattCache.CharacteristicRecord record : characteristics) {
+            if (record.getUuid().equals(uuid)) {
+                return record;
+            }
+        }
+        return null;
+    }
+
+    void setValue(UUID uuid, byte[] value) {
+        values.put(uuid, value);
+    }
+
+    Notifier getNotifier(UUID uuid) {
+        return notifiers.get(uuid);
+    }
+
+    private byte[] buildAdvertisement() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // LE General Discoverable, BR/EDR not supported
+        out.write(2);
+        out.write(0x01);
+        out.write(0x06);
+        for (UUID serviceUuid : advertisedServices) {
+            if (isSigUuid(serviceUuid)) {
+                int value = (int) (serviceUuid.getMostSignificantBits() >>> 32);
+                out.write(3);
+                out.write(0x03);
+                out.write(value & 0xFF);
+                out.write((value >> 8) & 0xFF);
+            } else {
+                out.write(17);
+                out.write(0x07);
+                writeLittleEndian(out, serviceUuid.getLeastSignificantBits());
+                writeLittleEndian(out, serviceUuid.getMostSignificantBits());
+            }
+        }
+        if (txPower != Integer.MIN_VALUE) {
+            out.write(2);
+            out.write(0x0A);
+            out.write(txPower);
+        }
+        if (name != null) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.write(bytes.length + 1);
+            out.write(0x09);
+            out.write(bytes, 0, bytes.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static boolean isSigUuid(UUID uuid) {
+        return uuid.getLeastSignificantBits() == 0x800000805f9b34fbL
+                && (uuid.getMostSignificantBits() & 0xFFFF0000FFFFFFFFL) == 0x1000L;
+    }
+
+    private static void writeLittleEndian(ByteArrayOutputStream out, long value) {
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (value >>> (8 * i)) & 0xFF);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.ConnectionProfile;
+import com.example.bledevicesscanner.ble.GattOperation;
+import com.example.bledevicesscanner.ble.GattOperationQueue;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Read and notification throughput for each {@link ConnectionProfile} over a
+ * {@link SimulatedLink}, in virtual time. Reads and the subscription go through a real
+ * {@link GattOperationQueue} against a {@link SimulatedGattPeer}, including the MTU
+ * exchange the profile performs, and both rates count the bytes the peer delivered.
+ */
+public class ThroughputTest {
+    private static final UUID SERVICE_UUID = UUID.fromString("0000fff0-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC_UUID = UUID.fromString("0000fff1-0000-1000-8000-00805f9b34fb");
+    private static final int VALUE_SIZE = 512;
+    private static final long DURATION = 10000;
+
+    private static final int READ = 0;
+    private static final int NOTIFY = 1;
+
+    /**
+     * Bytes per second of back-to-back reads, one always in flight, and of the
+     * notifications that fit in every connection event, after the profile's MTU exchange
+     * if requestMtu is set.
+     */
+    private static double[] measure(ConnectionProfile profile, boolean requestMtu) {
+        SimulatedLink link = SimulatedLink.forProfile(profile);
+        VirtualTimeScheduler scheduler = new VirtualTimeScheduler();
+        SimulatedGattPeer peer = new SimulatedGattPeer(scheduler, link.getRoundTripMs());
+        peer.setLink(link);
+        GattOperationQueue queue = new GattOperationQueue(peer, scheduler);
+        peer.attach(queue);
+        peer.setValue(CHARACTERISTIC_UUID, new byte[VALUE_SIZE]);
+
+        if (requestMtu && profile.requestsMtu()) {
+            queue.enqueue(GattOperation.requestMtu(profile.getMtu()));
+            scheduler.runUntilIdle();
+        }
+
+        long start = scheduler.now();
+        long end = start + DURATION;
+        long[] bytes = new long[2];
+        GattOperation.Callback readAgain = new GattOperation.Callback() {
+            @Override
+            public void onComplete(GattOperation operation, int status) {
+                assertTrue("read failed with status " + status, operation.isSuccess());
+                bytes[READ] += operation.getValue().length;
+                if (scheduler.now() < end) {
+                    queue.enqueue(GattOperation.read(SERVICE_UUID, CHARACTERISTIC_UUID).setCallback(this));
+                }
+            }
+        };
+        queue.enqueue(GattOperation.read(SERVICE_UUID, CHARACTERISTIC_UUID).setCallback(readAgain));
+        scheduler.runUntilIdle();
+
+        double[] throughput = new double[2];
+        throughput[READ] = bytes[READ] * 1000.0 / (scheduler.now() - start);
+
+        // Notifications flow from the moment the CCCD write is acknowledged
+        long[] subscribedAt = {-1};
+        peer.setNotificationListener((uuid, value) -> bytes[NOTIFY] += value.length);
+        queue.enqueue(GattOperation.setNotification(SERVICE_UUID, CHARACTERISTIC_UUID, true, false)
+                .setCallback((operation, status) -> subscribedAt[0] = scheduler.now()));
+        scheduler.advanceBy(link.getRoundTripMs());
+        assertTrue("subscription not acknowledged", subscribedAt[0] >= 0);
+        scheduler.advanceTo(subscribedAt[0] + DURATION);
+        throughput[NOTIFY] = bytes[NOTIFY] * 1000.0 / (scheduler.now() - subscribedAt[0]);
+        queue.enqueue(GattOperation.setNotification(SERVICE_UUID, CHARACTERISTIC_UUID, false, false));
+        scheduler.runUntilIdle();
+        return throughput;
+    }
+
+    @Test
+    public void highThroughputBeatsBalancedBeatsLowPower() {
+        double[] lowPower = measure(ConnectionProfile.LOW_POWER, true);
+        double[] balanced = measure(ConnectionProfile.BALANCED, true);
+        double[] high = measure(ConnectionProfile.HIGH_THROUGHPUT, true);
+        for (int kind = READ; kind <= NOTIFY; kind++) {
+            String label = (kind == READ ? "reads" : "notifications") + " in B/s: low power " + lowPower[kind]
+                    + ", balanced " + balanced[kind] + ", high " + high[kind];
+            assertTrue(label, balanced[kind] > lowPower[kind] * 10);
+            assertTrue(label, high[kind] > balanced[kind]);
+        }
+    }
+
+    @Test
+    public void mtuExchangeMultipliesReadThroughput() {
+        double[] withDefaultMtu = measure(ConnectionProfile.BALANCED, false);
+        double[] withNegotiatedMtu = measure(ConnectionProfile.BALANCED, true);
+        // 246 instead of 22 value bytes per read response on the same connection interval
+        assertTrue("reads at " + withDefaultMtu[READ] + " B/s, " + withNegotiatedMtu[READ] + " B/s after the MTU exchange",
+                withNegotiatedMtu[READ] > withDefaultMtu[READ] * 5);
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.bledevicesscanner.ble.sim;
+
+import com.example.bledevicesscanner.ble.TaskScheduler;
+
+import java.util.PriorityQueue;
+
+/**
+ * {@link TaskScheduler} running on a virtual clock. Nothing executes until the owner
+ * advances time, which makes simulations deterministic and lets hours of BLE traffic
+ * run in milliseconds on a plain JVM. Tasks may be scheduled from any thread, as
+ * BleManager does from its background executors; they only run on the thread advancing
+ * the clock.
+ */
+public class VirtualTimeScheduler implements TaskScheduler {
+
+    private static class Entry implements Comparable<Entry> {
+        final long time;
+        final long sequence;
+        final Runnable task;
+
+        Entry(long time, long sequence, Runnable task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            // Same-time tasks run in the order they were scheduled
+            int result = Long.compare(time, other.time);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+
+    @Override
+    public synchronized long now() {
+        return now;
+    }
+
+    @Override
+    public synchronized void schedule(Runnable task, long delayMs) {
+        queue.add(new Entry(now + Math.max(0, delayMs), sequence++, task));
+    }
+
+    @Override
+    public synchronized void cancel(Runnable task) {
+        queue.removeIf(entry -> entry.task == task);
+    }
+
+    public synchronized boolean isIdle() {
+        return queue.isEmpty();
+    }
+
+    // Runs every task due up to and including the given time, then sets the clock to it
+    public void advanceTo(long time) {
+        Entry entry;
+        while ((entry = poll(time)) != null) {
+            entry.task.run();
+        }
+        synchronized (this) {
+            now = Math.max(now, time);
+        }
+    }
+
+    public void advanceBy(long delayMs) {
+        advanceTo(now() + delayMs);
+    }
+
+    // Runs tasks until none are left; tasks that keep rescheduling themselves never finish
+    public void runUntilIdle() {
+        Entry entry;
+        while ((entry = poll(Long.MAX_VALUE)) != null) {
+            entry.task.run();
+        }
+    }
+
+    // Takes the next task due by the given time and moves the clock to it; tasks run outside the lock
+    private synchronized Entry poll(long time) {
+        Entry entry = queue.peek();
+        if (entry == null || entry.time > time) {
+            return null;
+        }
+        queue.poll();
+        now = entry.time;
+        return entry;
+    }
+}
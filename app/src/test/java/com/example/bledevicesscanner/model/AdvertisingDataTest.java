@@ -0,0 +1,206 @@
+package com.example.bledevicesscanner.model;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class AdvertisingDataTest {
+    private static final UUID HEART_RATE_SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final UUID NORDIC_UART_SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private static final int[] FLAGS = {0x02, 0x01, 0x06};
+    private static final int[] SHORT_NAME = {0x04, 0x08, 'H', 'R', 'M'};
+    private static final int[] COMPLETE_NAME = {0x07, 0x09, 'H', 'R', 'M', ' ', '1', '2'};
+    private static final int[] UUID16_LIST = {0x05, 0x03, 0x0D, 0x18, 0x0F, 0x18};
+    private static final int[] UUID32_LIST = {0x05, 0x05, 0x78, 0x56, 0x34, 0x12};
+    // Least significant byte first
+    private static final int[] UUID128_LIST = {0x11, 0x07, 0x9E, 0xCA, 0xDC, 0x24, 0x0E, 0xE5, 0xA9, 0xE0,
+            0x93, 0xF3, 0xA3, 0xB5, 0x01, 0x00, 0x40, 0x6E};
+    // Apple, iBeacon prefix
+    private static final int[] MANUFACTURER_DATA = {0x05, 0xFF, 0x4C, 0x00, 0x02, 0x15};
+    // Battery service, level 100
+    private static final int[] SERVICE_DATA = {0x04, 0x16, 0x0F, 0x18, 0x64};
+    private static final int[] TX_POWER = {0x02, 0x0A, 0xF8};
+
+    private static byte[] payload(int[]... structures) {
+        int length = 0;
+        for (int[] structure : structures) {
+            length += structure.length;
+        }
+        byte[] bytes = new byte[length];
+        int pos = 0;
+        for (int[] structure : structures) {
+            for (int value : structure) {
+                bytes[pos++] = (byte) value;
+            }
+        }
+        return bytes;
+    }
+
+    private static AdvertisingData parse(int[]... structures) {
+        AdvertisingData data = new AdvertisingData();
+        assertTrue(data.parse(payload(structures)));
+        return data;
+    }
+
+    @Test
+    public void emptyPayloadHasNothing() {
+        AdvertisingData data = parse();
+        assertEquals(AdvertisingData.FLAGS_UNKNOWN, data.getFlags());
+        assertFalse(data.hasTxPowerLevel());
+        assertEquals(AdvertisingData.TX_POWER_UNKNOWN, data.getTxPowerLevel());
+        assertFalse(data.hasLocalName());
+        assertNull(data.getLocalName());
+        assertEquals(0, data.getServiceUuidCount());
+        assertEquals(0, data.getManufacturerDataCount());
+        assertEquals(0, data.getServiceDataCount());
+    }
+
+    @Test
+    public void nullPayloadIsRejected() {
+        AdvertisingData data = new AdvertisingData();
+        assertFalse(data.parse(null));
+        assertFalse(data.hasLocalName());
+    }
+
+    @Test
+    public void flags() {
+        assertEquals(0x06, parse(FLAGS).getFlags());
+    }
+
+    @Test
+    public void shortLocalName() {
+        AdvertisingData data = parse(FLAGS, SHORT_NAME);
+        assertTrue(data.hasLocalName());
+        assertFalse(data.isLocalNameComplete());
+        assertEquals("HRM", data.getLocalName());
+        assertTrue(data.localNameStartsWith("HR"));
+        assertFalse(data.localNameStartsWith("HRM 1"));
+    }
+
+    @Test
+    public void completeLocalNameWinsInEitherOrder() {
+        for (AdvertisingData data : new AdvertisingData[]{parse(SHORT_NAME, COMPLETE_NAME), parse(COMPLETE_NAME, SHORT_NAME)}) {
+            assertTrue(data.isLocalNameComplete());
+            assertEquals("HRM 12", data.getLocalName());
+            assertTrue(data.localNameStartsWith("HRM 1"));
+        }
+    }
+
+    @Test
+    public void serviceUuidsOfEveryWidth() {
+        AdvertisingData data = parse(UUID16_LIST, UUID32_LIST, UUID128_LIST);
+        assertEquals(4, data.getServiceUuidCount());
+
+        assertEquals(2, data.getServiceUuidWidth(0));
+        assertEquals(0x180D, data.getServiceUuidShort(0));
+        assertEquals(HEART_RATE_SERVICE, data.getServiceUuid(0));
+        assertEquals(BATTERY_SERVICE, data.getServiceUuid(1));
+
+        assertEquals(4, data.getServiceUuidWidth(2));
+        assertEquals(0x12345678L, data.getServiceUuidShort(2));
+        assertEquals(UUID.fromString("12345678-0000-1000-8000-00805f9b34fb"), data.getServiceUuid(2));
+
+        assertEquals(16, data.getServiceUuidWidth(3));
+        assertEquals(NORDIC_UART_SERVICE, data.getServiceUuid(3));
+
+        assertTrue(data.hasServiceUuid(HEART_RATE_SERVICE));
+        assertTrue(data.hasServiceUuid(NORDIC_UART_SERVICE));
+        assertFalse(data.hasServiceUuid(UUID.fromString("0000180a-0000-1000-8000-00805f9b34fb")));
+    }
+
+    @Test
+    public void manufacturerData() {
+        AdvertisingData data = parse(FLAGS, MANUFACTURER_DATA);
+        assertEquals(1, data.getManufacturerDataCount());
+        assertEquals(0x004C, data.getManufacturerId(0));
+        assertEquals(0, data.indexOfManufacturer(0x004C));
+        assertEquals(-1, data.indexOfManufacturer(0x0059));
+        assertEquals(2, data.getManufacturerDataLength(0));
+        int offset = data.getManufacturerDataOffset(0);
+        assertEquals(0x02, data.getBytes()[offset]);
+        assertEquals(0x15, data.getBytes()[offset + 1]);
+    }
+
+    @Test
+    public void serviceData() {
+        AdvertisingData data = parse(SERVICE_DATA);
+        assertEquals(1, data.getServiceDataCount());
+        assertEquals(0x180F, data.getServiceDataUuidShort(0));
+        assertEquals(BATTERY_SERVICE, data.getServiceDataUuid(0));
+        assertEquals(1, data.getServiceDataLength(0));
+        assertEquals(100, data.getBytes()[data.getServiceDataOffset(0)]);
+        // Service data is not a list of advertised services
+        assertEquals(0, data.getServiceUuidCount());
+    }
+
+    @Test
+    public void txPowerIsSigned() {
+        AdvertisingData data = parse(TX_POWER);
+        assertTrue(data.hasTxPowerLevel());
+        assertEquals(-8, data.getTxPowerLevel());
+    }
+
+    @Test
+    public void zeroLengthStructureEndsThePayload() {
+        // Everything after the first zero length byte is padding
+        AdvertisingData data = parse(FLAGS, new int[]{0x00}, UUID16_LIST);
+        assertEquals(0x06, data.getFlags());
+        assertEquals(0, data.getServiceUuidCount());
+        assertFalse(data.isTruncated());
+    }
+
+    @Test
+    public void truncatedFinalStructureKeepsWhatCameBefore() {
+        AdvertisingData data = new AdvertisingData();
+        // Claims seven bytes, has three
+        assertFalse(data.parse(payload(FLAGS, UUID16_LIST, new int[]{0x07, 0x09, 'H', 'R'})));
+        assertTrue(data.isTruncated());
+        assertEquals(0x06, data.getFlags());
+        assertEquals(2, data.getServiceUuidCount());
+        assertFalse(data.hasLocalName());
+    }
+
+    @Test
+    public void entriesBeyondTheLimitsAreCounted() {
+        int uuids = AdvertisingData.MAX_SERVICE_UUIDS + 3;
+        int[] list = new int[2 + 2 * uuids];
+        list[0] = 1 + 2 * uuids;
+        list[1] = 0x03;
+        for (int i = 0; i < uuids; i++) {
+            list[2 + 2 * i] = i;
+            list[3 + 2 * i] = 0x18;
+        }
+        int[][] structures = new int[1 + AdvertisingData.MAX_MANUFACTURER_DATA + 1][];
+        structures[0] = list;
+        for (int i = 1; i < structures.length; i++) {
+            structures[i] = MANUFACTURER_DATA;
+        }
+        AdvertisingData data = parse(structures);
+
+        assertEquals(AdvertisingData.MAX_SERVICE_UUIDS, data.getServiceUuidCount());
+        assertEquals(AdvertisingData.MAX_SERVICE_UUIDS - 1, data.getServiceUuidShort(AdvertisingData.MAX_SERVICE_UUIDS - 1) & 0xFF);
+        assertEquals(AdvertisingData.MAX_MANUFACTURER_DATA, data.getManufacturerDataCount());
+        assertEquals(3 + 1, data.getOverflowCount());
+    }
+
+    @Test
+    public void parseReplacesThePreviousPayload() {
+        AdvertisingData data = parse(FLAGS, COMPLETE_NAME, UUID16_LIST, MANUFACTURER_DATA, SERVICE_DATA, TX_POWER);
+        assertTrue(data.parse(payload(UUID128_LIST)));
+        assertEquals(AdvertisingData.FLAGS_UNKNOWN, data.getFlags());
+        assertFalse(data.hasLocalName());
+        assertFalse(data.hasTxPowerLevel());
+        assertEquals(1, data.getServiceUuidCount());
+        assertEquals(NORDIC_UART_SERVICE, data.getServiceUuid(0));
+        assertEquals(0, data.getManufacturerDataCount());
+        assertEquals(0, data.getServiceDataCount());
+        assertEquals(0, data.getOverflowCount());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.bledevicesscanner.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LongIntHashMapTest {
+    @Test
+    public void putGetRemove() {
+        LongIntHashMap map = new LongIntHashMap();
+        assertEquals(-1, map.put(0xC0FFEE000001L, 7, -1));
+        assertEquals(7, map.put(0xC0FFEE000001L, 8, -1));
+        assertEquals(8, map.get(0xC0FFEE000001L, -1));
+        assertEquals(-1, map.get(0xC0FFEE000002L, -1));
+        assertEquals(1, map.size());
+        assertEquals(8, map.remove(0xC0FFEE000001L, -1));
+        assertEquals(-1, map.remove(0xC0FFEE000001L, -1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsReservedKey() {
+        new LongIntHashMap().put(Long.MIN_VALUE, 1, -1);
+    }
+
+    /**
+     * Random puts and removes over a small key range, so probe runs collide and the
+     * backward-shift deletion is exercised, must always agree with a HashMap.
+     */
+    @Test
+    public void matchesHashMapUnderRandomOperations() {
+        Random random = new Random(1);
+        LongIntHashMap map = new LongIntHashMap(4);
+        Map<Long, Integer> reference = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            // Addresses sharing a vendor prefix, as real scans see them
+            long key = 0xC0FFEE000000L | random.nextInt(2000);
+            switch (random.nextInt(3)) {
+                case 0: {
+                    int value = random.nextInt();
+                    Integer previous = reference.put(key, value);
+                    assertEquals(previous != null ? previous : -1, map.put(key, value, -1));
+                    break;
+                }
+                case 1: {
+                    Integer removed = reference.remove(key);
+                    assertEquals(removed != null ? removed : -1, map.remove(key, -1));
+                    break;
+                }
+                default: {
+                    Integer value = reference.get(key);
+                    assertEquals(value != null ? value : -1, map.get(key, -1));
+                    assertEquals(value != null, map.containsKey(key));
+                    break;
+                }
+            }
+            assertEquals(reference.size(), map.size());
+        }
+        for (Map.Entry<Long, Integer> entry : reference.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey(), -1));
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(0xC0FFEE000000L));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bledevicesscanner.util;
+
+import com.example.bledevicesscanner.model.AdvertisingData;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SignalFilterTest {
+    private static final long SECOND = 1000000000L;
+    private static final double DELTA = 1e-9;
+
+    private static SignalFilter filter(SignalFilter.Mode mode) {
+        return new SignalFilter(new SignalFilter.Settings().setMode(mode));
+    }
+
+    @Test
+    public void ewmaWeighsEachReadingByAlpha() {
+        SignalFilter filter = filter(SignalFilter.Mode.EWMA);
+        assertTrue(Double.isNaN(filter.getRssi()));
+        assertEquals(-60, filter.update(-60, 0), DELTA);
+        assertEquals(-62.5, filter.update(-70, SECOND), DELTA);
+        assertEquals(-59.375, filter.update(-50, 2 * SECOND), DELTA);
+        // Time plays no part
+        assertEquals(-59.03125, filter.update(-58, 60 * SECOND), DELTA);
+        assertEquals(-59.03125, filter.getRssi(), DELTA);
+        assertEquals(4, filter.getUpdateCount());
+    }
+
+    @Test
+    public void kalmanGainGrowsWithTheGap() {
+        // Process noise 2 per second, measurement noise 16
+        SignalFilter filter = filter(SignalFilter.Mode.KALMAN);
+        assertEquals(-60, filter.update(-60, 0), DELTA);
+        // Predicted variance 16 + 2 = 18, gain 18 / 34, variance after 8 / 17 * 18 = 144 / 17
+        assertEquals(-60 - 90.0 / 17, filter.update(-70, SECOND), DELTA);
+        // Two seconds later: predicted 144 / 17 + 4 = 212 / 17, gain 53 / 121
+        assertEquals(-120530.0 / 2057, filter.update(-50, 3 * SECOND), DELTA);
+        assertEquals(3, filter.getUpdateCount());
+    }
+
+    @Test
+    public void outOfOrderReadingAddsNoDrift() {
+        SignalFilter late = filter(SignalFilter.Mode.KALMAN);
+        SignalFilter inOrder = filter(SignalFilter.Mode.KALMAN);
+        for (SignalFilter filter : new SignalFilter[]{late, inOrder}) {
+            filter.update(-60, 0);
+            filter.update(-70, SECOND);
+        }
+        // Received after the one-second reading; predicted variance stays 144 / 17, gain 9 / 26
+        double expected = -1110.0 / 17 + 9.0 / 26 * (90.0 / 17);
+        assertEquals(expected, late.update(-60, SECOND / 2), DELTA);
+        assertEquals(expected, inOrder.update(-60, SECOND), DELTA);
+        // Drift for the next reading is counted from the newest timestamp, one second back
+        assertEquals(inOrder.update(-55, 2 * SECOND), late.update(-55, 2 * SECOND), DELTA);
+    }
+
+    @Test
+    public void resetStartsOver() {
+        for (SignalFilter.Mode mode : SignalFilter.Mode.values()) {
+            SignalFilter filter = filter(mode);
+            filter.update(-40, 0);
+            filter.update(-90, 10 * SECOND);
+            filter.reset();
+
+            assertTrue(Double.isNaN(filter.getRssi()));
+            assertTrue(Double.isNaN(filter.getDistance(0)));
+            assertEquals(0, filter.getUpdateCount());
+
+            SignalFilter fresh = filter(mode);
+            assertEquals(-70, filter.update(-70, 20 * SECOND), DELTA);
+            fresh.update(-70, 20 * SECOND);
+            assertEquals(mode.name(), fresh.update(-60, 21 * SECOND), filter.update(-60, 21 * SECOND), DELTA);
+        }
+    }
+
+    @Test
+    public void distanceFromAdvertisedTxPower() {
+        // Path loss exponent 2, 41 dB lost over the first metre: 0 dBm is received at -41 dBm from 1 m
+        SignalFilter.Settings settings = new SignalFilter.Settings();
+        assertEquals(1.0, SignalFilter.estimateDistance(-41, 0, settings), DELTA);
+        assertEquals(10.0, SignalFilter.estimateDistance(-61, 0, settings), DELTA);
+        assertEquals(10.0, SignalFilter.estimateDistance(-73, -12, settings), DELTA);
+        assertTrue(Double.isNaN(SignalFilter.estimateDistance(-61, AdvertisingData.TX_POWER_UNKNOWN, settings)));
+        assertTrue(Double.isNaN(SignalFilter.estimateDistance(Double.NaN, 0, settings)));
+
+        SignalFilter filter = new SignalFilter(settings);
+        assertTrue(Double.isNaN(filter.getDistance(0)));
+        filter.update(-61, 0);
+        assertEquals(10.0, filter.getDistance(0), DELTA);
+        assertTrue(Double.isNaN(filter.getDistance(AdvertisingData.TX_POWER_UNKNOWN)));
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.bledevicesscanner.util;
+
+import com.example.bledevicesscanner.util.ValueFormatter.Format;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link ValueFormatter}: AUTO must produce exactly what the StringBuilder and
+ * String.format based formatting it replaced produced, for random binary, random
+ * printable and empty values, and the integer and IEEE-11073 formats must match values
+ * computed independently.
+ */
+public class ValueFormatterTest {
+    private final ValueFormatter formatter = new ValueFormatter();
+
+    private void expect(byte[] value, Format format, String expected) {
+        assertEquals(format.toString(), expected, formatter.format(value, format));
+    }
+
+    // The formatting BleCharacteristic.getValueAsString used before ValueFormatter
+    private static String legacy(byte[] value) {
+        if (value == null) {
+            return "No value";
+        }
+        String utf8String = new String(value, StandardCharsets.UTF_8);
+        boolean printable = true;
+        for (int i = 0; i < utf8String.length(); i++) {
+            char c = utf8String.charAt(i);
+            if (c < 32 || c >= 127) {
+                printable = false;
+                break;
+            }
+        }
+        if (printable) {
+            return utf8String;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : value) {
+            sb.append(String.format("%02X ", b));
+        }
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void autoMatchesTheOldFormatting() {
+        Random random = new Random(1);
+        int mismatches = 0;
+        for (int i = 0; i < 100000; i++) {
+            byte[] value = new byte[random.nextInt(300)];
+            if (i % 2 == 0) {
+                random.nextBytes(value);
+            } else {
+                for (int j = 0; j < value.length; j++) {
+                    value[j] = (byte) (32 + random.nextInt(95));
+                }
+                // Now and then a single byte that makes the value binary
+                if (value.length > 0 && i % 10 == 1) {
+                    value[random.nextInt(value.length)] = (byte) (i % 20 == 1 ? 127 : 0xC3);
+                }
+            }
+            if (!legacy(value).equals(formatter.format(value, Format.AUTO))) {
+                mismatches++;
+            }
+        }
+        assertEquals("AUTO values that differ from the old formatting", 0, mismatches);
+        assertEquals(legacy(null), formatter.format(null, Format.AUTO));
+        assertEquals(legacy(new byte[0]), formatter.format(new byte[0], Format.AUTO));
+    }
+
+    @Test
+    public void integers() {
+        byte[] value = {(byte) 0xFF, 0x7F, 0x00, (byte) 0x80};
+        expect(value, Format.UINT8, "255 127 0 128");
+        expect(value, Format.SINT8, "-1 127 0 -128");
+        expect(value, Format.UINT16, "32767 32768");
+        expect(value, Format.SINT16, "32767 -32768");
+        expect(value, Format.UINT32, "2147516415");
+        expect(value, Format.SINT32, "-2147450881");
+        expect(new byte[]{0, 0, 0, (byte) 0x80}, Format.SINT32, "-2147483648");
+        // Three bytes do not split into 16-bit fields
+        expect(new byte[]{1, 2, 3}, Format.UINT16, "01 02 03");
+
+        Random random = new Random(2);
+        int mismatches = 0;
+        for (int i = 0; i < 10000; i++) {
+            int raw = random.nextInt();
+            byte[] bytes = {(byte) raw, (byte) (raw >> 8), (byte) (raw >> 16), (byte) (raw >> 24)};
+            if (!Long.toString(raw & 0xFFFFFFFFL).equals(formatter.format(bytes, Format.UINT32))
+                    || !Integer.toString(raw).equals(formatter.format(bytes, Format.SINT32))) {
+                mismatches++;
+            }
+        }
+        assertEquals("random 32-bit integers formatted wrongly", 0, mismatches);
+    }
+
+    @Test
+    public void ieee11073() {
+        // 365 * 10^-1, the body temperature example from the Health Thermometer profile
+        expect(new byte[]{0x6D, (byte) 0xF1}, Format.SFLOAT, "36.5");
+        expect(new byte[]{0x05, (byte) 0xD0}, Format.SFLOAT, "0.005");
+        expect(new byte[]{(byte) 0xFB, 0x2F}, Format.SFLOAT, "-500");
+        expect(new byte[]{0x00, 0x00}, Format.SFLOAT, "0");
+        expect(new byte[]{(byte) 0xFF, 0x07, 0x00, 0x08, (byte) 0xFE, 0x07, 0x02, 0x08, 0x01, 0x08},
+                Format.SFLOAT, "NaN NRes +INF -INF Reserved");
+        // 98760 * 10^-3
+        expect(new byte[]{(byte) 0xC8, (byte) 0x81, 0x01, (byte) 0xFD}, Format.FLOAT, "98.760");
+        expect(new byte[]{(byte) 0xFF, (byte) 0xFF, 0x7F, 0x00}, Format.FLOAT, "NaN");
+
+        assertEquals(36.5, Ieee11073.sfloatToDouble(0xF16D), 0);
+        assertTrue("SFLOAT NRes is not NaN", Double.isNaN(Ieee11073.sfloatToDouble(0x0800)));
+        assertEquals(98.76, Ieee11073.floatToDouble(0xFD0181C8), 0);
+
+        // The text must parse back to the value the double conversion gives
+        Random random = new Random(3);
+        int mismatches = 0;
+        for (int i = 0; i < 10000; i++) {
+            int raw = random.nextInt(0x10000);
+            if (Ieee11073.isSfloatSpecial(raw)) {
+                continue;
+            }
+            String text = formatter.format(new byte[]{(byte) raw, (byte) (raw >> 8)}, Format.SFLOAT);
+            if (Double.parseDouble(text) != Ieee11073.sfloatToDouble(raw)) {
+                mismatches++;
+            }
+        }
+        assertEquals("SFLOAT values that do not parse back to their value", 0, mismatches);
+    }
+}
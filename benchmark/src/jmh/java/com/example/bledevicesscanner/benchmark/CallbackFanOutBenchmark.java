@@ -0,0 +1,65 @@
+package com.example.bledevicesscanner.benchmark;
+
+import com.example.bledevicesscanner.ble.ListenerRegistry;
+import com.example.bledevicesscanner.model.BleDevice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+/**
+ * BleManager's callback fan-out: one scan batch dispatched through the
+ * {@link ListenerRegistry} to every registered listener. "direct" listeners run on the
+ * dispatching thread, like those added with the BLE executor; "queued" ones go through
+ * a task queue drained after the dispatch, standing in for a Handler.
+ */
+@State(Scope.Thread)
+public class CallbackFanOutBenchmark {
+    // Same shape as BleManagerCallback.onDevicesFound
+    interface ScanListener {
+        void onDevicesFound(List<BleDevice> devices);
+    }
+
+    @Param({"1", "4", "16"})
+    public int listenerCount;
+
+    @Param({"direct", "queued"})
+    public String executor;
+
+    private final ListenerRegistry<ScanListener> callbacks = new ListenerRegistry<>();
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private List<BleDevice> batch;
+    private long delivered;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(Fixtures.device(i, random));
+        }
+        Executor target = "direct".equals(executor) ? Runnable::run : queue::add;
+        for (int i = 0; i < listenerCount; i++) {
+            callbacks.add(devices -> delivered += devices.size(), target);
+        }
+    }
+
+    @Benchmark
+    public long dispatch() {
+        final List<BleDevice> devices = batch;
+        callbacks.dispatch(callback -> callback.onDevicesFound(devices));
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            task.run();
+        }
+        return delivered;
+    }
+}
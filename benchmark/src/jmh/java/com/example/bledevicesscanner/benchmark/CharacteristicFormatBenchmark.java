@@ -0,0 +1,103 @@
+package com.example.bledevicesscanner.benchmark;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+
+import com.example.bledevicesscanner.model.BleCharacteristic;
+import com.example.bledevicesscanner.util.ValueFormatter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * {@link BleCharacteristic#getValueAsString()} as the characteristics list calls it on
+ * every bind, for a printable string, a typical binary notification and a full 244 byte
+ * payload at the largest common MTU.
+ *
+ * {@code legacy} is the StringBuilder and String.format formatting the model used before
+ * {@link ValueFormatter}, {@code uncached} formats a freshly set value as a notification
+ * would, and {@code getValueAsString} is a rebind of an unchanged row. Compare their
+ * gc.alloc.rate.norm to see the allocation per call before and after; {@code legacy}
+ * has no formats, so only its AUTO rows mean anything.
+ */
+@State(Scope.Thread)
+public class CharacteristicFormatBenchmark {
+    @Param({"text", "binary", "binary244"})
+    public String value;
+
+    @Param({"AUTO", "HEX", "UINT16", "SFLOAT"})
+    public ValueFormatter.Format format;
+
+    private BleCharacteristic characteristic;
+    private byte[] bytes;
+
+    @Setup
+    public void setUp() {
+        BluetoothGattCharacteristic gattCharacteristic = new BluetoothGattCharacteristic(
+                UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb"), BluetoothGattCharacteristic.PROPERTY_NOTIFY, 0);
+        characteristic = new BleCharacteristic(gattCharacteristic);
+        Random random = new Random(1);
+        switch (value) {
+            case "text":
+                bytes = "Firmware 2.4.1 (build 1187)".getBytes(StandardCharsets.UTF_8);
+                break;
+            case "binary":
+                bytes = new byte[20];
+                random.nextBytes(bytes);
+                break;
+            default:
+                bytes = new byte[244];
+                random.nextBytes(bytes);
+                break;
+        }
+        characteristic.setValue(bytes);
+        characteristic.setFormat(format);
+    }
+
+    @Benchmark
+    public String getValueAsString() {
+        return characteristic.getValueAsString();
+    }
+
+    @Benchmark
+    public String uncached() {
+        characteristic.setValue(bytes);
+        return characteristic.getValueAsString();
+    }
+
+    @Benchmark
+    public String legacy() {
+        if (bytes == null) {
+            return "No value";
+        }
+        try {
+            String utf8String = new String(bytes, "UTF-8");
+            if (isPrintable(utf8String)) {
+                return utf8String;
+            }
+        } catch (Exception e) {
+            // Fall back to hex, as the old code did
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02X ", b));
+        }
+        return sb.toString().trim();
+    }
+
+    private static boolean isPrintable(String str) {
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c < 32 || c >= 127) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.bledevicesscanner.benchmark;
+
+import com.example.bledevicesscanner.ble.decoder.CharacteristicDecoder;
+import com.example.bledevicesscanner.ble.decoder.DecoderRegistry;
+import com.example.bledevicesscanner.ble.decoder.Measurement;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Decoding notifications through the {@link DecoderRegistry}: the lookup by UUID that
+ * runs for every notification, the decode into a reused {@link Measurement}, and both
+ * together. Payloads vary between calls so the branches on the flags are exercised.
+ */
+@State(Scope.Thread)
+public class DecoderBenchmark {
+    private static final int PAYLOADS = 256;
+
+    @Param({"heartRate", "temperature", "csc", "humidity", "vendor"})
+    public String characteristic;
+
+    private final DecoderRegistry registry = DecoderRegistry.standard()
+            .register(Fixtures.VENDOR_CHARACTERISTIC, new VendorDecoder());
+    private final Measurement measurement = new Measurement();
+    private UUID uuid;
+    private CharacteristicDecoder decoder;
+    private byte[][] payloads;
+    private int next;
+
+    // Two sint16 fields, as a typical vendor sensor packs them
+    private static class VendorDecoder implements CharacteristicDecoder {
+        @Override
+        public boolean decode(byte[] buffer, int offset, int length, Measurement out) {
+            if (length < 4) {
+                return false;
+            }
+            out.add(Measurement.FIRST_VENDOR_FIELD, (short) ((buffer[offset] & 0xFF) | buffer[offset + 1] << 8));
+            out.add(Measurement.FIRST_VENDOR_FIELD + 1, (short) ((buffer[offset + 2] & 0xFF) | buffer[offset + 3] << 8));
+            return true;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        payloads = new byte[PAYLOADS][];
+        for (int i = 0; i < PAYLOADS; i++) {
+            payloads[i] = payload(random);
+        }
+        uuid = uuidFor(characteristic);
+        decoder = registry.get(uuid);
+    }
+
+    private static UUID uuidFor(String characteristic) {
+        switch (characteristic) {
+            case "heartRate":
+                return Fixtures.sigUuid(DecoderRegistry.HEART_RATE_MEASUREMENT);
+            case "temperature":
+                return Fixtures.sigUuid(DecoderRegistry.TEMPERATURE_MEASUREMENT);
+            case "csc":
+                return Fixtures.sigUuid(DecoderRegistry.CSC_MEASUREMENT);
+            case "humidity":
+                return Fixtures.sigUuid(DecoderRegistry.HUMIDITY);
+            default:
+                return Fixtures.VENDOR_CHARACTERISTIC;
+        }
+    }
+
+    private byte[] payload(Random random) {
+        switch (characteristic) {
+            case "heartRate": {
+                // Contact supported, with energy expended now and then and zero to four RR intervals
+                int rrCount = random.nextInt(5);
+                boolean energy = random.nextInt(10) == 0;
+                byte[] value = new byte[2 + (energy ? 2 : 0) + rrCount * 2];
+                value[0] = (byte) (0x06 | (energy ? 0x08 : 0) | (rrCount > 0 ? 0x10 : 0));
+                value[1] = (byte) (60 + random.nextInt(120));
+                for (int i = 2; i < value.length; i++) {
+                    value[i] = (byte) random.nextInt(256);
+                }
+                return value;
+            }
+            case "temperature": {
+                // FLOAT with exponent -2, a time stamp and the temperature type
+                byte[] value = new byte[13];
+                value[0] = 0x06;
+                int mantissa = 3600 + random.nextInt(200);
+                value[1] = (byte) mantissa;
+                value[2] = (byte) (mantissa >> 8);
+                value[4] = (byte) 0xFE;
+                value[12] = 2;
+                return value;
+            }
+            case "csc": {
+                byte[] value = new byte[11];
+                value[0] = 0x03;
+                for (int i = 1; i < value.length; i++) {
+                    value[i] = (byte) random.nextInt(256);
+                }
+                return value;
+            }
+            default: {
+                byte[] value = new byte[4];
+                random.nextBytes(value);
+                return value;
+            }
+        }
+    }
+
+    private byte[] nextPayload() {
+        byte[] payload = payloads[next];
+        next = (next + 1) & (PAYLOADS - 1);
+        return payload;
+    }
+
+    @Benchmark
+    public CharacteristicDecoder lookup() {
+        return registry.get(uuid);
+    }
+
+    @Benchmark
+    public int decode() {
+        byte[] payload = nextPayload();
+        measurement.clear();
+        decoder.decode(payload, 0, payload.length, measurement);
+        return measurement.size();
+    }
+
+    @Benchmark
+    public int lookupAndDecode() {
+        byte[] payload = nextPayload();
+        registry.decode(uuid, payload, 0, payload.length, measurement);
+        return measurement.size();
+    }
+}
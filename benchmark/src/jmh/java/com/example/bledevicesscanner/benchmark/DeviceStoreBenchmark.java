@@ -0,0 +1,68 @@
+package com.example.bledevicesscanner.benchmark;
+
+import com.example.bledevicesscanner.adapter.DeviceStore;
+import com.example.bledevicesscanner.model.BleDevice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * The devices list update {@link com.example.bledevicesscanner.adapter.DevicesAdapter}
+ * runs on the main thread for every scan result: replace the device in the store, then
+ * take the sorted snapshot handed to the differ. The differ itself runs off the main
+ * thread and is not measured.
+ */
+@State(Scope.Thread)
+public class DeviceStoreBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int deviceCount;
+
+    private DeviceStore store;
+    // Newer instances of every stored device, as the next advertisements bring them
+    private BleDevice[] updates;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        store = new DeviceStore();
+        updates = new BleDevice[deviceCount];
+        for (int i = 0; i < deviceCount; i++) {
+            store.upsert(Fixtures.device(i, random));
+            updates[i] = Fixtures.device(i, random);
+            // Resolve the lazily parsed name up front, as the first bind would
+            updates[i].getName();
+        }
+    }
+
+    private BleDevice nextUpdate() {
+        BleDevice device = updates[next];
+        next = next + 1 == updates.length ? 0 : next + 1;
+        return device;
+    }
+
+    @Benchmark
+    public DeviceStore upsert() {
+        store.upsert(nextUpdate());
+        return store;
+    }
+
+    // DevicesAdapter.addDevice in the default RSSI order
+    @Benchmark
+    public List<BleDevice> addDevice() {
+        store.upsert(nextUpdate());
+        return store.snapshot(DeviceStore.BY_RSSI);
+    }
+
+    @Benchmark
+    public List<BleDevice> addDeviceByName() {
+        store.upsert(nextUpdate());
+        return store.snapshot(DeviceStore.BY_NAME);
+    }
+}
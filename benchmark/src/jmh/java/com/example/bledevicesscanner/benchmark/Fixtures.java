@@ -0,0 +1,65 @@
+package com.example.bledevicesscanner.benchmark;
+
+import android.bluetooth.BluetoothDevice;
+
+import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.MacAddress;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.UUID;
+
+// Devices and advertisements shaped like what a scan in a busy room reports
+final class Fixtures {
+    static final int HEART_RATE_SERVICE = 0x180D;
+    static final int BATTERY_SERVICE = 0x180F;
+    static final int COMPANY_ID = 0x0059;
+    static final UUID VENDOR_CHARACTERISTIC = UUID.fromString("6e400003-b5a3-f393-e0a9-e50e24dcca9e");
+
+    private Fixtures() {
+    }
+
+    // A 16-bit SIG UUID on the Bluetooth base UUID
+    static UUID sigUuid(int uuid16) {
+        return new UUID((long) uuid16 << 32 | 0x1000L, 0x800000805F9B34FBL);
+    }
+
+    static String address(int index) {
+        return MacAddress.unpack(0xC0FFEE000000L | index);
+    }
+
+    // Flags, a 16-bit service UUID, TX power, manufacturer data and a complete local name
+    static byte[] advertisement(int index, Random random) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(2);
+        out.write(0x01);
+        out.write(0x06);
+        int service = index % 8 == 0 ? HEART_RATE_SERVICE : BATTERY_SERVICE;
+        out.write(3);
+        out.write(0x03);
+        out.write(service & 0xFF);
+        out.write(service >> 8);
+        out.write(2);
+        out.write(0x0A);
+        out.write(-8);
+        byte[] payload = new byte[6];
+        random.nextBytes(payload);
+        out.write(payload.length + 3);
+        out.write(0xFF);
+        out.write(COMPANY_ID & 0xFF);
+        out.write(COMPANY_ID >> 8);
+        out.write(payload, 0, payload.length);
+        byte[] name = ("Sensor " + index).getBytes(StandardCharsets.US_ASCII);
+        out.write(name.length + 1);
+        out.write(0x09);
+        out.write(name, 0, name.length);
+        return out.toByteArray();
+    }
+
+    // A scan result as the scan callback builds it; the stack reports no name of its own
+    static BleDevice device(int index, Random random) {
+        return new BleDevice(new BluetoothDevice(address(index), null), -40 - random.nextInt(60),
+                advertisement(index, random), index);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.bledevicesscanner.benchmark;
+
+import com.example.bledevicesscanner.ble.ScanProfile;
+import com.example.bledevicesscanner.model.AdvertisingData;
+import com.example.bledevicesscanner.model.BleDevice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Per-advertisement work on the scan path: parsing the raw record into the reused
+ * {@link AdvertisingData} view, matching it against a software-filtered profile, and
+ * what a fresh {@link BleDevice} costs until its name is resolved from the record.
+ */
+@State(Scope.Thread)
+public class ScanRecordBenchmark {
+    private static final int RECORDS = 256;
+
+    private final AdvertisingData advertisingData = new AdvertisingData();
+    private byte[][] records;
+    private BleDevice[] devices;
+    private ScanProfile profile;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        records = new byte[RECORDS][];
+        devices = new BleDevice[RECORDS];
+        for (int i = 0; i < RECORDS; i++) {
+            devices[i] = Fixtures.device(i, random);
+            records[i] = devices[i].getScanRecord();
+        }
+        // A name prefix keeps the profile from being offloaded, so it is matched on the host
+        profile = new ScanProfile()
+                .addServiceUuid(UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb"))
+                .addNamePrefix("HRM");
+    }
+
+    private int nextIndex() {
+        int index = next;
+        next = (next + 1) & (RECORDS - 1);
+        return index;
+    }
+
+    @Benchmark
+    public int parse() {
+        advertisingData.parse(records[nextIndex()]);
+        return advertisingData.getServiceUuidCount();
+    }
+
+    @Benchmark
+    public boolean parseAndMatch() {
+        advertisingData.parse(records[nextIndex()]);
+        return profile.matches(advertisingData);
+    }
+
+    // What the scan callback does per result: wrap it, then the list asks for the name
+    @Benchmark
+    public String newDeviceName() {
+        BleDevice template = devices[nextIndex()];
+        BleDevice device = new BleDevice(template.getDevice(), template.getRssi(), template.getScanRecord(),
+                template.getTimestampNanos());
+        return device.getName();
+    }
+}
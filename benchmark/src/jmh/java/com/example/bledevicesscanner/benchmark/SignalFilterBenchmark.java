@@ -0,0 +1,65 @@
+package com.example.bledevicesscanner.benchmark;
+
+import com.example.bledevicesscanner.model.BleDevice;
+import com.example.bledevicesscanner.util.SignalFilter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * RSSI handling per advertisement of one device, with smoothing off and with each
+ * filter. Off is the raw {@link BleDevice#setRssi(int)} path; on, the reading also goes
+ * through {@link BleDevice#applySignalFilter(SignalFilter)}, which updates the filter
+ * carried over from the device's previous instance and re-estimates the distance.
+ * Readings are a fixed RSSI plus noise, arriving every 100 ms.
+ */
+@State(Scope.Thread)
+public class SignalFilterBenchmark {
+    private static final int TRUE_RSSI = -65;
+    private static final double NOISE_DBM = 5;
+    private static final long ADVERTISING_INTERVAL_NANOS = 100000000L;
+    private static final int READINGS = 1024;
+
+    @Param({"OFF", "EWMA", "KALMAN"})
+    public String smoothing;
+
+    // One instance per advertisement, as the scan callback builds them
+    private BleDevice[] devices;
+    private int[] readings;
+    private SignalFilter filter;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(1);
+        devices = new BleDevice[READINGS];
+        readings = new int[READINGS];
+        for (int i = 0; i < READINGS; i++) {
+            readings[i] = (int) Math.round(TRUE_RSSI + random.nextGaussian() * NOISE_DBM);
+            devices[i] = new BleDevice(Fixtures.device(0, random).getDevice(), readings[i],
+                    Fixtures.advertisement(0, random), i * ADVERTISING_INTERVAL_NANOS);
+            // Parse the record up front, the list does that for the name anyway
+            devices[i].getAdvertisingData();
+        }
+        if (!"OFF".equals(smoothing)) {
+            filter = new SignalFilter(new SignalFilter.Settings().setMode(SignalFilter.Mode.valueOf(smoothing)));
+        }
+    }
+
+    @Benchmark
+    public double update() {
+        int index = next;
+        next = (next + 1) & (READINGS - 1);
+        BleDevice device = devices[index];
+        device.setRssi(readings[index]);
+        if (filter != null) {
+            device.applySignalFilter(filter);
+        }
+        return device.getSmoothedRssi();
+    }
+}
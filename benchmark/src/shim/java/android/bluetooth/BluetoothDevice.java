@@ -0,0 +1,23 @@
+package android.bluetooth;
+
+/**
+ * Stand-in for the framework class with just what the app's model code calls. The real
+ * getName() is a Binder call; here both getters are plain field reads.
+ */
+public class BluetoothDevice {
+    private final String address;
+    private final String name;
+
+    public BluetoothDevice(String address, String name) {
+        this.address = address;
+        this.name = name;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+}